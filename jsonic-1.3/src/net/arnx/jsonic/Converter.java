@@ -38,7 +38,6 @@ import java.nio.file.Paths;
 import java.sql.Struct;
 import java.text.DateFormat;
 import java.text.NumberFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.DayOfWeek;
 import java.time.Duration;
@@ -83,6 +82,7 @@ import net.arnx.jsonic.io.StringBuilderOutputSource;
 import net.arnx.jsonic.util.Base64;
 import net.arnx.jsonic.util.BeanInfo;
 import net.arnx.jsonic.util.ClassUtil;
+import net.arnx.jsonic.util.ISODateTimeParser;
 import net.arnx.jsonic.util.PropertyInfo;
 
 interface Converter {
@@ -1136,7 +1136,7 @@ final class DateConverter implements Converter {
 				if (format != null) {
 					date = format.parse(str);
 				} else {
-					date = convertDate(context, str);
+					date = convertDate(context, str, c);
 				}
 
 				if (date != null && !c.isAssignableFrom(date.getClass())) {
@@ -1167,11 +1167,31 @@ final class DateConverter implements Converter {
 		return date;
 	}
 
-	static Date convertDate(Context context, String value) throws ParseException {
+	static Date convertDate(Context context, String value) throws Exception {
+		return convertDate(context, value, Date.class);
+	}
+
+	/**
+	 * Parses the text as a date. An ISO-8601 text is converted directly into
+	 * an instance of the specified class, and the nanoseconds are kept for Timestamp.
+	 * Other texts are parsed by DateFormat, so the result may be a plain Date.
+	 */
+	static Date convertDate(Context context, String value, Class<?> cls) throws Exception {
 		value = value.trim();
 		if (value.length() == 0) {
 			return null;
 		}
+
+		ISODateTimeParser parser = context.getLocalCache().getDateTimeParser();
+		if (parser.parse(value, true) && parser.isGregorian() && parser.isValidIn(context.getTimeZone())) {
+			Date date = (cls == Date.class) ? new Date() : (Date)context.createInternal(cls);
+			date.setTime(parser.toEpochMilli(context.getTimeZone()));
+			if (date instanceof java.sql.Timestamp) {
+				((java.sql.Timestamp)date).setNanos(parser.getNano());
+			}
+			return date;
+		}
+
 		value = TIMEZONE_PATTERN.matcher(value).replaceFirst("GMT$1:$2");
 
 		DateFormat format = null;
@@ -1879,6 +1899,11 @@ final class InstantConverter implements Converter {
 					return (Instant)temp;
 				}
 			} else {
+				ISODateTimeParser parser = context.getLocalCache().getDateTimeParser();
+				if (parser.parse((String)value, false) && parser.hasTime()
+						&& parser.hasOffset() && parser.getZoneId() == null) {
+					return Instant.ofEpochSecond(parser.toLocalEpochSecond() - parser.getOffsetSeconds(), parser.getNano());
+				}
 				return Instant.parse(((String)value));
 			}
 		} else {
@@ -1951,6 +1976,11 @@ final class LocalDateTimeConverter implements Converter {
 				return LocalDateTime.parse(((String)value), context.getLocalCache()
 						.get(DateTimeFormatter.class, format, DateTimeFormatterProvider.INSTANCE));
 			} else {
+				ISODateTimeParser parser = context.getLocalCache().getDateTimeParser();
+				if (parser.parse((String)value, false) && parser.hasTime() && !parser.hasOffset()) {
+					return LocalDateTime.of(parser.getYear(), parser.getMonth(), parser.getDay(),
+							parser.getHour(), parser.getMinute(), parser.getSecond(), parser.getNano());
+				}
 				return LocalDateTime.parse(((String)value));
 			}
 		} else {
@@ -2059,6 +2089,13 @@ final class OffsetDateTimeConverter implements Converter {
 				return OffsetDateTime.parse(((String)value), context.getLocalCache()
 						.get(DateTimeFormatter.class, format, DateTimeFormatterProvider.INSTANCE));
 			} else {
+				ISODateTimeParser parser = context.getLocalCache().getDateTimeParser();
+				if (parser.parse((String)value, false) && parser.hasTime()
+						&& parser.hasOffset() && parser.getZoneId() == null) {
+					return OffsetDateTime.of(parser.getYear(), parser.getMonth(), parser.getDay(),
+							parser.getHour(), parser.getMinute(), parser.getSecond(), parser.getNano(),
+							ZoneOffset.ofTotalSeconds(parser.getOffsetSeconds()));
+				}
 				return OffsetDateTime.parse(((String)value));
 			}
 		} else {
@@ -2235,6 +2272,14 @@ final class ZonedDateTimeConverter implements Converter {
 				return ZonedDateTime.parse(((String)value), context.getLocalCache()
 						.get(DateTimeFormatter.class, format, DateTimeFormatterProvider.INSTANCE));
 			} else {
+				ISODateTimeParser parser = context.getLocalCache().getDateTimeParser();
+				if (parser.parse((String)value, false) && parser.hasTime() && parser.hasOffset()) {
+					ZoneOffset offset = ZoneOffset.ofTotalSeconds(parser.getOffsetSeconds());
+					String zone = parser.getZoneId();
+					return ZonedDateTime.ofInstant(LocalDateTime.of(parser.getYear(), parser.getMonth(), parser.getDay(),
+							parser.getHour(), parser.getMinute(), parser.getSecond(), parser.getNano()),
+							offset, (zone != null) ? ZoneId.of(zone) : offset);
+				}
 				return ZonedDateTime.parse(((String)value));
 			}
 		} else {
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JSONListener which sums up the statistics of parse and format calls.
+ *
+ * <pre>
+ * CounterListener counter = new CounterListener();
+ * JSON.listener = counter;
+ * ...
+ * long chars = counter.getParse().getLength();
+ * </pre>
+ */
+public class CounterListener implements JSONListener {
+	private final Counter parse = new Counter();
+	private final Counter format = new Counter();
+
+	@Override
+	public void onParseStart(JSONStatistics stats) {
+		// no handle
+	}
+
+	@Override
+	public void onConvertStart(JSONStatistics stats) {
+		// no handle
+	}
+
+	@Override
+	public void onParse(JSONStatistics stats) {
+		parse.add(stats);
+	}
+
+	@Override
+	public void onFormatStart(JSONStatistics stats) {
+		// no handle
+	}
+
+	@Override
+	public void onFormat(JSONStatistics stats) {
+		format.add(stats);
+	}
+
+	@Override
+	public void onInvokeStart() {
+		// no handle
+	}
+
+	@Override
+	public void onInvoke(String component, String method, long duration, long resolveDuration, int error) {
+		// no handle
+	}
+
+	public Counter getParse() {
+		return parse;
+	}
+
+	public Counter getFormat() {
+		return format;
+	}
+
+	public void reset() {
+		parse.reset();
+		format.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "CounterListener [parse=" + parse + ", format=" + format + "]";
+	}
+
+	public static final class Counter {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong duration = new AtomicLong();
+		private final AtomicLong length = new AtomicLong();
+		private final AtomicLong objectCount = new AtomicLong();
+		private final AtomicLong arrayCount = new AtomicLong();
+		private final AtomicLong valueCount = new AtomicLong();
+		private final AtomicLong maxDepth = new AtomicLong();
+
+		Counter() {
+		}
+
+		void add(JSONStatistics stats) {
+			count.incrementAndGet();
+			duration.addAndGet(stats.getDuration());
+			length.addAndGet(stats.getLength());
+			objectCount.addAndGet(stats.getObjectCount());
+			arrayCount.addAndGet(stats.getArrayCount());
+			valueCount.addAndGet(stats.getValueCount());
+
+			long depth = stats.getMaxDepth();
+			long current;
+			while (depth > (current = maxDepth.get())) {
+				if (maxDepth.compareAndSet(current, depth)) break;
+			}
+		}
+
+		void reset() {
+			count.set(0);
+			duration.set(0);
+			length.set(0);
+			objectCount.set(0);
+			arrayCount.set(0);
+			valueCount.set(0);
+			maxDepth.set(0);
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * Returns the total elapsed time in nanoseconds.
+		 *
+		 * @return total elapsed time
+		 */
+		public long getDuration() {
+			return duration.get();
+		}
+
+		public long getLength() {
+			return length.get();
+		}
+
+		public long getObjectCount() {
+			return objectCount.get();
+		}
+
+		public long getArrayCount() {
+			return arrayCount.get();
+		}
+
+		public long getValueCount() {
+			return valueCount.get();
+		}
+
+		public long getMaxDepth() {
+			return maxDepth.get();
+		}
+
+		@Override
+		public String toString() {
+			return "Counter [count=" + count + ", duration=" + duration + ", length=" + length
+					+ ", objectCount=" + objectCount + ", arrayCount=" + arrayCount
+					+ ", valueCount=" + valueCount + ", maxDepth=" + maxDepth + "]";
+		}
+	}
+}
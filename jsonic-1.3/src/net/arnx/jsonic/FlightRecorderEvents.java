@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events of FlightRecorderListener.
+ * This class is loaded only when jdk.jfr is available.
+ *
+ * An event is begun when the call starts, so its start time and duration
+ * line up with the GC and lock events recorded during the call.
+ */
+final class FlightRecorderEvents implements FlightRecorderListener.Recorder {
+	@Override
+	public boolean isAvailable() {
+		return FlightRecorder.isAvailable();
+	}
+
+	@Override
+	public Object begin(int type) {
+		Event event;
+		switch (type) {
+		case PARSE:
+			event = new ParseEvent();
+			break;
+		case CONVERT:
+			event = new ConvertEvent();
+			break;
+		case FORMAT:
+			event = new FormatEvent();
+			break;
+		case EXPENSIVE:
+			event = new ExpensiveEvent();
+			break;
+		case INVOKE:
+			event = new InvokeEvent();
+			break;
+		default:
+			throw new IllegalArgumentException("unknown event type: " + type);
+		}
+		if (!event.isEnabled()) return null;
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void parse(Object begun, JSONStatistics stats) {
+		if (begun instanceof ParseEvent) {
+			ParseEvent event = (ParseEvent)begun;
+			event.set(stats);
+			event.commit();
+		}
+	}
+
+	@Override
+	public void convert(Object begun, JSONStatistics stats) {
+		if (begun instanceof ConvertEvent) {
+			ConvertEvent event = (ConvertEvent)begun;
+			event.rootType = toString(stats.getRootType());
+			event.targetType = stats.getConvertType().toString();
+			event.mode = toString(stats.getMode());
+			event.elapsed = stats.getConvertDuration();
+			event.commit();
+		}
+	}
+
+	@Override
+	public void format(Object begun, JSONStatistics stats) {
+		if (begun instanceof FormatEvent) {
+			FormatEvent event = (FormatEvent)begun;
+			event.set(stats);
+			event.commit();
+		}
+	}
+
+	@Override
+	public void expensive(Object begun, String operation, JSONStatistics stats, long dropped) {
+		if (begun instanceof ExpensiveEvent) {
+			ExpensiveEvent event = (ExpensiveEvent)begun;
+			event.set(stats);
+			event.operation = operation;
+			event.targetType = (stats.getConvertType() != null) ? stats.getConvertType().toString() : null;
+			event.dropped = dropped;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void invoke(Object begun, String component, String method, long duration, long resolveDuration, int error) {
+		if (begun instanceof InvokeEvent) {
+			InvokeEvent event = (InvokeEvent)begun;
+			event.component = component;
+			event.method = method;
+			event.elapsed = duration;
+			event.resolveDuration = resolveDuration;
+			event.error = error;
+			event.commit();
+		}
+	}
+
+	private static String toString(Enum<?> e) {
+		return (e != null) ? e.name() : null;
+	}
+
+	@Category("JSONIC")
+	@StackTrace(false)
+	static abstract class DocumentEvent extends Event {
+		@Label("Root Type")
+		String rootType;
+
+		@Label("Mode")
+		String mode;
+
+		@Label("Length")
+		@Description("Number of characters read or written")
+		long length;
+
+		@Label("Max Depth")
+		int depth;
+
+		@Label("Elapsed Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsed;
+
+		@Label("Objects")
+		int objectCount;
+
+		@Label("Arrays")
+		int arrayCount;
+
+		@Label("Values")
+		int valueCount;
+
+		void set(JSONStatistics stats) {
+			rootType = FlightRecorderEvents.toString(stats.getRootType());
+			mode = FlightRecorderEvents.toString(stats.getMode());
+			length = stats.getLength();
+			depth = stats.getMaxDepth();
+			elapsed = stats.getDuration();
+			objectCount = stats.getObjectCount();
+			arrayCount = stats.getArrayCount();
+			valueCount = stats.getValueCount();
+		}
+	}
+
+	@Name("net.arnx.jsonic.Parse")
+	@Label("JSON Parse")
+	@Description("Parse call including the conversion to the requested type")
+	static class ParseEvent extends DocumentEvent {
+	}
+
+	@Name("net.arnx.jsonic.Format")
+	@Label("JSON Format")
+	static class FormatEvent extends DocumentEvent {
+	}
+
+	@Name("net.arnx.jsonic.ExpensiveDocument")
+	@Label("JSON Expensive Document")
+	@Description("Sampled parse or format call which reached the expensive limits")
+	@StackTrace(true)
+	static class ExpensiveEvent extends DocumentEvent {
+		@Label("Operation")
+		String operation;
+
+		@Label("Target Type")
+		String targetType;
+
+		@Label("Dropped")
+		@Description("Number of expensive documents not sampled since the last event")
+		long dropped;
+	}
+
+	@Name("net.arnx.jsonic.Convert")
+	@Label("JSON Convert")
+	@Category("JSONIC")
+	@StackTrace(false)
+	static class ConvertEvent extends Event {
+		@Label("Root Type")
+		String rootType;
+
+		@Label("Target Type")
+		String targetType;
+
+		@Label("Mode")
+		String mode;
+
+		@Label("Elapsed Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsed;
+	}
+
+	@Name("net.arnx.jsonic.Invoke")
+	@Label("JSON-RPC Invoke")
+	@Category("JSONIC")
+	@StackTrace(false)
+	static class InvokeEvent extends Event {
+		@Label("Component")
+		String component;
+
+		@Label("Method")
+		String method;
+
+		@Label("Elapsed Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsed;
+
+		@Label("Resolve Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long resolveDuration;
+
+		@Label("Error Code")
+		int error;
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JSONListener which emits Java Flight Recorder events for parse, convert and format calls.
+ *
+ * <pre>
+ * JSON.listener = new FlightRecorderListener(new CounterListener());
+ * </pre>
+ *
+ * The events are begun when a call starts and committed when it completes, so the start time
+ * and the duration of an event can be correlated with the GC and lock events.
+ * Calls shorter than the threshold are not recorded.
+ * A document whose length, depth or duration reaches the expensive limits is also reported
+ * as a "JSON Expensive Document" event with the stack trace, sampled at most once per
+ * sampleInterval for each operation.
+ *
+ * RPCServlet reports the invocations of the methods to JSON.listener, so they are also recorded
+ * when this listener is wrapped by another one which passes onInvokeStart and onInvoke.
+ * On a JDK without Flight Recorder, the event classes are never loaded
+ * and this listener only passes the calls to the next listener.
+ */
+public class FlightRecorderListener implements JSONListener {
+	private static final Recorder RECORDER = getRecorderInstance("net.arnx.jsonic.FlightRecorderEvents",
+			FlightRecorderListener.class.getClassLoader());
+
+	/**
+	 * The minimum duration of the recorded parse, convert and format calls in nanoseconds.
+	 * default: 1000000 (1ms)
+	 */
+	public long threshold = 1000000L;
+
+	/**
+	 * The minimum duration of the recorded method invocations in nanoseconds.
+	 * default: 1000000 (1ms)
+	 */
+	public long invokeThreshold = 1000000L;
+
+	/**
+	 * The length in characters from which a document is expensive. default: 1048576
+	 */
+	public long expensiveLength = 1048576L;
+
+	/**
+	 * The depth from which a document is expensive. default: 64
+	 */
+	public int expensiveDepth = 64;
+
+	/**
+	 * The duration in nanoseconds from which a document is expensive. default: 100000000 (100ms)
+	 */
+	public long expensiveDuration = 100000000L;
+
+	/**
+	 * The minimum interval of the expensive document events in nanoseconds. default: 1000000000 (1s)
+	 */
+	public long sampleInterval = 1000000000L;
+
+	private final JSONListener next;
+	private final Sampler parseSampler = new Sampler();
+	private final Sampler formatSampler = new Sampler();
+	private final ThreadLocal<Object> invokeEvent = new ThreadLocal<Object>();
+
+	public FlightRecorderListener() {
+		this(null);
+	}
+
+	/**
+	 * Creates the listener which passes the statistics to the next listener.
+	 *
+	 * @param next the next listener or null
+	 */
+	public FlightRecorderListener(JSONListener next) {
+		this.next = next;
+	}
+
+	/**
+	 * Returns true if the events can be emitted on this JVM.
+	 *
+	 * @return true if Flight Recorder is available.
+	 */
+	public static boolean isAvailable() {
+		return RECORDER != null;
+	}
+
+	@Override
+	public void onParseStart(JSONStatistics stats) {
+		if (RECORDER != null) {
+			stats.event = RECORDER.begin(Recorder.PARSE);
+			stats.expensiveEvent = RECORDER.begin(Recorder.EXPENSIVE);
+		}
+		if (next != null) next.onParseStart(stats);
+	}
+
+	@Override
+	public void onConvertStart(JSONStatistics stats) {
+		if (RECORDER != null) {
+			stats.convertEvent = RECORDER.begin(Recorder.CONVERT);
+		}
+		if (next != null) next.onConvertStart(stats);
+	}
+
+	@Override
+	public void onParse(JSONStatistics stats) {
+		if (RECORDER != null) {
+			if (stats.getDuration() >= threshold) {
+				RECORDER.parse(stats.event, stats);
+			}
+			if (stats.getConvertType() != null && stats.getConvertDuration() >= threshold) {
+				RECORDER.convert(stats.convertEvent, stats);
+			}
+			if (isExpensive(stats)) {
+				long dropped = parseSampler.sample(sampleInterval);
+				if (dropped >= 0) RECORDER.expensive(stats.expensiveEvent, "parse", stats, dropped);
+			}
+		}
+		if (next != null) next.onParse(stats);
+	}
+
+	@Override
+	public void onFormatStart(JSONStatistics stats) {
+		if (RECORDER != null) {
+			stats.event = RECORDER.begin(Recorder.FORMAT);
+			stats.expensiveEvent = RECORDER.begin(Recorder.EXPENSIVE);
+		}
+		if (next != null) next.onFormatStart(stats);
+	}
+
+	@Override
+	public void onFormat(JSONStatistics stats) {
+		if (RECORDER != null) {
+			if (stats.getDuration() >= threshold) {
+				RECORDER.format(stats.event, stats);
+			}
+			if (isExpensive(stats)) {
+				long dropped = formatSampler.sample(sampleInterval);
+				if (dropped >= 0) RECORDER.expensive(stats.expensiveEvent, "format", stats, dropped);
+			}
+		}
+		if (next != null) next.onFormat(stats);
+	}
+
+	@Override
+	public void onInvokeStart() {
+		if (RECORDER != null) {
+			invokeEvent.set(RECORDER.begin(Recorder.INVOKE));
+		}
+		if (next != null) next.onInvokeStart();
+	}
+
+	@Override
+	public void onInvoke(String component, String method, long duration, long resolveDuration, int error) {
+		if (RECORDER != null) {
+			Object event = invokeEvent.get();
+			invokeEvent.remove();
+			if (duration >= invokeThreshold || error != 0) {
+				RECORDER.invoke(event, component, method, duration, resolveDuration, error);
+			}
+		}
+		if (next != null) next.onInvoke(component, method, duration, resolveDuration, error);
+	}
+
+	private boolean isExpensive(JSONStatistics stats) {
+		return stats.getLength() >= expensiveLength
+				|| stats.getMaxDepth() >= expensiveDepth
+				|| stats.getDuration() >= expensiveDuration;
+	}
+
+	static Recorder getRecorderInstance(String name, ClassLoader cl) {
+		try {
+			Class<?> cls = Class.forName(name, true, cl);
+			Recorder recorder = (Recorder)cls.getDeclaredConstructor().newInstance();
+			return recorder.isAvailable() ? recorder : null;
+		} catch (ClassNotFoundException e) {
+			// no handle
+		} catch (NoSuchMethodException e) {
+			// no handle
+		} catch (InstantiationException e) {
+			// no handle
+		} catch (IllegalAccessException e) {
+			// no handle
+		} catch (InvocationTargetException e) {
+			// no handle
+		} catch (LinkageError e) {
+			// no handle
+		}
+		return null;
+	}
+
+	/**
+	 * Emits the events. The implementation is the only class which refers jdk.jfr.
+	 * An event is begun by begin and committed by the method of its type.
+	 */
+	interface Recorder {
+		int PARSE = 1;
+		int CONVERT = 2;
+		int FORMAT = 3;
+		int EXPENSIVE = 4;
+		int INVOKE = 5;
+
+		boolean isAvailable();
+
+		/**
+		 * Begins the event of the specified type.
+		 *
+		 * @return the begun event or null if the event is disabled.
+		 */
+		Object begin(int type);
+
+		void parse(Object event, JSONStatistics stats);
+
+		void convert(Object event, JSONStatistics stats);
+
+		void format(Object event, JSONStatistics stats);
+
+		void expensive(Object event, String operation, JSONStatistics stats, long dropped);
+
+		void invoke(Object event, String component, String method, long duration, long resolveDuration, int error);
+	}
+
+	static final class Sampler {
+		private static final long NEVER = Long.MIN_VALUE;
+
+		private final AtomicLong last = new AtomicLong(NEVER);
+		private final AtomicLong dropped = new AtomicLong();
+
+		/**
+		 * Returns the number of the dropped calls since the last sample,
+		 * or -1 if this call is dropped.
+		 */
+		long sample(long interval) {
+			long now = System.nanoTime();
+			long prev = last.get();
+			if ((prev != NEVER && now - prev < interval) || !last.compareAndSet(prev, now)) {
+				dropped.incrementAndGet();
+				return -1;
+			}
+			return dropped.getAndSet(0);
+		}
+	}
+}
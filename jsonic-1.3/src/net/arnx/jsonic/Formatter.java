@@ -31,7 +31,11 @@ import java.sql.Struct;
 import java.text.DateFormat;
 import java.text.NumberFormat;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAccessor;
 import java.time.temporal.TemporalAmount;
@@ -1537,6 +1541,10 @@ final class TemporalEnumFormatter implements Formatter {
 }
 
 final class InstantFormatter implements Formatter {
+	// 0000-01-01T00:00:00Z - 9999-12-31T23:59:59Z
+	private static final long MIN_SECONDS = -62167219200L;
+	private static final long MAX_SECONDS = 253402300799L;
+
 	public InstantFormatter() {
 	}
 
@@ -1559,8 +1567,49 @@ final class InstantFormatter implements Formatter {
 					.withZone(context.getTimeZone().toZoneId())
 					.format((TemporalAccessor)o), out);
 		} else {
-			StringFormatter.serialize(context, o.toString(), out);
+			Instant instant = (Instant)o;
+			long seconds = instant.getEpochSecond();
+			if (seconds >= MIN_SECONDS && seconds <= MAX_SECONDS) {
+				out.append('"');
+				format(seconds, instant.getNano(), out);
+				out.append('"');
+			} else {
+				StringFormatter.serialize(context, o.toString(), out);
+			}
+		}
+	}
+
+	static void format(long seconds, int nano, OutputSource out) throws IOException {
+		long zeroDay = Math.floorDiv(seconds, 86400L) + 719528L - 60L;
+		int secondOfDay = (int)Math.floorMod(seconds, 86400L);
+
+		long adjust = 0;
+		if (zeroDay < 0) {
+			long cycles = (zeroDay + 1) / 146097 - 1;
+			adjust = cycles * 400;
+			zeroDay -= cycles * 146097;
+		}
+		long year = (400 * zeroDay + 591) / 146097;
+		long dayOfYear = zeroDay - (365 * year + year / 4 - year / 100 + year / 400);
+		if (dayOfYear < 0) {
+			year--;
+			dayOfYear = zeroDay - (365 * year + year / 4 - year / 100 + year / 400);
 		}
+		year += adjust;
+		int marchMonth = ((int)dayOfYear * 5 + 2) / 153;
+		int month = (marchMonth + 2) % 12 + 1;
+		int day = (int)dayOfYear - (marchMonth * 306 + 5) / 10 + 1;
+		year += marchMonth / 10;
+
+		TemporalAccessorFormatter.appendDate((int)year, month, day, out);
+		out.append('T');
+		TemporalAccessorFormatter.appendDigits(secondOfDay / 3600, 2, out);
+		out.append(':');
+		TemporalAccessorFormatter.appendDigits(secondOfDay / 60 % 60, 2, out);
+		out.append(':');
+		TemporalAccessorFormatter.appendDigits(secondOfDay % 60, 2, out);
+		TemporalAccessorFormatter.appendNano(nano, out);
+		out.append('Z');
 	}
 }
 
@@ -1585,10 +1634,99 @@ final class TemporalAccessorFormatter implements Formatter {
 			StringFormatter.serialize(context, context.getLocalCache()
 					.get(DateTimeFormatter.class, format, DateTimeFormatterProvider.INSTANCE)
 					.format((TemporalAccessor)o), out);
+		} else if (o instanceof LocalDateTime && isFourDigitYear(((LocalDateTime)o).getYear())) {
+			out.append('"');
+			appendDateTime((LocalDateTime)o, out);
+			out.append('"');
+		} else if (o instanceof OffsetDateTime && isFourDigitYear(((OffsetDateTime)o).getYear())) {
+			OffsetDateTime odt = (OffsetDateTime)o;
+			out.append('"');
+			appendDateTime(odt.toLocalDateTime(), out);
+			appendOffset(odt.getOffset(), out);
+			out.append('"');
+		} else if (o instanceof ZonedDateTime && isFourDigitYear(((ZonedDateTime)o).getYear())) {
+			ZonedDateTime zdt = (ZonedDateTime)o;
+			out.append('"');
+			appendDateTime(zdt.toLocalDateTime(), out);
+			appendOffset(zdt.getOffset(), out);
+			if (zdt.getOffset() != zdt.getZone()) {
+				out.append('[');
+				out.append(zdt.getZone().getId());
+				out.append(']');
+			}
+			out.append('"');
 		} else {
 			StringFormatter.serialize(context, o.toString(), out);
 		}
 	}
+
+	private static boolean isFourDigitYear(int year) {
+		return year >= 0 && year <= 9999;
+	}
+
+	static void appendDateTime(LocalDateTime ldt, OutputSource out) throws IOException {
+		appendDate(ldt.getYear(), ldt.getMonthValue(), ldt.getDayOfMonth(), out);
+		out.append('T');
+		appendDigits(ldt.getHour(), 2, out);
+		out.append(':');
+		appendDigits(ldt.getMinute(), 2, out);
+		if (ldt.getSecond() > 0 || ldt.getNano() > 0) {
+			out.append(':');
+			appendDigits(ldt.getSecond(), 2, out);
+			appendNano(ldt.getNano(), out);
+		}
+	}
+
+	static void appendDate(int year, int month, int day, OutputSource out) throws IOException {
+		appendDigits(year, 4, out);
+		out.append('-');
+		appendDigits(month, 2, out);
+		out.append('-');
+		appendDigits(day, 2, out);
+	}
+
+	static void appendNano(int nano, OutputSource out) throws IOException {
+		if (nano == 0) {
+			return;
+		}
+
+		out.append('.');
+		if (nano % 1000000 == 0) {
+			appendDigits(nano / 1000000, 3, out);
+		} else if (nano % 1000 == 0) {
+			appendDigits(nano / 1000, 6, out);
+		} else {
+			appendDigits(nano, 9, out);
+		}
+	}
+
+	static void appendOffset(ZoneOffset offset, OutputSource out) throws IOException {
+		int total = offset.getTotalSeconds();
+		if (total == 0) {
+			out.append('Z');
+			return;
+		}
+
+		int abs = Math.abs(total);
+		out.append((total < 0) ? '-' : '+');
+		appendDigits(abs / 3600, 2, out);
+		out.append(':');
+		appendDigits(abs / 60 % 60, 2, out);
+		if (abs % 60 != 0) {
+			out.append(':');
+			appendDigits(abs % 60, 2, out);
+		}
+	}
+
+	static void appendDigits(int value, int width, OutputSource out) throws IOException {
+		int div = 1;
+		for (int i = 1; i < width; i++) {
+			div *= 10;
+		}
+		for (; div > 0; div /= 10) {
+			out.append((char)('0' + value / div % 10));
+		}
+	}
 }
 
 final class TemporalAmountFormatter implements Formatter {
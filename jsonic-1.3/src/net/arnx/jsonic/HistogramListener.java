@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * JSONListener which records the durations and lengths of parse and format calls
+ * into histograms.
+ *
+ * Each histogram has power-of-two buckets, so a percentile is accurate within a factor of two.
+ */
+public class HistogramListener implements JSONListener {
+	private final Histogram parseDuration = new Histogram();
+	private final Histogram parseLength = new Histogram();
+	private final Histogram formatDuration = new Histogram();
+	private final Histogram formatLength = new Histogram();
+
+	@Override
+	public void onParseStart(JSONStatistics stats) {
+		// no handle
+	}
+
+	@Override
+	public void onConvertStart(JSONStatistics stats) {
+		// no handle
+	}
+
+	@Override
+	public void onParse(JSONStatistics stats) {
+		parseDuration.record(stats.getDuration());
+		parseLength.record(stats.getLength());
+	}
+
+	@Override
+	public void onFormatStart(JSONStatistics stats) {
+		// no handle
+	}
+
+	@Override
+	public void onFormat(JSONStatistics stats) {
+		formatDuration.record(stats.getDuration());
+		formatLength.record(stats.getLength());
+	}
+
+	@Override
+	public void onInvokeStart() {
+		// no handle
+	}
+
+	@Override
+	public void onInvoke(String component, String method, long duration, long resolveDuration, int error) {
+		// no handle
+	}
+
+	/**
+	 * Returns the histogram of parse durations in nanoseconds.
+	 *
+	 * @return histogram
+	 */
+	public Histogram getParseDuration() {
+		return parseDuration;
+	}
+
+	/**
+	 * Returns the histogram of parsed lengths in characters.
+	 *
+	 * @return histogram
+	 */
+	public Histogram getParseLength() {
+		return parseLength;
+	}
+
+	/**
+	 * Returns the histogram of format durations in nanoseconds.
+	 *
+	 * @return histogram
+	 */
+	public Histogram getFormatDuration() {
+		return formatDuration;
+	}
+
+	/**
+	 * Returns the histogram of formatted lengths in characters.
+	 *
+	 * @return histogram
+	 */
+	public Histogram getFormatLength() {
+		return formatLength;
+	}
+
+	public void reset() {
+		parseDuration.reset();
+		parseLength.reset();
+		formatDuration.reset();
+		formatLength.reset();
+	}
+
+	public static final class Histogram {
+		// bucket i holds values in [2^(i-1), 2^i - 1], and bucket 0 holds 0.
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		public Histogram() {
+		}
+
+		public void record(long value) {
+			if (value < 0) value = 0;
+
+			buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(value), 63));
+			count.incrementAndGet();
+			sum.addAndGet(value);
+
+			long current;
+			while (value > (current = max.get())) {
+				if (max.compareAndSet(current, value)) break;
+			}
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getMax() {
+			return max.get();
+		}
+
+		public double getMean() {
+			long n = count.get();
+			return (n > 0) ? (double)sum.get() / n : 0.0;
+		}
+
+		/**
+		 * Returns the upper bound of the bucket which contains the percentile.
+		 *
+		 * @param percentile 0.0 to 100.0
+		 * @return the estimated value or 0 if no value is recorded.
+		 */
+		public long getPercentile(double percentile) {
+			if (percentile < 0.0 || percentile > 100.0) {
+				throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+			}
+
+			long n = count.get();
+			if (n == 0) {
+				return 0;
+			}
+
+			long rank = Math.max((long)Math.ceil(n * percentile / 100.0), 1);
+			long total = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				total += buckets.get(i);
+				if (total >= rank) {
+					return Math.min((i == 0) ? 0 : (i == 63) ? Long.MAX_VALUE : (1L << i) - 1, max.get());
+				}
+			}
+			return max.get();
+		}
+
+		/**
+		 * Returns the counts of the buckets. The bucket i holds values from 2^(i-1) to 2^i - 1,
+		 * and the bucket 0 holds 0.
+		 *
+		 * @return the counts of the buckets
+		 */
+		public long[] getBuckets() {
+			long[] result = new long[buckets.length()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = buckets.get(i);
+			}
+			return result;
+		}
+
+		void reset() {
+			for (int i = 0; i < buckets.length(); i++) {
+				buckets.set(i, 0);
+			}
+			count.set(0);
+			sum.set(0);
+			max.set(0);
+		}
+
+		@Override
+		public String toString() {
+			return "Histogram [count=" + getCount() + ", mean=" + getMean() + ", p50=" + getPercentile(50)
+					+ ", p99=" + getPercentile(99) + ", max=" + getMax() + "]";
+		}
+	}
+}
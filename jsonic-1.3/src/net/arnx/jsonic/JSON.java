@@ -73,6 +73,7 @@ import net.arnx.jsonic.io.StringInputSource;
 import net.arnx.jsonic.io.WriterOutputSource;
 import net.arnx.jsonic.util.BeanInfo;
 import net.arnx.jsonic.util.ClassUtil;
+import net.arnx.jsonic.util.FormatCache;
 import net.arnx.jsonic.util.LocalCache;
 
 /**
@@ -174,11 +175,267 @@ public class JSON {
 		SCRIPT
 	}
 
+	/**
+	 * Immutable snapshot of the JSON settings.
+	 * Contexts refer the snapshot without locking, so it can be shared by many threads.
+	 */
+	public static final class Settings {
+		final Object contextObject;
+		final Locale locale;
+		final TimeZone timeZone;
+		final boolean prettyPrint;
+		final int initialIndent;
+		final String indentText;
+		final int maxDepth;
+		final boolean suppressNull;
+		final Mode mode;
+		final String dateFormat;
+		final String numberFormat;
+		final NamingStyle propertyStyle;
+		final NamingStyle enumStyle;
+
+		Settings(JSON json) {
+			contextObject = json.contextObject;
+			locale = json.locale;
+			timeZone = json.timeZone;
+			prettyPrint = json.prettyPrint;
+			initialIndent = json.initialIndent;
+			indentText = json.indentText;
+			maxDepth = json.maxDepth;
+			suppressNull = json.suppressNull;
+			mode = json.mode;
+			dateFormat = json.dateFormat;
+			numberFormat = json.numberFormat;
+			propertyStyle = json.propertyStyle;
+			enumStyle = json.enumStyle;
+		}
+
+		private Settings(Settings settings, Object contextObject) {
+			this.contextObject = contextObject;
+			locale = settings.locale;
+			timeZone = settings.timeZone;
+			prettyPrint = settings.prettyPrint;
+			initialIndent = settings.initialIndent;
+			indentText = settings.indentText;
+			maxDepth = settings.maxDepth;
+			suppressNull = settings.suppressNull;
+			mode = settings.mode;
+			dateFormat = settings.dateFormat;
+			numberFormat = settings.numberFormat;
+			propertyStyle = settings.propertyStyle;
+			enumStyle = settings.enumStyle;
+		}
+
+		private Settings(Builder builder) {
+			contextObject = builder.contextObject;
+			locale = builder.locale;
+			timeZone = builder.timeZone;
+			prettyPrint = builder.prettyPrint;
+			initialIndent = builder.initialIndent;
+			indentText = builder.indentText;
+			maxDepth = builder.maxDepth;
+			suppressNull = builder.suppressNull;
+			mode = builder.mode;
+			dateFormat = builder.dateFormat;
+			numberFormat = builder.numberFormat;
+			propertyStyle = builder.propertyStyle;
+			enumStyle = builder.enumStyle;
+		}
+
+		public Object getContext() {
+			return contextObject;
+		}
+
+		public Locale getLocale() {
+			return locale;
+		}
+
+		public TimeZone getTimeZone() {
+			return timeZone;
+		}
+
+		public boolean isPrettyPrint() {
+			return prettyPrint;
+		}
+
+		public int getInitialIndent() {
+			return initialIndent;
+		}
+
+		public String getIndentText() {
+			return indentText;
+		}
+
+		public int getMaxDepth() {
+			return maxDepth;
+		}
+
+		public boolean isSuppressNull() {
+			return suppressNull;
+		}
+
+		public Mode getMode() {
+			return mode;
+		}
+
+		public String getDateFormat() {
+			return dateFormat;
+		}
+
+		public String getNumberFormat() {
+			return numberFormat;
+		}
+
+		public NamingStyle getPropertyStyle() {
+			return propertyStyle;
+		}
+
+		public NamingStyle getEnumStyle() {
+			return enumStyle;
+		}
+
+		public Builder toBuilder() {
+			return new Builder(this);
+		}
+
+		public static final class Builder {
+			private Object contextObject;
+			private Locale locale = Locale.getDefault();
+			private TimeZone timeZone = TimeZone.getDefault();
+			private boolean prettyPrint = false;
+			private int initialIndent = 0;
+			private String indentText = "\t";
+			private int maxDepth = 32;
+			private boolean suppressNull = false;
+			private Mode mode = Mode.TRADITIONAL;
+			private String dateFormat;
+			private String numberFormat;
+			private NamingStyle propertyStyle = NamingStyle.NOOP;
+			private NamingStyle enumStyle = NamingStyle.NOOP;
+
+			public Builder() {
+			}
+
+			public Builder(Settings settings) {
+				contextObject = settings.contextObject;
+				locale = settings.locale;
+				timeZone = settings.timeZone;
+				prettyPrint = settings.prettyPrint;
+				initialIndent = settings.initialIndent;
+				indentText = settings.indentText;
+				maxDepth = settings.maxDepth;
+				suppressNull = settings.suppressNull;
+				mode = settings.mode;
+				dateFormat = settings.dateFormat;
+				numberFormat = settings.numberFormat;
+				propertyStyle = settings.propertyStyle;
+				enumStyle = settings.enumStyle;
+			}
+
+			public Builder context(Object value) {
+				this.contextObject = value;
+				return this;
+			}
+
+			public Builder locale(Locale locale) {
+				if (locale == null) {
+					throw new NullPointerException();
+				}
+				this.locale = locale;
+				return this;
+			}
+
+			public Builder timeZone(TimeZone timeZone) {
+				if (timeZone == null) {
+					throw new NullPointerException();
+				}
+				this.timeZone = timeZone;
+				return this;
+			}
+
+			public Builder prettyPrint(boolean value) {
+				this.prettyPrint = value;
+				return this;
+			}
+
+			public Builder initialIndent(int indent) {
+				if (indent < 0) {
+					throw new IllegalArgumentException(getMessage(locale, "json.TooSmallArgumentError", "initialIndent", 0));
+				}
+				this.initialIndent = indent;
+				return this;
+			}
+
+			public Builder indentText(String text) {
+				this.indentText = text;
+				return this;
+			}
+
+			public Builder maxDepth(int value) {
+				if (value < 0) {
+					throw new IllegalArgumentException(getMessage(locale, "json.TooSmallArgumentError", "maxDepth", 0));
+				}
+				this.maxDepth = value;
+				return this;
+			}
+
+			public Builder suppressNull(boolean value) {
+				this.suppressNull = value;
+				return this;
+			}
+
+			public Builder mode(Mode mode) {
+				if (mode == null) {
+					throw new NullPointerException();
+				}
+				this.mode = mode;
+				return this;
+			}
+
+			public Builder dateFormat(String format) {
+				this.dateFormat = format;
+				return this;
+			}
+
+			public Builder numberFormat(String format) {
+				this.numberFormat = format;
+				return this;
+			}
+
+			public Builder propertyStyle(NamingStyle style) {
+				this.propertyStyle = style;
+				return this;
+			}
+
+			public Builder enumStyle(NamingStyle style) {
+				this.enumStyle = style;
+				return this;
+			}
+
+			public Settings build() {
+				return new Settings(this);
+			}
+		}
+	}
+
 	/**
 	 * Setup your custom class for using static method. default: net.arnx.jsonic.JSON
 	 */
 	public static volatile Class<? extends JSON> prototype = JSON.class;
 
+	/**
+	 * Reuses JSON instances, contexts, parsers and buffers per thread in static encode and decode methods.
+	 * default: false
+	 */
+	public static volatile boolean pooling = false;
+
+	/**
+	 * Receives the statistics of each parse and format call. (e.g. for metrics or logging)
+	 * The listener is called on the calling thread, so it must be thread-safe and fast.
+	 * default: null
+	 */
+	public static volatile JSONListener listener = null;
+
 	static final Character ROOT = '$';
 
 	private static final String PACKAGE_NAME = JSON.class.getName().substring(0, JSON.class.getName().lastIndexOf('.'));
@@ -539,6 +796,9 @@ public class JSON {
 	 * @throws JSONException if error occurred when formating.
 	 */
 	public static String encode(Object source, boolean prettyPrint) throws JSONException {
+		LocalPool pool = LocalPool.acquire(prettyPrint);
+		if (pool != null) return pool.format(source);
+
 		JSON json = newInstance();
 		json.setPrettyPrint(prettyPrint);
 		return json.format(source);
@@ -553,7 +813,7 @@ public class JSON {
 	 * @throws JSONException if error occurred when formating.
 	 */
 	public static void encode(Object source, OutputStream out) throws IOException, JSONException {
-		newInstance().format(source, new OutputStreamWriter(out, "UTF-8"));
+		encode(source, out, false);
 	}
 
 	/**
@@ -566,6 +826,12 @@ public class JSON {
 	 * @throws JSONException if error occurred when formating.
 	 */
 	public static void encode(Object source, OutputStream out, boolean prettyPrint) throws IOException, JSONException {
+		LocalPool pool = LocalPool.acquire(prettyPrint);
+		if (pool != null) {
+			pool.format(source, new OutputStreamWriter(out, "UTF-8"));
+			return;
+		}
+
 		JSON json = newInstance();
 		json.setPrettyPrint(prettyPrint);
 		json.format(source, new OutputStreamWriter(out, "UTF-8"));
@@ -580,7 +846,7 @@ public class JSON {
 	 * @throws JSONException if error occurred when formating.
 	 */
 	public static void encode(Object source, Appendable appendable) throws IOException, JSONException {
-		newInstance().format(source, appendable);
+		encode(source, appendable, false);
 	}
 
 	/**
@@ -593,6 +859,12 @@ public class JSON {
 	 * @throws JSONException if error occurred when formating.
 	 */
 	public static void encode(Object source, Appendable appendable, boolean prettyPrint) throws IOException, JSONException {
+		LocalPool pool = LocalPool.acquire(prettyPrint);
+		if (pool != null) {
+			pool.format(source, appendable);
+			return;
+		}
+
 		JSON json = newInstance();
 		json.setPrettyPrint(prettyPrint);
 		json.format(source, appendable);
@@ -649,6 +921,9 @@ public class JSON {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> T decode(String source) throws JSONException {
+		LocalPool pool = LocalPool.acquire(false);
+		if (pool != null) return (T)pool.parse(source, null);
+
 		return (T)newInstance().parse(source);
 	}
 
@@ -661,7 +936,11 @@ public class JSON {
 	 * @return a decoded object
 	 * @throws JSONException if error occurred when parsing.
 	 */
+	@SuppressWarnings("unchecked")
 	public static <T> T decode(String source, Class<? extends T> cls) throws JSONException {
+		LocalPool pool = LocalPool.acquire(false);
+		if (pool != null) return (T)pool.parse(source, cls);
+
 		return newInstance().parse(source, cls);
 	}
 
@@ -676,6 +955,9 @@ public class JSON {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> T decode(String source, Type type) throws JSONException {
+		LocalPool pool = LocalPool.acquire(false);
+		if (pool != null) return (T)pool.parse(source, type);
+
 		return (T)newInstance().parse(source, type);
 	}
 
@@ -690,6 +972,9 @@ public class JSON {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> T decode(InputStream in) throws IOException, JSONException {
+		LocalPool pool = LocalPool.acquire(false);
+		if (pool != null) return (T)pool.parse(in, null);
+
 		return (T)newInstance().parse(in);
 	}
 
@@ -703,7 +988,11 @@ public class JSON {
 	 * @throws IOException if I/O error occurred.
 	 * @throws JSONException if error occurred when parsing.
 	 */
+	@SuppressWarnings("unchecked")
 	public static <T> T decode(InputStream in, Class<? extends T> cls) throws IOException, JSONException {
+		LocalPool pool = LocalPool.acquire(false);
+		if (pool != null) return (T)pool.parse(in, cls);
+
 		return newInstance().parse(in, cls);
 	}
 
@@ -719,6 +1008,9 @@ public class JSON {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> T decode(InputStream in, Type type) throws IOException, JSONException {
+		LocalPool pool = LocalPool.acquire(false);
+		if (pool != null) return (T)pool.parse(in, type);
+
 		return (T)newInstance().parse(in, type);
 	}
 
@@ -733,6 +1025,9 @@ public class JSON {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> T decode(Reader reader) throws IOException, JSONException {
+		LocalPool pool = LocalPool.acquire(false);
+		if (pool != null) return (T)pool.parse(reader, null);
+
 		return (T)newInstance().parse(reader);
 	}
 
@@ -746,7 +1041,11 @@ public class JSON {
 	 * @throws IOException if I/O error occurred.
 	 * @throws JSONException if error occurred when parsing.
 	 */
+	@SuppressWarnings("unchecked")
 	public static <T> T decode(Reader reader, Class<? extends T> cls) throws IOException, JSONException {
+		LocalPool pool = LocalPool.acquire(false);
+		if (pool != null) return (T)pool.parse(reader, cls);
+
 		return newInstance().parse(reader, cls);
 	}
 
@@ -762,6 +1061,9 @@ public class JSON {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> T decode(Reader reader, Type type) throws IOException, JSONException {
+		LocalPool pool = LocalPool.acquire(false);
+		if (pool != null) return (T)pool.parse(reader, type);
+
 		return (T)newInstance().parse(reader, type);
 	}
 
@@ -806,7 +1108,7 @@ public class JSON {
 		json.parse(reader);
 	}
 
-	Object contextObject;
+	volatile Object contextObject;
 	Locale locale = Locale.getDefault();
 	TimeZone timeZone = TimeZone.getDefault();
 	boolean prettyPrint = false;
@@ -820,9 +1122,15 @@ public class JSON {
 	NamingStyle propertyStyle = NamingStyle.NOOP;
 	NamingStyle enumStyle = NamingStyle.NOOP;
 
+	private volatile Settings settings;
+
 	public JSON() {
 	}
 
+	public JSON(Settings settings) {
+		setSettings(settings);
+	}
+
 	public JSON(int maxDepth) {
 		setMaxDepth(maxDepth);
 	}
@@ -833,6 +1141,8 @@ public class JSON {
 
 	/**
 	 * Sets context for inner class.
+	 * The context does not invalidate the settings snapshot, so it can be changed
+	 * for each call without rebuilding the other settings.
 	 *
 	 * @param value context object
 	 */
@@ -845,11 +1155,12 @@ public class JSON {
 	 *
 	 * @param locale locale for formatting, converting and selecting message
 	 */
-	public void setLocale(Locale locale) {
+	public synchronized void setLocale(Locale locale) {
 		if (locale == null) {
 			throw new NullPointerException();
 		}
 		this.locale = locale;
+		this.settings = null;
 	}
 
 	/**
@@ -857,11 +1168,12 @@ public class JSON {
 	 *
 	 * @param timeZone timeZone for formatting and converting.
 	 */
-	public void setTimeZone(TimeZone timeZone) {
+	public synchronized void setTimeZone(TimeZone timeZone) {
 		if (timeZone == null) {
 			throw new NullPointerException();
 		}
 		this.timeZone = timeZone;
+		this.settings = null;
 	}
 
 	/**
@@ -869,8 +1181,9 @@ public class JSON {
 	 *
 	 * @param value true to format human-readable, false to shorten.
 	 */
-	public void setPrettyPrint(boolean value) {
+	public synchronized void setPrettyPrint(boolean value) {
 		this.prettyPrint = value;
+		this.settings = null;
 	}
 
 	/**
@@ -878,11 +1191,12 @@ public class JSON {
 	 *
 	 * @param indent initial indent
 	 */
-	public void setInitialIndent(int indent) {
+	public synchronized void setInitialIndent(int indent) {
 		if (indent < 0) {
 			throw new IllegalArgumentException(getMessage("json.TooSmallArgumentError", "initialIndent", 0));
 		}
 		this.initialIndent = indent;
+		this.settings = null;
 	}
 
 	/**
@@ -890,8 +1204,9 @@ public class JSON {
 	 *
 	 * @param text indent text
 	 */
-	public void setIndentText(String text) {
+	public synchronized void setIndentText(String text) {
 		this.indentText = text;
+		this.settings = null;
 	}
 
 	/**
@@ -900,11 +1215,12 @@ public class JSON {
 	 *
 	 * @param value maximum depth for the nest depth.
 	 */
-	public void setMaxDepth(int value) {
+	public synchronized void setMaxDepth(int value) {
 		if (value < 0) {
 			throw new IllegalArgumentException(getMessage("json.TooSmallArgumentError", "maxDepth", 0));
 		}
 		this.maxDepth = value;
+		this.settings = null;
 	}
 
 	/**
@@ -922,8 +1238,9 @@ public class JSON {
 	 *
 	 * @param value true to ignore the null value's items of Bean or DynaBean.
 	 */
-	public void setSuppressNull(boolean value) {
+	public synchronized void setSuppressNull(boolean value) {
 		this.suppressNull = value;
+		this.settings = null;
 	}
 
 	/**
@@ -931,11 +1248,12 @@ public class JSON {
 	 *
 	 * @param mode JSON interpreter mode
 	 */
-	public void setMode(Mode mode) {
+	public synchronized void setMode(Mode mode) {
 		if (mode == null) {
 			throw new NullPointerException();
 		}
 		this.mode = mode;
+		this.settings = null;
 	}
 
 	/**
@@ -953,8 +1271,9 @@ public class JSON {
 	 *
 	 * @param format default Date format
 	 */
-	public void setDateFormat(String format) {
+	public synchronized void setDateFormat(String format) {
 		this.dateFormat = format;
+		this.settings = null;
 	}
 
 	/**
@@ -963,8 +1282,9 @@ public class JSON {
 	 *
 	 * @param format default Number format
 	 */
-	public void setNumberFormat(String format) {
+	public synchronized void setNumberFormat(String format) {
 		this.numberFormat = format;
+		this.settings = null;
 	}
 
 	/**
@@ -972,8 +1292,9 @@ public class JSON {
 	 *
 	 * @param style default Case style for keys of JSON object.
 	 */
-	public void setPropertyStyle(NamingStyle style) {
+	public synchronized void setPropertyStyle(NamingStyle style) {
 		this.propertyStyle = style;
+		this.settings = null;
 	}
 
 	/**
@@ -981,8 +1302,68 @@ public class JSON {
 	 *
 	 * @param style default Case style for Enum.
 	 */
-	public void setEnumStyle(NamingStyle style) {
+	public synchronized void setEnumStyle(NamingStyle style) {
 		this.enumStyle = style;
+		this.settings = null;
+	}
+
+	/**
+	 * Gets the immutable snapshot of the current settings.
+	 * The snapshot is shared by all contexts created until a setter is called again.
+	 *
+	 * @return the current settings
+	 */
+	public Settings getSettings() {
+		Settings s = snapshot();
+		Object context = contextObject;
+		if (s.contextObject != context) {
+			Settings current = s;
+			s = new Settings(current, context);
+			synchronized (this) {
+				if (settings == current) settings = s;
+			}
+		}
+		return s;
+	}
+
+	// the snapshot of the settings except the context object, which is read from the field.
+	private Settings snapshot() {
+		Settings s = settings;
+		if (s == null) {
+			synchronized (this) {
+				s = settings;
+				if (s == null) {
+					s = new Settings(this);
+					settings = s;
+				}
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Replaces all settings by the specified snapshot.
+	 *
+	 * @param settings settings built by Settings.Builder
+	 */
+	public synchronized void setSettings(Settings settings) {
+		if (settings == null) {
+			throw new NullPointerException();
+		}
+		this.contextObject = settings.contextObject;
+		this.locale = settings.locale;
+		this.timeZone = settings.timeZone;
+		this.prettyPrint = settings.prettyPrint;
+		this.initialIndent = settings.initialIndent;
+		this.indentText = settings.indentText;
+		this.maxDepth = settings.maxDepth;
+		this.suppressNull = settings.suppressNull;
+		this.mode = settings.mode;
+		this.dateFormat = settings.dateFormat;
+		this.numberFormat = settings.numberFormat;
+		this.propertyStyle = settings.propertyStyle;
+		this.enumStyle = settings.enumStyle;
+		this.settings = settings;
 	}
 
 	/**
@@ -1038,23 +1419,21 @@ public class JSON {
 	 * @throws IOException when I/O error occurred.
 	 */
 	public Appendable format(Object source, Appendable ap) throws IOException {
-		OutputSource out;
-		if (ap instanceof BufferedWriter) {
-			out = new AppendableOutputSource(ap);
-		} else if (ap instanceof Writer) {
-			out = new WriterOutputSource((Writer)ap);
-		} else if (ap instanceof StringBuilder) {
-			out = new StringBuilderOutputSource((StringBuilder)ap);
-		} else {
-			out = new AppendableOutputSource(ap);
-		}
-
-		format(source, out);
+		format(source, toOutputSource(ap));
 		return ap;
 	}
 
 	private void format(Object source, OutputSource out) throws IOException {
-		Context context = new Context();
+		format(new Context(), source, out);
+	}
+
+	private void format(Context context, Object source, OutputSource out) throws IOException {
+		JSONListener listener = JSON.listener;
+		JSONStatistics.Output stats = null;
+		if (listener != null) {
+			stats = new JSONStatistics.Output(out, context.getMode(), listener);
+			out = stats;
+		}
 
 		if (context.isPrettyPrint()) {
 			context.appendIndent(out, 0);
@@ -1065,6 +1444,11 @@ public class JSON {
 		context.formatInternal(source, out);
 		context.exit();
 		out.flush();
+		context.getLocalCache().publishStatistics();
+
+		if (stats != null) {
+			listener.onFormat(stats.complete());
+		}
 	}
 
 	public JSONWriter getWriter(OutputStream out) throws IOException {
@@ -1072,18 +1456,19 @@ public class JSON {
 	}
 
 	public JSONWriter getWriter(Appendable ap) throws IOException {
-		OutputSource out;
+		return new JSONWriter(new Context(), toOutputSource(ap));
+	}
+
+	private static OutputSource toOutputSource(Appendable ap) {
 		if (ap instanceof BufferedWriter) {
-			out = new AppendableOutputSource(ap);
+			return new AppendableOutputSource(ap);
 		} else if (ap instanceof Writer) {
-			out = new WriterOutputSource((Writer)ap);
+			return new WriterOutputSource((Writer)ap);
 		} else if (ap instanceof StringBuilder) {
-			out = new StringBuilderOutputSource((StringBuilder)ap);
+			return new StringBuilderOutputSource((StringBuilder)ap);
 		} else {
-			out = new AppendableOutputSource(ap);
+			return new AppendableOutputSource(ap);
 		}
-
-		return new JSONWriter(new Context(), out);
 	}
 
 	protected Object preformatNull(Context context, Type type) throws Exception {
@@ -1119,6 +1504,7 @@ public class JSON {
 		try {
 			JSONReader jreader = new JSONReader(new Context(), is, false, true);
 			value = (jreader.next() != null) ? jreader.getValue() : null;
+			jreader.complete();
 		} catch (IOException e) {
 			// never occur
 		}
@@ -1152,7 +1538,9 @@ public class JSON {
 			Context context = new Context();
 			JSONReader jreader = new JSONReader(context, is, false, true);
 			Object result = (jreader.next() != null) ? jreader.getValue() : null;
+			jreader.convert(type);
 			value = (T)context.convertInternal(result, ClassUtil.getRawType(type), type);
+			jreader.complete();
 		} catch (IOException e) {
 			// never occur
 		}
@@ -1162,7 +1550,9 @@ public class JSON {
 	@SuppressWarnings("unchecked")
 	public <T> T parse(InputStream in) throws IOException, JSONException {
 		JSONReader jreader = new JSONReader(new Context(), new ReaderInputSource(in), false, true);
-		return (jreader.next() != null) ? (T)jreader.getValue() : null;
+		Object result = (jreader.next() != null) ? jreader.getValue() : null;
+		jreader.complete();
+		return (T)result;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -1179,13 +1569,18 @@ public class JSON {
 		Context context = new Context();
 		JSONReader jreader = new JSONReader(context, new ReaderInputSource(in), false, true);
 		Object result = (jreader.next() != null) ? jreader.getValue() : null;
-		return (T)context.convertInternal(result, ClassUtil.getRawType(type), type);
+		jreader.convert(type);
+		T value = (T)context.convertInternal(result, ClassUtil.getRawType(type), type);
+		jreader.complete();
+		return value;
 	}
 
 	@SuppressWarnings("unchecked")
 	public <T> T parse(Reader reader) throws IOException, JSONException {
 		JSONReader jreader = new JSONReader(new Context(), new ReaderInputSource(reader), false, true);
-		return (jreader.next() != null) ? (T)jreader.getValue() : null;
+		Object result = (jreader.next() != null) ? jreader.getValue() : null;
+		jreader.complete();
+		return (T)result;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -1202,7 +1597,10 @@ public class JSON {
 		Context context = new Context();
 		JSONReader jreader = new JSONReader(context, new ReaderInputSource(reader), false, true);
 		Object result = (jreader.next() != null) ? jreader.getValue() : null;
-		return (T)context.convertInternal(result, ClassUtil.getRawType(type), type);
+		jreader.convert(type);
+		T value = (T)context.convertInternal(result, ClassUtil.getRawType(type), type);
+		jreader.complete();
+		return value;
 	}
 
 	public JSONReader getReader(CharSequence cs) {
@@ -1235,6 +1633,10 @@ public class JSON {
 	}
 
 	String getMessage(String id, Object... args) {
+		return getMessage(locale, id, args);
+	}
+
+	static String getMessage(Locale locale, String id, Object... args) {
 		ResourceBundle bundle = ResourceBundle.getBundle(PACKAGE_NAME + ".Messages", locale);
 		return MessageFormat.format(bundle.getString(id), args);
 	}
@@ -1244,7 +1646,10 @@ public class JSON {
 			type = ((TypeReference<?>)type).getType();
 		}
 
-		return (new Context()).convertInternal(value, ClassUtil.getRawType(type), type);
+		Context context = new Context();
+		Object result = context.convertInternal(value, ClassUtil.getRawType(type), type);
+		context.getLocalCache().publishStatistics();
+		return result;
 	}
 
 	/**
@@ -1415,23 +1820,22 @@ public class JSON {
 		int createSizeHint = -1;
 
 		public Context() {
-			synchronized (JSON.this) {
-				locale = JSON.this.locale;
-				timeZone = JSON.this.timeZone;
-				contextObject = JSON.this.contextObject;
-				maxDepth = JSON.this.maxDepth;
-				prettyPrint = JSON.this.prettyPrint;
-				initialIndent = JSON.this.initialIndent;
-				indentText = JSON.this.indentText;
-				suppressNull = JSON.this.suppressNull;
-				mode = JSON.this.mode;
-				numberFormat = JSON.this.numberFormat;
-				dateFormat = JSON.this.dateFormat;
-				propertyStyle = JSON.this.propertyStyle;
-				enumStyle = JSON.this.enumStyle;
-
-				cache = new LocalCache(PACKAGE_NAME + ".Messages", locale, timeZone);
-			}
+			Settings settings = snapshot();
+			locale = settings.locale;
+			timeZone = settings.timeZone;
+			contextObject = JSON.this.contextObject;
+			maxDepth = settings.maxDepth;
+			prettyPrint = settings.prettyPrint;
+			initialIndent = settings.initialIndent;
+			indentText = settings.indentText;
+			suppressNull = settings.suppressNull;
+			mode = settings.mode;
+			numberFormat = settings.numberFormat;
+			dateFormat = settings.dateFormat;
+			propertyStyle = settings.propertyStyle;
+			enumStyle = settings.enumStyle;
+
+			cache = new LocalCache(PACKAGE_NAME + ".Messages", locale, timeZone);
 		}
 
 		private Context(Context context) {
@@ -1467,6 +1871,12 @@ public class JSON {
 			return new Context(this);
 		}
 
+		void reset() {
+			depth = -1;
+			skipHint = null;
+			createSizeHint = -1;
+		}
+
 		public Locale getLocale() {
 			return locale;
 		}
@@ -1795,6 +2205,158 @@ public class JSON {
 		}
 	}
 
+	private static final class LocalPool {
+		private static final int MAX_BUFFER_SIZE = 8192;
+		private static final ThreadLocal<LocalPool[]> POOLS = new ThreadLocal<LocalPool[]>();
+
+		private final JSON json;
+		private final Context context;
+		private boolean busy;
+
+		private StringBuilder builder;
+		private StringBuilderOutputSource builderSource;
+		private WriterOutputSource writerSource;
+		private ReaderInputSource readerSource;
+		private JSONReader reader;
+
+		private LocalPool(JSON json) {
+			this.json = json;
+			this.context = json.new Context();
+		}
+
+		static LocalPool acquire(boolean prettyPrint) {
+			if (!pooling) return null;
+
+			LocalPool[] pools = POOLS.get();
+			if (pools == null) {
+				pools = new LocalPool[2];
+				POOLS.set(pools);
+			}
+
+			int index = prettyPrint ? 1 : 0;
+			LocalPool pool = pools[index];
+			if (pool == null || pool.json.getClass() != prototype) {
+				JSON json = newInstance();
+				json.setPrettyPrint(prettyPrint);
+				pool = new LocalPool(json);
+				pools[index] = pool;
+			} else if (pool.busy) {
+				// reentrant call from preformat, postparse and so on.
+				return null;
+			}
+			pool.busy = true;
+			return pool;
+		}
+
+		String format(Object source) {
+			try {
+				if (source == null) return "null";
+
+				if (builder == null) {
+					builder = new StringBuilder(1000);
+					builderSource = new StringBuilderOutputSource(builder);
+				}
+				context.reset();
+				json.format(context, source, builderSource);
+				return builder.toString();
+			} catch (IOException e) {
+				// no handle;
+				return null;
+			} finally {
+				if (builder != null) {
+					if (builder.capacity() > MAX_BUFFER_SIZE) {
+						builder = null;
+						builderSource = null;
+					} else {
+						builder.setLength(0);
+					}
+				}
+				busy = false;
+			}
+		}
+
+		void format(Object source, Appendable ap) throws IOException {
+			try {
+				context.reset();
+				if (ap instanceof Writer && !(ap instanceof BufferedWriter)) {
+					if (writerSource == null) {
+						writerSource = new WriterOutputSource((Writer)ap);
+					} else {
+						writerSource.reset((Writer)ap);
+					}
+					try {
+						json.format(context, source, writerSource);
+					} finally {
+						writerSource.reset(null);
+					}
+				} else {
+					json.format(context, source, toOutputSource(ap));
+				}
+			} finally {
+				busy = false;
+			}
+		}
+
+		Object parse(String source, Type type) {
+			try {
+				return parse(new StringInputSource(source), type);
+			} catch (IOException e) {
+				// never occur
+				return null;
+			} finally {
+				busy = false;
+			}
+		}
+
+		Object parse(InputStream in, Type type) throws IOException {
+			try {
+				if (readerSource == null) {
+					readerSource = new ReaderInputSource(in);
+				} else {
+					readerSource.reset(in);
+				}
+				return parse(readerSource, type);
+			} finally {
+				readerSource.reset();
+				busy = false;
+			}
+		}
+
+		Object parse(Reader r, Type type) throws IOException {
+			try {
+				if (readerSource == null) {
+					readerSource = new ReaderInputSource(r);
+				} else {
+					readerSource.reset(r);
+				}
+				return parse(readerSource, type);
+			} finally {
+				readerSource.reset();
+				busy = false;
+			}
+		}
+
+		private Object parse(InputSource is, Type type) throws IOException {
+			context.reset();
+			if (reader == null) {
+				reader = new JSONReader(context, is, false, true);
+			} else {
+				reader.reset(is);
+			}
+
+			Object result = (reader.next() != null) ? reader.getValue() : null;
+			if (type != null) {
+				if (type instanceof TypeReference<?>) {
+					type = ((TypeReference<?>)type).getType();
+				}
+				reader.convert(type);
+				result = context.convertInternal(result, ClassUtil.getRawType(type), type);
+			}
+			reader.complete();
+			return result;
+		}
+	}
+
 	private static class State {
 		Object key;
 		JSONHint hint;
@@ -1806,6 +2368,6 @@ class DateTimeFormatterProvider implements LocalCache.Provider<DateTimeFormatter
 
 	@Override
 	public DateTimeFormatter get(Object key, Locale locale, TimeZone timeZone) {
-		return DateTimeFormatter.ofPattern(((String)key), locale);
+		return FormatCache.getDateTimeFormatter((String)key, locale);
 	}
 }
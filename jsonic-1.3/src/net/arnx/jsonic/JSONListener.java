@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic;
+
+/**
+ * Receives the statistics of each parse and format call.
+ * Set the listener to JSON.listener. Nothing is measured while it is null.
+ *
+ * The methods are called on the thread which parsed or formatted,
+ * so an implementation must be thread-safe and should return quickly.
+ * A start method and the corresponding end method are called on the same thread
+ * with the same statistics object, but the end method is not called if the call failed.
+ */
+public interface JSONListener {
+	/**
+	 * Called when JSON.parse, JSON.decode or JSONReader starts reading a document.
+	 *
+	 * @param stats the statistics which will be passed to onParse
+	 */
+	void onParseStart(JSONStatistics stats);
+
+	/**
+	 * Called when a parse call starts the conversion to the requested type.
+	 *
+	 * @param stats the statistics which will be passed to onParse
+	 */
+	void onConvertStart(JSONStatistics stats);
+
+	/**
+	 * Called when JSON.parse, JSON.decode or JSONReader finished reading a document.
+	 *
+	 * @param stats the statistics of the call
+	 */
+	void onParse(JSONStatistics stats);
+
+	/**
+	 * Called when JSON.format, JSON.encode or JSONWriter starts writing a document.
+	 *
+	 * @param stats the statistics which will be passed to onFormat
+	 */
+	void onFormatStart(JSONStatistics stats);
+
+	/**
+	 * Called when JSON.format, JSON.encode or JSONWriter finished writing a document.
+	 *
+	 * @param stats the statistics of the call
+	 */
+	void onFormat(JSONStatistics stats);
+
+	/**
+	 * Called when RPCServlet starts a remote method invocation.
+	 */
+	void onInvokeStart();
+
+	/**
+	 * Called when RPCServlet finished a remote method invocation.
+	 *
+	 * @param component the class name of the component or null if not resolved
+	 * @param method the requested method name
+	 * @param duration the elapsed time in nanoseconds
+	 * @param resolveDuration the time spent to resolve the component and method in nanoseconds
+	 * @param error the error code or 0 if succeeded
+	 */
+	void onInvoke(String component, String method, long duration, long resolveDuration, int error);
+}
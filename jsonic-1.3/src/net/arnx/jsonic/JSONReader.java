@@ -35,8 +35,15 @@ public class JSONReader {
 	private JSONParser parser;
 	private JSONEventType type;
 
+	private InputSource in;
+	private final boolean multilineMode;
+	private JSONListener listener;
+	private JSONStatistics stats;
+
 	JSONReader(Context context, InputSource in, boolean multilineMode, boolean ignoreWhitespace) {
 		this.context = context;
+		this.multilineMode = multilineMode;
+		setInput(in);
 
 		switch (context.getMode()) {
 		case STRICT:
@@ -53,11 +60,69 @@ public class JSONReader {
 		}
 	}
 
+	/**
+	 * Resets this reader to read a new document from the specified source.
+	 *
+	 * @param in new input source
+	 */
+	public void reset(InputSource in) {
+		parser.reset(in);
+		type = null;
+		setInput(in);
+	}
+
+	private void setInput(InputSource in) {
+		this.in = in;
+		listener = JSON.listener;
+		if (listener != null) {
+			stats = new JSONStatistics(context.getMode());
+			listener.onParseStart(stats);
+		} else {
+			stats = null;
+		}
+	}
+
 	public JSONEventType next() throws IOException {
-		type = parser.next();
+		type = advance();
 		return type;
 	}
 
+	private JSONEventType advance() throws IOException {
+		JSONEventType type = parser.next();
+		if (stats != null) {
+			if (type != null) {
+				stats.event(type, parser.getDepth());
+			} else if (multilineMode) {
+				complete();
+			}
+		}
+		return type;
+	}
+
+	/**
+	 * Marks the start of the conversion to the requested type.
+	 */
+	void convert(Type type) {
+		if (stats != null) {
+			stats.convert(type);
+			listener.onConvertStart(stats);
+		}
+	}
+
+	/**
+	 * Notifies the statistics to JSON.listener and publishes the cache statistics of the context.
+	 * JSON.parse calls it after the conversion, and the reader returned by JSON.getReader
+	 * calls it at the end of the input.
+	 */
+	void complete() {
+		context.getLocalCache().publishStatistics();
+		if (stats != null) {
+			JSONStatistics result = stats.complete(in.getOffset());
+			stats = null;
+			listener.onParse(result);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	public <T> T getValue(Class<T> cls) throws IOException {
 		return (T)context.convertInternal(getValue(), cls, cls);
@@ -113,7 +178,7 @@ public class JSONReader {
 			if (parser.isInterpretterMode() && ilen == 0) {
 				break;
 			}
-		} while ((type = parser.next()) != null);
+		} while ((type = advance()) != null);
 	}
 
 	Object getValue() throws IOException {
@@ -178,7 +243,7 @@ public class JSONReader {
 			if (parser.isInterpretterMode() && ilen == 0) {
 				break;
 			}
-		} while ((type = parser.next()) != null);
+		} while ((type = advance()) != null);
 
 		return ostack[0];
 	}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import net.arnx.jsonic.io.OutputSource;
+
+/**
+ * Statistics of a parse or format call, passed to JSONListener.
+ *
+ * The length is the number of characters read or written. The value count
+ * is the number of strings, numbers, booleans and nulls except property names.
+ * When a parse call converts the result to a requested type, the duration includes
+ * the conversion and getConvertDuration returns the part spent in it.
+ */
+public final class JSONStatistics {
+	private long start;
+	private long duration;
+	private long length;
+	private int maxDepth;
+	private int objectCount;
+	private int arrayCount;
+	private int valueCount;
+	private JSONEventType rootType;
+	private JSON.Mode mode;
+	private long convertStart;
+	private long convertDuration;
+	private Type convertType;
+
+	// Flight Recorder events begun by FlightRecorderListener, or null.
+	Object event;
+	Object convertEvent;
+	Object expensiveEvent;
+
+	JSONStatistics(JSON.Mode mode) {
+		this.mode = mode;
+		start = System.nanoTime();
+	}
+
+	/**
+	 * Returns the elapsed time in nanoseconds.
+	 *
+	 * @return elapsed time
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the maximum depth of the values. The depth of the root value is 1.
+	 *
+	 * @return maximum depth
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public int getObjectCount() {
+		return objectCount;
+	}
+
+	public int getArrayCount() {
+		return arrayCount;
+	}
+
+	public int getValueCount() {
+		return valueCount;
+	}
+
+	/**
+	 * Returns the type of the root value: START_OBJECT, START_ARRAY, STRING, NUMBER, BOOLEAN or NULL.
+	 *
+	 * @return the type of the root value or null if the document is empty.
+	 */
+	public JSONEventType getRootType() {
+		return rootType;
+	}
+
+	public JSON.Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns the elapsed time of the conversion to the requested type in nanoseconds.
+	 *
+	 * @return elapsed time or 0 if the result was not converted.
+	 */
+	public long getConvertDuration() {
+		return convertDuration;
+	}
+
+	/**
+	 * Returns the requested type of the conversion.
+	 *
+	 * @return the requested type or null if the result was not converted.
+	 */
+	public Type getConvertType() {
+		return convertType;
+	}
+
+	void event(JSONEventType type, int depth) {
+		switch (type) {
+		case START_OBJECT:
+			objectCount++;
+			break;
+		case START_ARRAY:
+			arrayCount++;
+			break;
+		case STRING:
+		case NUMBER:
+		case BOOLEAN:
+		case NULL:
+			valueCount++;
+			break;
+		default:
+			return;
+		}
+		if (rootType == null) rootType = type;
+		if (depth > maxDepth) maxDepth = depth;
+	}
+
+	void convert(Type type) {
+		convertStart = System.nanoTime();
+		convertType = type;
+	}
+
+	JSONStatistics complete(long length) {
+		long end = System.nanoTime();
+		this.duration = end - start;
+		if (convertStart != 0) this.convertDuration = end - convertStart;
+		this.length = length;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "JSONStatistics [duration=" + duration + ", length=" + length + ", maxDepth=" + maxDepth
+				+ ", objectCount=" + objectCount + ", arrayCount=" + arrayCount
+				+ ", valueCount=" + valueCount + ", rootType=" + rootType + ", mode=" + mode
+				+ ", convertDuration=" + convertDuration + ", convertType=" + convertType + "]";
+	}
+
+	/**
+	 * Counts the written characters and scans the tokens.
+	 */
+	static class Output implements OutputSource {
+		private static final int IN_STRING = 1;
+		private static final int IN_ESCAPE = 2;
+		private static final int IN_TOKEN = 3;
+
+		private final OutputSource out;
+		private final JSON.Mode mode;
+		private final JSONListener listener;
+		private JSONStatistics stats;
+		private long length;
+
+		// one flag for each level: true if the next token is a property name.
+		private boolean[] names = new boolean[16];
+		private int depth;
+		private int state;
+		private char quote;
+		private boolean name;
+
+		Output(OutputSource out, JSON.Mode mode, JSONListener listener) {
+			this.out = out;
+			this.mode = mode;
+			this.listener = listener;
+			start();
+		}
+
+		@Override
+		public void append(String text) throws IOException {
+			out.append(text);
+			scan(text, 0, text.length());
+		}
+
+		@Override
+		public void append(String text, int start, int end) throws IOException {
+			out.append(text, start, end);
+			scan(text, start, end);
+		}
+
+		@Override
+		public void append(char c) throws IOException {
+			out.append(c);
+			scan(c);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		/**
+		 * Starts the statistics of the next document.
+		 */
+		void start() {
+			stats = new JSONStatistics(mode);
+			length = 0;
+			state = 0;
+			listener.onFormatStart(stats);
+		}
+
+		JSONStatistics complete() {
+			return stats.complete(length);
+		}
+
+		private void scan(String text, int start, int end) {
+			for (int i = start; i < end; i++) {
+				scan(text.charAt(i));
+			}
+		}
+
+		private void scan(char c) {
+			length++;
+
+			if (state == IN_ESCAPE) {
+				state = IN_STRING;
+				return;
+			} else if (state == IN_STRING) {
+				if (c == '\\') {
+					state = IN_ESCAPE;
+				} else if (c == quote) {
+					state = 0;
+				}
+				return;
+			}
+
+			switch (c) {
+			case '{':
+			case '[':
+				state = 0;
+				stats.event((c == '{') ? JSONEventType.START_OBJECT : JSONEventType.START_ARRAY, depth + 1);
+				if (++depth >= names.length) {
+					boolean[] newNames = new boolean[names.length * 2];
+					System.arraycopy(names, 0, newNames, 0, names.length);
+					names = newNames;
+				}
+				names[depth] = (c == '{');
+				name = names[depth];
+				break;
+			case '}':
+			case ']':
+				state = 0;
+				if (depth > 0) depth--;
+				break;
+			case ',':
+				state = 0;
+				name = names[depth];
+				break;
+			case ':':
+				state = 0;
+				name = false;
+				break;
+			case ' ':
+			case '\t':
+			case '\r':
+			case '\n':
+				state = 0;
+				break;
+			default:
+				if (state == IN_TOKEN) break;
+
+				if (c == '"' || c == '\'') {
+					state = IN_STRING;
+					quote = c;
+				} else {
+					state = IN_TOKEN;
+				}
+				if (!name) {
+					stats.event((state == IN_STRING) ? JSONEventType.STRING
+							: (c == 't' || c == 'f') ? JSONEventType.BOOLEAN
+							: (c == 'n') ? JSONEventType.NULL
+							: JSONEventType.NUMBER, depth + 1);
+				}
+			}
+		}
+	}
+}
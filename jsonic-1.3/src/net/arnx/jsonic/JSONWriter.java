@@ -23,12 +23,38 @@ import net.arnx.jsonic.io.OutputSource;
 public class JSONWriter {
 	private Context context;
 	private OutputSource out;
+	private JSONListener listener;
+	private JSONStatistics.Output stats;
 
 	private Stack stack = new Stack();
 
 	JSONWriter(Context context, OutputSource out) {
 		this.context = context;
-		this.out = out;
+		setOutput(out);
+	}
+
+	/**
+	 * Resets this writer to write a new document into the specified destination.
+	 *
+	 * @param out new output source
+	 */
+	public void reset(OutputSource out) {
+		if (out == null) throw new NullPointerException();
+
+		setOutput(out);
+		stack.clear();
+		context.reset();
+	}
+	
+	private void setOutput(OutputSource out) {
+		listener = JSON.listener;
+		if (listener != null) {
+			stats = new JSONStatistics.Output(out, context.getMode(), listener);
+			this.out = stats;
+		} else {
+			stats = null;
+			this.out = out;
+		}
 	}
 
 	public JSONWriter beginObject() throws IOException {
@@ -86,7 +112,7 @@ public class JSONWriter {
 		context.exit();
 
 		if (stack.size == 0) {
-			out.flush();
+			complete();
 		}
 		return this;
 	}
@@ -146,7 +172,7 @@ public class JSONWriter {
 		context.exit();
 
 		if (stack.size == 0) {
-			out.flush();
+			complete();
 		}
 		return this;
 	}
@@ -213,7 +239,7 @@ public class JSONWriter {
 		context.exit();
 
 		if (stack.size == 0) {
-			out.flush();
+			complete();
 		}
 		return this;
 	}
@@ -250,7 +276,7 @@ public class JSONWriter {
 		context.exit();
 
 		if (stack.size == 0) {
-			out.flush();
+			complete();
 		}
 		return this;
 	}
@@ -259,6 +285,15 @@ public class JSONWriter {
 		out.flush();
 		return this;
 	}
+	
+	private void complete() throws IOException {
+		out.flush();
+		context.getLocalCache().publishStatistics();
+		if (stats != null) {
+			listener.onFormat(stats.complete());
+			stats.start();
+		}
+	}
 
 	static final class Stack {
 		private int size = 0;
@@ -303,6 +338,10 @@ public class JSONWriter {
 		public int size() {
 			return size;
 		}
+
+		public void clear() {
+			size = 0;
+		}
 	}
 
 	static final class State {
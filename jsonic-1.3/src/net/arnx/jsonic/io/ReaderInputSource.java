@@ -46,6 +46,43 @@ public class ReaderInputSource implements InputSource {
 		this.reader = reader;
 	}
 	
+	/**
+	 * Resets this source to read from the specified stream. The internal buffer is reused.
+	 * 
+	 * @param in new input stream
+	 */
+	public void reset(InputStream in) {
+		if (in == null) throw new NullPointerException();
+		reset();
+		this.in = in;
+	}
+	
+	/**
+	 * Resets this source to read from the specified reader. The internal buffer is reused.
+	 * 
+	 * @param reader new reader
+	 */
+	public void reset(Reader reader) {
+		if (reader == null) throw new NullPointerException();
+		reset();
+		this.reader = reader;
+	}
+	
+	/**
+	 * Releases the current source. reset(InputStream) or reset(Reader) must be called before reading again.
+	 */
+	public void reset() {
+		lines = 1L;
+		columns = 0L;
+		offset = 0L;
+		in = null;
+		reader = null;
+		back = BACK;
+		start = BACK;
+		end = BACK - 1;
+		mark = -1;
+	}
+	
 	@Override
 	public int next() throws IOException {
 		int n = -1;
@@ -19,7 +19,7 @@ import java.io.IOException;
 import java.io.Writer;
 
 public class WriterOutputSource implements OutputSource {
-	private final Writer writer;
+	private Writer writer;
 	
 	private final char[] buf = new char[1024];
 	private int pos = 0;
@@ -28,6 +28,17 @@ public class WriterOutputSource implements OutputSource {
 		this.writer = writer;
 	}
 	
+	/**
+	 * Resets this source to write into the specified writer. The internal buffer is reused.
+	 * Unflushed characters are discarded.
+	 * 
+	 * @param writer new writer
+	 */
+	public void reset(Writer writer) {
+		this.writer = writer;
+		this.pos = 0;
+	}
+	
 	@Override
 	public void append(String text) throws IOException {
 		append(text, 0, text.length());
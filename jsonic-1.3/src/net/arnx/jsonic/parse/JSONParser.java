@@ -73,6 +73,25 @@ public class JSONParser {
 		this.active = stack.size() < maxDepth;
 	}
 
+	/**
+	 * Resets this parser to read a new document from the specified source.
+	 * The internal stack is reused.
+	 *
+	 * @param in new input source
+	 */
+	public void reset(InputSource in) {
+		if (in == null) throw new NullPointerException();
+
+		this.in = in;
+		state = BEFORE_ROOT;
+		stack.clear();
+		type = null;
+		value = null;
+		first = false;
+		parsedType = null;
+		active = stack.size() < maxDepth;
+	}
+
 	public int getMaxDepth() {
 		return maxDepth;
 	}
@@ -29,6 +29,12 @@ public class ScriptParser extends JSONParser {
 		this.in = in;
 	}
 
+	@Override
+	public void reset(InputSource in) {
+		super.reset(in);
+		this.in = in;
+	}
+
 	@Override
 	int beforeRoot() throws IOException {
 		int n = in.next();
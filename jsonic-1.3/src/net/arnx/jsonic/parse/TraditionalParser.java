@@ -48,6 +48,16 @@ public class TraditionalParser extends JSONParser {
 		this.in = in;
 	}
 
+	@Override
+	public void reset(InputSource in) {
+		super.reset(in);
+		this.in = in;
+		emptyRoot = false;
+		nameLineNumber = Long.MAX_VALUE;
+		backupState = -1;
+		backupTokens = null;
+	}
+
 	@Override
 	int beforeRoot() throws IOException {
 		int n = in.next();
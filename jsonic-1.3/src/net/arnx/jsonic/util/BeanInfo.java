@@ -28,6 +28,7 @@ import java.util.WeakHashMap;
 public final class BeanInfo {
 	private static final Map<ClassLoader, Map<Class<?>, BeanInfo>> cache =
 		new WeakHashMap<ClassLoader, Map<Class<?>, BeanInfo>>();
+	private static final CacheStatistics stats = new CacheStatistics();
 
 	public static BeanInfo get(Class<?> cls) {
 		synchronized(cache) {
@@ -36,7 +37,11 @@ public final class BeanInfo {
 			if (map == null) {
 				map = new LinkedHashMap<Class<?>, BeanInfo>(16, 0.75f, true) {
 					protected boolean removeEldestEntry(Map.Entry<Class<?>, BeanInfo> eldest) {
-						return size() > 1024;
+						if (size() > 1024) {
+							stats.evict();
+							return true;
+						}
+						return false;
 					};
 				};
 				cache.put(cls.getClassLoader(), map);
@@ -45,8 +50,11 @@ public final class BeanInfo {
 			}
 
 			if (info == null) {
+				stats.miss();
 				info = new BeanInfo(cls);
 				map.put(cls, info);
+			} else {
+				stats.hit();
 			}
 			return info;
 		}
@@ -58,6 +66,36 @@ public final class BeanInfo {
 		}
 	}
 
+	public static int size() {
+		synchronized (cache) {
+			int size = 0;
+			for (Map<Class<?>, BeanInfo> map : cache.values()) {
+				size += map.size();
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Returns the number of cached entries per class loader.
+	 * A class loader of a undeployed application remaining here may be a leak.
+	 *
+	 * @return a snapshot of the sizes
+	 */
+	public static Map<ClassLoader, Integer> sizes() {
+		synchronized (cache) {
+			Map<ClassLoader, Integer> sizes = new LinkedHashMap<ClassLoader, Integer>();
+			for (Map.Entry<ClassLoader, Map<Class<?>, BeanInfo>> entry : cache.entrySet()) {
+				sizes.put(entry.getKey(), entry.getValue().size());
+			}
+			return sizes;
+		}
+	}
+
+	public static CacheStatistics getStatistics() {
+		return stats;
+	}
+
 	private Class<?> type;
 	private ConstructorInfo ci;
 	private Map<String, PropertyInfo> sprops;
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Exposes the statistics of the shared caches as MBeans named
+ * "net.arnx.jsonic:type=Cache,name=[cache],loader=[id]".
+ *
+ * The loader key identifies the class loader of this library,
+ * so that copies in several web applications do not collide.
+ * register and unregister are counted, and the MBeans are registered while the count is positive.
+ * The MBeans of LocalCache expose only CacheStatisticsMBean, because LocalCache is held by each context.
+ */
+public final class CacheMonitor implements CacheMonitorMBean {
+	public static final String DOMAIN = "net.arnx.jsonic";
+
+	static final String[] NAMES = {
+		"BeanInfo", "ClassUtil", "FormatCache", "LocalCache.string", "LocalCache.format"
+	};
+
+	// the caches from this index are held by each context.
+	private static final int LOCAL = 3;
+
+	private static int count = 0;
+
+	private final int index;
+
+	CacheMonitor(int index) {
+		this.index = index;
+	}
+
+	public static synchronized void register() throws JMException {
+		if (count == 0) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (int i = 0; i < NAMES.length; i++) {
+				ObjectName name = getObjectName(NAMES[i]);
+				if (!server.isRegistered(name)) {
+					server.registerMBean((i < LOCAL) ? new CacheMonitor(i)
+							: new StandardMBean(new CacheMonitor(i), CacheStatisticsMBean.class), name);
+				}
+			}
+		}
+		count++;
+	}
+
+	public static synchronized void unregister() throws JMException {
+		if (count == 0) return;
+
+		if (--count == 0) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (int i = 0; i < NAMES.length; i++) {
+				ObjectName name = getObjectName(NAMES[i]);
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+			}
+		}
+	}
+
+	public static ObjectName getObjectName(String cache) throws JMException {
+		return getObjectName("Cache", cache);
+	}
+
+	/**
+	 * Returns the name "net.arnx.jsonic:type=[type],name=[name],loader=[id]" of a MBean of this library.
+	 *
+	 * @param type the type of the MBean
+	 * @param name the name of the MBean
+	 * @return the object name
+	 * @throws JMException if the name is invalid
+	 */
+	public static ObjectName getObjectName(String type, String name) throws JMException {
+		return new ObjectName(DOMAIN + ":type=" + type + ",name=" + (name.matches("[\\w.-]+") ? name : ObjectName.quote(name))
+				+ ",loader=" + toString(CacheMonitor.class.getClassLoader()));
+	}
+
+	@Override
+	public int getSize() {
+		switch (index) {
+		case 0: return BeanInfo.size();
+		case 1: return ClassUtil.size();
+		case 2: return FormatCache.size();
+		default: return -1;
+		}
+	}
+
+	@Override
+	public long getHitCount() {
+		return getStatistics().getHitCount();
+	}
+
+	@Override
+	public long getMissCount() {
+		return getStatistics().getMissCount();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return getStatistics().getEvictionCount();
+	}
+
+	@Override
+	public double getHitRatio() {
+		return getStatistics().getHitRatio();
+	}
+
+	@Override
+	public String[] getClassLoaders() {
+		Map<ClassLoader, Integer> sizes;
+		switch (index) {
+		case 0: sizes = BeanInfo.sizes(); break;
+		case 1: sizes = ClassUtil.sizes(); break;
+		default: return new String[0];
+		}
+
+		String[] result = new String[sizes.size()];
+		int i = 0;
+		for (Map.Entry<ClassLoader, Integer> entry : sizes.entrySet()) {
+			result[i++] = toString(entry.getKey()) + "=" + entry.getValue();
+		}
+		return result;
+	}
+
+	/**
+	 * Clears the cache. LocalCache is held by each context and can not be cleared.
+	 */
+	@Override
+	public void clear() {
+		switch (index) {
+		case 0: BeanInfo.clear(); break;
+		case 1: ClassUtil.clear(); break;
+		case 2: FormatCache.clear(); break;
+		default: throw new UnsupportedOperationException(NAMES[index] + " is held by each context.");
+		}
+	}
+
+	@Override
+	public void resetStatistics() {
+		getStatistics().reset();
+	}
+
+	private CacheStatistics getStatistics() {
+		switch (index) {
+		case 0: return BeanInfo.getStatistics();
+		case 1: return ClassUtil.getStatistics();
+		case 2: return FormatCache.getStatistics();
+		case 3: return LocalCache.getStringStatistics();
+		default: return LocalCache.getFormatStatistics();
+		}
+	}
+
+	static String toString(ClassLoader cl) {
+		if (cl == null) return "bootstrap";
+		return cl.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(cl));
+	}
+}
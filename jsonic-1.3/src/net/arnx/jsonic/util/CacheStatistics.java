@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit, miss and eviction counters of a cache.
+ * LongAdder is used since the counters are updated by many threads at once.
+ */
+public final class CacheStatistics {
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	CacheStatistics() {
+	}
+
+	void hit() {
+		hits.increment();
+	}
+
+	void miss() {
+		misses.increment();
+	}
+
+	void evict() {
+		evictions.increment();
+	}
+
+	void add(long hits, long misses, long evictions) {
+		if (hits != 0) this.hits.add(hits);
+		if (misses != 0) this.misses.add(misses);
+		if (evictions != 0) this.evictions.add(evictions);
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns hits / (hits + misses).
+	 *
+	 * @return hit ratio or 0.0 if the cache is never used.
+	 */
+	public double getHitRatio() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return (total > 0) ? (double)h / total : 0.0;
+	}
+
+	public void reset() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStatistics [hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.util;
+
+/**
+ * Management interface of the statistics of a cache.
+ * The caches held by each parsing or formatting context are exposed only by this interface,
+ * because they have no shared entries to count or clear.
+ */
+public interface CacheStatisticsMBean {
+	/**
+	 * Returns the number of cached entries, or -1 if the cache is held per context.
+	 *
+	 * @return the number of entries
+	 */
+	int getSize();
+
+	long getHitCount();
+
+	long getMissCount();
+
+	long getEvictionCount();
+
+	double getHitRatio();
+
+	void resetStatistics();
+}
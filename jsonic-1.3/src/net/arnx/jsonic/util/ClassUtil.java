@@ -30,9 +30,11 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 import java.io.ObjectStreamClass;
@@ -40,6 +42,7 @@ import java.io.ObjectStreamClass;
 public final class ClassUtil {
 	private static final Map<ClassLoader, Map<String, Class<?>>> cache =
 		new WeakHashMap<ClassLoader, Map<String, Class<?>>>();
+	private static final CacheStatistics stats = new CacheStatistics();
 
 	public static Class<?> findClass(String name) {
 		ClassLoader cl;
@@ -56,14 +59,21 @@ public final class ClassUtil {
 			if (map == null) {
 				map = new LinkedHashMap<String, Class<?>>(16, 0.75f, true) {
 					protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
-						return size() > 1024;
+						if (size() > 1024) {
+							stats.evict();
+							return true;
+						}
+						return false;
 					};
 				};
 				cache.put(cl, map);
 			}
 		}
 		synchronized (map) {
-			if (!map.containsKey(name)) {
+			if (map.containsKey(name)) {
+				stats.hit();
+			} else {
+				stats.miss();
 				Class<?> target;
 				try {
 					if (cl != null) {
@@ -86,6 +96,46 @@ public final class ClassUtil {
 		}
 	}
 
+	public static int size() {
+		int size = 0;
+		for (Map<String, Class<?>> map : maps()) {
+			synchronized (map) {
+				size += map.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the number of cached class names per context class loader.
+	 * A class loader of a undeployed application remaining here may be a leak.
+	 *
+	 * @return a snapshot of the sizes
+	 */
+	public static Map<ClassLoader, Integer> sizes() {
+		Map<ClassLoader, Map<String, Class<?>>> snapshot;
+		synchronized (cache) {
+			snapshot = new LinkedHashMap<ClassLoader, Map<String, Class<?>>>(cache);
+		}
+		Map<ClassLoader, Integer> sizes = new LinkedHashMap<ClassLoader, Integer>();
+		for (Map.Entry<ClassLoader, Map<String, Class<?>>> entry : snapshot.entrySet()) {
+			synchronized (entry.getValue()) {
+				sizes.put(entry.getKey(), entry.getValue().size());
+			}
+		}
+		return sizes;
+	}
+
+	public static CacheStatistics getStatistics() {
+		return stats;
+	}
+
+	private static List<Map<String, Class<?>>> maps() {
+		synchronized (cache) {
+			return new ArrayList<Map<String, Class<?>>>(cache.values());
+		}
+	}
+
 	public static String toUpperCamel(String name) {
 		StringBuilder sb = new StringBuilder(name.length());
 		boolean toUpperCase = true;
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.util;
+
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.Format;
+import java.text.NumberFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of NumberFormat, DateFormat and DateTimeFormatter keyed by (pattern, locale, time zone).
+ *
+ * DateTimeFormatter is immutable and shared by all threads.
+ * NumberFormat and DateFormat are not thread-safe, so each thread gets its own copy of a cached prototype.
+ * The returned legacy formats must not be shared with other threads.
+ *
+ * Web applications should call {@link #clear()} on undeploy (RPCServlet and RESTServlet do it in destroy()),
+ * so that the per-thread copies don't pin the class loader.
+ */
+public final class FormatCache {
+	private static final int MAX_SIZE = 256;
+
+	private static final ConcurrentHashMap<Key, Entry> cache = new ConcurrentHashMap<Key, Entry>();
+	private static final CacheStatistics stats = new CacheStatistics();
+
+	private FormatCache() {
+	}
+
+	public static NumberFormat getNumberFormat(String pattern, Locale locale) {
+		Key key = new Key(NumberFormat.class, pattern, locale, null);
+		Entry entry = cache.get(key);
+		if (entry == null) {
+			entry = put(key, new LocalFormat(new DecimalFormat(pattern, new DecimalFormatSymbols(locale))));
+		} else {
+			entry.touch();
+		}
+		return (NumberFormat)((LocalFormat)entry.value).get();
+	}
+
+	public static DateFormat getDateFormat(String pattern, Locale locale, TimeZone timeZone) {
+		Key key = new Key(DateFormat.class, pattern, locale, timeZone);
+		Entry entry = cache.get(key);
+		if (entry == null) {
+			// TimeZone is mutable, so the cached one is detached from the caller's.
+			timeZone = (TimeZone)timeZone.clone();
+			ExtendedDateFormat format = new ExtendedDateFormat(pattern, locale);
+			format.setTimeZone(timeZone);
+			entry = put(new Key(DateFormat.class, pattern, locale, timeZone), new LocalFormat(format));
+		} else {
+			entry.touch();
+		}
+		return (DateFormat)((LocalFormat)entry.value).get();
+	}
+
+	public static DateTimeFormatter getDateTimeFormatter(String pattern, Locale locale) {
+		Key key = new Key(DateTimeFormatter.class, pattern, locale, null);
+		Entry entry = cache.get(key);
+		if (entry == null) {
+			entry = put(key, DateTimeFormatter.ofPattern(pattern, locale));
+		} else {
+			entry.touch();
+		}
+		return (DateTimeFormatter)entry.value;
+	}
+
+	public static int size() {
+		return cache.size();
+	}
+
+	public static CacheStatistics getStatistics() {
+		return stats;
+	}
+
+	/**
+	 * Removes all cached formats.
+	 *
+	 * The per-thread copies of the current thread are removed immediately.
+	 * Those of other threads become unreachable and are expunged by the thread at its next ThreadLocal access.
+	 */
+	public static void clear() {
+		for (Entry entry : cache.values()) {
+			if (entry.value instanceof LocalFormat) {
+				((LocalFormat)entry.value).remove();
+			}
+		}
+		cache.clear();
+	}
+
+	private static Entry put(Key key, Object value) {
+		stats.miss();
+		if (cache.size() >= MAX_SIZE) {
+			evict();
+		}
+
+		Entry entry = new Entry(value);
+		Entry current = cache.putIfAbsent(key, entry);
+		return (current != null) ? current : entry;
+	}
+
+	// second chance: removes the first entry which is not used since the last sweep.
+	private static void evict() {
+		for (int i = 0; i < 2; i++) {
+			Iterator<Entry> it = cache.values().iterator();
+			while (it.hasNext()) {
+				Entry entry = it.next();
+				if (entry.used) {
+					entry.used = false;
+				} else {
+					it.remove();
+					stats.evict();
+					return;
+				}
+			}
+		}
+	}
+
+	private static class Entry {
+		final Object value;
+		volatile boolean used = true;
+
+		Entry(Object value) {
+			this.value = value;
+		}
+
+		void touch() {
+			stats.hit();
+			if (!used) used = true;
+		}
+	}
+
+	private static class LocalFormat extends ThreadLocal<Format> {
+		private final Format prototype;
+
+		LocalFormat(Format prototype) {
+			this.prototype = prototype;
+		}
+
+		@Override
+		protected Format initialValue() {
+			return (Format)prototype.clone();
+		}
+	}
+
+	private static class Key {
+		private final Class<?> type;
+		private final String pattern;
+		private final Locale locale;
+		private final TimeZone timeZone;
+		private final int hash;
+
+		Key(Class<?> type, String pattern, Locale locale, TimeZone timeZone) {
+			this.type = type;
+			this.pattern = pattern;
+			this.locale = locale;
+			this.timeZone = timeZone;
+
+			int h = type.hashCode();
+			h = 31 * h + pattern.hashCode();
+			h = 31 * h + ((locale == null) ? 0 : locale.hashCode());
+			h = 31 * h + ((timeZone == null) ? 0 : timeZone.getID().hashCode());
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key)obj;
+			if (type != other.type || hash != other.hash || !pattern.equals(other.pattern))
+				return false;
+			if (locale == null) {
+				if (other.locale != null)
+					return false;
+			} else if (!locale.equals(other.locale))
+				return false;
+			if (timeZone == null) {
+				if (other.timeZone != null)
+					return false;
+			} else if (!timeZone.equals(other.timeZone))
+				return false;
+			return true;
+		}
+	}
+}
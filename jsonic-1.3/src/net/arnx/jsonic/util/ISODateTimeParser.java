@@ -0,0 +1,313 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.util;
+
+import java.util.TimeZone;
+
+/**
+ * Reusable parser for the ISO-8601 extended format (RFC 3339 profile).
+ *
+ * Accepted forms are "yyyy-MM-dd" and "yyyy-MM-dd'T'HH:mm[:ss[.fraction]][offset]".
+ * The fraction has 1 to 9 digits, the offset is "Z", "+HH:mm", "+HHmm" or "+HH:mm:ss",
+ * and a ZonedDateTime style region ID like "[Asia/Tokyo]" may follow the offset.
+ * Anything else is rejected, so that callers can fall back to a general parser.
+ */
+public final class ISODateTimeParser {
+	private static final int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	private int year;
+	private int month;
+	private int day;
+	private int hour;
+	private int minute;
+	private int second;
+	private int nano;
+	private int offsetSeconds;
+	private boolean time;
+	private boolean offset;
+	private int zoneStart;
+	private int zoneEnd;
+	private CharSequence source;
+
+	/**
+	 * Parses the text.
+	 *
+	 * @param cs source text
+	 * @param allowSpace true if ' ' is allowed as a separator of date and time.
+	 * @return true if the text is ISO-8601 date or date-time.
+	 */
+	public boolean parse(CharSequence cs, boolean allowSpace) {
+		source = null;
+		time = false;
+		offset = false;
+		hour = 0;
+		minute = 0;
+		second = 0;
+		nano = 0;
+		offsetSeconds = 0;
+		zoneStart = -1;
+		zoneEnd = -1;
+
+		int len = cs.length();
+		if (len < 10
+				|| (year = digits(cs, 0, 4)) < 0
+				|| cs.charAt(4) != '-'
+				|| (month = digits(cs, 5, 2)) < 1 || month > 12
+				|| cs.charAt(7) != '-'
+				|| (day = digits(cs, 8, 2)) < 1 || day > lengthOfMonth(year, month)) {
+			return false;
+		}
+		if (len == 10) {
+			return true;
+		}
+
+		char c = cs.charAt(10);
+		if (!(c == 'T' || (allowSpace && c == ' ')) || len < 16
+				|| (hour = digits(cs, 11, 2)) < 0 || hour > 23
+				|| cs.charAt(13) != ':'
+				|| (minute = digits(cs, 14, 2)) < 0 || minute > 59) {
+			return false;
+		}
+		time = true;
+
+		int pos = 16;
+		if (pos < len && cs.charAt(pos) == ':') {
+			if (pos + 3 > len || (second = digits(cs, pos + 1, 2)) < 0 || second > 59) {
+				return false;
+			}
+			pos += 3;
+
+			if (pos < len && (cs.charAt(pos) == '.' || cs.charAt(pos) == ',')) {
+				int start = ++pos;
+				while (pos < len && pos - start < 9) {
+					c = cs.charAt(pos);
+					if (c < '0' || c > '9') break;
+					nano = nano * 10 + (c - '0');
+					pos++;
+				}
+				if (pos == start) {
+					return false;
+				}
+				for (int i = pos - start; i < 9; i++) {
+					nano *= 10;
+				}
+			}
+		}
+
+		if (pos == len) {
+			return true;
+		}
+
+		c = cs.charAt(pos);
+		if (c == 'Z' || c == 'z') {
+			pos++;
+		} else if (c == '+' || c == '-') {
+			int oh, om = 0, os = 0;
+			if (pos + 3 > len || (oh = digits(cs, pos + 1, 2)) < 0 || oh > 18) {
+				return false;
+			}
+			pos += 3;
+			if (pos < len && cs.charAt(pos) == ':') {
+				if (pos + 3 > len || (om = digits(cs, pos + 1, 2)) < 0 || om > 59) {
+					return false;
+				}
+				pos += 3;
+				if (pos < len && cs.charAt(pos) == ':') {
+					if (pos + 3 > len || (os = digits(cs, pos + 1, 2)) < 0 || os > 59) {
+						return false;
+					}
+					pos += 3;
+				}
+			} else if (pos + 2 <= len && (om = digits(cs, pos, 2)) >= 0) {
+				if (om > 59) return false;
+				pos += 2;
+			} else {
+				return false;
+			}
+			offsetSeconds = oh * 3600 + om * 60 + os;
+			if (offsetSeconds > 18 * 3600) {
+				return false;
+			}
+			if (c == '-') {
+				offsetSeconds = -offsetSeconds;
+			}
+		} else {
+			return false;
+		}
+		offset = true;
+
+		if (pos < len && cs.charAt(pos) == '[') {
+			int end = pos + 1;
+			while (end < len && cs.charAt(end) != ']') {
+				end++;
+			}
+			if (end + 1 != len || end == pos + 1) {
+				return false;
+			}
+			source = cs;
+			zoneStart = pos + 1;
+			zoneEnd = end;
+			pos = len;
+		}
+
+		return pos == len;
+	}
+
+	public int getYear() {
+		return year;
+	}
+
+	public int getMonth() {
+		return month;
+	}
+
+	public int getDay() {
+		return day;
+	}
+
+	public int getHour() {
+		return hour;
+	}
+
+	public int getMinute() {
+		return minute;
+	}
+
+	public int getSecond() {
+		return second;
+	}
+
+	public int getNano() {
+		return nano;
+	}
+
+	public boolean hasTime() {
+		return time;
+	}
+
+	public boolean hasOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the offset from UTC in seconds. This value is valid only if hasOffset() is true.
+	 *
+	 * @return offset seconds
+	 */
+	public int getOffsetSeconds() {
+		return offsetSeconds;
+	}
+
+	/**
+	 * Returns the region ID enclosed in brackets.
+	 *
+	 * @return region ID or null if not present.
+	 */
+	public String getZoneId() {
+		return (source != null) ? source.subSequence(zoneStart, zoneEnd).toString() : null;
+	}
+
+	/**
+	 * Returns the seconds from 1970-01-01T00:00:00 as the local date-time.
+	 *
+	 * @return local epoch seconds
+	 */
+	public long toLocalEpochSecond() {
+		return toEpochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+	}
+
+	/**
+	 * Returns the milliseconds from 1970-01-01T00:00:00Z.
+	 * If the text does not have the offset, the specified time zone is used.
+	 *
+	 * @param tz default time zone
+	 * @return epoch milliseconds
+	 */
+	public long toEpochMilli(TimeZone tz) {
+		long local = toLocalEpochSecond() * 1000L + nano / 1000000;
+		if (offset) {
+			return local - offsetSeconds * 1000L;
+		}
+
+		int tzOffset = tz.getOffset(local - tz.getRawOffset());
+		long utc = local - tzOffset;
+		int tzOffset2 = tz.getOffset(utc);
+		return (tzOffset2 != tzOffset) ? local - tzOffset2 : utc;
+	}
+
+	/**
+	 * Returns false if the text does not have the offset and the local date-time
+	 * does not exist in the specified time zone. (e.g. skipped by daylight saving time)
+	 *
+	 * @param tz default time zone
+	 * @return true if the local date-time exists.
+	 */
+	public boolean isValidIn(TimeZone tz) {
+		if (offset) {
+			return true;
+		}
+
+		long utc = toEpochMilli(tz);
+		return utc + tz.getOffset(utc) == toLocalEpochSecond() * 1000L + nano / 1000000;
+	}
+
+	/**
+	 * Returns true if the date is after the Gregorian cutover (1582-10-15).
+	 * The epoch values of this parser use the proleptic Gregorian calendar,
+	 * so they differ from java.util.Date and GregorianCalendar before the cutover.
+	 * One day of margin is kept for the offset.
+	 *
+	 * @return true if the epoch values agree with java.util.Date.
+	 */
+	public boolean isGregorian() {
+		return year > 1582 || (year == 1582 && (month > 10 || (month == 10 && day > 15)));
+	}
+
+	static long toEpochDay(int year, int month, int day) {
+		long y = year;
+		long m = month;
+		long total = 365 * y;
+		total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+		total += (367 * m - 362) / 12;
+		total += day - 1;
+		if (m > 2) {
+			total--;
+			if (!isLeapYear(year)) total--;
+		}
+		return total - 719528;
+	}
+
+	static boolean isLeapYear(int year) {
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	static int lengthOfMonth(int year, int month) {
+		return (month == 2 && isLeapYear(year)) ? 29 : DAYS_IN_MONTH[month - 1];
+	}
+
+	private static int digits(CharSequence cs, int start, int count) {
+		if (start + count > cs.length()) {
+			return -1;
+		}
+		int n = 0;
+		for (int i = start; i < start + count; i++) {
+			char c = cs.charAt(i);
+			if (c < '0' || c > '9') return -1;
+			n = n * 10 + (c - '0');
+		}
+		return n;
+	}
+}
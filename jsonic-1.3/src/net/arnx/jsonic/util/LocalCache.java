@@ -17,8 +17,6 @@ package net.arnx.jsonic.util;
 
 import java.lang.reflect.Type;
 import java.text.DateFormat;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.text.MessageFormat;
 import java.text.NumberFormat;
 import java.util.HashMap;
@@ -30,17 +28,30 @@ import java.util.TimeZone;
 public class LocalCache {
 	private static final int CACHE_SIZE = 256;
 
+	// counted locally and published in batches, because a LocalCache is used by one thread.
+	private static final int STATISTICS_BATCH = 1024;
+	private static final CacheStatistics stringStats = new CacheStatistics();
+	private static final CacheStatistics formatStats = new CacheStatistics();
+
+	private String bundle;
 	private ResourceBundle resources;
 	private Locale locale;
 	private TimeZone timeZone;
 
 	private StringBuilder builderCache;
+	private ISODateTimeParser dateTimeParser;
 	private int stringCacheCount = 0;
 	private String[] stringCache;
 	private Map<Class<?>, Map<Object, Object>> formatCache;
 
+	private int stringHits;
+	private int stringMisses;
+	private int stringEvictions;
+	private int formatHits;
+	private int formatMisses;
+
 	public LocalCache(String bundle, Locale locale, TimeZone timeZone) {
-		this.resources = ResourceBundle.getBundle(bundle, locale);
+		this.bundle = bundle;
 		this.locale = locale;
 		this.timeZone = timeZone;
 	}
@@ -54,6 +65,13 @@ public class LocalCache {
 		return builderCache;
 	}
 
+	public ISODateTimeParser getDateTimeParser() {
+		if (dateTimeParser == null) {
+			dateTimeParser = new ISODateTimeParser();
+		}
+		return dateTimeParser;
+	}
+
 	public String getString(CharSequence cs) {
 		if (cs.length() == 0) return "";
 
@@ -67,8 +85,10 @@ public class LocalCache {
 
 			String str = stringCache[index];
 			if (str == null || str.length() != cs.length()) {
+				if (str != null) stringEvictions++;
 				str = cs.toString();
 				stringCache[index] = str;
+				stringMiss();
 				return str;
 			}
 
@@ -76,9 +96,14 @@ public class LocalCache {
 				if (str.charAt(i) != cs.charAt(i)) {
 					str = cs.toString();
 					stringCache[index] = str;
+					stringEvictions++;
+					stringMiss();
 					return str;
 				}
 			}
+			if (++stringHits + stringMisses >= STATISTICS_BATCH) {
+				publishStatistics();
+			}
 			return str;
 		}
 
@@ -110,16 +135,63 @@ public class LocalCache {
 		if (f == null) {
 			f = provider.get(key, locale, timeZone);
 			map.put(key, f);
+			formatMisses++;
+		} else {
+			formatHits++;
+		}
+		if (formatHits + formatMisses >= STATISTICS_BATCH) {
+			publishStatistics();
 		}
 		return (T)f;
 	}
 
+	private void stringMiss() {
+		if (stringHits + ++stringMisses >= STATISTICS_BATCH) {
+			publishStatistics();
+		}
+	}
+
+	/**
+	 * Adds the local counts to the shared statistics.
+	 * It is also done automatically every 1024 lookups and at the end of each parsing,
+	 * formatting or conversion of JSON.
+	 */
+	public void publishStatistics() {
+		stringStats.add(stringHits, stringMisses, stringEvictions);
+		formatStats.add(formatHits, formatMisses, 0);
+		stringHits = 0;
+		stringMisses = 0;
+		stringEvictions = 0;
+		formatHits = 0;
+		formatMisses = 0;
+	}
+
+	/**
+	 * Returns the statistics of the string caches of all instances.
+	 * Only short strings are looked up, and counts are published in batches.
+	 *
+	 * @return the statistics
+	 */
+	public static CacheStatistics getStringStatistics() {
+		return stringStats;
+	}
+
+	/**
+	 * Returns the statistics of the format caches of all instances.
+	 * Counts are published in batches.
+	 *
+	 * @return the statistics
+	 */
+	public static CacheStatistics getFormatStatistics() {
+		return formatStats;
+	}
+
 	public NumberFormat getNumberFormat(String format) {
-		return get(NumberFormat.class, format, NumberFormatProvider.INSTANCE);
+		return FormatCache.getNumberFormat(format, locale);
 	}
 
 	public DateFormat getDateFormat(String format) {
-		return get(DateFormat.class, format, DateFormatProvider.INSTANCE);
+		return FormatCache.getDateFormat(format, locale, timeZone);
 	}
 
 	public Type getResolvedType(Type ptype, Class<?> pcls, Type type) {
@@ -131,6 +203,11 @@ public class LocalCache {
 	}
 
 	public String getMessage(String id, Object... args) {
+		// resolved only when a message is needed actually. (usually, when an error occurred)
+		if (resources == null) {
+			resources = ResourceBundle.getBundle(bundle, locale);
+		}
+
 		if (args != null && args.length > 0) {
 			return MessageFormat.format(resources.getString(id), args);
 		} else {
@@ -191,26 +268,6 @@ public class LocalCache {
 		public T get(Object key, Locale locale, TimeZone timeZone);
 	}
 
-	private static class NumberFormatProvider implements Provider<NumberFormat> {
-		public static final NumberFormatProvider INSTANCE = new NumberFormatProvider();
-
-		@Override
-		public NumberFormat get(Object format, Locale locale, TimeZone timeZone) {
-			return new DecimalFormat((String)format, new DecimalFormatSymbols(locale));
-		}
-	}
-
-	private static class DateFormatProvider implements Provider<DateFormat> {
-		public static final DateFormatProvider INSTANCE = new DateFormatProvider();
-
-		@Override
-		public DateFormat get(Object format, Locale locale, TimeZone timeZone) {
-			ExtendedDateFormat dformat = new ExtendedDateFormat((String)format, locale);
-			dformat.setTimeZone(timeZone);
-			return dformat;
-		}
-	}
-
 	private static class ResolvedTypeProvider implements Provider<Type> {
 		public static final ResolvedTypeProvider INSTANCE = new ResolvedTypeProvider();
 
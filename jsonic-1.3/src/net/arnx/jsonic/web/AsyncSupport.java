@@ -0,0 +1,256 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.web;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import javax.servlet.ServletRequest;
+
+/**
+ * Helpers for service methods returning CompletionStage or Future.
+ *
+ * Servlet 3.0 asynchronous processing is used through reflection,
+ * so this class works on Servlet 2.5 containers too (by waiting for the result).
+ */
+final class AsyncSupport {
+	private AsyncSupport() {
+	}
+
+	static boolean isPending(Object result) {
+		return result instanceof CompletionStage<?> || result instanceof Future<?>;
+	}
+
+	/**
+	 * Waits for the result on the current thread.
+	 *
+	 * @param result CompletionStage or Future
+	 * @param timeout timeout in milliseconds (0 means no timeout)
+	 * @return completed value
+	 * @throws InvocationTargetException wraps the failure, the timeout or the interruption.
+	 */
+	static Object await(Object result, long timeout) throws InvocationTargetException {
+		Future<?> future = (result instanceof CompletionStage<?>) ?
+				((CompletionStage<?>)result).toCompletableFuture() : (Future<?>)result;
+		try {
+			return (timeout > 0) ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+		} catch (ExecutionException e) {
+			throw new InvocationTargetException(e.getCause());
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new InvocationTargetException(e);
+		} catch (CancellationException e) {
+			throw new InvocationTargetException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	/**
+	 * Calls the action when the stage is completed or the timeout is elapsed.
+	 * The failure is passed without CompletionException wrapping,
+	 * and the timeout is passed as TimeoutException.
+	 */
+	static void whenComplete(CompletionStage<?> stage, long timeout, final BiConsumer<Object, Throwable> action) {
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+		stage.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object value, Throwable error) {
+				if (error != null) {
+					future.completeExceptionally(error);
+				} else {
+					future.complete(value);
+				}
+			}
+		});
+
+		ScheduledFuture<?> scheduled = null;
+		if (timeout > 0 && !future.isDone()) {
+			try {
+				scheduled = getTimer().schedule(new Runnable() {
+					@Override
+					public void run() {
+						future.completeExceptionally(new TimeoutException("Async result is not completed in time."));
+					}
+				}, timeout, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// the timer is shut down by the servlet's destroy().
+			}
+		}
+		if (scheduled != null) {
+			final ScheduledFuture<?> timer = scheduled;
+			future.whenComplete(new BiConsumer<Object, Throwable>() {
+				@Override
+				public void accept(Object value, Throwable error) {
+					timer.cancel(false);
+				}
+			});
+		}
+
+		future.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object value, Throwable error) {
+				while (error instanceof CompletionException && error.getCause() != null) {
+					error = error.getCause();
+				}
+				action.accept(value, error);
+			}
+		});
+	}
+
+	static boolean isDone(Object result) {
+		return (result instanceof Future<?>) ? ((Future<?>)result).isDone()
+				: ((CompletionStage<?>)result).toCompletableFuture().isDone();
+	}
+
+	/**
+	 * Starts Servlet 3.0 asynchronous processing without the container timeout.
+	 * If the request is in a non-blocking exchange, the exchange is taken over instead.
+	 *
+	 * @param request current request
+	 * @return AsyncContext or null if asynchronous processing is not supported.
+	 */
+	static Object startAsync(ServletRequest request) {
+		Object exchange = request.getAttribute(NonBlockingExchange.EXCHANGE_KEY);
+		if (exchange != null) {
+			request.removeAttribute(NonBlockingExchange.EXCHANGE_KEY);
+			return exchange;
+		}
+
+		if (Servlet3.START_ASYNC == null) return null;
+
+		try {
+			if (!Boolean.TRUE.equals(Servlet3.IS_ASYNC_SUPPORTED.invoke(request))) {
+				return null;
+			}
+			Object asyncContext = Servlet3.START_ASYNC.invoke(request);
+			Servlet3.SET_TIMEOUT.invoke(asyncContext, 0L);
+			return asyncContext;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	static boolean isAsyncStarted(ServletRequest request) {
+		if (Servlet3.IS_ASYNC_STARTED == null) return false;
+
+		try {
+			return Boolean.TRUE.equals(Servlet3.IS_ASYNC_STARTED.invoke(request));
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	static void complete(Object asyncContext) {
+		if (asyncContext instanceof NonBlockingExchange) {
+			((NonBlockingExchange)asyncContext).finish();
+			return;
+		}
+
+		try {
+			Servlet3.COMPLETE.invoke(asyncContext);
+		} catch (Exception e) {
+			// already completed or timed out
+		}
+	}
+
+	private static class Servlet3 {
+		static final Method IS_ASYNC_SUPPORTED;
+		static final Method IS_ASYNC_STARTED;
+		static final Method START_ASYNC;
+		static final Method SET_TIMEOUT;
+		static final Method COMPLETE;
+
+		static {
+			Method isAsyncSupported = null;
+			Method isAsyncStarted = null;
+			Method startAsync = null;
+			Method setTimeout = null;
+			Method complete = null;
+			try {
+				Class<?> asyncContext = Class.forName("javax.servlet.AsyncContext", false, ServletRequest.class.getClassLoader());
+				isAsyncSupported = ServletRequest.class.getMethod("isAsyncSupported");
+				isAsyncStarted = ServletRequest.class.getMethod("isAsyncStarted");
+				startAsync = ServletRequest.class.getMethod("startAsync");
+				setTimeout = asyncContext.getMethod("setTimeout", long.class);
+				complete = asyncContext.getMethod("complete");
+			} catch (Exception e) {
+				startAsync = null;
+				isAsyncStarted = null;
+			}
+			IS_ASYNC_SUPPORTED = isAsyncSupported;
+			IS_ASYNC_STARTED = isAsyncStarted;
+			START_ASYNC = startAsync;
+			SET_TIMEOUT = setTimeout;
+			COMPLETE = complete;
+		}
+	}
+
+	private static ScheduledExecutorService timer;
+	private static int users;
+
+	/**
+	 * Registers a user of the timeout timer. Servlets call this in init().
+	 */
+	static synchronized void retain() {
+		users++;
+	}
+
+	/**
+	 * Unregisters a user of the timeout timer. Servlets call this in destroy().
+	 * The timer thread is stopped when the last user is gone,
+	 * so that it doesn't keep the web application class loader after undeploy.
+	 */
+	static synchronized void release() {
+		if (users > 0 && --users == 0 && timer != null) {
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	private static synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "jsonic-async-timer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return timer;
+	}
+
+	static synchronized boolean isTimerRunning() {
+		return timer != null;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.web;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.arnx.jsonic.util.CacheMonitor;
+
+/**
+ * Limits the number of concurrent executions of a route or a component.
+ *
+ * When all permits are used, up to "queue" requests wait for a permit at most "timeout" milliseconds,
+ * and the others are rejected at once. The requests never wait without a timeout,
+ * so "queue" needs a positive "timeout".
+ *
+ * The counters are exposed as MXBeans named "net.arnx.jsonic:type=ConcurrencyLimit,name=[servlet]:[key]"
+ * when "jmx" of the container is true.
+ */
+public final class ConcurrencyLimit implements ConcurrencyLimitMXBean {
+	public int concurrency;
+	public int queue = 0;
+	public long timeout = 0;
+
+	private String name;
+	private Semaphore permits;
+	private final AtomicInteger waiting = new AtomicInteger();
+	private final AtomicLong rejected = new AtomicLong();
+	private ObjectName objectName;
+
+	void init(String name) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("concurrency must be positive: " + name);
+		}
+		if (queue < 0 || timeout < 0) {
+			throw new IllegalArgumentException("queue and timeout must not be negative: " + name);
+		}
+		if (queue > 0 && timeout == 0) {
+			throw new IllegalArgumentException("timeout must be positive when queue is set: " + name);
+		}
+		this.name = name;
+		this.permits = new Semaphore(concurrency, true);
+	}
+
+	static void register(String prefix, Collection<ConcurrencyLimit> limits) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ConcurrencyLimit limit : limits) {
+			ObjectName objectName = CacheMonitor.getObjectName("ConcurrencyLimit", prefix + ":" + limit.name);
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(limit, objectName);
+				limit.objectName = objectName;
+			}
+		}
+	}
+
+	static void unregister(Collection<ConcurrencyLimit> limits) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ConcurrencyLimit limit : limits) {
+			if (limit.objectName != null) {
+				if (server.isRegistered(limit.objectName)) {
+					server.unregisterMBean(limit.objectName);
+				}
+				limit.objectName = null;
+			}
+		}
+	}
+
+	/**
+	 * Acquires a permit.
+	 *
+	 * @return false if the request is rejected.
+	 */
+	public boolean acquire() {
+		if (permits.tryAcquire()) {
+			return true;
+		}
+
+		if (waiting.incrementAndGet() > queue) {
+			waiting.decrementAndGet();
+			rejected.incrementAndGet();
+			return false;
+		}
+		try {
+			if (permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			waiting.decrementAndGet();
+		}
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Acquires a permit, or throws RejectedExecutionException if the request is rejected.
+	 */
+	void enter() {
+		if (!acquire()) {
+			throw new RejectedExecutionException("Concurrency limit exceeded: " + name);
+		}
+	}
+
+	public void release() {
+		permits.release();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getActiveCount() {
+		return concurrency - permits.availablePermits();
+	}
+
+	@Override
+	public int getQueueLength() {
+		return waiting.get();
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+}
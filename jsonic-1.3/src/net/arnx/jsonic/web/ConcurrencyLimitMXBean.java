@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.web;
+
+/**
+ * Management interface of ConcurrencyLimit.
+ */
+public interface ConcurrencyLimitMXBean {
+	/**
+	 * Returns the key of "limits" (a route or a component class name).
+	 *
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * Returns the number of the permits in use.
+	 *
+	 * @return the number of active executions
+	 */
+	int getActiveCount();
+
+	/**
+	 * Returns the number of the requests waiting for a permit.
+	 *
+	 * @return the number of queued requests
+	 */
+	int getQueueLength();
+
+	/**
+	 * Returns the number of the rejected requests since the start.
+	 *
+	 * @return the number of rejected requests
+	 */
+	long getRejectedCount();
+}
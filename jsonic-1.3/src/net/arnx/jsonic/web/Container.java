@@ -15,14 +15,24 @@
  */
 package net.arnx.jsonic.web;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PushbackReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.net.URI;
+import java.net.JarURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,14 +40,31 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.management.JMException;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -47,9 +74,12 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import net.arnx.jsonic.JSON;
+import net.arnx.jsonic.JSONEventType;
 import net.arnx.jsonic.JSONHint;
+import net.arnx.jsonic.JSONReader;
 import net.arnx.jsonic.NamingStyle;
 import net.arnx.jsonic.util.BeanInfo;
+import net.arnx.jsonic.util.CacheMonitor;
 import net.arnx.jsonic.util.ClassUtil;
 import net.arnx.jsonic.util.PropertyInfo;
 
@@ -57,9 +87,20 @@ public class Container {
 	public Boolean debug;
 	public String init = "init";
 	public String destroy = "destroy";
+	public String version;
 	public String encoding;
 	public Boolean expire;
 	public boolean namingConversion = true;
+	public Map<String, String> scope;
+	public int poolSize = 32;
+	public long asyncTimeout = 30000L;
+	public boolean nonBlocking = false;
+	public long nonBlockingMaxSize = 8L * 1024 * 1024;
+	public Map<String, Long> memoize;
+	public int memoizeSize = 1024;
+	public Set<String> coalesce;
+	public boolean warmup = false;
+	public boolean jmx = false;
 
 	@JSONHint(anonym = "class")
 	public ProcessorConfig processor;
@@ -68,10 +109,244 @@ public class Container {
 	protected ServletContext context;
 	protected HttpServlet servlet;
 
+	private static final Object NOT_FOUND = new Object();
+	private static final int METHOD_CACHE_SIZE = 1024;
+	private static final int SETTINGS_CACHE_SIZE = 64;
+	private static final String POOLED_KEY = Container.class.getName() + ".POOLED";
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+	private static final Pattern TARGET_PLACEHOLDER = Pattern.compile("\\$\\{(\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*)\\}");
+
+	// resolved methods are cached per container, so they are discarded with the web application.
+	// a hit takes no lock, and the entries are evicted by second chance like RouteIndex.
+	private final ConcurrentMap<MethodKey, CacheEntry> methodCache = new ConcurrentHashMap<MethodKey, CacheEntry>();
+	private final Map<Class<?>, Method[]> lifecycleCache = new ConcurrentHashMap<Class<?>, Method[]>();
+	private final Map<Method, MethodHandle> handleCache = new ConcurrentHashMap<Method, MethodHandle>();
+	private final Map<String, Class<?>> classCache = new ConcurrentHashMap<String, Class<?>>();
+	private final Map<String, ComponentInfo> componentCache = new ConcurrentHashMap<String, ComponentInfo>();
+	private volatile Boolean directBinding;
+
+	// memoized results are keyed by the method, the locale and the formatted arguments.
+	private final Map<String, Memo> memoCache = new LinkedHashMap<String, Memo>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Memo> eldest) {
+			return size() > memoizeSize;
+		};
+	};
+	private final Map<Method, Long> memoizeTTLCache = new ConcurrentHashMap<Method, Long>();
+	private final AtomicLong memoHits = new AtomicLong();
+	private final AtomicLong memoMisses = new AtomicLong();
+	private final Map<Method, Boolean> coalesceCache = new ConcurrentHashMap<Method, Boolean>();
+	private final Map<Class<?>, Integer> injectionCache = new ConcurrentHashMap<Class<?>, Integer>();
+	private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	// Accept-Language may produce any locale, so the configured settings are kept in a bounded cache.
+	private final ConcurrentMap<Locale, CacheEntry> settingsCache = new ConcurrentHashMap<Locale, CacheEntry>();
+
 	public void init(HttpServlet servlet) throws ServletException {
 		this.servlet = servlet;
 		this.config = servlet.getServletConfig();
 		this.context = servlet.getServletContext();
+
+		if (scope != null) {
+			for (Map.Entry<String, String> entry : scope.entrySet()) {
+				if (ComponentInfo.toScope(entry.getValue()) == -1) {
+					throw new ServletException("unknown scope: " + entry.getKey() + " = " + entry.getValue());
+				}
+			}
+		}
+		if (poolSize < 0) {
+			throw new ServletException("poolSize must be positive: " + poolSize);
+		}
+		if (memoizeSize < 0) {
+			throw new ServletException("memoizeSize must be positive: " + memoizeSize);
+		}
+		if (jmx) {
+			try {
+				CacheMonitor.register();
+			} catch (JMException e) {
+				error("failed to register cache MBeans.", e);
+				jmx = false;
+			}
+		}
+	}
+
+	/**
+	 * Loads the component classes and introspects their public methods before the first request:
+	 * the lifecycle methods, the method handles and the BeanInfo of the parameter and return types.
+	 * The classes named in "scope", "memoize" and "coalesce" are also warmed up.
+	 * A target which has placeholders like "${class}" is expanded to the classes
+	 * found in the class path under the package before the first placeholder.
+	 * It does nothing if "warmup" is false.
+	 *
+	 * @param targets the targets of the route mappings
+	 */
+	public void warmup(Collection<String> targets) throws ServletException {
+		if (!warmup) return;
+
+		long start = System.nanoTime();
+
+		Set<String> names = new LinkedHashSet<String>();
+		for (String target : targets) {
+			if (target == null) continue;
+			if (target.indexOf("${") == -1) {
+				names.add(target);
+			} else {
+				addTargetClassNames(names, target);
+			}
+		}
+		if (scope != null) names.addAll(scope.keySet());
+		if (memoize != null) addClassNames(names, memoize.keySet());
+		if (coalesce != null) addClassNames(names, coalesce);
+
+		Set<Class<?>> visited = new HashSet<Class<?>>();
+		int count = 0;
+		for (String name : names) {
+			Class<?> c;
+			try {
+				c = findClass(name);
+			} catch (Throwable e) {
+				debug("warmup: class not found: " + name);
+				continue;
+			}
+
+			getLifecycleMethods(c);
+			getInjectionScope(c);
+			for (Method method : c.getMethods()) {
+				if (Modifier.isStatic(method.getModifiers())
+						|| method.isSynthetic()
+						|| method.isBridge()
+						|| limit(c, method)) {
+					continue;
+				}
+				try {
+					getHandle(method);
+				} catch (IllegalAccessException e) {
+					// Method.invoke is used instead.
+				}
+				try {
+					for (Type type : method.getGenericParameterTypes()) {
+						introspect(c, type, visited, 0);
+					}
+					introspect(c, method.getGenericReturnType(), visited, 0);
+				} catch (RuntimeException e) {
+					debug("warmup: fails to introspect " + method, e);
+				}
+			}
+			count++;
+		}
+
+		JSON json = createJSON(Locale.getDefault());
+		json.parse(json.format(Collections.singletonMap("warmup", Arrays.asList(1, "2", true, null))));
+
+		info("warmup: " + count + " components (" + visited.size() + " types) in "
+				+ (System.nanoTime() - start) / 1000000L + "ms");
+	}
+
+	private static void addClassNames(Set<String> names, Collection<String> keys) {
+		for (String key : keys) {
+			int sep = key.indexOf('#');
+			names.add((sep != -1) ? key.substring(0, sep) : key);
+		}
+	}
+
+	/**
+	 * Adds the class names which match the target like "sample.web.${package}.service.${class}Service".
+	 * The package before the first placeholder is scanned in the directories and jar files of the class path.
+	 * The target which has no package before the first placeholder is ignored.
+	 */
+	void addTargetClassNames(Set<String> names, String target) {
+		Matcher m = TARGET_PLACEHOLDER.matcher(target);
+		StringBuilder regex = new StringBuilder();
+		int last = 0;
+		while (m.find()) {
+			if (m.start() > last) regex.append(Pattern.quote(target.substring(last, m.start())));
+			regex.append("package".equals(m.group(1)) ? "[^$]+?" : "[^.$]+");
+			last = m.end();
+		}
+		if (last < target.length()) regex.append(Pattern.quote(target.substring(last)));
+		Pattern pattern = Pattern.compile(regex.toString());
+
+		int sep = target.lastIndexOf('.', target.indexOf("${"));
+		if (sep == -1) {
+			debug("warmup: target is not scanned: " + target);
+			return;
+		}
+		String path = target.substring(0, sep).replace('.', '/') + '/';
+
+		ClassLoader cl = Thread.currentThread().getContextClassLoader();
+		if (cl == null) cl = this.getClass().getClassLoader();
+		try {
+			Enumeration<URL> urls = cl.getResources(path);
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				List<String> entries = new ArrayList<String>();
+				if ("file".equals(url.getProtocol())) {
+					listClassFiles(new File(url.toURI()), path, entries);
+				} else if ("jar".equals(url.getProtocol())) {
+					URLConnection con = url.openConnection();
+					con.setUseCaches(false);
+					JarFile jar = ((JarURLConnection)con).getJarFile();
+					try {
+						for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements(); ) {
+							String name = e.nextElement().getName();
+							if (name.startsWith(path) && name.endsWith(".class")) entries.add(name);
+						}
+					} finally {
+						jar.close();
+					}
+				}
+				for (String entry : entries) {
+					String name = entry.substring(0, entry.length() - ".class".length()).replace('/', '.');
+					if (pattern.matcher(name).matches()) names.add(name);
+				}
+			}
+		} catch (Exception e) {
+			debug("warmup: fails to scan " + target, e);
+		}
+	}
+
+	private static void listClassFiles(File dir, String path, List<String> entries) {
+		File[] files = dir.listFiles();
+		if (files == null) return;
+		for (File file : files) {
+			if (file.isDirectory()) {
+				listClassFiles(file, path + file.getName() + '/', entries);
+			} else if (file.getName().endsWith(".class")) {
+				entries.add(path + file.getName());
+			}
+		}
+	}
+
+	private static void introspect(Class<?> c, Type type, Set<Class<?>> visited, int depth) {
+		if (depth > 3) return;
+
+		Type resolved = ClassUtil.getResolvedType(c, c, type);
+		if (resolved instanceof ParameterizedType) {
+			for (Type arg : ((ParameterizedType)resolved).getActualTypeArguments()) {
+				introspect(c, arg, visited, depth + 1);
+			}
+		}
+
+		Class<?> cls = ClassUtil.getRawType(resolved);
+		while (cls.isArray()) {
+			cls = cls.getComponentType();
+		}
+		if (cls.isPrimitive() || cls.isEnum() || cls.isInterface()
+				|| cls.getName().startsWith("java.")
+				|| cls.getName().startsWith("javax.")
+				|| !visited.add(cls)) {
+			return;
+		}
+
+		for (PropertyInfo prop : BeanInfo.get(cls).getProperties()) {
+			if (prop.isWritable()) {
+				introspect(cls, prop.getWriteGenericType(), visited, depth + 1);
+			} else if (prop.isReadable()) {
+				introspect(cls, prop.getReadGenericType(), visited, depth + 1);
+			}
+		}
 	}
 
 	public void start(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -101,34 +376,135 @@ public class Container {
 		}
 	}
 
+	/**
+	 * Returns the component for the class name.
+	 *
+	 * The component is created by the scope specified in the "scope" config:
+	 * "prototype" (default) creates a new instance for each call,
+	 * "singleton" shares one instance in this container and
+	 * "pooled" borrows an instance from the pool until the end of the request.
+	 * The constructor and the injectable fields are resolved once for each class.
+	 *
+	 * The init method of singleton and pooled components is called once when the instance is created,
+	 * and the destroy method once when it is evicted from the pool or the container is destroyed.
+	 * Prototype components call them around each execution.
+	 */
 	public Object getComponent(String className) throws Exception {
-		Object o = findClass(className).newInstance();
-
-		for (Field field : o.getClass().getFields()) {
-			Class<?> cls = field.getType();
-			if ("config".equals(field.getName()) && ServletConfig.class.equals(cls)) {
-				field.set(o, ExternalContext.getConfig());
-			} else if ("application".equals(field.getName()) && ServletContext.class.equals(cls)) {
-				field.set(o, ExternalContext.getApplication());
-			} else if ("request".equals(field.getName()) && HttpServletRequest.class.equals(cls)) {
-				field.set(o, ExternalContext.getRequest());
-			} else if ("response".equals(field.getName()) && HttpServletResponse.class.equals(cls)) {
-				field.set(o, ExternalContext.getResponse());
-			} else if ("session".equals(field.getName()) && HttpSession.class.equals(cls)) {
-				field.set(o, ExternalContext.getSession());
+		ComponentInfo info = componentCache.get(className);
+		if (info == null) {
+			String name = (scope != null) ? scope.get(className) : null;
+			info = new ComponentInfo(findClass(className), ComponentInfo.toScope(name), poolSize);
+			if (info.scope == ComponentInfo.SINGLETON && info.requestScoped) {
+				warn("request, response and session fields are not injected into the singleton component: " + className);
 			}
+			componentCache.put(className, info);
 		}
 
+		Object o = info.get(this);
+		if (info.scope == ComponentInfo.POOLED) {
+			HttpServletRequest request = ExternalContext.getRequest();
+			if (request != null) {
+				synchronized (request) {
+					@SuppressWarnings("unchecked")
+					List<Object[]> borrowed = (List<Object[]>)request.getAttribute(POOLED_KEY);
+					if (borrowed == null) {
+						borrowed = new ArrayList<Object[]>();
+						request.setAttribute(POOLED_KEY, borrowed);
+					}
+					borrowed.add(new Object[] { info, o });
+				}
+			}
+		}
 		return o;
 	}
 
 	public Method getMethod(Object component, String methodName, List<?> params) throws NoSuchMethodException {
 		if (params == null) params = Collections.emptyList();
 
+		MethodKey key = new MethodKey(component.getClass(), methodName, params);
+		Object cached = CacheEntry.get(methodCache, key);
+
+		if (cached == null) {
+			Method method = findMethod(component, methodName, params);
+			cached = CacheEntry.put(methodCache, key, (method != null) ? method : NOT_FOUND, METHOD_CACHE_SIZE);
+		} else if (cached == NOT_FOUND && isDebugMode()) {
+			debug("method missing: " + toPrintString(component.getClass(), methodName, params));
+		}
+
+		return (cached != NOT_FOUND) ? (Method)cached : null;
+	}
+
+	/**
+	 * Returns the method which can be chosen before the parameters are read.
+	 * That is the only public method with the name and it is not variable arity.
+	 * getMethod(component, methodName, params) returns the same method
+	 * when the number of params is enough.
+	 *
+	 * @return the method or null if it depends on the parameters (or it is not found).
+	 */
+	Method getUniqueMethod(Object component, String methodName) {
+		MethodKey key = new MethodKey(component.getClass(), methodName, "*");
+		Object cached = CacheEntry.get(methodCache, key);
+
+		if (cached == null) {
+			Method method = findUniqueMethod(component, methodName);
+			cached = CacheEntry.put(methodCache, key, (method != null) ? method : NOT_FOUND, METHOD_CACHE_SIZE);
+		}
+		return (cached != NOT_FOUND) ? (Method)cached : null;
+	}
+
+	private Method findUniqueMethod(Object component, String methodName) {
+		if (namingConversion) methodName = ClassUtil.toLowerCamel(methodName);
+
+		if (methodName.equals(init) || methodName.equals(destroy) || methodName.equals(version)) {
+			return null;
+		}
+
+		Class<?> c = component.getClass();
+		Method method = null;
+		for (Method cmethod : c.getMethods()) {
+			if (Modifier.isStatic(cmethod.getModifiers())
+					|| cmethod.isSynthetic()
+					|| cmethod.isBridge()
+					|| !cmethod.getName().equals(methodName)) {
+				continue;
+			}
+			if (method != null || cmethod.isVarArgs()) {
+				return null;
+			}
+			method = cmethod;
+		}
+
+		if (method == null || limit(c, method)) {
+			return null;
+		}
+		return method;
+	}
+
+	/**
+	 * Returns true if parameters can be bound to the method while parsing.
+	 * It is disabled when a subclass customizes the method resolution or the execution.
+	 */
+	boolean isDirectBindingSupported() {
+		Boolean supported = directBinding;
+		if (supported == null) {
+			try {
+				Class<?> c = getClass();
+				supported = c.getMethod("getMethod", Object.class, String.class, List.class).getDeclaringClass() == Container.class
+						&& c.getMethod("execute", JSON.class, Object.class, Method.class, List.class).getDeclaringClass() == Container.class;
+			} catch (NoSuchMethodException e) {
+				supported = false;
+			}
+			directBinding = supported;
+		}
+		return supported;
+	}
+
+	Method findMethod(Object component, String methodName, List<?> params) {
 		if (namingConversion) methodName = ClassUtil.toLowerCamel(methodName);
 
-		if (methodName.equals(init) || methodName.equals(destroy)) {
-			debug("Method name is same init or destroy method name.");
+		if (methodName.equals(init) || methodName.equals(destroy) || methodName.equals(version)) {
+			debug("Method name is same init, destroy or version method name.");
 			return null;
 		}
 
@@ -232,16 +608,386 @@ public class Container {
 	}
 
 	public Object execute(JSON json, Object component, Method method, List<?> params) throws Exception {
+		Object result = dispatch(json, component.getClass().getName(), component, method, toArguments(json, method, params));
+		return (result instanceof Memo) ? ((Memo)result).value : result;
+	}
+
+	static Object[] toArguments(JSON json, Method method, List<?> params) {
+		Type[] argTypes = method.getGenericParameterTypes();
+		Object[] args = new Object[argTypes.length];
+		for (int i = 0; i < args.length; i++) {
+			if (i == args.length-1 && method.isVarArgs()) {
+				args[i] = json.convert(params.subList((i < params.size()) ? i : params.size(), params.size()), argTypes[i]);
+			} else {
+				args[i] = json.convert((i < params.size()) ? params.get(i) : null, argTypes[i]);
+			}
+		}
+		return args;
+	}
+
+	/**
+	 * Executes the method for the servlets. It's same as execute(JSON, Object, Method, List),
+	 * but the result of a memoized method is returned as Memo.
+	 * If execute(JSON, Object, Method, List) is overridden, it is called instead.
+	 */
+	Object dispatch(JSON json, String className, Object component, Method method, List<?> params) throws Exception {
+		if (!isDirectBindingSupported()) {
+			return execute(json, component, method, params);
+		}
+		return dispatch(json, className, component, method, toArguments(json, method, params));
+	}
+
+	/**
+	 * Executes the method with the arguments already converted to the parameter types.
+	 *
+	 * If the method is memoized, the result is returned as a Memo which has the formatted text,
+	 * and the method is not invoked until the memo is expired.
+	 * If the method is coalesced, identical invocations in flight wait for the first one
+	 * and share its result.
+	 */
+	Object dispatch(JSON json, String className, Object component, Method method, Object[] args) throws Exception {
+		long ttl = getMemoizeTTL(component.getClass(), method);
+		boolean coalesced = isCoalesced(component.getClass(), method);
+		String key = (ttl >= 0 || coalesced) ? toMemoKey(json, className, component, method, args) : null;
+		if (key == null) {
+			return execute(component, method, args);
+		}
+
+		if (ttl >= 0) {
+			Memo memo;
+			synchronized (memoCache) {
+				memo = memoCache.get(key);
+				if (memo != null && memo.isExpired()) {
+					memoCache.remove(key);
+					memo = null;
+				}
+			}
+			if (memo != null) {
+				memoHits.incrementAndGet();
+				if (this.isDebugMode()) {
+					this.debug("Memoized: " + toPrintString(component.getClass(), method.getName(), Arrays.asList(args)));
+				}
+				return memo;
+			}
+			memoMisses.incrementAndGet();
+		}
+
+		if (!coalesced) {
+			return memoize(json, key, ttl, execute(component, method, args));
+		}
+
+		Flight flight = new Flight();
+		Flight current = flights.putIfAbsent(key, flight);
+		if (current != null) {
+			// a reentrant call on the same thread must not wait itself.
+			if (current.leader == Thread.currentThread()) {
+				return memoize(json, key, ttl, execute(component, method, args));
+			}
+
+			coalescedCount.incrementAndGet();
+			if (this.isDebugMode()) {
+				this.debug("Coalesced: " + toPrintString(component.getClass(), method.getName(), Arrays.asList(args)));
+			}
+			return current.await(asyncTimeout);
+		}
+
+		Object result = null;
+		Exception error = null;
+		boolean done = false;
+		try {
+			result = memoize(json, key, ttl, execute(component, method, args));
+			done = true;
+			return result;
+		} catch (Exception e) {
+			error = e;
+			done = true;
+			throw e;
+		} finally {
+			flights.remove(key, flight);
+			flight.complete(result, done ? error : new IllegalStateException("Coalesced invocation failed."));
+		}
+	}
+
+	private Object memoize(JSON json, String key, long ttl, Object result) throws IOException {
+		if (AsyncSupport.isPending(result)) {
+			return result;
+		}
+
+		StringBuilder sb = new StringBuilder();
+		json.getWriter(sb).value(result);
+		Memo memo = new Memo(result, sb.toString(), (ttl > 0) ? System.currentTimeMillis() + ttl : Long.MAX_VALUE);
+		if (ttl >= 0) {
+			synchronized (memoCache) {
+				memoCache.put(key, memo);
+			}
+		}
+		return memo;
+	}
+
+	/**
+	 * Returns the time to live of memoized results of the method in milliseconds,
+	 * 0 for no expiration or -1 if the method is not memoized.
+	 *
+	 * The memoize option is looked up by "class name#method name" and then by "class name"
+	 * for the class of the component and its super classes.
+	 */
+	long getMemoizeTTL(Class<?> c, Method method) {
+		if (memoize == null || memoize.isEmpty()) {
+			return -1;
+		}
+
+		Long ttl = memoizeTTLCache.get(method);
+		if (ttl == null) {
+			for (Class<?> cls = c; cls != null && ttl == null; cls = cls.getSuperclass()) {
+				ttl = memoize.get(cls.getName() + "#" + method.getName());
+				if (ttl == null) ttl = memoize.get(cls.getName());
+			}
+			if (ttl == null || ttl < 0) ttl = -1L;
+			memoizeTTLCache.put(method, ttl);
+		}
+		return ttl;
+	}
+
+	/**
+	 * Returns true if the coalesce option has "class name#method name" or "class name"
+	 * for the class of the component and its super classes.
+	 */
+	boolean isCoalesced(Class<?> c, Method method) {
+		if (coalesce == null || coalesce.isEmpty()) {
+			return false;
+		}
+
+		Boolean coalesced = coalesceCache.get(method);
+		if (coalesced == null) {
+			coalesced = false;
+			for (Class<?> cls = c; cls != null && !coalesced; cls = cls.getSuperclass()) {
+				coalesced = coalesce.contains(cls.getName() + "#" + method.getName()) || coalesce.contains(cls.getName());
+			}
+			coalesceCache.put(method, coalesced);
+		}
+		return coalesced;
+	}
+
+	/**
+	 * Creates the key of memoized or coalesced results.
+	 *
+	 * The result may depend on the state injected into the component, so the session ID is a part of the key
+	 * if the component has the session, and null is returned if the component has the request or response
+	 * or if its DI framework binds it to a request or a session.
+	 */
+	String toMemoKey(JSON json, String className, Object component, Method method, Object[] args) {
+		int injection = getInjectionScope(component.getClass());
+		if (injection == ComponentInfo.REQUEST) {
+			debug("Notice: the component has the request or response, so it is not memoized or coalesced.");
+			return null;
+		}
+		if (!isSharedScope(className, component)) {
+			debug("Notice: the component is not singleton or prototype, so it is not memoized or coalesced.");
+			return null;
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(component.getClass().getName()).append('#').append(method.getName());
+		for (Class<?> type : method.getParameterTypes()) {
+			sb.append(',').append(type.getName());
+		}
+		sb.append('#').append(json.getSettings().getLocale()).append('#');
+		if (injection == ComponentInfo.SESSION) {
+			HttpServletRequest request = ExternalContext.getRequest();
+			if (request == null) {
+				return null;
+			}
+			HttpSession session = request.getSession(false);
+			sb.append((session != null) ? session.getId() : "").append('#');
+		}
+		try {
+			json.getWriter(sb).value(args);
+		} catch (Exception e) {
+			debug("Arguments are not memoizable.", e);
+			return null;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns true if the component can be executed after the end of the request.
+	 * The pooled component, the component which has the request or response
+	 * and the component which is not in the shared scope can not.
+	 *
+	 * @param className The class name of the component.
+	 * @param component The component.
+	 * @return true if the component can be executed on another thread after the request.
+	 */
+	protected boolean isDetachable(String className, Object component) {
+		ComponentInfo info = componentCache.get(className);
+		if (info != null && info.scope == ComponentInfo.POOLED) {
+			return false;
+		}
+		return getInjectionScope(component.getClass()) != ComponentInfo.REQUEST
+				&& isSharedScope(className, component);
+	}
+
+	/**
+	 * Returns true if the component is singleton or prototype in its DI framework,
+	 * so it does not hold the state of a request or a session. The results of the other components
+	 * are not memoized or coalesced, and they are not executed after the end of the request.
+	 * Containers of DI frameworks override this to check the scope of the framework.
+	 *
+	 * @param className The class name of the component.
+	 * @param component The component.
+	 * @return true if the component is shared by the requests of all users.
+	 */
+	protected boolean isSharedScope(String className, Object component) {
+		return true;
+	}
+
+	/**
+	 * Returns ComponentInfo.REQUEST if the class has a public field or setter of the request or response,
+	 * ComponentInfo.SESSION if it has one of the session, or -1 if it has neither.
+	 */
+	int getInjectionScope(Class<?> c) {
+		Integer scope = injectionCache.get(c);
+		if (scope == null) {
+			List<Class<?>> types = new ArrayList<Class<?>>();
+			for (Field field : c.getFields()) {
+				if (!Modifier.isStatic(field.getModifiers())) types.add(field.getType());
+			}
+			for (Method m : c.getMethods()) {
+				if (!Modifier.isStatic(m.getModifiers()) && m.getName().startsWith("set") && m.getParameterTypes().length == 1) {
+					types.add(m.getParameterTypes()[0]);
+				}
+			}
+
+			scope = -1;
+			for (Class<?> type : types) {
+				if (HttpServletRequest.class.isAssignableFrom(type) || HttpServletResponse.class.isAssignableFrom(type)) {
+					scope = ComponentInfo.REQUEST;
+					break;
+				} else if (HttpSession.class.isAssignableFrom(type)) {
+					scope = ComponentInfo.SESSION;
+				}
+			}
+			injectionCache.put(c, scope);
+		}
+		return scope;
+	}
+
+	public long getMemoizeHitCount() {
+		return memoHits.get();
+	}
+
+	public long getMemoizeMissCount() {
+		return memoMisses.get();
+	}
+
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	Object execute(Object component, Method method, Object[] args) throws Exception {
 		Object result = null;
 
+		// singleton and pooled components are initialized when created, and destroyed when evicted.
+		boolean managed = isManaged(component);
+		Method[] lifecycle = getLifecycleMethods(component.getClass());
+		Method init = managed ? null : lifecycle[0];
+		Method destroy = managed ? null : lifecycle[1];
+
+		if (this.isDebugMode()) {
+			this.debug("Execute: " + toPrintString(component.getClass(), method.getName(), Arrays.asList(args)));
+		}
+
+		if (init != null) {
+			if (this.isDebugMode()) {
+				this.debug("Execute: " + toPrintString(component.getClass(), init.getName(), null));
+			}
+			invoke(component, init);
+		}
+
+		args = this.preinvoke(component, method, args);
+
+		result = invoke(component, method, args);
+
+		result = this.postinvoke(component, method, result);
+
+		if (destroy != null) {
+			if (this.isDebugMode()) {
+				this.debug("Execute: " + toPrintString(component.getClass(), destroy.getName(), null));
+			}
+			invoke(component, destroy);
+		}
+
+		return result;
+	}
+
+	boolean isManaged(Object component) {
+		ComponentInfo info = componentCache.get(component.getClass().getName());
+		return info != null && info.cls == component.getClass() && info.scope != ComponentInfo.PROTOTYPE;
+	}
+
+	void initComponent(Object component) throws Exception {
+		Method init = getLifecycleMethods(component.getClass())[0];
+		if (init != null) {
+			if (this.isDebugMode()) {
+				this.debug("Execute: " + toPrintString(component.getClass(), init.getName(), null));
+			}
+			invoke(component, init);
+		}
+	}
+
+	void destroyComponent(Object component) {
+		Method destroy = getLifecycleMethods(component.getClass())[1];
+		if (destroy != null) {
+			if (this.isDebugMode()) {
+				this.debug("Execute: " + toPrintString(component.getClass(), destroy.getName(), null));
+			}
+			try {
+				invoke(component, destroy);
+			} catch (Exception e) {
+				this.error("failed to destroy the component: " + component.getClass().getName(), e);
+			}
+		}
+	}
+
+	/**
+	 * Gets the version of the result by the version method of the component.
+	 * The method may take the result as the argument, and returns a entity tag
+	 * (String, Number, etc.) or the last modified time (Date).
+	 *
+	 * @param component the component
+	 * @param result the result of the REST method
+	 * @return the version or null if the component does not have the version method.
+	 */
+	public Object getVersion(Object component, Object result) throws Exception {
+		Method method = getLifecycleMethods(component.getClass())[2];
+		if (method == null) {
+			return null;
+		}
+
+		if (method.getParameterTypes().length == 0) {
+			return invoke(component, method);
+		} else if (method.getParameterTypes()[0].isInstance(result)) {
+			return invoke(component, method, result);
+		}
+		return null;
+	}
+
+	Method[] getLifecycleMethods(Class<?> c) {
+		Method[] lifecycle = lifecycleCache.get(c);
+		if (lifecycle != null) {
+			return lifecycle;
+		}
+
 		Method init = null;
 		Method destroy = null;
+		Method version = null;
 
-		if (this.init != null || this.destroy != null) {
+		if (this.init != null || this.destroy != null || this.version != null) {
 			boolean illegalInit = false;
 			boolean illegalDestroy = false;
+			boolean illegalVersion = false;
 
-			for (Method m : component.getClass().getMethods()) {
+			for (Method m : c.getMethods()) {
 				if (Modifier.isStatic(m.getModifiers())
 						|| m.isSynthetic()
 						|| m.isBridge()) {
@@ -264,49 +1010,97 @@ public class Container {
 					}
 					continue;
 				}
+				if (m.getName().equals(this.version)) {
+					if (!m.getReturnType().equals(void.class) && m.getParameterTypes().length <= 1) {
+						version = m;
+					} else {
+						illegalVersion = true;
+					}
+					continue;
+				}
 			}
 
 			if (illegalInit) this.debug("Notice: init method must have no arguments.");
 			if (illegalDestroy) this.debug("Notice: destroy method must have no arguments.");
+			if (illegalVersion) this.debug("Notice: version method must return a value and have one argument at most.");
 		}
 
-		Type[] argTypes = method.getGenericParameterTypes();
-		Object[] args = new Object[argTypes.length];
-		for (int i = 0; i < args.length; i++) {
-			if (i == args.length-1 && method.isVarArgs()) {
-				args[i] = json.convert(params.subList((i < params.size()) ? i : params.size(), params.size()), argTypes[i]);
-			} else {
-				args[i] = json.convert((i < params.size()) ? params.get(i) : null, argTypes[i]);
-			}
-		}
-		if (this.isDebugMode()) {
-			this.debug("Execute: " + toPrintString(component.getClass(), method.getName(), Arrays.asList(args)));
+		lifecycle = new Method[] { init, destroy, version };
+		lifecycleCache.put(c, lifecycle);
+		return lifecycle;
+	}
+
+	/**
+	 * Invokes the method through a cached MethodHandle.
+	 * Exceptions thrown by the method are wrapped in InvocationTargetException as Method.invoke does,
+	 * and a receiver or arguments the method can't accept cause IllegalArgumentException (not wrapped) as well.
+	 */
+	Object invoke(Object component, Method method, Object... args) throws Exception {
+		MethodHandle handle;
+		try {
+			handle = getHandle(method);
+		} catch (IllegalAccessException e) {
+			return method.invoke(component, args);
 		}
 
-		if (init != null) {
-			if (this.isDebugMode()) {
-				this.debug("Execute: " + toPrintString(component.getClass(), init.getName(), null));
+		try {
+			return (Object)handle.invokeExact(component, args);
+		} catch (Throwable t) {
+			// the handle adaptation fails with these before the method is called.
+			if ((t instanceof ClassCastException
+					|| t instanceof NullPointerException
+					|| t instanceof IllegalArgumentException
+					|| t instanceof WrongMethodTypeException)
+					&& !isApplicable(method, component, args)) {
+				throw new IllegalArgumentException("argument type mismatch: " + method, t);
 			}
-			if (!init.isAccessible()) init.setAccessible(true);
-			init.invoke(component);
+			throw new InvocationTargetException(t);
 		}
+	}
 
-		args = this.preinvoke(component, method, args);
-
-		if (!method.isAccessible()) method.setAccessible(true);
-		result = method.invoke(component, args);
+	static boolean isApplicable(Method method, Object component, Object[] args) {
+		if (!method.getDeclaringClass().isInstance(component)) {
+			return false;
+		}
 
-		result = this.postinvoke(component, method, result);
+		Class<?>[] types = method.getParameterTypes();
+		if (types.length != ((args != null) ? args.length : 0)) {
+			return false;
+		}
 
-		if (destroy != null) {
-			if (this.isDebugMode()) {
-				this.debug("Execute: " + toPrintString(component.getClass(), destroy.getName(), null));
+		for (int i = 0; i < types.length; i++) {
+			if (types[i].isPrimitive()) {
+				if (!isConvertible(args[i], types[i])) return false;
+			} else if (args[i] != null && !types[i].isInstance(args[i])) {
+				return false;
 			}
-			if (!destroy.isAccessible()) destroy.setAccessible(true);
-			destroy.invoke(component);
 		}
+		return true;
+	}
 
-		return result;
+	// unboxing followed by a widening primitive conversion (JLS 5.1.2)
+	private static boolean isConvertible(Object arg, Class<?> type) {
+		if (type == boolean.class) return arg instanceof Boolean;
+		if (type == char.class) return arg instanceof Character;
+		if (type == byte.class) return arg instanceof Byte;
+		if (type == short.class) return arg instanceof Short || arg instanceof Byte;
+		if (type == int.class) return arg instanceof Integer || arg instanceof Character || isConvertible(arg, short.class);
+		if (type == long.class) return arg instanceof Long || isConvertible(arg, int.class);
+		if (type == float.class) return arg instanceof Float || isConvertible(arg, long.class);
+		return arg instanceof Double || isConvertible(arg, float.class);
+	}
+
+	private MethodHandle getHandle(Method method) throws IllegalAccessException {
+		MethodHandle handle = handleCache.get(method);
+		if (handle == null) {
+			if (!method.isAccessible()) method.setAccessible(true);
+			handle = MethodHandles.lookup().unreflect(method)
+					.asFixedArity()
+					.asSpreader(Object[].class, method.getParameterTypes().length)
+					.asType(INVOKER_TYPE);
+			handleCache.put(method, handle);
+		}
+		return handle;
 	}
 
 	/**
@@ -326,13 +1120,57 @@ public class Container {
 	}
 
 	public void end(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		releaseComponents(request);
+	}
+
+	/**
+	 * Returns the pooled components borrowed in the request.
+	 * This method is called by end(), so subclasses overriding end() should call it too.
+	 *
+	 * @param request current request
+	 */
+	protected void releaseComponents(HttpServletRequest request) {
+		List<?> borrowed;
+		synchronized (request) {
+			borrowed = (List<?>)request.getAttribute(POOLED_KEY);
+			if (borrowed == null) return;
+			request.removeAttribute(POOLED_KEY);
+		}
+		for (Object o : borrowed) {
+			Object[] pair = (Object[])o;
+			((ComponentInfo)pair[0]).release(this, pair[1]);
+		}
 	}
 
 	public void destory() {
+		if (jmx) {
+			try {
+				CacheMonitor.unregister();
+			} catch (JMException e) {
+				warn("failed to unregister cache MBeans.", e);
+			}
+		}
+		methodCache.clear();
+		lifecycleCache.clear();
+		handleCache.clear();
+		classCache.clear();
+		for (ComponentInfo info : componentCache.values()) {
+			info.destroy(this);
+		}
+		componentCache.clear();
+		synchronized (memoCache) {
+			memoCache.clear();
+		}
+		memoizeTTLCache.clear();
+		coalesceCache.clear();
+		injectionCache.clear();
+		settingsCache.clear();
 	}
 
 	protected Class<?> findClass(String name) throws ClassNotFoundException {
-		Class<?> c = null;
+		Class<?> c = classCache.get(name);
+		if (c != null) return c;
+
 		try {
 			c = Class.forName(name, true, Thread.currentThread().getContextClassLoader());
 		} catch (ClassNotFoundException e) {
@@ -343,6 +1181,7 @@ public class Container {
 			}
 		}
 
+		classCache.put(name, c);
 		return c;
 	}
 
@@ -382,6 +1221,10 @@ public class Container {
 		}
 	}
 
+	public void info(String message) {
+		context.log("[INFO] " + message);
+	}
+
 	public void error(String message, Throwable e) {
 		if (e != null) {
 			context.log("[ERROR] " + message, e);
@@ -416,37 +1259,58 @@ public class Container {
 		return (data != null) ? data : Collections.emptyMap();
 	}
 
+	/**
+	 * Creates a JSON instance for the request.
+	 *
+	 * JSON instances hold the context of a request, so a new instance is created every time,
+	 * but the settings are configured once per locale and the immutable snapshot is reused.
+	 * JSON.setContext does not invalidate the snapshot, so the servlets can set the component
+	 * as the context of each call without rebuilding the settings.
+	 */
 	JSON createJSON(Locale locale) throws ServletException  {
+		if (processor != null && processor.locale != null) {
+			locale = processor.locale;
+		}
+
+		JSON.Settings settings = (JSON.Settings)CacheEntry.get(settingsCache, locale);
+
 		JSON json;
+		try {
+			json = (processor != null) ? processor.type.newInstance() : new JSON();
+		} catch (Exception e) {
+			throw new ServletException(e);
+		}
+
+		if (settings != null) {
+			json.setSettings(settings);
+			return json;
+		}
+
+		json.setLocale(locale);
 		if (processor != null) {
-			try {
-				json = processor.type.newInstance();
-				if (processor.locale != null) {
-					json.setLocale(processor.locale);
-				} else {
-					json.setLocale(locale);
-				}
-				if (processor.mode != null) json.setMode(processor.mode);
-				if (processor.timeZone != null) json.setTimeZone(processor.timeZone);
-				if (processor.maxDepth != null) json.setMaxDepth(processor.maxDepth);
-				if (processor.prettyPrint != null) json.setPrettyPrint(processor.prettyPrint);
-				if (processor.initialIndent != null) json.setInitialIndent(processor.initialIndent);
-				if (processor.indentText != null) json.setIndentText(processor.indentText);
-				if (processor.suppressNull != null) json.setSuppressNull(processor.suppressNull);
-				if (processor.dateFormat != null) json.setDateFormat(processor.dateFormat);
-				if (processor.numberFormat != null) json.setNumberFormat(processor.numberFormat);
-				if (processor.propertyStyle != null) json.setPropertyStyle(processor.propertyStyle);
-				if (processor.enumStyle != null) json.setEnumStyle(processor.enumStyle);
-			} catch (Exception e) {
-				throw new ServletException(e);
-			}
-		} else {
-			json = new JSON();
-			json.setLocale(locale);
+			if (processor.mode != null) json.setMode(processor.mode);
+			if (processor.timeZone != null) json.setTimeZone(processor.timeZone);
+			if (processor.maxDepth != null) json.setMaxDepth(processor.maxDepth);
+			if (processor.prettyPrint != null) json.setPrettyPrint(processor.prettyPrint);
+			if (processor.initialIndent != null) json.setInitialIndent(processor.initialIndent);
+			if (processor.indentText != null) json.setIndentText(processor.indentText);
+			if (processor.suppressNull != null) json.setSuppressNull(processor.suppressNull);
+			if (processor.dateFormat != null) json.setDateFormat(processor.dateFormat);
+			if (processor.numberFormat != null) json.setNumberFormat(processor.numberFormat);
+			if (processor.propertyStyle != null) json.setPropertyStyle(processor.propertyStyle);
+			if (processor.enumStyle != null) json.setEnumStyle(processor.enumStyle);
 		}
+
+		CacheEntry.put(settingsCache, locale, json.getSettings(), SETTINGS_CACHE_SIZE);
 		return json;
 	}
 
+	static String getPath(HttpServletRequest request) {
+		return (request.getContextPath().equals("/")) ?
+				request.getRequestURI() :
+				request.getRequestURI().substring(request.getContextPath().length());
+	}
+
 	static boolean isJSONType(String contentType) {
 		if (contentType != null) {
 			contentType = contentType.toLowerCase();
@@ -455,6 +1319,35 @@ public class Container {
 		return false;
 	}
 
+	/**
+	 * Skips leading white spaces and BOM, and returns the next character without consuming it.
+	 */
+	static int peek(PushbackReader in) throws IOException {
+		int c;
+		do {
+			c = in.read();
+		} while (c != -1 && (Character.isWhitespace(c) || c == '\uFEFF'));
+		if (c != -1) in.unread(c);
+		return c;
+	}
+
+	static Object getValue(JSONReader reader, JSONEventType type) throws IOException {
+		switch (type) {
+		case START_OBJECT:
+			return reader.getMap();
+		case START_ARRAY:
+			return reader.getList();
+		case STRING:
+			return reader.getString();
+		case NUMBER:
+			return reader.getNumber();
+		case BOOLEAN:
+			return reader.getBoolean();
+		default:
+			return null;
+		}
+	}
+
 	static int calcurateDistance(Class<?>[] types, List<?> params) {
 		int point = 0;
 		for (int i = 0; i < types.length; i++) {
@@ -578,6 +1471,379 @@ public class Container {
 		return (T)o;
 	}
 
+	static class MethodKey {
+		private final Class<?> cls;
+		private final String name;
+		private final String shape;
+		private final int hash;
+
+		MethodKey(Class<?> cls, String name, String shape) {
+			this.cls = cls;
+			this.name = name;
+			this.shape = shape;
+			this.hash = (cls.hashCode() * 31 + name.hashCode()) * 31 + shape.hashCode();
+		}
+
+		MethodKey(Class<?> cls, String name, List<?> params) {
+			this.cls = cls;
+			this.name = name;
+
+			// overload resolution depends only on the count and the kind of parameters.
+			char[] kinds = new char[params.size()];
+			for (int i = 0; i < kinds.length; i++) {
+				Object param = params.get(i);
+				kinds[i] = (param == null) ? 'z'
+						: (param instanceof String) ? 's'
+						: (param instanceof Number) ? 'n'
+						: (param instanceof Boolean) ? 'b'
+						: (param instanceof List<?>) ? 'l'
+						: (param instanceof Map<?, ?>) ? 'm'
+						: 'o';
+			}
+			this.shape = new String(kinds);
+			this.hash = (cls.hashCode() * 31 + name.hashCode()) * 31 + shape.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof MethodKey))
+				return false;
+			MethodKey other = (MethodKey)obj;
+			return cls == other.cls
+					&& name.equals(other.name)
+					&& shape.equals(other.shape);
+		}
+	}
+
+	static class ComponentInfo {
+		static final int PROTOTYPE = 0;
+		static final int SINGLETON = 1;
+		static final int POOLED = 2;
+
+		private static final int CONFIG = 0;
+		private static final int APPLICATION = 1;
+		static final int REQUEST = 2;
+		private static final int RESPONSE = 3;
+		static final int SESSION = 4;
+
+		private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+		private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+		final Class<?> cls;
+		final int scope;
+		final boolean requestScoped;
+
+		private final MethodHandle constructor;
+		private final Field[] fields;
+		private final MethodHandle[] setters;
+		private final int[] kinds;
+
+		private final BlockingQueue<Object> pool;
+		private volatile Object instance;
+
+		ComponentInfo(Class<?> cls, int scope, int poolSize) {
+			if (scope == -1) {
+				throw new IllegalArgumentException("unknown scope: " + cls.getName());
+			}
+
+			this.cls = cls;
+			this.scope = scope;
+
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+			MethodHandle constructor = null;
+			try {
+				constructor = lookup.findConstructor(cls, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+			} catch (Exception e) {
+				// Class.newInstance() reports the error.
+			}
+			this.constructor = constructor;
+
+			List<Field> fields = new ArrayList<Field>();
+			List<Integer> kinds = new ArrayList<Integer>();
+			for (Field field : cls.getFields()) {
+				int kind = toKind(field);
+				if (kind != -1) {
+					fields.add(field);
+					kinds.add(kind);
+				}
+			}
+
+			this.fields = fields.toArray(new Field[fields.size()]);
+			this.setters = new MethodHandle[this.fields.length];
+			this.kinds = new int[this.fields.length];
+
+			boolean requestScoped = false;
+			for (int i = 0; i < this.fields.length; i++) {
+				try {
+					setters[i] = lookup.unreflectSetter(this.fields[i]).asType(SETTER_TYPE);
+				} catch (IllegalAccessException e) {
+					// Field.set() reports the error.
+				}
+				this.kinds[i] = kinds.get(i);
+				if (this.kinds[i] >= REQUEST) requestScoped = true;
+			}
+			this.requestScoped = requestScoped;
+
+			this.pool = (scope == POOLED && poolSize > 0) ? new ArrayBlockingQueue<Object>(poolSize) : null;
+		}
+
+		static int toScope(String name) {
+			if (name == null || "prototype".equals(name)) {
+				return PROTOTYPE;
+			} else if ("singleton".equals(name)) {
+				return SINGLETON;
+			} else if ("pooled".equals(name)) {
+				return POOLED;
+			}
+			return -1;
+		}
+
+		Object get(Container container) throws Exception {
+			Object o;
+			if (scope == SINGLETON) {
+				o = instance;
+				if (o == null) {
+					synchronized (this) {
+						o = instance;
+						if (o == null) {
+							o = newInstance();
+							inject(o, true);
+							container.initComponent(o);
+							instance = o;
+						}
+					}
+				}
+			} else {
+				o = (pool != null) ? pool.poll() : null;
+				if (o == null) {
+					o = newInstance();
+					inject(o, false);
+					if (scope == POOLED) container.initComponent(o);
+				} else {
+					inject(o, false);
+				}
+			}
+			return o;
+		}
+
+		void release(Container container, Object o) {
+			// pooled instances must not keep the request.
+			try {
+				for (int i = 0; i < fields.length; i++) {
+					if (kinds[i] >= REQUEST) set(i, o, null);
+				}
+			} catch (Exception e) {
+				container.destroyComponent(o);
+				return;
+			}
+			if (pool == null || !pool.offer(o)) {
+				container.destroyComponent(o);
+			}
+		}
+
+		void destroy(Container container) {
+			Object o;
+			synchronized (this) {
+				o = instance;
+				instance = null;
+			}
+			if (o != null) {
+				container.destroyComponent(o);
+			}
+
+			if (pool != null) {
+				while ((o = pool.poll()) != null) {
+					container.destroyComponent(o);
+				}
+			}
+		}
+
+		private Object newInstance() throws Exception {
+			if (constructor == null) {
+				return cls.newInstance();
+			}
+
+			try {
+				return (Object)constructor.invokeExact();
+			} catch (Exception e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		private void inject(Object o, boolean shared) throws Exception {
+			for (int i = 0; i < fields.length; i++) {
+				Object value;
+				switch (kinds[i]) {
+				case CONFIG:
+					value = ExternalContext.getConfig();
+					break;
+				case APPLICATION:
+					value = ExternalContext.getApplication();
+					break;
+				case REQUEST:
+					if (shared) continue;
+					value = ExternalContext.getRequest();
+					break;
+				case RESPONSE:
+					if (shared) continue;
+					value = ExternalContext.getResponse();
+					break;
+				default:
+					if (shared) continue;
+					value = ExternalContext.getSession();
+				}
+				set(i, o, value);
+			}
+		}
+
+		private void set(int i, Object o, Object value) throws Exception {
+			if (setters[i] == null) {
+				fields[i].set(o, value);
+				return;
+			}
+
+			try {
+				setters[i].invokeExact(o, value);
+			} catch (Exception e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		private static int toKind(Field field) {
+			String name = field.getName();
+			Class<?> cls = field.getType();
+			if ("config".equals(name) && ServletConfig.class.equals(cls)) {
+				return CONFIG;
+			} else if ("application".equals(name) && ServletContext.class.equals(cls)) {
+				return APPLICATION;
+			} else if ("request".equals(name) && HttpServletRequest.class.equals(cls)) {
+				return REQUEST;
+			} else if ("response".equals(name) && HttpServletResponse.class.equals(cls)) {
+				return RESPONSE;
+			} else if ("session".equals(name) && HttpSession.class.equals(cls)) {
+				return SESSION;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Value of a bounded cache. The cache is a ConcurrentHashMap, so a hit takes no lock,
+	 * and an entry which is not used since the last sweep is evicted when the cache is full.
+	 */
+	static final class CacheEntry {
+		final Object value;
+		volatile boolean used = true;
+
+		CacheEntry(Object value) {
+			this.value = value;
+		}
+
+		static <K> Object get(ConcurrentMap<K, CacheEntry> cache, K key) {
+			CacheEntry entry = cache.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (!entry.used) entry.used = true;
+			return entry.value;
+		}
+
+		static <K> Object put(ConcurrentMap<K, CacheEntry> cache, K key, Object value, int max) {
+			if (cache.size() >= max) {
+				evict(cache);
+			}
+			CacheEntry entry = new CacheEntry(value);
+			CacheEntry current = cache.putIfAbsent(key, entry);
+			return ((current != null) ? current : entry).value;
+		}
+
+		// second chance: removes the first entry which is not used since the last sweep.
+		private static <K> void evict(ConcurrentMap<K, CacheEntry> cache) {
+			for (int i = 0; i < 2; i++) {
+				Iterator<CacheEntry> it = cache.values().iterator();
+				while (it.hasNext()) {
+					CacheEntry entry = it.next();
+					if (entry.used) {
+						entry.used = false;
+					} else {
+						it.remove();
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Memoized result of the method.
+	 */
+	static final class Memo {
+		final Object value;
+		final String text;
+		final long expires;
+
+		// the entity tag and its encoding. see RESTServlet.
+		volatile String[] etag;
+
+		Memo(Object value, String text, long expires) {
+			this.value = value;
+			this.text = text;
+			this.expires = expires;
+		}
+
+		boolean isExpired() {
+			return expires != Long.MAX_VALUE && System.currentTimeMillis() >= expires;
+		}
+	}
+
+	/**
+	 * Invocation in flight which the identical invocations wait for.
+	 */
+	static final class Flight {
+		final Thread leader = Thread.currentThread();
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private Object result;
+		private Exception error;
+
+		void complete(Object result, Exception error) {
+			this.result = result;
+			this.error = error;
+			latch.countDown();
+		}
+
+		/**
+		 * Waits the leader. If the leader doesn't complete in time (0 means no timeout),
+		 * the follower fails with TimeoutException as same as asynchronous results.
+		 */
+		Object await(long timeout) throws Exception {
+			if (timeout > 0) {
+				if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+					throw new InvocationTargetException(new TimeoutException("Coalesced invocation is not completed in time."));
+				}
+			} else {
+				latch.await();
+			}
+			if (error != null) throw error;
+			return result;
+		}
+	}
+
 	static class ProcessorConfig {
 		@JSONHint(name = "class")
 		public Class<? extends JSON> type = JSON.class;
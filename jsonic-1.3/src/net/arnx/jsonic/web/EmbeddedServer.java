@@ -0,0 +1,704 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.web;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves RPCServlet and RESTServlet on the JDK HTTP server (com.sun.net.httpserver)
+ * without a servlet container.
+ *
+ * Each servlet is mounted on a context path and configured by the same "config" text as web.xml.
+ * The request body is read from the exchange stream directly, and the response body is
+ * buffered and sent with Content-Length. Sessions are not supported.
+ *
+ * The servlets are reused as they are, so the servlet API classes are still required in the classpath
+ * and the request and the response are adapted with dynamic proxies. The reader and the writer
+ * of the servlets are layered directly on the exchange stream and the response buffer.
+ * The start time is dominated by loading the JSON and HTTP server classes:
+ * a few hundred milliseconds in a cold JVM, and less with a class data sharing archive.
+ *
+ * <pre>
+ * EmbeddedServer server = new EmbeddedServer(new InetSocketAddress(8080));
+ * server.rpc("/rpc", "{\"mappings\": {\"/{class}.json\": \"sample.${class}Service\"}}");
+ * server.start();
+ * </pre>
+ */
+public final class EmbeddedServer {
+	private static final Logger LOG = Logger.getLogger(EmbeddedServer.class.getName());
+
+	private final HttpServer server;
+	private final List<HttpServlet> servlets = new ArrayList<HttpServlet>();
+	private ExecutorService executor;
+
+	/**
+	 * Creates a server on the address with a bounded pool of request threads
+	 * (the number of available processors * 2).
+	 *
+	 * @param address listen address. The port 0 means an ephemeral port.
+	 */
+	public EmbeddedServer(InetSocketAddress address) throws IOException {
+		this(address, Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * Creates a server on the address with the number of request threads.
+	 *
+	 * @param address listen address. The port 0 means an ephemeral port.
+	 * @param threads the number of request threads
+	 */
+	public EmbeddedServer(InetSocketAddress address, int threads) throws IOException {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		server = HttpServer.create(address, 0);
+
+		final AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "jsonic-http-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Replaces the executor of request threads (e.g. a virtual thread per task executor).
+	 * It must be called before start(). The specified executor is not shut down by stop().
+	 *
+	 * @param executor executor of request threads
+	 */
+	public void setExecutor(Executor executor) {
+		if (this.executor != null) {
+			this.executor.shutdown();
+			this.executor = null;
+		}
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Mounts a RPCServlet on the context path.
+	 *
+	 * @param path context path (e.g. "/rpc")
+	 * @param config the value of "config" init-param
+	 */
+	public void rpc(String path, String config) throws ServletException {
+		mount(path, new RPCServlet(), config);
+	}
+
+	/**
+	 * Mounts a RESTServlet on the context path.
+	 *
+	 * @param path context path (e.g. "/rest")
+	 * @param config the value of "config" init-param
+	 */
+	public void rest(String path, String config) throws ServletException {
+		mount(path, new RESTServlet(), config);
+	}
+
+	/**
+	 * Initializes the servlet and mounts it on the context path.
+	 *
+	 * @param path context path
+	 * @param servlet servlet
+	 * @param config the value of "config" init-param
+	 */
+	public void mount(String path, final HttpServlet servlet, String config) throws ServletException {
+		if (path == null || !path.startsWith("/")) {
+			throw new IllegalArgumentException("path must start with '/': " + path);
+		}
+		final String contextPath = (path.length() > 1 && path.endsWith("/")) ? path.substring(0, path.length()-1) : path;
+
+		Map<String, String> params = new HashMap<String, String>();
+		if (config != null) params.put("config", config);
+		servlet.init(createServletConfig(servlet.getClass().getSimpleName(), params, createServletContext(contextPath)));
+		servlets.add(servlet);
+
+		server.createContext(contextPath, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				service(servlet, contextPath.equals("/") ? "" : contextPath, exchange);
+			}
+		});
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops the server and destroys the servlets.
+	 *
+	 * @param delay the maximum time in seconds to wait until exchanges have finished
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		for (HttpServlet servlet : servlets) {
+			servlet.destroy();
+		}
+		servlets.clear();
+		if (executor != null) executor.shutdown();
+	}
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	static void service(HttpServlet servlet, String contextPath, HttpExchange exchange) throws IOException {
+		ExchangeRequest req = new ExchangeRequest(exchange, contextPath);
+		ExchangeResponse res = new ExchangeResponse(exchange);
+		try {
+			HttpServletRequest request = (HttpServletRequest)proxy(HttpServletRequest.class, req);
+			HttpServletResponse response = (HttpServletResponse)proxy(HttpServletResponse.class, res);
+			servlet.service(request, response);
+		} catch (Exception e) {
+			LOG.log(Level.SEVERE, "Fails to serve " + exchange.getRequestURI(), e);
+			res.reset();
+			res.status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+		} finally {
+			res.finish();
+		}
+	}
+
+	static ServletConfig createServletConfig(final String name, final Map<String, String> params, final ServletContext context) {
+		return (ServletConfig)proxy(ServletConfig.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String mname = method.getName();
+				if ("getServletName".equals(mname)) {
+					return name;
+				} else if ("getServletContext".equals(mname)) {
+					return context;
+				} else if ("getInitParameter".equals(mname)) {
+					return params.get(args[0]);
+				} else if ("getInitParameterNames".equals(mname)) {
+					return Collections.enumeration(params.keySet());
+				}
+				return invokeDefault(proxy, method, args);
+			}
+		});
+	}
+
+	static ServletContext createServletContext(final String contextPath) {
+		final Map<String, Object> attributes = Collections.synchronizedMap(new HashMap<String, Object>());
+		return (ServletContext)proxy(ServletContext.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String mname = method.getName();
+				if ("log".equals(mname)) {
+					if (args.length == 1) {
+						LOG.info((String)args[0]);
+					} else if (args[0] instanceof Throwable) {
+						LOG.log(Level.SEVERE, (String)args[1], (Throwable)args[0]);
+					} else {
+						LOG.log(Level.SEVERE, (String)args[0], (Throwable)args[1]);
+					}
+					return null;
+				} else if ("getContextPath".equals(mname)) {
+					return contextPath.equals("/") ? "" : contextPath;
+				} else if ("getServerInfo".equals(mname)) {
+					return "JSONIC EmbeddedServer";
+				} else if ("getMajorVersion".equals(mname)) {
+					return 2;
+				} else if ("getMinorVersion".equals(mname)) {
+					return 5;
+				} else if ("getAttribute".equals(mname)) {
+					return attributes.get(args[0]);
+				} else if ("setAttribute".equals(mname)) {
+					attributes.put((String)args[0], args[1]);
+					return null;
+				} else if ("removeAttribute".equals(mname)) {
+					attributes.remove(args[0]);
+					return null;
+				} else if ("getAttributeNames".equals(mname)) {
+					return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
+				} else if ("getInitParameterNames".equals(mname)) {
+					return Collections.enumeration(Collections.emptyList());
+				}
+				return invokeDefault(proxy, method, args);
+			}
+		});
+	}
+
+	static Object proxy(Class<?> type, InvocationHandler handler) {
+		return Proxy.newProxyInstance(EmbeddedServer.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	static Object invokeDefault(Object proxy, Method method, Object[] args) {
+		String mname = method.getName();
+		if ("hashCode".equals(mname)) {
+			return System.identityHashCode(proxy);
+		} else if ("equals".equals(mname)) {
+			return proxy == args[0];
+		} else if ("toString".equals(mname)) {
+			return proxy.getClass().getInterfaces()[0].getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+		}
+
+		Class<?> type = method.getReturnType();
+		if (!type.isPrimitive() || type == void.class) {
+			return null;
+		} else if (type == boolean.class) {
+			return false;
+		} else if (type == char.class) {
+			return '\0';
+		} else if (type == byte.class) {
+			return (byte)0;
+		} else if (type == short.class) {
+			return (short)0;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == float.class) {
+			return 0.0F;
+		} else {
+			return 0.0;
+		}
+	}
+
+	static class ExchangeRequest implements InvocationHandler {
+		private final HttpExchange exchange;
+		private final String contextPath;
+		private final Map<String, Object> attributes = new HashMap<String, Object>();
+		private String encoding;
+		private Map<String, String[]> parameters;
+		private ServletInputStream in;
+		private BufferedReader reader;
+
+		ExchangeRequest(HttpExchange exchange, String contextPath) {
+			this.exchange = exchange;
+			this.contextPath = contextPath;
+			this.encoding = getCharset(exchange.getRequestHeaders().getFirst("Content-Type"));
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String mname = method.getName();
+			Headers headers = exchange.getRequestHeaders();
+			if ("getMethod".equals(mname)) {
+				return exchange.getRequestMethod();
+			} else if ("getRequestURI".equals(mname)) {
+				return exchange.getRequestURI().getRawPath();
+			} else if ("getRequestURL".equals(mname)) {
+				return new StringBuffer("http://").append(headers.getFirst("Host")).append(exchange.getRequestURI().getRawPath());
+			} else if ("getContextPath".equals(mname)) {
+				return contextPath;
+			} else if ("getServletPath".equals(mname)) {
+				return "";
+			} else if ("getPathInfo".equals(mname)) {
+				return exchange.getRequestURI().getPath().substring(contextPath.length());
+			} else if ("getQueryString".equals(mname)) {
+				return exchange.getRequestURI().getRawQuery();
+			} else if ("getProtocol".equals(mname)) {
+				return exchange.getProtocol();
+			} else if ("getScheme".equals(mname)) {
+				return "http";
+			} else if ("getServerName".equals(mname) || "getLocalName".equals(mname)) {
+				return exchange.getLocalAddress().getHostString();
+			} else if ("getServerPort".equals(mname) || "getLocalPort".equals(mname)) {
+				return exchange.getLocalAddress().getPort();
+			} else if ("getLocalAddr".equals(mname)) {
+				return exchange.getLocalAddress().getAddress().getHostAddress();
+			} else if ("getRemoteAddr".equals(mname) || "getRemoteHost".equals(mname)) {
+				return exchange.getRemoteAddress().getAddress().getHostAddress();
+			} else if ("getRemotePort".equals(mname)) {
+				return exchange.getRemoteAddress().getPort();
+			} else if ("getHeader".equals(mname)) {
+				return headers.getFirst((String)args[0]);
+			} else if ("getHeaders".equals(mname)) {
+				List<String> values = headers.get(args[0]);
+				return Collections.enumeration((values != null) ? values : Collections.<String>emptyList());
+			} else if ("getHeaderNames".equals(mname)) {
+				return Collections.enumeration(headers.keySet());
+			} else if ("getDateHeader".equals(mname)) {
+				String value = headers.getFirst((String)args[0]);
+				if (value == null) return -1L;
+				try {
+					return createDateFormat().parse(value).getTime();
+				} catch (java.text.ParseException e) {
+					throw new IllegalArgumentException(value);
+				}
+			} else if ("getIntHeader".equals(mname)) {
+				String value = headers.getFirst((String)args[0]);
+				return (value != null) ? Integer.parseInt(value.trim()) : -1;
+			} else if ("getContentType".equals(mname)) {
+				return headers.getFirst("Content-Type");
+			} else if ("getContentLength".equals(mname)) {
+				String value = headers.getFirst("Content-Length");
+				return (value != null) ? Integer.parseInt(value.trim()) : -1;
+			} else if ("getCharacterEncoding".equals(mname)) {
+				return encoding;
+			} else if ("setCharacterEncoding".equals(mname)) {
+				if (reader == null) encoding = (String)args[0];
+				return null;
+			} else if ("getInputStream".equals(mname)) {
+				return getInputStream();
+			} else if ("getReader".equals(mname)) {
+				if (reader == null) {
+					reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), (encoding != null) ? encoding : "ISO-8859-1"));
+				}
+				return reader;
+			} else if ("getParameter".equals(mname)) {
+				String[] values = getParameters().get(args[0]);
+				return (values != null && values.length > 0) ? values[0] : null;
+			} else if ("getParameterValues".equals(mname)) {
+				return getParameters().get(args[0]);
+			} else if ("getParameterNames".equals(mname)) {
+				return Collections.enumeration(getParameters().keySet());
+			} else if ("getParameterMap".equals(mname)) {
+				return getParameters();
+			} else if ("getLocale".equals(mname)) {
+				List<Locale> locales = getLocales();
+				return locales.get(0);
+			} else if ("getLocales".equals(mname)) {
+				return Collections.enumeration(getLocales());
+			} else if ("getAttribute".equals(mname)) {
+				return attributes.get(args[0]);
+			} else if ("setAttribute".equals(mname)) {
+				attributes.put((String)args[0], args[1]);
+				return null;
+			} else if ("removeAttribute".equals(mname)) {
+				attributes.remove(args[0]);
+				return null;
+			} else if ("getAttributeNames".equals(mname)) {
+				return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
+			}
+			return invokeDefault(proxy, method, args);
+		}
+
+		private ServletInputStream getInputStream() {
+			if (in == null) {
+				final InputStream body = exchange.getRequestBody();
+				in = new ServletInputStream() {
+					@Override
+					public int read() throws IOException {
+						return body.read();
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						return body.read(b, off, len);
+					}
+				};
+			}
+			return in;
+		}
+
+		private List<Locale> getLocales() {
+			List<Locale> locales = new ArrayList<Locale>();
+			String value = exchange.getRequestHeaders().getFirst("Accept-Language");
+			if (value != null) {
+				for (String range : value.split(",")) {
+					int sep = range.indexOf(';');
+					String tag = ((sep != -1) ? range.substring(0, sep) : range).trim();
+					if (tag.length() > 0 && !tag.equals("*")) {
+						locales.add(Locale.forLanguageTag(tag));
+					}
+				}
+			}
+			if (locales.isEmpty()) locales.add(Locale.getDefault());
+			return locales;
+		}
+
+		private Map<String, String[]> getParameters() throws IOException {
+			if (parameters == null) {
+				Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+				String enc = (encoding != null) ? encoding : "UTF-8";
+				parseQuery(exchange.getRequestURI().getRawQuery(), enc, map);
+
+				String type = exchange.getRequestHeaders().getFirst("Content-Type");
+				if (reader == null && in == null && "POST".equals(exchange.getRequestMethod())
+						&& type != null && type.toLowerCase().startsWith("application/x-www-form-urlencoded")) {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					copy(getInputStream(), out);
+					parseQuery(out.toString("ISO-8859-1"), enc, map);
+				}
+
+				parameters = new LinkedHashMap<String, String[]>();
+				for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+					parameters.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+				}
+			}
+			return parameters;
+		}
+
+		private static void parseQuery(String query, String encoding, Map<String, List<String>> map) throws UnsupportedEncodingException {
+			if (query == null || query.length() == 0) return;
+
+			for (String pair : query.split("&")) {
+				if (pair.length() == 0) continue;
+				int sep = pair.indexOf('=');
+				String name = URLDecoder.decode((sep != -1) ? pair.substring(0, sep) : pair, encoding);
+				String value = (sep != -1) ? URLDecoder.decode(pair.substring(sep + 1), encoding) : "";
+				List<String> values = map.get(name);
+				if (values == null) {
+					values = new ArrayList<String>(1);
+					map.put(name, values);
+				}
+				values.add(value);
+			}
+		}
+	}
+
+	static class ExchangeResponse implements InvocationHandler {
+		private final HttpExchange exchange;
+		private final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		int status = HttpServletResponse.SC_OK;
+		private String contentType;
+		private String encoding;
+		private Locale locale;
+		private boolean committed;
+		private ServletOutputStream out;
+		private PrintWriter writer;
+
+		ExchangeResponse(HttpExchange exchange) {
+			this.exchange = exchange;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String mname = method.getName();
+			if ("setStatus".equals(mname)) {
+				if (!committed) status = (Integer)args[0];
+				return null;
+			} else if ("getStatus".equals(mname)) {
+				return status;
+			} else if ("sendError".equals(mname)) {
+				if (committed) throw new IllegalStateException("response is already committed.");
+				reset();
+				status = (Integer)args[0];
+				if (args.length > 1 && args[1] != null) {
+					contentType = "text/plain;charset=UTF-8";
+					buffer.write(((String)args[1]).getBytes("UTF-8"));
+				}
+				committed = true;
+				return null;
+			} else if ("sendRedirect".equals(mname)) {
+				if (committed) throw new IllegalStateException("response is already committed.");
+				reset();
+				status = HttpServletResponse.SC_FOUND;
+				setHeader("Location", (String)args[0], false);
+				committed = true;
+				return null;
+			} else if ("setContentType".equals(mname)) {
+				contentType = (String)args[0];
+				String charset = getCharset(contentType);
+				if (charset != null) encoding = charset;
+				return null;
+			} else if ("getContentType".equals(mname)) {
+				return contentType;
+			} else if ("setCharacterEncoding".equals(mname)) {
+				if (writer == null) encoding = (String)args[0];
+				return null;
+			} else if ("getCharacterEncoding".equals(mname)) {
+				return (encoding != null) ? encoding : "ISO-8859-1";
+			} else if ("setLocale".equals(mname)) {
+				locale = (Locale)args[0];
+				return null;
+			} else if ("getLocale".equals(mname)) {
+				return (locale != null) ? locale : Locale.getDefault();
+			} else if ("setHeader".equals(mname) || "addHeader".equals(mname)) {
+				setHeader((String)args[0], (String)args[1], mname.startsWith("add"));
+				return null;
+			} else if ("setIntHeader".equals(mname) || "addIntHeader".equals(mname)) {
+				setHeader((String)args[0], String.valueOf(args[1]), mname.startsWith("add"));
+				return null;
+			} else if ("setDateHeader".equals(mname) || "addDateHeader".equals(mname)) {
+				setHeader((String)args[0], createDateFormat().format(new Date((Long)args[1])), mname.startsWith("add"));
+				return null;
+			} else if ("containsHeader".equals(mname)) {
+				return findHeader((String)args[0]) != null;
+			} else if ("getHeader".equals(mname)) {
+				String name = findHeader((String)args[0]);
+				return (name != null) ? headers.get(name).get(0) : null;
+			} else if ("setContentLength".equals(mname) || "setBufferSize".equals(mname)) {
+				// Content-Length is computed from the buffered body.
+				return null;
+			} else if ("getOutputStream".equals(mname)) {
+				return getOutputStream();
+			} else if ("getWriter".equals(mname)) {
+				if (writer == null) {
+					writer = new PrintWriter(new OutputStreamWriter(buffer, (encoding != null) ? encoding : "ISO-8859-1"));
+				}
+				return writer;
+			} else if ("flushBuffer".equals(mname)) {
+				if (writer != null) writer.flush();
+				return null;
+			} else if ("isCommitted".equals(mname)) {
+				return committed;
+			} else if ("reset".equals(mname)) {
+				if (committed) throw new IllegalStateException("response is already committed.");
+				reset();
+				return null;
+			} else if ("resetBuffer".equals(mname)) {
+				if (committed) throw new IllegalStateException("response is already committed.");
+				if (writer != null) writer.flush();
+				buffer.reset();
+				return null;
+			} else if ("encodeURL".equals(mname) || "encodeRedirectURL".equals(mname)
+					|| "encodeUrl".equals(mname) || "encodeRedirectUrl".equals(mname)) {
+				return args[0];
+			}
+			return invokeDefault(proxy, method, args);
+		}
+
+		private ServletOutputStream getOutputStream() {
+			if (out == null) {
+				out = new ServletOutputStream() {
+					@Override
+					public void write(int b) throws IOException {
+						buffer.write(b);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						buffer.write(b, off, len);
+					}
+				};
+			}
+			return out;
+		}
+
+		private String findHeader(String name) {
+			for (String key : headers.keySet()) {
+				if (key.equalsIgnoreCase(name)) return key;
+			}
+			return null;
+		}
+
+		private void setHeader(String name, String value, boolean add) {
+			String key = findHeader(name);
+			if (key == null || !add) {
+				if (key != null) headers.remove(key);
+				key = name;
+				headers.put(key, new ArrayList<String>(1));
+			}
+			headers.get(key).add(value);
+		}
+
+		void reset() {
+			if (writer != null) writer.flush();
+			buffer.reset();
+			headers.clear();
+			status = HttpServletResponse.SC_OK;
+			contentType = null;
+		}
+
+		void finish() throws IOException {
+			try {
+				if (writer != null) writer.flush();
+
+				Headers rheaders = exchange.getResponseHeaders();
+				rheaders.putAll(headers);
+				if (contentType != null) {
+					rheaders.set("Content-Type", (writer != null && getCharset(contentType) == null)
+							? contentType + ";charset=" + encoding : contentType);
+				}
+
+				int length = buffer.size();
+				if (length == 0 || "HEAD".equals(exchange.getRequestMethod())
+						|| status == HttpServletResponse.SC_NO_CONTENT || status == HttpServletResponse.SC_NOT_MODIFIED) {
+					exchange.sendResponseHeaders(status, -1);
+				} else {
+					exchange.sendResponseHeaders(status, length);
+					OutputStream body = exchange.getResponseBody();
+					buffer.writeTo(body);
+					body.close();
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	static String getCharset(String contentType) {
+		if (contentType == null) return null;
+
+		for (String param : contentType.split(";")) {
+			param = param.trim();
+			if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+				String value = param.substring(8).trim();
+				if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+					value = value.substring(1, value.length()-1);
+				}
+				return value;
+			}
+		}
+		return null;
+	}
+
+	static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			out.write(buf, 0, n);
+		}
+	}
+
+	static SimpleDateFormat createDateFormat() {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format;
+	}
+}
@@ -15,20 +15,36 @@
  */
 package net.arnx.jsonic.web;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -36,10 +52,12 @@ import javax.servlet.FilterConfig;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 
@@ -49,12 +67,27 @@ import net.arnx.jsonic.JSON;
 public class GatewayFilter implements Filter {
 	public static final String GATEWAY_KEY = Config.class.getName();
 	
+	static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+	static final int DEFAULT_COMPRESSION_BUFFER = 8192;
+	static final int DEFAULT_DECOMPRESSION_LIMIT = 8 * 1024 * 1024;
+	private static final int DEFLATER_POOL_SIZE = 32;
+	
 	Map<Pattern, Config> locations = new LinkedHashMap<Pattern, Config>();
+	Pattern[] patterns;
+	Config[] configs;
+	RouteIndex routes;
 	ServletContext context;
 	
+	// deflaters are reused for each compression level.
+	final ConcurrentMap<Integer, BlockingQueue<Deflater>> deflaters = new ConcurrentHashMap<Integer, BlockingQueue<Deflater>>();
+	
 	class Config {
 		public String encoding = null;
 		public Boolean compression = false;
+		public Integer compressionThreshold = null;
+		public Integer compressionLevel = null;
+		public Integer compressionBuffer = null;
+		public Integer decompressionLimit = null;
 		public Boolean expire = false;
 		public String forward = null;
 		public Set<String> access = null;
@@ -92,6 +125,26 @@ public class GatewayFilter implements Filter {
 			}
 		}
 		locations.put(Pattern.compile(".*"), base);
+		
+		patterns = locations.keySet().toArray(new Pattern[locations.size()]);
+		configs = locations.values().toArray(new Config[locations.size()]);
+		routes = new RouteIndex(Arrays.asList(patterns));
+		
+		for (Config config : configs) {
+			if (config.compressionLevel != null && (config.compressionLevel < Deflater.DEFAULT_COMPRESSION
+					|| config.compressionLevel > Deflater.BEST_COMPRESSION)) {
+				throw new ServletException("compressionLevel must be -1 to 9: " + config.compressionLevel);
+			}
+			if (config.compressionThreshold != null && config.compressionThreshold < 0) {
+				throw new ServletException("compressionThreshold must not be negative: " + config.compressionThreshold);
+			}
+			if (config.compressionBuffer != null && config.compressionBuffer <= 0) {
+				throw new ServletException("compressionBuffer must be positive: " + config.compressionBuffer);
+			}
+			if (config.decompressionLimit != null && config.decompressionLimit <= 0) {
+				throw new ServletException("decompressionLimit must be positive: " + config.decompressionLimit);
+			}
+		}
 	}
 
 	public void doFilter(ServletRequest request, ServletResponse response, 
@@ -116,17 +169,8 @@ public class GatewayFilter implements Filter {
 				request.getRequestURI() : 
 				request.getRequestURI().substring(request.getContextPath().length());
 		
-		Matcher matcher = null;
-		Config config = null;
-		for (Map.Entry<Pattern, Config> entry : locations.entrySet()) {
-			Pattern pattern = entry.getKey();
-			Matcher m = pattern.matcher(path);
-			if (m.matches()) {
-				matcher = m;
-				config = entry.getValue();
-				break;
-			}
-		}
+		int index = routes.find(path);
+		Config config = configs[index];
 		
 		URI dest = null;
 		// access check
@@ -163,15 +207,39 @@ public class GatewayFilter implements Filter {
 			response.setHeader("Expires", "Tue, 29 Feb 2000 12:00:00 GMT");
 		}
 		
+		// decompress gzip request body
+		String contentEncoding = request.getHeader("Content-Encoding");
+		if (contentEncoding != null && (contentEncoding.trim().equalsIgnoreCase("gzip")
+				|| contentEncoding.trim().equalsIgnoreCase("x-gzip"))) {
+			byte[] body;
+			try {
+				body = GZIPRequest.inflate(request.getInputStream(),
+						(config.decompressionLimit != null) ? config.decompressionLimit : DEFAULT_DECOMPRESSION_LIMIT);
+			} catch (ZipException e) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Bad Request");
+				return;
+			} catch (EOFException e) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Bad Request");
+				return;
+			}
+			if (body == null) {
+				response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request Entity Too Large");
+				return;
+			}
+			request = new GZIPRequest(request, body);
+		}
+		
 		// set gzip filter
 		if (config.compression != null && config.compression) {
+			response.addHeader("Vary", "Accept-Encoding");
 			Enumeration<String> e = request.getHeaders("Accept-Encoding");
 			while (e.hasMoreElements()) {
 				String header = e.nextElement();
 				if (header.indexOf("gzip") != -1) {
-					response.setHeader("Content-Encoding",
-							(header.indexOf("x-gzip") != -1) ? "x-gzip" : "gzip");
-					response = new GZIPResponse(response);
+					response = new GZIPResponse(response, (header.indexOf("x-gzip") != -1) ? "x-gzip" : "gzip",
+							(config.compressionThreshold != null) ? config.compressionThreshold : DEFAULT_COMPRESSION_THRESHOLD,
+							(config.compressionLevel != null) ? config.compressionLevel : Deflater.DEFAULT_COMPRESSION,
+							(config.compressionBuffer != null) ? config.compressionBuffer : DEFAULT_COMPRESSION_BUFFER);
 					break;
 				}
 			}
@@ -180,7 +248,7 @@ public class GatewayFilter implements Filter {
 		// forward
 		if (config.forward != null) {
 			try {
-				dest = new URI(matcher.replaceAll(config.forward));
+				dest = new URI(patterns[index].matcher(path).replaceAll(config.forward));
 			} catch (URISyntaxException e) {
 				throw new ServletException(e);
 			}
@@ -188,61 +256,88 @@ public class GatewayFilter implements Filter {
 		
 		request.setAttribute(GATEWAY_KEY, config);
 		
-		if (dest != null) {
-			RequestDispatcher dispatcher = context.getRequestDispatcher(dest.toString());
-			dispatcher.forward(request, response);
-		} else {
-			chain.doFilter(request, response);
+		boolean done = false;
+		try {
+			if (dest != null) {
+				RequestDispatcher dispatcher = context.getRequestDispatcher(dest.toString());
+				dispatcher.forward(request, response);
+			} else {
+				chain.doFilter(request, response);
+			}
+			done = true;
+		} finally {
+			// the pooled deflater must not leak when the chain fails.
+			if (!done && response instanceof GZIPResponse) {
+				((GZIPResponse)response).release();
+			}
 		}
 
-		if (response instanceof GZIPResponse) {
+		// the asynchronous response is closed when it is completed.
+		if (response instanceof GZIPResponse && !AsyncSupport.isAsyncStarted(request)) {
 			((GZIPResponse)response).close();
 		}
 	}
 	
 	public void destroy() {
 		locations = null;
+		patterns = null;
+		configs = null;
+		routes = null;
+		
+		for (BlockingQueue<Deflater> pool : deflaters.values()) {
+			Deflater deflater;
+			while ((deflater = pool.poll()) != null) {
+				deflater.end();
+			}
+		}
+		deflaters.clear();
+	}
+	
+	Deflater getDeflater(int level) {
+		BlockingQueue<Deflater> pool = deflaters.get(level);
+		Deflater deflater = (pool != null) ? pool.poll() : null;
+		return (deflater != null) ? deflater : new Deflater(level, true);
+	}
+	
+	void releaseDeflater(int level, Deflater deflater) {
+		BlockingQueue<Deflater> pool = deflaters.get(level);
+		if (pool == null) {
+			pool = new ArrayBlockingQueue<Deflater>(DEFLATER_POOL_SIZE);
+			BlockingQueue<Deflater> current = deflaters.putIfAbsent(level, pool);
+			if (current != null) pool = current;
+		}
+		
+		deflater.reset();
+		if (!pool.offer(deflater)) {
+			deflater.end();
+		}
 	}
 	
+	/**
+	 * Compresses the body if it is larger than the threshold.
+	 * The smaller body is sent as is, with Content-Length.
+	 */
 	class GZIPResponse extends HttpServletResponseWrapper {
-		ServletOutputStream out = null;
+		final String encoding;
+		final int threshold;
+		final int level;
+		final int bufferSize;
+		
+		GZIPOutput out = null;
 		PrintWriter writer = null;
 		
-		public GZIPResponse(HttpServletResponse response) {
+		public GZIPResponse(HttpServletResponse response, String encoding, int threshold, int level, int bufferSize) {
 			super(response);
+			this.encoding = encoding;
+			this.threshold = threshold;
+			this.level = level;
+			this.bufferSize = bufferSize;
 		}
 		
 		@Override
 		public ServletOutputStream getOutputStream() throws IOException {
 			if (out == null) {
-				out = new ServletOutputStream() {
-					GZIPOutputStream cout = new GZIPOutputStream(GZIPResponse.super.getOutputStream());
-					
-					@Override
-					public void write(byte[] b, int off, int len) throws IOException {
-						cout.write(b, off, len);
-					}
-					
-					@Override
-					public void write(byte[] b) throws IOException {
-						cout.write(b);
-					}
-
-					@Override
-					public void write(int b) throws IOException {
-						cout.write(b);
-					}
-					
-					@Override
-					public void flush() throws IOException {
-						cout.flush();
-					}
-					
-					@Override
-					public void close() throws IOException {
-						cout.close();
-					}
-				};
+				out = new GZIPOutput();
 			}
 			return out;
 		}
@@ -254,7 +349,31 @@ public class GatewayFilter implements Filter {
 			}
 			return writer;
 		}
-
+		
+		@Override
+		public void setContentLength(int len) {
+			// the length is known when the body is closed.
+		}
+		
+		@Override
+		public void flushBuffer() throws IOException {
+			if (writer != null) writer.flush();
+			// the headers are not committed until it is decided whether to compress.
+			if (out == null || out.cout != null) super.flushBuffer();
+		}
+		
+		@Override
+		public void resetBuffer() {
+			super.resetBuffer();
+			if (out != null) out.resetBuffer();
+		}
+		
+		@Override
+		public void reset() {
+			super.reset();
+			if (out != null) out.resetBuffer();
+		}
+		
 		public void close() throws IOException {
 			if (writer != null) {
 				writer.flush();
@@ -264,5 +383,282 @@ public class GatewayFilter implements Filter {
 				out.close();
 			}
 		}
+		
+		/**
+		 * Returns the deflater to the pool without finishing the body.
+		 * The response is not written any more.
+		 */
+		void release() {
+			if (out != null) out.release();
+		}
+		
+		class GZIPOutput extends ServletOutputStream {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.min(threshold, bufferSize));
+			GZIPStream cout;
+			Deflater deflater;
+			boolean closed;
+			
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte)b }, 0, 1);
+			}
+			
+			@Override
+			public void write(byte[] b) throws IOException {
+				write(b, 0, b.length);
+			}
+			
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if (closed) throw new IOException("stream is already closed.");
+				
+				if (cout != null) {
+					cout.write(b, off, len);
+					return;
+				}
+				
+				buffer.write(b, off, len);
+				if (buffer.size() >= threshold) {
+					startCompression();
+				}
+			}
+			
+			void startCompression() throws IOException {
+				GZIPResponse.super.setHeader("Content-Encoding", encoding);
+				deflater = getDeflater(level);
+				cout = new GZIPStream(GZIPResponse.super.getOutputStream(), deflater, bufferSize);
+				buffer.writeTo(cout);
+				buffer = null;
+			}
+			
+			void resetBuffer() {
+				if (buffer != null) buffer.reset();
+			}
+			
+			@Override
+			public void flush() throws IOException {
+				if (!closed && cout != null) cout.flush();
+			}
+			
+			void release() {
+				if (closed) return;
+				closed = true;
+				
+				if (deflater != null) {
+					releaseDeflater(level, deflater);
+					deflater = null;
+				}
+			}
+			
+			@Override
+			public void close() throws IOException {
+				if (closed) return;
+				closed = true;
+				
+				if (cout != null) {
+					try {
+						cout.close();
+					} finally {
+						releaseDeflater(level, deflater);
+						deflater = null;
+					}
+				} else {
+					if (buffer.size() > 0) {
+						if (!isCommitted()) GZIPResponse.super.setContentLength(buffer.size());
+						buffer.writeTo(GZIPResponse.super.getOutputStream());
+					}
+					GZIPResponse.super.getOutputStream().close();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * GZIP stream with the given Deflater (nowrap), which is not ended on close.
+	 */
+	static class GZIPStream extends DeflaterOutputStream {
+		private static final byte[] HEADER = { 0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+		
+		private final CRC32 crc = new CRC32();
+		
+		public GZIPStream(OutputStream out, Deflater deflater, int size) throws IOException {
+			super(out, deflater, size, true);
+			out.write(HEADER);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			super.write(b, off, len);
+			crc.update(b, off, len);
+		}
+		
+		@Override
+		public void finish() throws IOException {
+			if (def.finished()) return;
+			
+			super.finish();
+			writeInt((int)crc.getValue());
+			writeInt((int)def.getBytesRead());
+		}
+		
+		private void writeInt(int i) throws IOException {
+			out.write(i & 0xFF);
+			out.write((i >> 8) & 0xFF);
+			out.write((i >> 16) & 0xFF);
+			out.write((i >> 24) & 0xFF);
+		}
+	}
+	
+	/**
+	 * Provides the request body sent with Content-Encoding: gzip, which is decompressed by inflate.
+	 */
+	static class GZIPRequest extends HttpServletRequestWrapper {
+		// flags of the gzip header (RFC 1952)
+		private static final int FHCRC = 2;
+		private static final int FEXTRA = 4;
+		private static final int FNAME = 8;
+		private static final int FCOMMENT = 16;
+		
+		private final byte[] body;
+		private ServletInputStream in;
+		private BufferedReader reader;
+		
+		public GZIPRequest(HttpServletRequest request, byte[] body) {
+			super(request);
+			this.body = body;
+		}
+		
+		/**
+		 * Decompresses the gzip stream. The decompression stops as soon as
+		 * the decompressed size exceeds the limit, so a small gzip bomb can not exhaust the memory.
+		 * The inflater holds native memory, so it is created here and ended before returning.
+		 * Only the first member of the gzip stream is read.
+		 *
+		 * @param in the gzip stream
+		 * @param limit the maximum size of the decompressed body
+		 * @return the decompressed body, or null if it exceeds the limit.
+		 */
+		static byte[] inflate(InputStream in, int limit) throws IOException {
+			byte[] buf = new byte[DEFAULT_COMPRESSION_BUFFER];
+			readHeader(in, buf);
+			
+			Inflater inflater = new Inflater(true);
+			try {
+				CRC32 crc = new CRC32();
+				ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(limit, DEFAULT_COMPRESSION_BUFFER));
+				byte[] data = new byte[DEFAULT_COMPRESSION_BUFFER];
+				int len = 0;
+				while (!inflater.finished()) {
+					if (inflater.needsInput()) {
+						len = in.read(buf);
+						if (len == -1) throw new EOFException("Unexpected end of gzip stream");
+						inflater.setInput(buf, 0, len);
+					}
+					int n = inflater.inflate(data, 0, Math.min(data.length, limit - out.size() + 1));
+					if (n == 0 && inflater.needsDictionary()) {
+						throw new ZipException("Preset dictionary is not supported");
+					}
+					crc.update(data, 0, n);
+					out.write(data, 0, n);
+					if (out.size() > limit) return null;
+				}
+				
+				// the trailer is CRC32 and ISIZE, and it may be partly in the last input.
+				byte[] trailer = new byte[8];
+				int remaining = Math.min(inflater.getRemaining(), trailer.length);
+				System.arraycopy(buf, len - inflater.getRemaining(), trailer, 0, remaining);
+				readFully(in, trailer, remaining, trailer.length - remaining);
+				if (readInt(trailer, 0) != (int)crc.getValue() || readInt(trailer, 4) != (int)inflater.getBytesWritten()) {
+					throw new ZipException("Corrupt gzip trailer");
+				}
+				return out.toByteArray();
+			} catch (DataFormatException e) {
+				throw new ZipException(e.getMessage());
+			} finally {
+				inflater.end();
+			}
+		}
+		
+		private static void readHeader(InputStream in, byte[] buf) throws IOException {
+			readFully(in, buf, 0, 10);
+			if (buf[0] != 0x1f || buf[1] != (byte)0x8b || buf[2] != Deflater.DEFLATED) {
+				throw new ZipException("Not in gzip format");
+			}
+			int flags = buf[3];
+			if ((flags & FEXTRA) != 0) {
+				readFully(in, buf, 0, 2);
+				skipFully(in, (buf[0] & 0xFF) | ((buf[1] & 0xFF) << 8));
+			}
+			if ((flags & FNAME) != 0) skipString(in);
+			if ((flags & FCOMMENT) != 0) skipString(in);
+			if ((flags & FHCRC) != 0) skipFully(in, 2);
+		}
+		
+		private static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int n = in.read(b, off, len);
+				if (n == -1) throw new EOFException("Unexpected end of gzip stream");
+				off += n;
+				len -= n;
+			}
+		}
+		
+		private static void skipFully(InputStream in, int len) throws IOException {
+			for (int i = 0; i < len; i++) {
+				if (in.read() == -1) throw new EOFException("Unexpected end of gzip stream");
+			}
+		}
+		
+		private static void skipString(InputStream in) throws IOException {
+			int c;
+			while ((c = in.read()) != 0) {
+				if (c == -1) throw new EOFException("Unexpected end of gzip stream");
+			}
+		}
+		
+		private static int readInt(byte[] b, int off) {
+			return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+		}
+		
+		@Override
+		public ServletInputStream getInputStream() throws IOException {
+			if (in == null) {
+				final InputStream bin = new ByteArrayInputStream(body);
+				in = new ServletInputStream() {
+					@Override
+					public int read() throws IOException {
+						return bin.read();
+					}
+					
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						return bin.read(b, off, len);
+					}
+				};
+			}
+			return in;
+		}
+		
+		@Override
+		public BufferedReader getReader() throws IOException {
+			if (reader == null) {
+				String encoding = getCharacterEncoding();
+				reader = new BufferedReader(new InputStreamReader(getInputStream(), (encoding != null) ? encoding : "ISO-8859-1"));
+			}
+			return reader;
+		}
+		
+		@Override
+		public int getContentLength() {
+			return body.length;
+		}
+		
+		@Override
+		public String getHeader(String name) {
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				return String.valueOf(body.length);
+			}
+			return ("Content-Encoding".equalsIgnoreCase(name)) ? null : super.getHeader(name);
+		}
 	}
 }
@@ -0,0 +1,432 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.web;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Reads the request body with Servlet 3.1 ReadListener and writes the response body
+ * with WriteListener, so that slow clients do not occupy container threads.
+ *
+ * The body is buffered, and the handler is called only when the whole body is read.
+ * The buffered body is limited to Container.nonBlockingMaxSize bytes, and a larger request is
+ * rejected with 413. The handler writes to a buffer, which is flushed when the exchange is finished.
+ * Both buffers are handed over without copying. Servlet 3.1 API is used through reflection.
+ */
+final class NonBlockingExchange {
+	static final String EXCHANGE_KEY = NonBlockingExchange.class.getName();
+
+	private static final int CHUNK_SIZE = 8192;
+
+	interface Handler {
+		void handle(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException;
+	}
+
+	private final Container container;
+	private final HttpServletRequest request;
+	private final HttpServletResponse response;
+	private final Object asyncContext;
+	private final Handler handler;
+
+	private final Buffer body = new Buffer();
+	private final byte[] buf = new byte[CHUNK_SIZE];
+	private final AtomicBoolean finished = new AtomicBoolean();
+	private BufferedResponse buffered;
+
+	private Buffer output;
+	private int pos;
+
+	private NonBlockingExchange(Container container, HttpServletRequest request, HttpServletResponse response,
+			Object asyncContext, Handler handler) {
+		this.container = container;
+		this.request = request;
+		this.response = response;
+		this.asyncContext = asyncContext;
+		this.handler = handler;
+	}
+
+	static boolean isSupported() {
+		return Servlet31.SET_READ_LISTENER != null;
+	}
+
+	/**
+	 * Starts reading the body in the background.
+	 *
+	 * @return false if non-blocking I/O is not available. In this case, nothing is done.
+	 */
+	static boolean start(Container container, HttpServletRequest request, HttpServletResponse response, Handler handler) throws IOException {
+		if (!isSupported()) return false;
+		// the decompressing stream does not support ReadListener.
+		if (request instanceof GatewayFilter.GZIPRequest) return false;
+
+		Object asyncContext = AsyncSupport.startAsync(request);
+		if (asyncContext == null) return false;
+
+		receive(container, request, response, asyncContext, handler);
+		return true;
+	}
+
+	/**
+	 * Receives the body from the stream of the asynchronous context already started.
+	 * If ReadListener is not available, the body is read on the current thread.
+	 */
+	static void receive(Container container, HttpServletRequest request, HttpServletResponse response,
+			Object asyncContext, Handler handler) throws IOException {
+		new NonBlockingExchange(container, request, response, asyncContext, handler).receive(request.getInputStream());
+	}
+
+	private void receive(final ServletInputStream in) throws IOException {
+		if (isTooLarge(request.getContentLength())) {
+			reject();
+			return;
+		}
+
+		try {
+			Servlet31.SET_READ_LISTENER.invoke(in, listener(Servlet31.READ_LISTENER, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					String name = method.getName();
+					if ("onDataAvailable".equals(name)) {
+						read(in);
+					} else if ("onAllDataRead".equals(name)) {
+						if (!finished.get()) dispatch();
+					} else if ("onError".equals(name)) {
+						fail((Throwable)args[0]);
+					}
+					return null;
+				}
+			}));
+		} catch (Exception e) {
+			// reads the body on the current thread instead.
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				body.write(buf, 0, n);
+				if (isTooLarge(body.size())) {
+					reject();
+					return;
+				}
+			}
+			dispatch();
+		}
+	}
+
+	private void read(ServletInputStream in) throws Exception {
+		while (!finished.get() && isTrue(Servlet31.INPUT_IS_READY.invoke(in)) && !isTrue(Servlet31.IS_FINISHED.invoke(in))) {
+			int n = in.read(buf);
+			if (n == -1) break;
+			body.write(buf, 0, n);
+			if (isTooLarge(body.size())) {
+				reject();
+				return;
+			}
+		}
+	}
+
+	private boolean isTooLarge(long size) {
+		return container.nonBlockingMaxSize > 0 && size > container.nonBlockingMaxSize;
+	}
+
+	private void reject() {
+		try {
+			if (!response.isCommitted()) response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request Entity Too Large");
+		} catch (IOException e) {
+			// no handle
+		}
+		complete();
+	}
+
+	private void dispatch() {
+		buffered = new BufferedResponse(response);
+		request.setAttribute(EXCHANGE_KEY, this);
+		try {
+			handler.handle(new BufferedRequest(request, body), buffered);
+		} catch (Exception e) {
+			fail(e);
+			return;
+		}
+
+		// finishes here unless the handler has taken over the exchange as an asynchronous context.
+		if (request.getAttribute(EXCHANGE_KEY) != null) {
+			request.removeAttribute(EXCHANGE_KEY);
+			finish();
+		}
+	}
+
+	private void fail(Throwable t) {
+		container.error("Fails to process the non-blocking request.", t);
+		try {
+			if (!response.isCommitted()) response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal Server Error");
+		} catch (IOException e) {
+			// no handle
+		}
+		complete();
+	}
+
+	/**
+	 * Writes the buffered response and completes the asynchronous context.
+	 */
+	void finish() {
+		if (buffered == null || finished.get()) {
+			complete();
+			return;
+		}
+
+		try {
+			output = buffered.getBuffer();
+			if (output.size() == 0 || response.isCommitted()) {
+				complete();
+				return;
+			}
+
+			final ServletOutputStream out = response.getOutputStream();
+			if (Servlet31.SET_WRITE_LISTENER == null || response instanceof HttpServletResponseWrapper) {
+				// wrapped streams (e.g. GatewayFilter's gzip) may not support non-blocking I/O.
+				output.writeTo(out);
+				out.close();
+				complete();
+				return;
+			}
+
+			response.setContentLength(output.size());
+			Servlet31.SET_WRITE_LISTENER.invoke(out, listener(Servlet31.WRITE_LISTENER, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					String name = method.getName();
+					if ("onWritePossible".equals(name)) {
+						write(out);
+					} else if ("onError".equals(name)) {
+						container.error("Fails to write the non-blocking response.", (Throwable)args[0]);
+						complete();
+					}
+					return null;
+				}
+			}));
+		} catch (Exception e) {
+			container.error("Fails to write the non-blocking response.", e);
+			complete();
+		}
+	}
+
+	private void write(ServletOutputStream out) throws Exception {
+		while (isTrue(Servlet31.OUTPUT_IS_READY.invoke(out))) {
+			if (pos >= output.size()) {
+				complete();
+				return;
+			}
+			int len = Math.min(CHUNK_SIZE, output.size() - pos);
+			out.write(output.array(), pos, len);
+			pos += len;
+		}
+	}
+
+	private void complete() {
+		if (finished.compareAndSet(false, true)) {
+			AsyncSupport.complete(asyncContext);
+		}
+	}
+
+	private static boolean isTrue(Object o) {
+		return Boolean.TRUE.equals(o);
+	}
+
+	private static Object listener(Class<?> type, final InvocationHandler handler) {
+		return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getDeclaringClass() == Object.class) {
+					if ("equals".equals(method.getName())) return proxy == args[0];
+					if ("hashCode".equals(method.getName())) return System.identityHashCode(proxy);
+					return "NonBlockingExchange$Listener";
+				}
+				return handler.invoke(proxy, method, args);
+			}
+		});
+	}
+
+	/**
+	 * ByteArrayOutputStream which gives its internal array without copying.
+	 */
+	static class Buffer extends ByteArrayOutputStream {
+		byte[] array() {
+			return buf;
+		}
+	}
+
+	static class BufferedRequest extends HttpServletRequestWrapper {
+		private final Buffer body;
+		private ServletInputStream in;
+		private BufferedReader reader;
+
+		public BufferedRequest(HttpServletRequest request, Buffer body) {
+			super(request);
+			this.body = body;
+		}
+
+		@Override
+		public ServletInputStream getInputStream() throws IOException {
+			if (in == null) {
+				in = new ServletInputStream() {
+					ByteArrayInputStream bin = new ByteArrayInputStream(body.array(), 0, body.size());
+
+					@Override
+					public int read() throws IOException {
+						return bin.read();
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						return bin.read(b, off, len);
+					}
+				};
+			}
+			return in;
+		}
+
+		@Override
+		public BufferedReader getReader() throws IOException {
+			if (reader == null) {
+				String encoding = getCharacterEncoding();
+				reader = new BufferedReader(new InputStreamReader(getInputStream(), (encoding != null) ? encoding : "ISO-8859-1"));
+			}
+			return reader;
+		}
+
+		@Override
+		public int getContentLength() {
+			return body.size();
+		}
+	}
+
+	static class BufferedResponse extends HttpServletResponseWrapper {
+		private final Buffer buffer = new Buffer();
+		private ServletOutputStream out;
+		private PrintWriter writer;
+
+		public BufferedResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (out == null) {
+				out = new ServletOutputStream() {
+					@Override
+					public void write(int b) throws IOException {
+						buffer.write(b);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						buffer.write(b, off, len);
+					}
+				};
+			}
+			return out;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			if (writer != null) writer.flush();
+		}
+
+		@Override
+		public void resetBuffer() {
+			buffer.reset();
+			super.resetBuffer();
+		}
+
+		@Override
+		public void reset() {
+			buffer.reset();
+			super.reset();
+		}
+
+		byte[] toByteArray() {
+			return getBuffer().toByteArray();
+		}
+
+		Buffer getBuffer() {
+			if (writer != null) writer.flush();
+			return buffer;
+		}
+	}
+
+	private static class Servlet31 {
+		static final Class<?> READ_LISTENER;
+		static final Class<?> WRITE_LISTENER;
+		static final Method SET_READ_LISTENER;
+		static final Method INPUT_IS_READY;
+		static final Method IS_FINISHED;
+		static final Method SET_WRITE_LISTENER;
+		static final Method OUTPUT_IS_READY;
+
+		static {
+			Class<?> readListener = null;
+			Class<?> writeListener = null;
+			Method setReadListener = null;
+			Method inputIsReady = null;
+			Method isFinished = null;
+			Method setWriteListener = null;
+			Method outputIsReady = null;
+			try {
+				ClassLoader loader = ServletInputStream.class.getClassLoader();
+				readListener = Class.forName("javax.servlet.ReadListener", false, loader);
+				writeListener = Class.forName("javax.servlet.WriteListener", false, loader);
+				inputIsReady = ServletInputStream.class.getMethod("isReady");
+				isFinished = ServletInputStream.class.getMethod("isFinished");
+				outputIsReady = ServletOutputStream.class.getMethod("isReady");
+				setWriteListener = ServletOutputStream.class.getMethod("setWriteListener", writeListener);
+				setReadListener = ServletInputStream.class.getMethod("setReadListener", readListener);
+			} catch (Exception e) {
+				setReadListener = null;
+				setWriteListener = null;
+			}
+			READ_LISTENER = readListener;
+			WRITE_LISTENER = writeListener;
+			SET_READ_LISTENER = setReadListener;
+			INPUT_IS_READY = inputIsReady;
+			IS_FINISHED = isFinished;
+			SET_WRITE_LISTENER = setWriteListener;
+			OUTPUT_IS_READY = outputIsReady;
+		}
+	}
+}
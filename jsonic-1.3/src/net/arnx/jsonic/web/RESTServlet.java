@@ -16,11 +16,16 @@
 package net.arnx.jsonic.web;
 
 import java.io.IOException;
+import java.io.PushbackReader;
 import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
@@ -30,9 +35,14 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.management.JMException;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -40,9 +50,12 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import net.arnx.jsonic.JSON;
+import net.arnx.jsonic.JSONEventType;
 import net.arnx.jsonic.JSONException;
 import net.arnx.jsonic.JSONHint;
+import net.arnx.jsonic.JSONReader;
 import net.arnx.jsonic.util.ClassUtil;
+import net.arnx.jsonic.util.FormatCache;
 
 import static javax.servlet.http.HttpServletResponse.*;
 import static net.arnx.jsonic.web.Container.*;
@@ -73,13 +86,20 @@ public class RESTServlet extends HttpServlet {
 
 		public Map<String, Pattern> definitions;
 		public Map<String, Integer> errors;
+		public Map<String, ConcurrencyLimit> limits;
 		public Map<String, String> method;
 		public Set<String> verb;
+		public boolean metrics = false;
+		public String metricsPath;
+		public Set<String> metricsAccess;
 	}
 
 	protected Container container;
 
 	Config config;
+	RouteMapping[] mappings;
+	RouteIndex routes;
+	WebMetrics metrics;
 
 	@Override
 	public void init(ServletConfig servletConfig) throws ServletException {
@@ -112,6 +132,15 @@ public class RESTServlet extends HttpServlet {
 
 		if (config.errors == null) config.errors = Collections.emptyMap();
 
+		if (config.limits == null) config.limits = Collections.emptyMap();
+		try {
+			for (Map.Entry<String, ConcurrencyLimit> entry : config.limits.entrySet()) {
+				entry.getValue().init(entry.getKey());
+			}
+		} catch (IllegalArgumentException e) {
+			throw new ServletException(e);
+		}
+
 		if (config.method == null) config.method = DEFAULT_METHOD;
 		if (config.verb == null) config.verb = DEFAULT_VERB;
 
@@ -119,8 +148,45 @@ public class RESTServlet extends HttpServlet {
 		for (Map.Entry<String, RouteMapping> entry : config.mappings.entrySet()) {
 			entry.getValue().init(entry.getKey(), config);
 		}
+
+		mappings = config.mappings.values().toArray(new RouteMapping[config.mappings.size()]);
+		List<Pattern> patterns = new ArrayList<Pattern>(mappings.length);
+		List<String> targets = new ArrayList<String>(mappings.length);
+		for (RouteMapping mapping : mappings) {
+			patterns.add(mapping.pattern);
+			targets.add(mapping.target);
+		}
+		routes = new RouteIndex(patterns);
+		container.warmup(targets);
+
+		if (config.metrics || config.metricsPath != null) {
+			metrics = new WebMetrics();
+			if (container.jmx) {
+				try {
+					metrics.register((getServletName() != null) ? getServletName() : getClass().getSimpleName());
+				} catch (JMException e) {
+					container.error("failed to register WebMetrics MBean.", e);
+				}
+			}
+		}
+		if (container.jmx && !config.limits.isEmpty()) {
+			try {
+				ConcurrencyLimit.register((getServletName() != null) ? getServletName() : getClass().getSimpleName(),
+						config.limits.values());
+			} catch (JMException e) {
+				container.error("failed to register ConcurrencyLimit MBeans.", e);
+			}
+		}
+		AsyncSupport.retain();
 	}
 
+	final NonBlockingExchange.Handler handler = new NonBlockingExchange.Handler() {
+		@Override
+		public void handle(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+			doREST(request, response);
+		}
+	};
+
 	@Override
 	protected void doHead(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
@@ -130,18 +196,28 @@ public class RESTServlet extends HttpServlet {
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
+		if (metrics != null && config.metricsPath != null && config.metricsPath.equals(getPath(request))) {
+			metrics.write(request, response, config.metricsAccess);
+			return;
+		}
 		doREST(request, response);
 	}
 
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
+		if (container.nonBlocking && NonBlockingExchange.start(container, request, response, handler)) {
+			return;
+		}
 		doREST(request, response);
 	}
 
 	@Override
 	protected void doPut(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
+		if (container.nonBlocking && NonBlockingExchange.start(container, request, response, handler)) {
+			return;
+		}
 		doREST(request, response);
 	}
 
@@ -160,24 +236,47 @@ public class RESTServlet extends HttpServlet {
 	protected void doREST(HttpServletRequest request, HttpServletResponse response)
 		throws ServletException, IOException {
 
+		WebMetrics.Sample sample = null;
+		if (metrics != null) {
+			sample = WebMetrics.getSample(request);
+			if (sample == null) {
+				sample = metrics.start(request, response);
+				try {
+					doREST(request, sample.getResponse());
+				} finally {
+					sample.end();
+				}
+				return;
+			}
+		}
+
 		int status = SC_OK;
 		JSON json = null;
 		String callback = null;
 		Object result = null;
+		boolean conditional = false;
+		Object version = null;
+		ConcurrencyLimit limit = null;
+		boolean async = false;
 
 		try {
 			ExternalContext.start(getServletConfig(), getServletContext(), request, response);
 			container.start(request, response);
 
-			String uri = (request.getContextPath().equals("/")) ?
-					request.getRequestURI() :
-					request.getRequestURI().substring(request.getContextPath().length());
+			String uri = getPath(request);
 
 			Route route = null;
-			for (RouteMapping m : config.mappings.values()) {
-				if ((route = m.matches(request, uri)) != null) {
-					container.debug("Route found: " + request.getMethod() + " " + uri);
-					break;
+			RouteIndex.Match match = routes.match(uri);
+			int index = (match != null) ? match.index : -1;
+			if (index != -1 && (route = mappings[index].matches(request, match.result)) != null) {
+				container.debug("Route found: " + request.getMethod() + " " + uri);
+			}
+			if (sample != null) {
+				sample.mark(WebMetrics.MATCH);
+				if (route != null) {
+					String path = mappings[index].path;
+					sample.setEntries(metrics.getEntry(path),
+							(route.getHttpMethod() != null) ? metrics.getEntry(path + " " + route.getHttpMethod()) : null);
 				}
 			}
 
@@ -200,103 +299,99 @@ public class RESTServlet extends HttpServlet {
 
 			json = container.createJSON(request.getLocale());
 
+			// the rejection is handled by handleException as same as the limit of components.
+			if (mappings[index].limit != null) {
+				mappings[index].limit.enter();
+				limit = mappings[index].limit;
+			}
+
 			String className = route.getComponentClass(container);
 			Object component = container.getComponent(className);
 			if (component == null) {
 				throw new ClassNotFoundException("Component not found: " + className);
 			}
+			if (sample != null) sample.mark(WebMetrics.RESOLVE);
 
 			List<Object> params = null;
+			Method method = null;
+			Object[] args = null;
 			if (isJSONType(request.getContentType())) {
-				Object o = json.parse(request.getReader());
-				if (o instanceof List<?>) {
-					params = cast(o);
-					if (params.isEmpty()) {
+				PushbackReader in = new PushbackReader(request.getReader(), 1);
+				if (peek(in) == '[' && container.isDirectBindingSupported()) {
+					method = container.getUniqueMethod(component, route.getRestMethod());
+				}
+				
+				if (method != null) {
+					json.setContext(component);
+					args = bindParams(json, route, method, json.getReader(in));
+				} else {
+					Object o = json.parse(in);
+					if (o instanceof List<?>) {
+						params = cast(o);
+						if (params.isEmpty()) {
+							params = new ArrayList<Object>(1);
+							params.add(route.getParameterMap());
+						} else if (params.get(0) instanceof Map<?, ?>) {
+							params.set(0, route.mergeParameterMap((Map<?, ?>)params.get(0)));
+						}
+					} else if (o instanceof Map<?, ?>) {
+						params = new ArrayList<Object>(1);
+						params.add(route.mergeParameterMap((Map<?, ?>)o));
+					} else {
 						params = new ArrayList<Object>(1);
-						params.add(route.getParameterMap());
-					} else if (params.get(0) instanceof Map<?, ?>) {
-						params.set(0, route.mergeParameterMap((Map<?, ?>)params.get(0)));
+						params.add(o);
 					}
-				} else if (o instanceof Map<?, ?>) {
-					params = new ArrayList<Object>(1);
-					params.add(route.mergeParameterMap((Map<?, ?>)o));
-				} else {
-					params = new ArrayList<Object>(1);
-					params.add(o);
 				}
 			} else {
 				params = new ArrayList<Object>(1);
 				params.add(route.getParameterMap());
 			}
+			if (sample != null) sample.mark(WebMetrics.PARSE);
 
-			Method method = container.getMethod(component, route.getRestMethod(), params);
-			if (method == null) {
-				throw new NoSuchMethodException("Method not found: " + route.getRestMethod());
-			}
-
-			json.setContext(component);
-			result = container.execute(json, component, method, params);
-		} catch (Exception e) {
-			if (e instanceof ClassNotFoundException) {
-				container.debug("Class Not Found.", e);
-				container.exception(e, request, response);
-				response.sendError(SC_NOT_FOUND, "Not Found");
-				response.flushBuffer();
-			} else if (e instanceof NoSuchMethodException) {
-				container.debug("Method Not Found.", e);
-				container.exception(e, request, response);
-				response.sendError(SC_NOT_FOUND, "Not Found");
-				response.flushBuffer();
-			} else if (e instanceof JSONException) {
-				container.debug("Fails to parse JSON.", e);
-				container.exception(e, request, response);
-				response.sendError(SC_BAD_REQUEST, "Bad Request");
-				response.flushBuffer();
-			} else if (e instanceof InvocationTargetException) {
-				Throwable cause = e.getCause();
-				if (cause instanceof Error) {
-					throw (Error)cause;
+			if (args == null) {
+				method = container.getMethod(component, route.getRestMethod(), params);
+				if (method == null) {
+					throw new NoSuchMethodException("Method not found: " + route.getRestMethod());
 				}
+				json.setContext(component);
+			}
+			if (sample != null) sample.mark(WebMetrics.RESOLVE);
 
-				container.debug("Cause error on invocation.", cause);
-				container.exception((Exception)cause, request, response);
+			ConcurrencyLimit climit = config.limits.get(className);
+			if (climit != null) climit.enter();
+			try {
+				result = (args != null) ? container.dispatch(json, className, component, method, args)
+						: container.dispatch(json, className, component, method, params);
+			} finally {
+				if (climit != null) climit.release();
+			}
 
-				if (cause instanceof IllegalStateException || cause instanceof UnsupportedOperationException) {
-					response.sendError(SC_NOT_FOUND, "Not Found");
-					response.flushBuffer();
-				} else if (cause instanceof IllegalArgumentException) {
-					response.sendError(SC_BAD_REQUEST, "Bad Request");
-					response.flushBuffer();
-				} else {
-					Integer errorCode = null;
-					for (Map.Entry<String, Integer> entry : config.errors.entrySet()) {
-						Class<?> cls = ClassUtil.findClass(entry.getKey());
-						if (cls != null && cls.isAssignableFrom(cause.getClass()) && entry.getValue() != null) {
-							errorCode = entry.getValue();
-							break;
-						}
-					}
-					if (errorCode != null) {
-						response.setStatus(errorCode);
-						Map<String, Object> error = new LinkedHashMap<String, Object>();
-						error.put("name", cause.getClass().getSimpleName());
-						error.put("message", cause.getMessage());
-						error.put("data", container.getErrorData(cause));
-						result = error;
-					} else {
-						response.sendError(SC_INTERNAL_SERVER_ERROR, "Internal Server Error");
-						response.flushBuffer();
+			if (AsyncSupport.isPending(result)) {
+				if (result instanceof CompletionStage<?> && !AsyncSupport.isDone(result)) {
+					Object asyncContext = AsyncSupport.startAsync(request);
+					if (asyncContext != null) {
+						async = true;
+						if (sample != null) sample.detach();
+						resume(asyncContext, (CompletionStage<?>)result, json, status, callback, request, response, limit);
+						return;
 					}
 				}
-			} else {
-				container.error("Internal error occurred.", e);
-				container.exception(e, request, response);
-				response.sendError(SC_INTERNAL_SERVER_ERROR, "Internal Server Error");
-				response.flushBuffer();
+				result = AsyncSupport.await(result, container.asyncTimeout);
+			}
+			if (sample != null) sample.mark(WebMetrics.INVOKE);
+
+			if (isConditional(request, status)) {
+				if (!(result instanceof Container.Memo)) version = container.getVersion(component, result);
+				conditional = true;
 			}
+		} catch (Exception e) {
+			conditional = false;
+			Object error = handleException(e, request, response);
+			if (error != null) result = error;
 		} finally {
 			try {
-				container.end(request, response);
+				// the asynchronous completion ends the request instead.
+				if (!async) end(request, response, limit);
 			} finally {
 				ExternalContext.end();
 			}
@@ -304,25 +399,373 @@ public class RESTServlet extends HttpServlet {
 
 		if (response.isCommitted()) return;
 
-		if (result == null
-				|| result instanceof CharSequence
-				|| result instanceof Boolean
-				|| result instanceof Number
-				|| result instanceof Date) {
+		if (sample != null) sample.skip();
+		if (conditional) {
+			writeConditionalResult(json, callback, result, version, request, response);
+		} else {
+			writeResult(json, status, callback, result, response);
+		}
+		if (sample != null) sample.mark(WebMetrics.FORMAT);
+	}
+
+	/**
+	 * Writes the result of CompletionStage after the request thread is released,
+	 * and ends the request (Container.end() and the release of the limit) after that.
+	 */
+	void resume(final Object asyncContext, CompletionStage<?> stage, final JSON json, final int status, final String callback,
+			final HttpServletRequest request, final HttpServletResponse response, final ConcurrencyLimit limit) {
+
+		final Thread caller = Thread.currentThread();
+		final WebMetrics.Sample sample = (metrics != null) ? WebMetrics.getSample(request) : null;
+		AsyncSupport.whenComplete(stage, container.asyncTimeout, new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object value, Throwable error) {
+				boolean worker = (Thread.currentThread() != caller);
+				try {
+					if (sample != null) sample.mark(WebMetrics.INVOKE);
+					if (worker) ExternalContext.start(getServletConfig(), getServletContext(), request, response);
+
+					Object result = value;
+					if (error != null) {
+						result = handleException(new InvocationTargetException(error), request, response);
+					}
+					if (!response.isCommitted()) {
+						if (error == null && isConditional(request, status)) {
+							writeConditionalResult(json, callback, result, null, request, response);
+						} else {
+							writeResult(json, status, callback, result, response);
+						}
+						if (sample != null) sample.mark(WebMetrics.FORMAT);
+						response.getWriter().close();
+					}
+				} catch (Throwable t) {
+					container.error("Internal error occurred.", t);
+					try {
+						if (!response.isCommitted()) response.sendError(SC_INTERNAL_SERVER_ERROR, "Internal Server Error");
+					} catch (Exception e) {
+						// no handle
+					}
+				} finally {
+					try {
+						end(request, response, limit);
+					} catch (Exception e) {
+						container.error("Fails to end the request.", e);
+					} finally {
+						if (worker) ExternalContext.end();
+						AsyncSupport.complete(asyncContext);
+						if (sample != null) sample.complete();
+					}
+				}
+			}
+		});
+	}
+
+	void end(HttpServletRequest request, HttpServletResponse response, ConcurrencyLimit limit) throws ServletException, IOException {
+		try {
+			container.end(request, response);
+		} finally {
+			if (limit != null) limit.release();
+		}
+	}
+
+	/**
+	 * Reads the array body and converts each element to the parameter type of the method
+	 * as soon as it is parsed, so that the generic List of the whole body is not built.
+	 * The first element is merged with the route parameters as usual.
+	 */
+	Object[] bindParams(JSON json, Route route, Method method, JSONReader reader) throws IOException, NoSuchMethodException {
+		Type[] types = method.getGenericParameterTypes();
+		Object[] args = new Object[types.length];
+		JSONException error = null;
+
+		int count = 0;
+		JSONEventType type = reader.next();
+		while ((type = reader.next()) != null && type != JSONEventType.END_ARRAY) {
+			Object value = getValue(reader, type);
+			if (count == 0 && value instanceof Map<?, ?>) {
+				value = route.mergeParameterMap((Map<?, ?>)value);
+			}
+			if (count < args.length && error == null) {
+				try {
+					args[count] = json.convert(value, types[count]);
+				} catch (JSONException e) {
+					error = e;
+				}
+			}
+			count++;
+		}
+		if (type != JSONEventType.END_ARRAY || reader.next() != null) {
+			throw new JSONException("unexpected content after the request.", JSONException.PARSE_ERROR);
+		}
+
+		if (count == 0) {
+			if (args.length > 0) args[0] = json.convert(route.getParameterMap(), types[0]);
+			count = 1;
+		}
+		if (count < args.length) {
+			throw new NoSuchMethodException("Method not found: " + route.getRestMethod());
+		}
+		if (error != null) {
+			throw error;
+		}
+		return args;
+	}
+
+	Object handleException(Exception e, HttpServletRequest request, HttpServletResponse response)
+		throws ServletException, IOException {
+
+		if (e instanceof ClassNotFoundException) {
+			container.debug("Class Not Found.", e);
+			container.exception(e, request, response);
+			response.sendError(SC_NOT_FOUND, "Not Found");
+			response.flushBuffer();
+		} else if (e instanceof NoSuchMethodException) {
+			container.debug("Method Not Found.", e);
+			container.exception(e, request, response);
+			response.sendError(SC_NOT_FOUND, "Not Found");
+			response.flushBuffer();
+		} else if (e instanceof JSONException) {
+			container.debug("Fails to parse JSON.", e);
+			container.exception(e, request, response);
+			response.sendError(SC_BAD_REQUEST, "Bad Request");
+			response.flushBuffer();
+		} else if (e instanceof InvocationTargetException) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+
+			container.debug("Cause error on invocation.", cause);
+			container.exception((Exception)cause, request, response);
+
+			if (cause instanceof IllegalStateException || cause instanceof UnsupportedOperationException) {
+				response.sendError(SC_NOT_FOUND, "Not Found");
+				response.flushBuffer();
+			} else if (cause instanceof IllegalArgumentException) {
+				response.sendError(SC_BAD_REQUEST, "Bad Request");
+				response.flushBuffer();
+			} else {
+				Integer errorCode = getErrorCode(cause);
+				if (errorCode != null) {
+					response.setStatus(errorCode);
+					Map<String, Object> error = new LinkedHashMap<String, Object>();
+					error.put("name", cause.getClass().getSimpleName());
+					error.put("message", cause.getMessage());
+					error.put("data", container.getErrorData(cause));
+					return error;
+				} else {
+					response.sendError(SC_INTERNAL_SERVER_ERROR, "Internal Server Error");
+					response.flushBuffer();
+				}
+			}
+		} else if (e instanceof RejectedExecutionException) {
+			container.debug("Service Unavailable.", e);
+			container.exception(e, request, response);
+
+			Integer errorCode = getErrorCode(e);
+			if (errorCode != null) {
+				response.setStatus(errorCode);
+				Map<String, Object> error = new LinkedHashMap<String, Object>();
+				error.put("name", e.getClass().getSimpleName());
+				error.put("message", e.getMessage());
+				error.put("data", container.getErrorData(e));
+				return error;
+			}
+			response.sendError(SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+			response.flushBuffer();
+		} else {
+			container.error("Internal error occurred.", e);
+			container.exception(e, request, response);
+			response.sendError(SC_INTERNAL_SERVER_ERROR, "Internal Server Error");
+			response.flushBuffer();
+		}
+		return null;
+	}
+
+	Integer getErrorCode(Throwable cause) {
+		for (Map.Entry<String, Integer> entry : config.errors.entrySet()) {
+			Class<?> cls = ClassUtil.findClass(entry.getKey());
+			if (cls != null && cls.isAssignableFrom(cause.getClass()) && entry.getValue() != null) {
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+
+	void writeResult(JSON json, int status, String callback, Object result, HttpServletResponse response)
+		throws IOException {
+
+		if (!hasContent(result)) {
 			if (status != SC_CREATED) status = SC_NO_CONTENT;
 			response.setStatus(status);
 		} else {
 			response.setContentType((callback != null) ? "text/javascript" : "application/json");
 			Writer writer = response.getWriter();
 			if (callback != null) writer.append(callback).append("(");
-			json.format(result, writer);
+			format(json, result, writer);
+			if (callback != null) writer.append(");");
+		}
+	}
+
+	/**
+	 * Writes the result of GET or HEAD with ETag or Last-Modified, and answers 304 if not modified.
+	 *
+	 * If the version is given by the component, the result is not formatted for 304 and HEAD.
+	 * Otherwise the entity tag is the hash of the formatted bytes.
+	 */
+	void writeConditionalResult(JSON json, String callback, Object result, Object version,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+		if (!hasContent(result)) {
+			writeResult(json, SC_OK, callback, result, response);
+			return;
+		}
+
+		String etag = null;
+		long lastModified = -1;
+		if (result instanceof Container.Memo && callback == null) {
+			etag = toEntityTag((Container.Memo)result, response.getCharacterEncoding());
+		} else if (version instanceof Date) {
+			lastModified = ((Date)version).getTime();
+		} else if (version != null && callback == null) {
+			etag = toEntityTag(version.toString());
+		}
+
+		String text = null;
+		if (etag == null && lastModified == -1) {
+			StringBuilder sb = new StringBuilder(1024);
+			if (callback != null) sb.append(callback).append("(");
+			format(json, result, sb);
+			if (callback != null) sb.append(");");
+			text = sb.toString();
+
+			String encoding = response.getCharacterEncoding();
+			etag = toEntityTag(digest(text.getBytes((encoding != null) ? encoding : "ISO-8859-1")));
+		}
+
+		if (etag != null) response.setHeader("ETag", etag);
+		if (lastModified != -1) response.setDateHeader("Last-Modified", lastModified);
+
+		response.setContentType((callback != null) ? "text/javascript" : "application/json");
+		if (isNotModified(request, etag, lastModified)) {
+			response.setStatus(SC_NOT_MODIFIED);
+			return;
+		}
+
+		response.setStatus(SC_OK);
+		if ("HEAD".equals(request.getMethod())) {
+			return;
+		}
+
+		Writer writer = response.getWriter();
+		if (text != null) {
+			writer.write(text);
+		} else {
+			if (callback != null) writer.append(callback).append("(");
+			format(json, result, writer);
 			if (callback != null) writer.append(");");
 		}
 	}
 
+	static void format(JSON json, Object result, Appendable out) throws IOException {
+		if (result instanceof Container.Memo) {
+			out.append(((Container.Memo)result).text);
+		} else {
+			json.format(result, out);
+		}
+	}
+
+	static boolean isConditional(HttpServletRequest request, int status) {
+		String method = request.getMethod();
+		return status == SC_OK && ("GET".equals(method) || "HEAD".equals(method));
+	}
+
+	static boolean hasContent(Object result) {
+		if (result instanceof Container.Memo) {
+			result = ((Container.Memo)result).value;
+		}
+		return !(result == null
+				|| result instanceof CharSequence
+				|| result instanceof Boolean
+				|| result instanceof Number
+				|| result instanceof Date);
+	}
+
+	static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+		String match = request.getHeader("If-None-Match");
+		if (match != null) {
+			if (etag == null) return false;
+
+			String target = etag.startsWith("W/") ? etag.substring(2) : etag;
+			for (String tag : match.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/")) tag = tag.substring(2);
+				if (tag.equals("*") || tag.equals(target)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		if (lastModified != -1) {
+			long since;
+			try {
+				since = request.getDateHeader("If-Modified-Since");
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+			return since != -1 && lastModified / 1000 <= since / 1000;
+		}
+		return false;
+	}
+
+	static String toEntityTag(String version) {
+		if (version.startsWith("\"") || version.startsWith("W/\"")) {
+			return version;
+		}
+		return "\"" + version.replace("\"", "") + "\"";
+	}
+
+	/**
+	 * Returns the entity tag of the memoized result. It is computed once per encoding.
+	 */
+	static String toEntityTag(Container.Memo memo, String encoding) throws IOException {
+		if (encoding == null) encoding = "ISO-8859-1";
+
+		String[] etag = memo.etag;
+		if (etag == null || !etag[0].equals(encoding)) {
+			etag = new String[] { encoding, toEntityTag(digest(memo.text.getBytes(encoding))) };
+			memo.etag = etag;
+		}
+		return etag[1];
+	}
+
+	static String digest(byte[] data) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(data);
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	@Override
 	public void destroy() {
+		if (metrics != null) {
+			try {
+				metrics.unregister();
+			} catch (JMException e) {
+				container.error("failed to unregister WebMetrics MBean.", e);
+			}
+		}
+		try {
+			ConcurrencyLimit.unregister(config.limits.values());
+		} catch (JMException e) {
+			container.error("failed to unregister ConcurrencyLimit MBeans.", e);
+		}
 		container.destory();
+		AsyncSupport.release();
+		FormatCache.clear();
 		super.destroy();
 	}
 
@@ -334,15 +777,19 @@ public class RESTServlet extends HttpServlet {
 		public Map<String, String> method;
 		public Set<String> verb;
 
+		String path;
 		Config config;
 		Pattern pattern;
 		List<String> names;
+		ConcurrencyLimit limit;
 
 		public RouteMapping() {
 		}
 
 		public void init(String path, Config config) {
+			this.path = path;
 			this.config = config;
+			this.limit = config.limits.get(path);
 
 			this.names = new ArrayList<String>();
 			StringBuffer sb = new StringBuffer("^\\Q");
@@ -363,9 +810,8 @@ public class RESTServlet extends HttpServlet {
 		}
 
 		@SuppressWarnings({"unchecked", "rawtypes"})
-		public Route matches(HttpServletRequest request, String path) throws IOException {
-			Matcher m = pattern.matcher(path);
-			if (m.matches()) {
+		public Route matches(HttpServletRequest request, MatchResult m) throws IOException {
+			if (m != null) {
 				Map<String, Object> params = new HashMap<String, Object>();
 				for (int i = 0; i < names.size(); i++) {
 					String key = names.get(i);
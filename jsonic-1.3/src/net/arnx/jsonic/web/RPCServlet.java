@@ -16,9 +16,14 @@
 package net.arnx.jsonic.web;
 
 import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
 import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -26,10 +31,30 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.management.JMException;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -37,9 +62,14 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import net.arnx.jsonic.JSON;
+import net.arnx.jsonic.JSONEventType;
 import net.arnx.jsonic.JSONException;
 import net.arnx.jsonic.JSONHint;
+import net.arnx.jsonic.JSONListener;
+import net.arnx.jsonic.JSONReader;
+import net.arnx.jsonic.JSONWriter;
 import net.arnx.jsonic.util.ClassUtil;
+import net.arnx.jsonic.util.FormatCache;
 
 import static javax.servlet.http.HttpServletResponse.*;
 import static net.arnx.jsonic.web.Container.*;
@@ -53,11 +83,25 @@ public class RPCServlet extends HttpServlet {
 		
 		public Map<String, Pattern> definitions;
 		public Map<String, Integer> errors;
+		public Map<String, ConcurrencyLimit> limits;
+		public int batchThreads = 0;
+		public int batchLimit = 0;
+		public boolean streaming = false;
+		public int notificationThreads = 0;
+		public int notificationQueue = 1000;
+		public boolean metrics = false;
+		public String metricsPath;
+		public Set<String> metricsAccess;
 	}
 	
 	protected Container container;
 	
 	Config config;
+	RouteMapping[] mappings;
+	RouteIndex routes;
+	ExecutorService executor;
+	ExecutorService notifier;
+	WebMetrics metrics;
 	
 	@Override
 	public void init(ServletConfig servletConfig) throws ServletException {
@@ -90,42 +134,127 @@ public class RPCServlet extends HttpServlet {
 		
 		if (config.errors == null) config.errors = Collections.emptyMap();
 		
+		if (config.limits == null) config.limits = Collections.emptyMap();
+		try {
+			for (Map.Entry<String, ConcurrencyLimit> entry : config.limits.entrySet()) {
+				entry.getValue().init(entry.getKey());
+			}
+		} catch (IllegalArgumentException e) {
+			throw new ServletException(e);
+		}
+		
 		if (config.mappings == null) config.mappings = Collections.emptyMap();
 		for (Map.Entry<String, RouteMapping> entry : config.mappings.entrySet()) {
 			entry.getValue().init(entry.getKey(), config);
 		}
+		
+		mappings = config.mappings.values().toArray(new RouteMapping[config.mappings.size()]);
+		List<Pattern> patterns = new ArrayList<Pattern>(mappings.length);
+		List<String> targets = new ArrayList<String>(mappings.length);
+		for (RouteMapping mapping : mappings) {
+			patterns.add(mapping.pattern);
+			targets.add(mapping.target);
+		}
+		routes = new RouteIndex(patterns);
+		container.warmup(targets);
+		
+		if (config.batchThreads > 0) {
+			executor = createBatchExecutor(config.batchThreads);
+		}
+		if (config.notificationThreads > 0) {
+			notifier = createNotificationExecutor(config.notificationThreads, config.notificationQueue);
+		}
+		if (config.metrics || config.metricsPath != null) {
+			metrics = new WebMetrics();
+			if (container.jmx) {
+				try {
+					metrics.register((getServletName() != null) ? getServletName() : getClass().getSimpleName());
+				} catch (JMException e) {
+					container.error("failed to register WebMetrics MBean.", e);
+				}
+			}
+		}
+		if (container.jmx && !config.limits.isEmpty()) {
+			try {
+				ConcurrencyLimit.register((getServletName() != null) ? getServletName() : getClass().getSimpleName(),
+						config.limits.values());
+			} catch (JMException e) {
+				container.error("failed to register ConcurrencyLimit MBeans.", e);
+			}
+		}
+		AsyncSupport.retain();
+	}
+	
+	final NonBlockingExchange.Handler handler = new NonBlockingExchange.Handler() {
+		@Override
+		public void handle(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+			doRPC(request, response);
+		}
+	};
+	
+	/**
+	 * Answers the statistics of WebMetrics when the path is "metricsPath".
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		if (metrics != null && config.metricsPath != null && config.metricsPath.equals(getPath(request))) {
+			metrics.write(request, response, config.metricsAccess);
+			return;
+		}
+		super.doGet(request, response);
 	}
 	
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
+		if (container.nonBlocking && NonBlockingExchange.start(container, request, response, handler)) {
+			return;
+		}
 		doRPC(request, response);
 	}
 	
 	protected void doRPC(HttpServletRequest request, HttpServletResponse response)
 		throws ServletException, IOException {
 		
+		WebMetrics.Sample sample = null;
+		if (metrics != null) {
+			sample = WebMetrics.getSample(request);
+			if (sample == null) {
+				sample = metrics.start(request, response);
+				try {
+					doRPC(request, sample.getResponse());
+				} finally {
+					sample.end();
+				}
+				return;
+			}
+		}
+		
 		JSON json = null;
 		boolean isBatch = false;
 		List<Object> responseList = new ArrayList<Object>();
+		ConcurrencyLimit limit = null;
+		boolean async = false;
 		
 		try {
 			ExternalContext.start(getServletConfig(), getServletContext(), request, response);		
 			container.start(request, response);
 			
-			String uri = (request.getContextPath().equals("/")) ?
-					request.getRequestURI() : 
-					request.getRequestURI().substring(request.getContextPath().length());
+			String uri = getPath(request);
 			
 			Route route = null;
-			for (RouteMapping m : config.mappings.values()) {
-				if ((route = m.matches(request, uri)) != null) {
-					if (container.isDebugMode()) {
-						container.debug("Route found: " + request.getMethod() + " " + uri + " -> " + route);
-					}
-					break;
+			RouteIndex.Match match = routes.match(uri);
+			int index = (match != null) ? match.index : -1;
+			if (index != -1 && (route = mappings[index].matches(request, match.result)) != null) {
+				if (container.isDebugMode()) {
+					container.debug("Route found: " + request.getMethod() + " " + uri + " -> " + route);
 				}
 			}
+			if (sample != null) {
+				sample.mark(WebMetrics.MATCH);
+				if (route != null) sample.setEntries(metrics.getEntry(mappings[index].path), null);
+			}
 			
 			if (route == null || !isJSONType(request.getContentType())) {
 				response.sendError(SC_NOT_FOUND, "Not Found");
@@ -134,9 +263,16 @@ public class RPCServlet extends HttpServlet {
 			
 			json = container.createJSON(request.getLocale());
 			
+			// the rejection is handled by createError as same as the limit of components.
+			if (mappings[index].limit != null) {
+				mappings[index].limit.enter();
+				limit = mappings[index].limit;
+			}
+			
 			// request processing
 			List<Object> requestList = new ArrayList<Object>(0);
-			Object value = json.parse(request.getReader());
+			Object value = parseRequest(json, route, request.getReader());
+			if (sample != null) sample.mark(WebMetrics.PARSE);
 			if (value instanceof List<?> && !((List<?>)value).isEmpty()) {
 				requestList = cast(value);					
 				isBatch = true;
@@ -146,161 +282,40 @@ public class RPCServlet extends HttpServlet {
 				throw new IllegalArgumentException("Request is empty.");
 			}
 			
-			for (int i = 0; i < requestList.size(); i++) {
-				Map<?,?> req = (Map<?,?>)requestList.get(i);
-				
-				String rjsonrpc = null;
-				String rmethod = null;
-				Object rparams = null;
-				Object rid = null;
-				
-				Object result = null;
-				Map<String, Object> error = null;
-	
-				try {
-					if (req.get("jsonrpc") == null || "2.0".equals(req.get("jsonrpc"))) {
-						rjsonrpc = (String)req.get("jsonrpc");
-					} else {
-						throw new IllegalArgumentException("jsonrpc is unrecognized version: " + req.get("jsonrpc"));
-					}
-					
-					if (req.get("method") instanceof String) {
-						rmethod = (String)req.get("method");
-						if (rjsonrpc != null && rmethod.startsWith("rpc.")) {
-							container.warn("Method names that begin with 'rpc.' are reserved for system extensions.");
-						}
-					} else {
-						throw new IllegalArgumentException("method must " + ((req.get("method") == null) ? "not be null." : "be string."));
-					}
-					
-					if (req.get("params") instanceof List<?> || (rjsonrpc != null && req.get("params") instanceof Map<?, ?>)) {
-						rparams = req.get("params");
-					} else if (rjsonrpc != null && req.get("params") == null) {
-						rparams = new ArrayList<Object>(0);
-					} else {
-						throw new IllegalArgumentException("params must be array" + ((rjsonrpc != null) ? " or object." : "."));
-					}
-					
-					if (rjsonrpc == null || (req.get("id") == null || req.get("id") instanceof String || req.get("id") instanceof Number)) {
-						rid = req.get("id");
-					} else {
-						throw new IllegalArgumentException("id must be string, number or null.");
-					}
-					
-					String subcompName = null;
-					String methodName = rmethod;
-					if (route.getParameter("class") == null) {
-						int sep = rmethod.lastIndexOf('.');
-						subcompName = (sep != -1) ? rmethod.substring(0, sep) : null;
-						methodName = (sep != -1) ? rmethod.substring(sep+1) : rmethod;
-					}
-					
-					Object component = container.getComponent(route.getComponentClass(container, subcompName));
-					if (component == null) {
-						throw new NoSuchMethodException("Method not found: " + rmethod);
-					}
-					
-					List<?> params = (rparams instanceof List<?>) ? (List<?>)rparams : Arrays.asList(rparams);
-					Method method = container.getMethod(component, methodName, params);
-					if (method == null) {
-						throw new NoSuchMethodException("Method not found: " + rmethod);					
-					}
-					
-					json.setContext(component);
-					result = container.execute(json, component, method, params);
-				} catch (Exception e) {
-					error = new LinkedHashMap<String, Object>();
-					if (e instanceof IllegalArgumentException) {
-						container.debug("Invalid Request.", e);
-						container.exception(e, request, response);
-						error.put("code", -32600);
-						error.put("message", "Invalid Request.");
-					} else if (e instanceof ClassNotFoundException) {
-						container.debug("Class Not Found.", e);
-						container.exception(e, request, response);
-						error.put("code", -32601);
-						error.put("message", "Method not found.");
-					} else if (e instanceof NoSuchMethodException) {
-						container.debug("Method Not Found.", e);
-						container.exception(e, request, response);
-						error.put("code", -32601);
-						error.put("message", "Method not found.");
-					} else if (e instanceof JSONException) {
-						container.debug("Invalid params.", e);
-						container.exception(e, request, response);
-						error.put("code", -32602);
-						error.put("message", "Invalid params.");
-					} else if (e instanceof InvocationTargetException) {
-						Throwable cause = e.getCause();
-						if (cause instanceof Error) {
-							throw (Error)cause;
-						}
-						
-						container.debug("Fails to invoke method.", cause);
-						container.exception((Exception)cause, request, response);
-						
-						if (cause instanceof IllegalStateException || cause instanceof UnsupportedOperationException) {
-							error.put("code", -32601);
-							error.put("message", "Method not found.");
-						} else if (cause instanceof IllegalArgumentException) {
-							error.put("code", -32602);
-							error.put("message", "Invalid params.");
-						} else {
-							Integer errorCode = null;
-							for (Map.Entry<String, Integer> entry : config.errors.entrySet()) {
-								Class<?> cls = ClassUtil.findClass(entry.getKey());
-								if (cls != null && cls.isAssignableFrom(cause.getClass()) && entry.getValue() != null) {
-									errorCode = entry.getValue();
-									break;
-								}
-							}
-							if (errorCode != null) {
-								error.put("code", errorCode);
-								error.put("message",  cause.getClass().getSimpleName() + ": " + cause.getMessage());
-								error.put("data", container.getErrorData(cause));
-							} else {
-								container.error("Internal error occurred.", cause);
-								error.put("code", -32603);
-								error.put("message", "Internal error.");
-							}
-						}
-					} else {
-						container.error("Internal error occurred.", e);
-						container.exception(e, request, response);
-						error.put("code", -32603);
-						error.put("message", "Internal error.");
-					}
-				}
-				
-				// it's notification when id was null
-				if (rmethod != null && (rjsonrpc == null && rid == null) || (rjsonrpc != null && req != null && !req.containsKey("id"))) {
-					continue;
-				}
-				
-				Map<String, Object> responseData = new LinkedHashMap<String, Object>();
-				if (rjsonrpc != null) {
-					responseData.put("jsonrpc", rjsonrpc);
-					if (result != null) responseData.put("result", result);
-					if (error != null) responseData.put("error", error);
-				} else {
-					responseData.put("result", result);
-					responseData.put("error", error);
+			if (isBatch && config.streaming) {
+				invokeStreaming(json, route, requestList, request, response);
+				return;
+			} else if (isBatch && executor != null && requestList.size() > 1) {
+				invokeConcurrently(route, requestList, responseList, request, response);
+			} else {
+				for (int i = 0; i < requestList.size(); i++) {
+					Map<String, Object> responseData = invoke(json, route, (Map<?,?>)requestList.get(i), request, response);
+					if (responseData != null) responseList.add(responseData);
 				}
-				responseData.put("id", rid);
-				
-				responseList.add(responseData);
+			}
+			
+			if (resolve(json, isBatch, responseList, request, response, limit)) {
+				async = true;
+				if (sample != null) sample.detach();
+				return;
 			}
 		} catch (Exception e) {
-			Map<String, Object> error = new LinkedHashMap<String, Object>();
-			if (e instanceof JSONException) {
-				container.debug("Fails to parse JSON.", e);
-				error.put("code", -32700);
-				error.put("message", "Parse error.");
-				error.put("data", container.getErrorData(e));
+			Map<String, Object> error;
+			if (e instanceof RejectedExecutionException) {
+				error = createError(e, request, response);
 			} else {
-				container.debug("Invalid Request.", e);
-				error.put("code", -32600);
-				error.put("message", "Invalid Request.");
+				error = new LinkedHashMap<String, Object>();
+				if (e instanceof JSONException) {
+					container.debug("Fails to parse JSON.", e);
+					error.put("code", -32700);
+					error.put("message", "Parse error.");
+					error.put("data", container.getErrorData(e));
+				} else {
+					container.debug("Invalid Request.", e);
+					error.put("code", -32600);
+					error.put("message", "Invalid Request.");
+				}
+				if (sample != null) sample.error((Integer)error.get("code"));
 			}
 			
 			Map<String, Object> responseData = new LinkedHashMap<String, Object>();
@@ -311,7 +326,8 @@ public class RPCServlet extends HttpServlet {
 			responseList.add(responseData);
 		} finally {
 			try {
-				container.end(request, response);				
+				// the asynchronous completion ends the request instead.
+				if (!async) end(request, response, limit);
 			} finally {
 				ExternalContext.end();				
 			}
@@ -319,6 +335,12 @@ public class RPCServlet extends HttpServlet {
 		
 		if (response.isCommitted()) return;
 		
+		if (sample != null) sample.skip();
+		writeResponse(json, isBatch, responseList, response);
+		if (sample != null) sample.mark(WebMetrics.FORMAT);
+	}
+	
+	void writeResponse(JSON json, boolean isBatch, List<Object> responseList, HttpServletResponse response) throws IOException {
 		// it's notification when id was null for all requests.
 		if (responseList.isEmpty()) {
 			response.setStatus(SC_ACCEPTED);
@@ -332,30 +354,937 @@ public class RPCServlet extends HttpServlet {
 		
 		Object target = (isBatch) ? responseList : responseList.get(0);
 		json.setContext(target);
-		json.format(target, writer);
+		
+		boolean memoized = false;
+		for (Object o : responseList) {
+			if (((Map<?, ?>)o).get("result") instanceof Container.Memo) {
+				memoized = true;
+				break;
+			}
+		}
+		
+		if (!memoized) {
+			json.format(target, writer);
+			return;
+		}
+		
+		JSONWriter jwriter = json.getWriter(writer);
+		boolean suppressNull = json.getSettings().isSuppressNull();
+		if (isBatch) jwriter.beginArray();
+		for (Object o : responseList) {
+			write(jwriter, (Map<?, ?>)o, suppressNull);
+		}
+		if (isBatch) jwriter.endArray();
+		jwriter.flush();
+	}
+	
+	/**
+	 * Writes the response entry. The memoized result is written as the formatted text.
+	 */
+	static void write(JSONWriter writer, Map<?, ?> responseData, boolean suppressNull) throws IOException {
+		writer.beginObject();
+		for (Map.Entry<?, ?> entry : responseData.entrySet()) {
+			Object value = entry.getValue();
+			if (value == null && suppressNull) continue;
+			
+			writer.name((String)entry.getKey());
+			if (value instanceof Container.Memo) {
+				writer.append(((Container.Memo)value).text);
+			} else {
+				writer.value(value);
+			}
+		}
+		writer.endObject();
+	}
+	
+	/**
+	 * Resolves the results returned as CompletionStage or Future.
+	 * 
+	 * If all of them are CompletionStage and Servlet 3.0 asynchronous processing is available,
+	 * the request thread is released and the response is written when they are completed.
+	 * Otherwise they are waited on the current thread.
+	 * 
+	 * In this case, the request is ended (Container.end() and the release of the limit)
+	 * only after the response is written.
+	 * 
+	 * @return true if the response is written asynchronously.
+	 */
+	boolean resolve(final JSON json, final boolean isBatch, final List<Object> responseList,
+			final HttpServletRequest request, final HttpServletResponse response, final ConcurrencyLimit limit) throws ServletException {
+		
+		List<Integer> pendings = new ArrayList<Integer>();
+		boolean stages = true;
+		for (int i = 0; i < responseList.size(); i++) {
+			Object result = ((Map<?, ?>)responseList.get(i)).get("result");
+			if (AsyncSupport.isPending(result)) {
+				pendings.add(i);
+				if (!(result instanceof CompletionStage<?>) || AsyncSupport.isDone(result)) stages = false;
+			}
+		}
+		if (pendings.isEmpty()) return false;
+		
+		final Object asyncContext = (stages) ? AsyncSupport.startAsync(request) : null;
+		if (asyncContext == null) {
+			for (int i : pendings) {
+				responseList.set(i, await((Map<?, ?>)responseList.get(i), request, response));
+			}
+			return false;
+		}
+		
+		final Thread caller = Thread.currentThread();
+		final AtomicInteger count = new AtomicInteger(pendings.size());
+		for (final int i : pendings) {
+			final Map<?, ?> data = (Map<?, ?>)responseList.get(i);
+			AsyncSupport.whenComplete((CompletionStage<?>)data.get("result"), container.asyncTimeout, new BiConsumer<Object, Throwable>() {
+				@Override
+				public void accept(Object value, Throwable error) {
+					boolean worker = (Thread.currentThread() != caller);
+					try {
+						if (worker) ExternalContext.start(getServletConfig(), getServletContext(), request, response);
+						
+						Map<String, Object> responseData;
+						try {
+							if (error != null) {
+								responseData = createResponse((String)data.get("jsonrpc"),
+										null, createError(new InvocationTargetException(error), request, response), data.get("id"));
+							} else {
+								responseData = createResponse((String)data.get("jsonrpc"), value, null, data.get("id"));
+							}
+						} catch (Throwable t) {
+							// the other entries are still pending, so the failure is recorded in this entry only.
+							container.error("Internal error occurred.", t);
+							Map<String, Object> internalError = new LinkedHashMap<String, Object>();
+							internalError.put("code", -32603);
+							internalError.put("message", "Internal error.");
+							responseData = createResponse((String)data.get("jsonrpc"), null, internalError, data.get("id"));
+						}
+						synchronized (responseList) {
+							responseList.set(i, responseData);
+						}
+						
+						if (count.decrementAndGet() == 0) {
+							complete(asyncContext, json, isBatch, responseList, request, response, limit);
+						}
+					} finally {
+						if (worker) ExternalContext.end();
+					}
+				}
+			});
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes the response of the asynchronous request, ends the request and completes the asynchronous context.
+	 */
+	void complete(Object asyncContext, JSON json, boolean isBatch, List<Object> responseList,
+			HttpServletRequest request, HttpServletResponse response, ConcurrencyLimit limit) {
+		
+		WebMetrics.Sample sample = (metrics != null) ? WebMetrics.getSample(request) : null;
+		try {
+			synchronized (responseList) {
+				if (!response.isCommitted()) {
+					if (sample != null) sample.skip();
+					writeResponse(json, isBatch, responseList, response);
+					if (sample != null) sample.mark(WebMetrics.FORMAT);
+					response.getWriter().close();
+				}
+			}
+		} catch (Throwable t) {
+			container.error("Internal error occurred.", t);
+			try {
+				if (!response.isCommitted()) response.sendError(SC_INTERNAL_SERVER_ERROR, "Internal Server Error");
+			} catch (Exception e) {
+				// no handle
+			}
+		} finally {
+			try {
+				end(request, response, limit);
+			} catch (Exception e) {
+				container.error("Fails to end the request.", e);
+			} finally {
+				AsyncSupport.complete(asyncContext);
+				if (sample != null) sample.complete();
+			}
+		}
+	}
+	
+	void end(HttpServletRequest request, HttpServletResponse response, ConcurrencyLimit limit) throws ServletException, IOException {
+		try {
+			container.end(request, response);
+		} finally {
+			if (limit != null) limit.release();
+		}
+	}
+	
+	Map<String, Object> invoke(JSON json, Route route, Map<?,?> req, HttpServletRequest request, HttpServletResponse response) throws ServletException {
+		
+		String rjsonrpc = null;
+		String rmethod = null;
+		Object rparams = null;
+		Object rid = null;
+		
+		Object result = null;
+		Map<String, Object> error = null;
+		
+		WebMetrics.Sample sample = (metrics != null) ? WebMetrics.getSample(request) : null;
+		JSONListener listener = JSON.listener;
+		boolean timed = (sample != null || listener != null);
+		long start = timed ? System.nanoTime() : 0L;
+		if (listener != null) listener.onInvokeStart();
+		long resolved = 0L;
+		String className = null;
+
+		try {
+			if (req.get("jsonrpc") == null || "2.0".equals(req.get("jsonrpc"))) {
+				rjsonrpc = (String)req.get("jsonrpc");
+			} else {
+				throw new IllegalArgumentException("jsonrpc is unrecognized version: " + req.get("jsonrpc"));
+			}
+			
+			if (req.get("method") instanceof String) {
+				rmethod = (String)req.get("method");
+				if (rjsonrpc != null && rmethod.startsWith("rpc.")) {
+					container.warn("Method names that begin with 'rpc.' are reserved for system extensions.");
+				}
+			} else {
+				throw new IllegalArgumentException("method must " + ((req.get("method") == null) ? "not be null." : "be string."));
+			}
+			
+			if (req.get("params") instanceof List<?> || (rjsonrpc != null && req.get("params") instanceof Map<?, ?>)
+					|| req.get("params") instanceof BoundParams) {
+				rparams = req.get("params");
+			} else if (rjsonrpc != null && req.get("params") == null) {
+				rparams = new ArrayList<Object>(0);
+			} else {
+				throw new IllegalArgumentException("params must be array" + ((rjsonrpc != null) ? " or object." : "."));
+			}
+			
+			if (rjsonrpc == null || (req.get("id") == null || req.get("id") instanceof String || req.get("id") instanceof Number)) {
+				rid = req.get("id");
+			} else {
+				throw new IllegalArgumentException("id must be string, number or null.");
+			}
+			
+			Object component;
+			Method method;
+			Object[] args = null;
+			List<?> params = null;
+			if (rparams instanceof BoundParams) {
+				BoundParams bound = (BoundParams)rparams;
+				if (!rmethod.equals(bound.rmethod)) {
+					// "method" is duplicated, and the params are bound for the former.
+					throw new IllegalArgumentException("method is duplicated: " + bound.rmethod + ", " + rmethod);
+				}
+				if (bound.count < bound.args.length) {
+					throw new NoSuchMethodException("Method not found: " + rmethod);
+				}
+				if (bound.error != null) {
+					throw bound.error;
+				}
+				
+				className = bound.className;
+				component = bound.component;
+				method = bound.method;
+				args = bound.args;
+			} else {
+				String subcompName = null;
+				String methodName = rmethod;
+				if (route.getParameter("class") == null) {
+					int sep = rmethod.lastIndexOf('.');
+					subcompName = (sep != -1) ? rmethod.substring(0, sep) : null;
+					methodName = (sep != -1) ? rmethod.substring(sep+1) : rmethod;
+				}
+				
+				className = route.getComponentClass(container, subcompName);
+				component = container.getComponent(className);
+				if (component == null) {
+					throw new NoSuchMethodException("Method not found: " + rmethod);
+				}
+				
+				params = (rparams instanceof List<?>) ? (List<?>)rparams : Arrays.asList(rparams);
+				method = container.getMethod(component, methodName, params);
+				if (method == null) {
+					throw new NoSuchMethodException("Method not found: " + rmethod);					
+				}
+			}
+			
+			if (timed) resolved = System.nanoTime();
+			
+			boolean notification = (rjsonrpc == null) ? (rid == null) : !req.containsKey("id");
+			if (notification && notifier != null && container.isDetachable(className, component)) {
+				executeNotification(request.getLocale(), rmethod, className, component, method, args, params);
+				if (sample != null) sample.call(rmethod, start, resolved, null);
+				if (listener != null) listener.onInvoke(className, rmethod, System.nanoTime() - start, resolved - start, 0);
+				return null;
+			}
+			
+			json.setContext(component);
+			ConcurrencyLimit limit = enter(className);
+			try {
+				result = (args != null) ? container.dispatch(json, className, component, method, args)
+						: container.dispatch(json, className, component, method, params);
+			} finally {
+				if (limit != null) limit.release();
+			}
+		} catch (Exception e) {
+			error = createError(e, request, response);
+		}
+		if (sample != null) sample.call(rmethod, start, resolved, (error != null) ? (Integer)error.get("code") : null);
+		if (listener != null) {
+			listener.onInvoke((resolved != 0L) ? className : null, rmethod, System.nanoTime() - start,
+					(resolved != 0L) ? resolved - start : 0L, (error != null) ? (Integer)error.get("code") : 0);
+		}
+		
+		// it's notification when id was null
+		if (rmethod != null && (rjsonrpc == null && rid == null) || (rjsonrpc != null && req != null && !req.containsKey("id"))) {
+			return null;
+		}
+		
+		return createResponse(rjsonrpc, result, error, rid);
+	}
+	
+	/**
+	 * Parses the request body.
+	 * 
+	 * If the body is a single request and its method is decided before "params" is read
+	 * (see Container.getUniqueMethod), each element of "params" is converted to the parameter type
+	 * as soon as it is parsed. So the generic List/Map of the whole params is not built.
+	 * Otherwise the body is parsed to List/Map as usual.
+	 */
+	Object parseRequest(JSON json, Route route, Reader in) throws IOException {
+		PushbackReader pin = new PushbackReader(in, 1);
+		if (peek(pin) != '{' || !container.isDirectBindingSupported()) {
+			return json.parse(pin);
+		}
+		
+		JSONReader reader = json.getReader(pin);
+		reader.next();
+		
+		Map<Object, Object> req = new LinkedHashMap<Object, Object>();
+		JSONEventType type;
+		while ((type = reader.next()) == JSONEventType.NAME) {
+			String name = reader.getString();
+			type = reader.next();
+			
+			Object value = null;
+			if ("params".equals(name) && (type == JSONEventType.START_ARRAY || type == JSONEventType.START_OBJECT)) {
+				value = bindParams(json, route, reader, type, req);
+			}
+			if (value == null) {
+				value = getValue(reader, type);
+			}
+			req.put(name, value);
+		}
+		if (type != JSONEventType.END_OBJECT || reader.next() != null) {
+			throw new JSONException("unexpected content after the request.", JSONException.PARSE_ERROR);
+		}
+		return req;
+	}
+	
+	private BoundParams bindParams(JSON json, Route route, JSONReader reader, JSONEventType type, Map<?,?> req) throws IOException {
+		if (!(req.get("method") instanceof String) || (type == JSONEventType.START_OBJECT && req.get("jsonrpc") == null)) {
+			return null;
+		}
+		
+		String rmethod = (String)req.get("method");
+		String subcompName = null;
+		String methodName = rmethod;
+		if (route.getParameter("class") == null) {
+			int sep = rmethod.lastIndexOf('.');
+			subcompName = (sep != -1) ? rmethod.substring(0, sep) : null;
+			methodName = (sep != -1) ? rmethod.substring(sep+1) : rmethod;
+		}
+		
+		String className;
+		Object component;
+		try {
+			className = route.getComponentClass(container, subcompName);
+			component = container.getComponent(className);
+		} catch (Exception e) {
+			return null;
+		}
+		Method method = (component != null) ? container.getUniqueMethod(component, methodName) : null;
+		if (method == null) {
+			return null;
+		}
+		
+		json.setContext(component);
+		BoundParams bound = new BoundParams(rmethod, className, component, method);
+		Type[] types = method.getGenericParameterTypes();
+		if (type == JSONEventType.START_ARRAY) {
+			while ((type = reader.next()) != null && type != JSONEventType.END_ARRAY) {
+				bound.bind(json, types, getValue(reader, type));
+			}
+		} else {
+			bound.bind(json, types, getValue(reader, type));
+		}
+		return bound;
+	}
+	
+	class Notification implements Runnable {
+		final JSON json;
+		final String rmethod;
+		final String className;
+		final Object component;
+		final Method method;
+		final Object[] args;
+		final List<?> params;
+		
+		Notification(JSON json, String rmethod, String className, Object component,
+				Method method, Object[] args, List<?> params) {
+			this.json = json;
+			this.rmethod = rmethod;
+			this.className = className;
+			this.component = component;
+			this.method = method;
+			this.args = args;
+			this.params = params;
+		}
+		
+		@Override
+		public void run() {
+			ExternalContext.start(getServletConfig(), getServletContext(), null, null);
+			try {
+				execute();
+			} finally {
+				ExternalContext.end();
+			}
+		}
+		
+		void execute() {
+			ConcurrencyLimit limit = null;
+			try {
+				limit = enter(className);
+				Object result = (args != null) ? container.dispatch(json, className, component, method, args)
+						: container.dispatch(json, className, component, method, params);
+				if (AsyncSupport.isPending(result)) {
+					AsyncSupport.await(result, container.asyncTimeout);
+				}
+			} catch (InvocationTargetException e) {
+				container.error("Fails to execute notification: " + rmethod, e.getCause());
+			} catch (Exception e) {
+				container.error("Fails to execute notification: " + rmethod, e);
+			} finally {
+				if (limit != null) limit.release();
+			}
+		}
+	}
+	
+	static class BoundParams {
+		final String rmethod;
+		final String className;
+		final Object component;
+		final Method method;
+		final Object[] args;
+		int count;
+		JSONException error;
+		
+		BoundParams(String rmethod, String className, Object component, Method method) {
+			this.rmethod = rmethod;
+			this.className = className;
+			this.component = component;
+			this.method = method;
+			this.args = new Object[method.getParameterTypes().length];
+		}
+		
+		void bind(JSON json, Type[] types, Object value) {
+			if (count < args.length && error == null) {
+				try {
+					args[count] = json.convert(value, types[count]);
+				} catch (JSONException e) {
+					error = e;
+				}
+			}
+			count++;
+		}
+	}
+	
+	Map<String, Object> createError(Exception e, HttpServletRequest request, HttpServletResponse response) throws ServletException {
+		Map<String, Object> error = new LinkedHashMap<String, Object>();
+		if (e instanceof IllegalArgumentException) {
+			container.debug("Invalid Request.", e);
+			container.exception(e, request, response);
+			error.put("code", -32600);
+			error.put("message", "Invalid Request.");
+		} else if (e instanceof ClassNotFoundException) {
+			container.debug("Class Not Found.", e);
+			container.exception(e, request, response);
+			error.put("code", -32601);
+			error.put("message", "Method not found.");
+		} else if (e instanceof NoSuchMethodException) {
+			container.debug("Method Not Found.", e);
+			container.exception(e, request, response);
+			error.put("code", -32601);
+			error.put("message", "Method not found.");
+		} else if (e instanceof JSONException) {
+			container.debug("Invalid params.", e);
+			container.exception(e, request, response);
+			error.put("code", -32602);
+			error.put("message", "Invalid params.");
+		} else if (e instanceof InvocationTargetException) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			
+			container.debug("Fails to invoke method.", cause);
+			container.exception((Exception)cause, request, response);
+			
+			if (cause instanceof IllegalStateException || cause instanceof UnsupportedOperationException) {
+				error.put("code", -32601);
+				error.put("message", "Method not found.");
+			} else if (cause instanceof IllegalArgumentException) {
+				error.put("code", -32602);
+				error.put("message", "Invalid params.");
+			} else {
+				Integer errorCode = getErrorCode(cause);
+				if (errorCode != null) {
+					error.put("code", errorCode);
+					error.put("message",  cause.getClass().getSimpleName() + ": " + cause.getMessage());
+					error.put("data", container.getErrorData(cause));
+				} else {
+					container.error("Internal error occurred.", cause);
+					error.put("code", -32603);
+					error.put("message", "Internal error.");
+				}
+			}
+		} else if (e instanceof RejectedExecutionException) {
+			container.debug("Server busy.", e);
+			container.exception(e, request, response);
+			
+			Integer errorCode = getErrorCode(e);
+			if (errorCode != null) {
+				error.put("code", errorCode);
+				error.put("message",  e.getClass().getSimpleName() + ": " + e.getMessage());
+				error.put("data", container.getErrorData(e));
+			} else {
+				error.put("code", -32000);
+				error.put("message", "Server busy.");
+			}
+		} else {
+			container.error("Internal error occurred.", e);
+			container.exception(e, request, response);
+			error.put("code", -32603);
+			error.put("message", "Internal error.");
+		}
+		
+		WebMetrics.Sample sample = (metrics != null) ? WebMetrics.getSample(request) : null;
+		if (sample != null) sample.error((Integer)error.get("code"));
+		return error;
+	}
+	
+	/**
+	 * Executes the notification on the background executor.
+	 * The component and the arguments are resolved on the current thread before detaching,
+	 * so the request scoped state is not touched after the end of the request.
+	 * The task runs with an ExternalContext which has no request and response.
+	 * If the executor is busy, it is executed on the current thread.
+	 * The errors are logged by Container.error.
+	 */
+	void executeNotification(Locale locale, String rmethod, String className, Object component,
+			Method method, Object[] args, List<?> params) throws ServletException {
+		
+		JSON json = container.createJSON(locale);
+		json.setContext(component);
+		if (args == null && container.isDirectBindingSupported()) {
+			args = Container.toArguments(json, method, params);
+			params = null;
+		}
+		
+		Notification task = new Notification(json, rmethod, className, component, method, args, params);
+		try {
+			notifier.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.execute();
+		}
+	}
+	
+	Integer getErrorCode(Throwable cause) {
+		for (Map.Entry<String, Integer> entry : config.errors.entrySet()) {
+			Class<?> cls = ClassUtil.findClass(entry.getKey());
+			if (cls != null && cls.isAssignableFrom(cause.getClass()) && entry.getValue() != null) {
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Acquires a permit of the concurrency limit of the component.
+	 * 
+	 * @return the limit to release, or null if the component has no limit.
+	 * @throws RejectedExecutionException if the limit is exceeded.
+	 */
+	ConcurrencyLimit enter(String className) {
+		ConcurrencyLimit limit = config.limits.get(className);
+		if (limit != null) limit.enter();
+		return limit;
+	}
+	
+	/**
+	 * Waits the pending result of the response on the current thread.
+	 */
+	Map<String, Object> await(Map<?, ?> data, HttpServletRequest request, HttpServletResponse response) throws ServletException {
+		Object result = data.get("result");
+		if (!AsyncSupport.isPending(result)) {
+			return cast(data);
+		}
+		
+		try {
+			return createResponse((String)data.get("jsonrpc"),
+					AsyncSupport.await(result, container.asyncTimeout), null, data.get("id"));
+		} catch (InvocationTargetException e) {
+			return createResponse((String)data.get("jsonrpc"),
+					null, createError(e, request, response), data.get("id"));
+		}
+	}
+	
+	static Map<String, Object> createResponse(String jsonrpc, Object result, Map<String, Object> error, Object id) {
+		Map<String, Object> responseData = new LinkedHashMap<String, Object>();
+		if (jsonrpc != null) {
+			responseData.put("jsonrpc", jsonrpc);
+			if (result != null) responseData.put("result", result);
+			if (error != null) responseData.put("error", error);
+		} else {
+			responseData.put("result", result);
+			responseData.put("error", error);
+		}
+		responseData.put("id", id);
+		return responseData;
+	}
+
+	
+	/**
+	 * Invokes the entries of a batch request in the executor.
+	 * The responses are kept in the order of the requests.
+	 */
+	void invokeConcurrently(Route route, List<Object> requestList, List<Object> responseList,
+			HttpServletRequest request, HttpServletResponse response) throws Exception {
+		
+		List<BatchEntry> futures = submit(route, requestList, request, response);
+		try {
+			for (BatchEntry future : futures) {
+				Map<String, Object> responseData = get(future);
+				if (responseData != null) responseList.add(responseData);
+			}
+		} finally {
+			cancel(futures);
+		}
+	}
+	
+	/**
+	 * Writes the responses of a batch request one by one, as soon as each entry is completed.
+	 * The responses of the completed entries are not kept in memory.
+	 * 
+	 * Each entry is formatted before it is written, because the response is already committed
+	 * when a later entry fails. The failed entry is written as an internal error instead.
+	 */
+	void invokeStreaming(JSON json, Route route, List<Object> requestList,
+			HttpServletRequest request, HttpServletResponse response) throws Exception {
+		
+		WebMetrics.Sample sample = (metrics != null) ? WebMetrics.getSample(request) : null;
+		List<BatchEntry> futures = (executor != null && requestList.size() > 1) ?
+				submit(route, requestList, request, response) : null;
+		try {
+			json.setContext(requestList);
+			JSONWriter writer = null;
+			for (int i = 0; i < requestList.size(); i++) {
+				Map<?, ?> data = (Map<?, ?>)requestList.get(i);
+				String text;
+				try {
+					Map<String, Object> responseData;
+					if (futures != null) {
+						responseData = get(futures.get(i));
+						futures.set(i, null);
+					} else {
+						responseData = invoke(json, route, data, request, response);
+					}
+					if (responseData == null) continue;
+					
+					responseData = await(responseData, request, response);
+					if (sample != null) sample.skip();
+					text = format(json, responseData);
+				} catch (Exception e) {
+					container.error("Internal error occurred.", e);
+					if (data.get("id") == null) continue;
+					
+					Map<String, Object> error = new LinkedHashMap<String, Object>();
+					error.put("code", -32603);
+					error.put("message", "Internal error.");
+					if (sample != null) sample.error(-32603);
+					text = format(json, createResponse((String)data.get("jsonrpc"), null, error, data.get("id")));
+				}
+				
+				if (writer == null) {
+					if (response.isCommitted()) return;
+					
+					response.setContentType("application/json");
+					writer = json.getWriter(response.getWriter());
+					writer.beginArray();
+				}
+				writer.append(text);
+				writer.flush();
+				if (sample != null) sample.mark(WebMetrics.FORMAT);
+			}
+			
+			if (writer != null) {
+				writer.endArray();
+			} else if (!response.isCommitted()) {
+				// it's notification when id was null for all requests.
+				response.setStatus(SC_ACCEPTED);
+			}
+			if (sample != null) sample.mark(WebMetrics.FORMAT);
+		} finally {
+			if (futures != null) cancel(futures);
+		}
+	}
+	
+	private static String format(JSON json, Map<String, Object> responseData) throws IOException {
+		StringBuilder sb = new StringBuilder(256);
+		if (responseData.get("result") instanceof Container.Memo) {
+			JSONWriter writer = json.getWriter(sb);
+			write(writer, responseData, json.getSettings().isSuppressNull());
+			writer.flush();
+		} else {
+			json.format(responseData, sb);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Submits the entries of a batch request to the executor.
+	 * Every entry runs with its own JSON instance and ExternalContext,
+	 * and the caller must wait all entries before Container.end() is called.
+	 * 
+	 * The entries share the request and the response, which are not thread-safe.
+	 * So the entries see them through wrappers which serialize each call,
+	 * but components should not write the response body in a concurrent batch.
+	 */
+	List<BatchEntry> submit(final Route route, List<Object> requestList,
+			HttpServletRequest origRequest, HttpServletResponse origResponse) throws Exception {
+		
+		final Thread caller = Thread.currentThread();
+		final Locale locale = origRequest.getLocale();
+		final Semaphore permits = (config.batchLimit > 0) ? new Semaphore(config.batchLimit) : null;
+		final HttpServletRequest request = synchronize(HttpServletRequest.class, origRequest);
+		final HttpServletResponse response = synchronize(HttpServletResponse.class, origResponse);
+		final HttpServletRequest callerRequest = origRequest;
+		final HttpServletResponse callerResponse = origResponse;
+		
+		List<BatchEntry> futures = new ArrayList<BatchEntry>(requestList.size());
+		try {
+			for (int i = 0; i < requestList.size(); i++) {
+				final Map<?,?> req = (Map<?,?>)requestList.get(i);
+				BatchEntry future = new BatchEntry(new Callable<Map<String, Object>>() {
+					@Override
+					public Map<String, Object> call() throws Exception {
+						boolean worker = (Thread.currentThread() != caller);
+						try {
+							ExternalContext.start(getServletConfig(), getServletContext(), request, response);
+							return invoke(container.createJSON(locale), route, req, request, response);
+						} finally {
+							if (worker) {
+								ExternalContext.end();
+							} else {
+								// the entry is run by the caller when the executor rejects it.
+								ExternalContext.start(getServletConfig(), getServletContext(), callerRequest, callerResponse);
+							}
+							if (permits != null) permits.release();
+						}
+					}
+				});
+				
+				if (permits != null) permits.acquire();
+				try {
+					executor.execute(future);
+				} catch (RejectedExecutionException e) {
+					future.run();
+				}
+				futures.add(future);
+			}
+		} catch (Exception e) {
+			cancel(futures);
+			throw e;
+		}
+		return futures;
+	}
+	
+	/**
+	 * Returns a proxy which calls the target while holding its lock.
+	 */
+	static <T> T synchronize(Class<T> type, final T target) {
+		return type.cast(Proxy.newProxyInstance(RPCServlet.class.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				synchronized (target) {
+					try {
+						return method.invoke(target, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				}
+			}
+		}));
+	}
+	
+	private static Map<String, Object> get(BatchEntry future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) throw (Error)cause;
+			throw (Exception)cause;
+		}
+	}
+	
+	/**
+	 * Cancels the entries and waits for the running ones to finish,
+	 * so that no entry uses the request or the components after Container.end().
+	 */
+	static void cancel(List<BatchEntry> futures) {
+		for (BatchEntry future : futures) {
+			if (future != null) future.cancel(true);
+		}
+		for (BatchEntry future : futures) {
+			if (future != null) future.await();
+		}
+	}
+	
+	/**
+	 * Creates the executor for batch requests.
+	 * Override this method to use another executor (e.g. a virtual thread executor).
+	 * 
+	 * @param threads the value of batchThreads
+	 * @return executor
+	 */
+	protected ExecutorService createBatchExecutor(int threads) {
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "jsonic-rpc-batch-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Creates the executor for notifications.
+	 * Override this method to use another executor. It should reject tasks when it is busy,
+	 * then the notification is executed on the request thread.
+	 * 
+	 * @param threads the value of notificationThreads
+	 * @param queue the value of notificationQueue
+	 * @return executor
+	 */
+	protected ExecutorService createNotificationExecutor(int threads, int queue) {
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(queue, 1)), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "jsonic-rpc-notification-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 	}
 	
 	@Override
 	public void destroy() {
+		if (metrics != null) {
+			try {
+				metrics.unregister();
+			} catch (JMException e) {
+				container.error("failed to unregister WebMetrics MBean.", e);
+			}
+		}
+		try {
+			ConcurrencyLimit.unregister(config.limits.values());
+		} catch (JMException e) {
+			container.error("failed to unregister ConcurrencyLimit MBeans.", e);
+		}
+		if (executor != null) executor.shutdownNow();
+		if (notifier != null) {
+			notifier.shutdown();
+			try {
+				notifier.awaitTermination(container.asyncTimeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 		container.destory();
+		AsyncSupport.release();
+		FormatCache.clear();
 		super.destroy();
 	}
 	
+	/**
+	 * An entry of a concurrent batch request.
+	 * 
+	 * FutureTask.cancel() returns without waiting for the running task,
+	 * so the entry counts down when it has run and can be awaited after it is cancelled.
+	 * An entry which is not started yet is claimed by await() and never runs.
+	 */
+	static final class BatchEntry extends FutureTask<Map<String, Object>> {
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		private final CountDownLatch finished = new CountDownLatch(1);
+		
+		public BatchEntry(Callable<Map<String, Object>> callable) {
+			super(callable);
+		}
+		
+		@Override
+		public void run() {
+			if (!claimed.compareAndSet(false, true)) return;
+			try {
+				super.run();
+			} finally {
+				finished.countDown();
+			}
+		}
+		
+		/**
+		 * Waits until the entry has run, or returns at once if it is not started.
+		 * The interruption is kept until the entry has finished.
+		 */
+		void await() {
+			if (claimed.compareAndSet(false, true)) return;
+			
+			boolean interrupted = false;
+			while (true) {
+				try {
+					finished.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+	
 	static class RouteMapping {
 		static final Pattern PLACE_PATTERN = Pattern.compile("\\{\\s*(\\p{javaJavaIdentifierStart}[\\p{javaJavaIdentifierPart}\\.-]*)\\s*(?::\\s*((?:[^{}]|\\{[^{}]*\\})*)\\s*)?\\}");
 		static final Pattern DEFAULT_PATTERN = Pattern.compile("[^/().]+");
 		
 		public String target;
 		
+		String path;
 		Config config;
 		Pattern pattern;
 		List<String> names;
+		ConcurrencyLimit limit;
 		
 		public RouteMapping() {
 		}
 		
 		public void init(String path, Config config) {
+			this.path = path;
 			this.config = config;
+			this.limit = config.limits.get(path);
 			
 			this.names = new ArrayList<String>();
 			StringBuffer sb = new StringBuffer("^\\Q");
@@ -376,9 +1305,8 @@ public class RPCServlet extends HttpServlet {
 		}
 		
 		@SuppressWarnings("unchecked")
-		public Route matches(HttpServletRequest request, String path) throws IOException {
-			Matcher m = pattern.matcher(path);
-			if (m.matches()) {
+		public Route matches(HttpServletRequest request, MatchResult m) throws IOException {
+			if (m != null) {
 				Map<String, Object> params = new HashMap<String, Object>(); 
 				for (int i = 0; i < names.size(); i++) {
 					String key = names.get(i);
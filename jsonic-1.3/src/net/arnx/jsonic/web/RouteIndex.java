@@ -0,0 +1,275 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.web;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the first pattern which matches the whole path.
+ *
+ * Patterns are indexed by their literal prefix in a trie, so only the patterns
+ * whose prefix is a prefix of the path are tested, in the declared order.
+ * Recent decisions (including "not found") and their captured groups are kept in a lock-free cache,
+ * so a cached path is not matched again.
+ */
+final class RouteIndex {
+	private static final int CACHE_SIZE = 1024;
+
+	private final Pattern[] patterns;
+	private final Node root = new Node();
+
+	private final ConcurrentHashMap<String, Match> cache = new ConcurrentHashMap<String, Match>();
+
+	public RouteIndex(List<Pattern> patterns) {
+		this.patterns = patterns.toArray(new Pattern[patterns.size()]);
+
+		for (int i = 0; i < this.patterns.length; i++) {
+			String prefix = getLiteralPrefix(this.patterns[i]);
+			Node node = root;
+			for (int j = 0; j < prefix.length(); j++) {
+				node = node.child(prefix.charAt(j));
+			}
+			node.add(i);
+		}
+	}
+
+	/**
+	 * Returns the index of the first pattern which matches the path.
+	 *
+	 * @param path request path
+	 * @return the index of the matched pattern or -1
+	 */
+	public int find(String path) {
+		Match match = match(path);
+		return (match != null) ? match.index : -1;
+	}
+
+	/**
+	 * Returns the first pattern which matches the path with its captured groups.
+	 *
+	 * @param path request path
+	 * @return the matched result or null
+	 */
+	public Match match(String path) {
+		Match match = cache.get(path);
+		if (match != null) {
+			if (!match.used) match.used = true;
+		} else {
+			match = put(path, search(path));
+		}
+		return (match.index != -1) ? match : null;
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	private Match search(String path) {
+
+		int[] candidates = new int[8];
+		int size = 0;
+
+		Node node = root;
+		int pos = 0;
+		while (node != null) {
+			if (node.routes != null) {
+				for (int i = 0; i < node.size; i++) {
+					if (size == candidates.length) {
+						candidates = Arrays.copyOf(candidates, size * 2);
+					}
+					candidates[size++] = node.routes[i];
+				}
+			}
+			if (pos >= path.length() || node.children == null) {
+				break;
+			}
+			node = node.children.get(path.charAt(pos++));
+		}
+
+		Arrays.sort(candidates, 0, size);
+
+		for (int i = 0; i < size; i++) {
+			Matcher m = patterns[candidates[i]].matcher(path);
+			if (m.matches()) {
+				return new Match(candidates[i], m.toMatchResult());
+			}
+		}
+		return new Match(-1, null);
+	}
+
+	private Match put(String path, Match match) {
+		if (cache.size() >= CACHE_SIZE) {
+			evict();
+		}
+		Match current = cache.putIfAbsent(path, match);
+		return (current != null) ? current : match;
+	}
+
+	// second chance: removes the first entry which is not used since the last sweep.
+	private void evict() {
+		for (int i = 0; i < 2; i++) {
+			Iterator<Match> it = cache.values().iterator();
+			while (it.hasNext()) {
+				Match match = it.next();
+				if (match.used) {
+					match.used = false;
+				} else {
+					it.remove();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the literal text every matching input must start with.
+	 * The result is conservative: an empty string is always a correct answer.
+	 *
+	 * @param pattern target pattern
+	 * @return literal prefix
+	 */
+	static String getLiteralPrefix(Pattern pattern) {
+		if (pattern.flags() != 0) {
+			return "";
+		}
+
+		String regex = pattern.pattern();
+		if (hasTopLevelAlternation(regex)) {
+			return "";
+		}
+
+		StringBuilder sb = new StringBuilder();
+		int i = 0;
+		if (regex.startsWith("^")) i++;
+
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			int last = sb.length();
+			if (c == '\\') {
+				if (i + 1 >= regex.length()) break;
+
+				char n = regex.charAt(i + 1);
+				if (n == 'Q') {
+					int end = regex.indexOf("\\E", i + 2);
+					if (end == -1) end = regex.length();
+					sb.append(regex, i + 2, end);
+					i = end + 2;
+					if (i < regex.length() && sb.length() > 0) {
+						char q = regex.charAt(i);
+						if (q == '?' || q == '*' || q == '{') {
+							sb.setLength(sb.length() - 1);
+							break;
+						}
+					}
+					continue;
+				} else if (Character.isLetterOrDigit(n)) {
+					break;
+				}
+				sb.append(n);
+				i += 2;
+			} else if (".[]{}()*+?^$|".indexOf(c) != -1) {
+				break;
+			} else {
+				sb.append(c);
+				i++;
+			}
+
+			// a quantifier may remove the last literal.
+			if (i < regex.length()) {
+				char q = regex.charAt(i);
+				if (q == '?' || q == '*' || q == '{') {
+					sb.setLength(last);
+					break;
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static boolean hasTopLevelAlternation(String regex) {
+		int depth = 0;
+		boolean inClass = false;
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+					int end = regex.indexOf("\\E", i + 2);
+					if (end == -1) return false;
+					i = end + 1;
+				} else {
+					i++;
+				}
+			} else if (inClass) {
+				if (c == ']') inClass = false;
+			} else if (c == '[') {
+				inClass = true;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == '|' && depth == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static final class Match {
+		final int index;
+		final MatchResult result;
+		volatile boolean used = true;
+
+		Match(int index, MatchResult result) {
+			this.index = index;
+			this.result = result;
+		}
+	}
+
+	private static class Node {
+		Map<Character, Node> children;
+		int[] routes;
+		int size;
+
+		Node child(char c) {
+			if (children == null) {
+				children = new HashMap<Character, Node>();
+			}
+			Node node = children.get(c);
+			if (node == null) {
+				node = new Node();
+				children.put(c, node);
+			}
+			return node;
+		}
+
+		void add(int index) {
+			if (routes == null) {
+				routes = new int[2];
+			} else if (size == routes.length) {
+				routes = Arrays.copyOf(routes, size * 2);
+			}
+			routes[size++] = index;
+		}
+	}
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.web;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import net.arnx.jsonic.HistogramListener.Histogram;
+import net.arnx.jsonic.JSON;
+import net.arnx.jsonic.util.CacheMonitor;
+
+/**
+ * Latency and payload metrics of RPCServlet and RESTServlet.
+ *
+ * Each route (the key of "mappings") and each method of the route ("[route] [method]") has
+ * a request count, latency histograms of the phases (match, parse, resolve, invoke and format),
+ * request and response size histograms and error counts by code.
+ * RPCServlet records resolve and invoke per call, and the others per HTTP request.
+ * Error codes are the "code" of JSON-RPC errors and HTTP statuses from 400.
+ *
+ * The request size is Content-Length in bytes, and the response size is the characters written
+ * to the writer or the bytes written to the output stream.
+ */
+public final class WebMetrics implements WebMetricsMXBean {
+	static final int MATCH = 0;
+	static final int PARSE = 1;
+	static final int RESOLVE = 2;
+	static final int INVOKE = 3;
+	static final int FORMAT = 4;
+
+	private static final String SAMPLE_KEY = Sample.class.getName();
+	private static final int MAX_ENTRIES = 1024;
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private ObjectName objectName;
+
+	/**
+	 * Returns the entry of the name. The number of entries is limited,
+	 * and null is returned when the limit is exceeded.
+	 */
+	Entry getEntry(String name) {
+		Entry entry = entries.get(name);
+		if (entry == null && entries.size() < MAX_ENTRIES) {
+			entry = new Entry(name);
+			Entry current = entries.putIfAbsent(name, entry);
+			if (current != null) entry = current;
+		}
+		return entry;
+	}
+
+	/**
+	 * Starts the measurement of the request. The returned sample is also
+	 * kept as the request attribute, and its response must be used instead.
+	 */
+	Sample start(HttpServletRequest request, HttpServletResponse response) {
+		Sample sample = new Sample(this, request, response);
+		request.setAttribute(SAMPLE_KEY, sample);
+		return sample;
+	}
+
+	static Sample getSample(HttpServletRequest request) {
+		return (request != null) ? (Sample)request.getAttribute(SAMPLE_KEY) : null;
+	}
+
+	@Override
+	public List<Statistics> getEntries() {
+		List<Statistics> list = new ArrayList<Statistics>(entries.size());
+		for (Entry entry : new TreeMap<String, Entry>(entries).values()) {
+			list.add(new Statistics(entry));
+		}
+		return list;
+	}
+
+	@Override
+	public void reset() {
+		entries.clear();
+	}
+
+	/**
+	 * Writes the statistics as JSON, if the client is in one of the roles of "metricsAccess".
+	 * When no role is configured, only the requests from the loopback address are allowed.
+	 * Otherwise, 403 Forbidden is sent.
+	 */
+	void write(HttpServletRequest request, HttpServletResponse response, Set<String> access) throws IOException {
+		if (!isAccessible(request, access)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden");
+			return;
+		}
+
+		response.setContentType("application/json");
+		response.setHeader("Cache-Control", "no-cache");
+		new JSON().format(getEntries(), response.getWriter());
+	}
+
+	static boolean isAccessible(HttpServletRequest request, Set<String> access) {
+		if (access != null) {
+			for (String role : access) {
+				if (request.isUserInRole(role)) return true;
+			}
+			return false;
+		}
+
+		String addr = request.getRemoteAddr();
+		if (addr == null) return false;
+		try {
+			// a literal address is not resolved.
+			return InetAddress.getByName(addr).isLoopbackAddress();
+		} catch (UnknownHostException e) {
+			return false;
+		}
+	}
+
+	void register(String name) throws JMException {
+		ObjectName objectName = CacheMonitor.getObjectName("WebMetrics", name);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (!server.isRegistered(objectName)) {
+			server.registerMBean(this, objectName);
+			this.objectName = objectName;
+		}
+	}
+
+	void unregister() throws JMException {
+		if (objectName != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			objectName = null;
+		}
+	}
+
+	static final class Entry {
+		final String name;
+		final LongAdder count = new LongAdder();
+		final ConcurrentMap<Integer, LongAdder> errors = new ConcurrentHashMap<Integer, LongAdder>();
+		final Histogram total = new Histogram();
+		final Histogram[] phases = new Histogram[FORMAT + 1];
+		final Histogram requestSize = new Histogram();
+		final Histogram responseSize = new Histogram();
+
+		Entry(String name) {
+			this.name = name;
+			for (int i = 0; i < phases.length; i++) {
+				phases[i] = new Histogram();
+			}
+		}
+
+		void record(int phase, long nanos) {
+			phases[phase].record(nanos);
+		}
+
+		void error(int code) {
+			LongAdder counter = errors.get(code);
+			if (counter == null) {
+				counter = new LongAdder();
+				LongAdder current = errors.putIfAbsent(code, counter);
+				if (current != null) counter = current;
+			}
+			counter.increment();
+		}
+	}
+
+	/**
+	 * The measurement of a HTTP request.
+	 */
+	static final class Sample {
+		private final WebMetrics metrics;
+		private final HttpServletRequest request;
+		private final CountingResponse response;
+		private final long start = System.nanoTime();
+		private final long[] phases = new long[FORMAT + 1];
+		private long last = start;
+		private List<Integer> errors;
+		private Entry route;
+		private Entry method;
+		private boolean detached;
+		private boolean done;
+
+		Sample(WebMetrics metrics, HttpServletRequest request, HttpServletResponse response) {
+			this.metrics = metrics;
+			this.request = request;
+			this.response = new CountingResponse(response);
+			for (int i = 0; i < phases.length; i++) {
+				phases[i] = -1;
+			}
+		}
+
+		HttpServletResponse getResponse() {
+			return response;
+		}
+
+		void setEntries(Entry route, Entry method) {
+			this.route = route;
+			this.method = method;
+		}
+
+		/**
+		 * Records a call of JSON-RPC to the route and the method.
+		 *
+		 * @param name the method name
+		 * @param start the start time of the call
+		 * @param resolved the time when the method is resolved, or 0 if the method is not found
+		 * @param error the error code or null
+		 */
+		void call(String name, long start, long resolved, Integer error) {
+			Entry route = this.route;
+			if (route == null) return;
+
+			long now = System.nanoTime();
+			Entry method = (resolved != 0) ? metrics.getEntry(route.name + " " + name) : null;
+			route.record(RESOLVE, ((resolved != 0) ? resolved : now) - start);
+			if (resolved != 0) route.record(INVOKE, now - resolved);
+			if (method != null) {
+				method.count.increment();
+				method.total.record(now - start);
+				method.record(RESOLVE, resolved - start);
+				method.record(INVOKE, now - resolved);
+				if (error != null) method.error(error);
+			}
+		}
+
+		/**
+		 * Adds the time from the last mark to the phase.
+		 */
+		void mark(int phase) {
+			long now = System.nanoTime();
+			phases[phase] = Math.max(phases[phase], 0) + (now - last);
+			last = now;
+		}
+
+		/**
+		 * Discards the time from the last mark.
+		 */
+		void skip() {
+			last = System.nanoTime();
+		}
+
+		synchronized void error(int code) {
+			if (errors == null) errors = new ArrayList<Integer>(1);
+			errors.add(code);
+		}
+
+		/**
+		 * The sample is completed by the asynchronous completion instead of end.
+		 */
+		void detach() {
+			detached = true;
+		}
+
+		void end() {
+			if (!detached) complete();
+		}
+
+		synchronized void complete() {
+			if (done) return;
+			done = true;
+
+			long total = System.nanoTime() - start;
+			if (response.status >= 400) {
+				error(response.status);
+			}
+			if (route != null) record(route, total);
+			if (method != null) record(method, total);
+		}
+
+		private void record(Entry entry, long total) {
+			entry.count.increment();
+			entry.total.record(total);
+			for (int i = 0; i < phases.length; i++) {
+				if (phases[i] >= 0) entry.record(i, phases[i]);
+			}
+			int length = request.getContentLength();
+			if (length >= 0) entry.requestSize.record(length);
+			entry.responseSize.record(response.length);
+			if (errors != null) {
+				for (Integer code : errors) entry.error(code);
+			}
+		}
+	}
+
+	static final class CountingResponse extends HttpServletResponseWrapper {
+		int status = SC_OK;
+		long length;
+		private PrintWriter writer;
+		private ServletOutputStream out;
+
+		CountingResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (out == null) {
+				final ServletOutputStream sout = super.getOutputStream();
+				out = new ServletOutputStream() {
+					@Override
+					public void write(int b) throws IOException {
+						sout.write(b);
+						length++;
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						sout.write(b, off, len);
+						length += len;
+					}
+
+					@Override
+					public void flush() throws IOException {
+						sout.flush();
+					}
+
+					@Override
+					public void close() throws IOException {
+						sout.close();
+					}
+				};
+			}
+			return out;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				writer = new PrintWriter(new FilterWriter(super.getWriter()) {
+					@Override
+					public void write(int c) throws IOException {
+						super.write(c);
+						length++;
+					}
+
+					@Override
+					public void write(char[] cbuf, int off, int len) throws IOException {
+						super.write(cbuf, off, len);
+						length += len;
+					}
+
+					@Override
+					public void write(String str, int off, int len) throws IOException {
+						super.write(str, off, len);
+						length += len;
+					}
+				});
+			}
+			return writer;
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			status = sc;
+			super.setStatus(sc);
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public void setStatus(int sc, String sm) {
+			status = sc;
+			super.setStatus(sc, sm);
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			status = sc;
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			status = sc;
+			super.sendError(sc, msg);
+		}
+	}
+
+	public static final class Statistics {
+		private final String name;
+		private final long count;
+		private final Map<Integer, Long> errors;
+		private final HistogramStatistics total;
+		private final HistogramStatistics[] phases;
+		private final HistogramStatistics requestSize;
+		private final HistogramStatistics responseSize;
+
+		Statistics(Entry entry) {
+			name = entry.name;
+			count = entry.count.sum();
+			Map<Integer, Long> errors = new TreeMap<Integer, Long>();
+			for (Map.Entry<Integer, LongAdder> error : entry.errors.entrySet()) {
+				errors.put(error.getKey(), error.getValue().sum());
+			}
+			this.errors = Collections.unmodifiableMap(errors);
+			total = new HistogramStatistics(entry.total);
+			phases = new HistogramStatistics[entry.phases.length];
+			for (int i = 0; i < phases.length; i++) {
+				phases[i] = new HistogramStatistics(entry.phases[i]);
+			}
+			requestSize = new HistogramStatistics(entry.requestSize);
+			responseSize = new HistogramStatistics(entry.responseSize);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the error counts by code.
+		 *
+		 * @return the error counts
+		 */
+		public Map<Integer, Long> getErrors() {
+			return errors;
+		}
+
+		/**
+		 * Returns the latency of the whole request in nanoseconds.
+		 *
+		 * @return the statistics
+		 */
+		public HistogramStatistics getTotal() {
+			return total;
+		}
+
+		public HistogramStatistics getMatch() {
+			return phases[MATCH];
+		}
+
+		public HistogramStatistics getParse() {
+			return phases[PARSE];
+		}
+
+		public HistogramStatistics getResolve() {
+			return phases[RESOLVE];
+		}
+
+		public HistogramStatistics getInvoke() {
+			return phases[INVOKE];
+		}
+
+		public HistogramStatistics getFormat() {
+			return phases[FORMAT];
+		}
+
+		public HistogramStatistics getRequestSize() {
+			return requestSize;
+		}
+
+		public HistogramStatistics getResponseSize() {
+			return responseSize;
+		}
+	}
+
+	public static final class HistogramStatistics {
+		private final long count;
+		private final double mean;
+		private final long p50;
+		private final long p90;
+		private final long p99;
+		private final long max;
+
+		HistogramStatistics(Histogram histogram) {
+			count = histogram.getCount();
+			mean = histogram.getMean();
+			p50 = histogram.getPercentile(50);
+			p90 = histogram.getPercentile(90);
+			p99 = histogram.getPercentile(99);
+			max = histogram.getMax();
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP90() {
+			return p90;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getMax() {
+			return max;
+		}
+	}
+}
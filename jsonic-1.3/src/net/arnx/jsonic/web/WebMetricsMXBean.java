@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 Hidekatsu Izuno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.arnx.jsonic.web;
+
+import java.util.List;
+
+/**
+ * Management interface of WebMetrics.
+ */
+public interface WebMetricsMXBean {
+	/**
+	 * Returns the statistics of the routes and the methods, sorted by the name.
+	 *
+	 * @return the statistics
+	 */
+	List<WebMetrics.Statistics> getEntries();
+
+	void reset();
+}
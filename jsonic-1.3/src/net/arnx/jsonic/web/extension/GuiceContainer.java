@@ -15,6 +15,7 @@
  */
 package net.arnx.jsonic.web.extension;
 
+import java.lang.annotation.Annotation;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,6 +25,10 @@ import javax.servlet.http.HttpServlet;
 import net.arnx.jsonic.web.Container;
 
 import com.google.inject.Injector;
+import com.google.inject.Scope;
+import com.google.inject.Scopes;
+import com.google.inject.Singleton;
+import com.google.inject.spi.BindingScopingVisitor;
 
 public class GuiceContainer extends Container {
 	Logger log;
@@ -41,6 +46,31 @@ public class GuiceContainer extends Container {
 		return injector.getInstance(findClass(className));
 	}
 	
+	@Override
+	protected boolean isSharedScope(String className, Object component) {
+		try {
+			return injector.getBinding(findClass(className)).acceptScopingVisitor(new BindingScopingVisitor<Boolean>() {
+				public Boolean visitEagerSingleton() {
+					return true;
+				}
+				
+				public Boolean visitScope(Scope scope) {
+					return scope == Scopes.SINGLETON || scope == Scopes.NO_SCOPE;
+				}
+				
+				public Boolean visitScopeAnnotation(Class<? extends Annotation> scopeAnnotation) {
+					return Singleton.class.equals(scopeAnnotation);
+				}
+				
+				public Boolean visitNoScoping() {
+					return true;
+				}
+			});
+		} catch (Exception e) {
+			return false;
+		}
+	}
+	
 	@Override
 	public boolean isDebugMode() {
 		return (debug != null) ? debug : log.isLoggable(Level.FINE);
@@ -20,6 +20,7 @@ import javax.servlet.http.HttpServlet;
 
 import net.arnx.jsonic.web.Container;
 
+import org.seasar.framework.container.InstanceDef;
 import org.seasar.framework.container.factory.SingletonS2ContainerFactory;
 import org.seasar.framework.log.Logger;
 
@@ -39,6 +40,23 @@ public class S2Container extends Container {
 			.getComponent(findClass(className));
 	}
 	
+	@Override
+	protected boolean isSharedScope(String className, Object component) {
+		String instance;
+		try {
+			instance = SingletonS2ContainerFactory
+				.getContainer()
+				.getComponentDef(findClass(className))
+				.getInstanceDef()
+				.getName();
+		} catch (Exception e) {
+			return false;
+		}
+		return InstanceDef.SINGLETON_NAME.equals(instance)
+				|| InstanceDef.PROTOTYPE_NAME.equals(instance)
+				|| InstanceDef.APPLICATION_NAME.equals(instance);
+	}
+	
 	@Override
 	public boolean isDebugMode() {
 		return (debug != null) ? debug : log.isDebugEnabled();
@@ -16,6 +16,10 @@
 package net.arnx.jsonic.web.extension;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -35,6 +39,8 @@ public class SpringContainer extends Container {
 	Log log;
 	ApplicationContext appContext;
 	
+	private final Map<Class<?>, Method[]> setterCache = new ConcurrentHashMap<Class<?>, Method[]>();
+	
 	@Override
 	public void init(HttpServlet servlet) throws ServletException {
 		super.init(servlet);
@@ -55,23 +61,51 @@ public class SpringContainer extends Container {
 			((ApplicationContextAware)component).setApplicationContext(appContext);
 		}
 		
-		for (Method method : component.getClass().getMethods()) {
-			Class<?>[] params = method.getParameterTypes();
-			if (void.class.equals(method.getReturnType())
-					&& method.getName().startsWith("set")
-					&& params.length == 1) {
-				Class<?> c = params[0];
-				if (HttpServletRequest.class.equals(c)) {
-					method.invoke(component, ExternalContext.getRequest());
-				} else if (HttpServletResponse.class.equals(c)) {
-					method.invoke(component, ExternalContext.getResponse());
-				}
+		for (Method method : getSetters(component.getClass())) {
+			if (HttpServletRequest.class.equals(method.getParameterTypes()[0])) {
+				method.invoke(component, ExternalContext.getRequest());
+			} else {
+				method.invoke(component, ExternalContext.getResponse());
 			}
 		}
 		
 		return component;
 	}
 	
+	@Override
+	protected boolean isSharedScope(String className, Object component) {
+		try {
+			return appContext.isSingleton(className) || appContext.isPrototype(className);
+		} catch (Exception e) {
+			return false;
+		}
+	}
+	
+	private Method[] getSetters(Class<?> cls) {
+		Method[] setters = setterCache.get(cls);
+		if (setters == null) {
+			List<Method> list = new ArrayList<Method>();
+			for (Method method : cls.getMethods()) {
+				Class<?>[] params = method.getParameterTypes();
+				if (void.class.equals(method.getReturnType())
+						&& method.getName().startsWith("set")
+						&& params.length == 1
+						&& (HttpServletRequest.class.equals(params[0]) || HttpServletResponse.class.equals(params[0]))) {
+					list.add(method);
+				}
+			}
+			setters = list.toArray(new Method[list.size()]);
+			setterCache.put(cls, setters);
+		}
+		return setters;
+	}
+	
+	@Override
+	public void destory() {
+		super.destory();
+		setterCache.clear();
+	}
+	
 	@Override
 	public boolean isDebugMode() {
 		return (debug != null) ? debug : log.isDebugEnabled();
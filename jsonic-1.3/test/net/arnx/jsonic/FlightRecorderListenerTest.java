@@ -0,0 +1,110 @@
+package net.arnx.jsonic;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class FlightRecorderListenerTest {
+	@After
+	public void tearDown() {
+		JSON.listener = null;
+	}
+
+	@Test
+	public void testEvents() throws Exception {
+		assertTrue(FlightRecorderListener.isAvailable());
+
+		CounterListener counter = new CounterListener();
+		FlightRecorderListener listener = new FlightRecorderListener(counter);
+		listener.threshold = 0;
+		listener.invokeThreshold = 1000000000L;
+		listener.expensiveDepth = 3;
+		listener.sampleInterval = Long.MAX_VALUE;
+
+		List<RecordedEvent> events;
+		File file = File.createTempFile("jsonic", ".jfr");
+		Recording recording = new Recording();
+		try {
+			recording.start();
+			JSON.listener = listener;
+
+			JSON.decode("[1, [2, [3]]]");
+			JSON.decode("[[[4]]]");
+			JSON.decode("{\"a\": 1}", Map.class);
+			JSON.encode(new int[] { 1, 2 });
+			listener.onInvokeStart();
+			listener.onInvoke("Calc", "plus", 10L, 5L, 0);
+			listener.onInvokeStart();
+			Thread.sleep(50);
+			listener.onInvoke(null, "missing", 10L, 0L, -32601);
+
+			JSON.listener = null;
+			recording.stop();
+			recording.dump(file.toPath());
+			events = RecordingFile.readAllEvents(file.toPath());
+		} finally {
+			recording.close();
+			file.delete();
+		}
+
+		assertEquals(3, counter.getParse().getCount());
+		assertEquals(1, counter.getFormat().getCount());
+
+		Map<String, RecordedEvent> map = new HashMap<String, RecordedEvent>();
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (RecordedEvent event : events) {
+			String name = event.getEventType().getName();
+			if (!name.startsWith("net.arnx.jsonic.")) continue;
+			map.put(name, event);
+			counts.put(name, counts.containsKey(name) ? counts.get(name) + 1 : 1);
+		}
+		assertEquals(Integer.valueOf(3), counts.get("net.arnx.jsonic.Parse"));
+		assertEquals(Integer.valueOf(1), counts.get("net.arnx.jsonic.Convert"));
+		assertEquals(Integer.valueOf(1), counts.get("net.arnx.jsonic.Format"));
+		assertEquals(Integer.valueOf(1), counts.get("net.arnx.jsonic.ExpensiveDocument"));
+		assertEquals(Integer.valueOf(1), counts.get("net.arnx.jsonic.Invoke"));
+
+		RecordedEvent format = map.get("net.arnx.jsonic.Format");
+		assertEquals("START_ARRAY", format.getString("rootType"));
+		assertEquals("TRADITIONAL", format.getString("mode"));
+		assertEquals(5L, format.getLong("length"));
+		assertEquals(2, format.getInt("depth"));
+		assertNull(format.getStackTrace());
+
+		RecordedEvent expensive = map.get("net.arnx.jsonic.ExpensiveDocument");
+		assertEquals("parse", expensive.getString("operation"));
+		assertEquals(4, expensive.getInt("depth"));
+		assertEquals(0L, expensive.getLong("dropped"));
+		assertNotNull(expensive.getStackTrace());
+
+		RecordedEvent convert = map.get("net.arnx.jsonic.Convert");
+		assertEquals("START_OBJECT", convert.getString("rootType"));
+		assertEquals(Map.class.toString(), convert.getString("targetType"));
+
+		RecordedEvent invoke = map.get("net.arnx.jsonic.Invoke");
+		assertEquals("missing", invoke.getString("method"));
+		assertNull(invoke.getString("component"));
+		assertEquals(-32601, invoke.getInt("error"));
+		assertTrue(invoke.getDuration().toMillis() >= 40);
+	}
+
+	@Test
+	public void testSampler() throws Exception {
+		FlightRecorderListener.Sampler sampler = new FlightRecorderListener.Sampler();
+		assertEquals(0, sampler.sample(Long.MAX_VALUE));
+		assertEquals(-1, sampler.sample(Long.MAX_VALUE));
+		assertEquals(-1, sampler.sample(Long.MAX_VALUE));
+		assertEquals(2, sampler.sample(0));
+		assertEquals(0, sampler.sample(0));
+	}
+}
@@ -0,0 +1,205 @@
+package net.arnx.jsonic;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class JSONListenerTest {
+	@After
+	public void tearDown() {
+		JSON.listener = null;
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		final List<JSONStatistics> starts = new ArrayList<JSONStatistics>();
+		final List<JSONStatistics> list = new ArrayList<JSONStatistics>();
+		JSON.listener = new JSONListener() {
+			@Override
+			public void onParseStart(JSONStatistics stats) {
+				starts.add(stats);
+			}
+
+			@Override
+			public void onConvertStart(JSONStatistics stats) {
+				assertSame(starts.get(starts.size() - 1), stats);
+				assertNotNull(stats.getConvertType());
+			}
+
+			@Override
+			public void onParse(JSONStatistics stats) {
+				assertSame(starts.get(starts.size() - 1), stats);
+				list.add(stats);
+			}
+
+			@Override
+			public void onFormatStart(JSONStatistics stats) {
+				fail();
+			}
+
+			@Override
+			public void onFormat(JSONStatistics stats) {
+				fail();
+			}
+
+			@Override
+			public void onInvokeStart() {
+				fail();
+			}
+
+			@Override
+			public void onInvoke(String component, String method, long duration, long resolveDuration, int error) {
+				fail();
+			}
+		};
+
+		String text = "{\"a\": [1, \"x\", null], \"b\": {\"c\": true}}";
+		JSON.decode(text);
+		new JSON().parse(new StringReader(text));
+		assertEquals(2, list.size());
+		for (JSONStatistics stats : list) {
+			assertEquals(text.length(), stats.getLength());
+			assertEquals(JSONEventType.START_OBJECT, stats.getRootType());
+			assertEquals(2, stats.getObjectCount());
+			assertEquals(1, stats.getArrayCount());
+			assertEquals(4, stats.getValueCount());
+			assertEquals(3, stats.getMaxDepth());
+			assertTrue(stats.getDuration() >= 0);
+			assertEquals(JSON.Mode.TRADITIONAL, stats.getMode());
+			assertNull(stats.getConvertType());
+			assertEquals(0, stats.getConvertDuration());
+		}
+
+		list.clear();
+		JSON.decode("\"abc\"", String.class);
+		assertEquals(1, list.size());
+		assertEquals(JSONEventType.STRING, list.get(0).getRootType());
+		assertEquals(1, list.get(0).getValueCount());
+		assertEquals(String.class, list.get(0).getConvertType());
+		assertTrue(list.get(0).getConvertDuration() <= list.get(0).getDuration());
+
+		list.clear();
+		JSONReader reader = new JSON().getReader("[1, 2] [3]");
+		while (reader.next() != null) {
+		}
+		assertEquals(1, list.size());
+		assertEquals(2, list.get(0).getArrayCount());
+		assertEquals(3, list.get(0).getValueCount());
+		assertEquals(10, list.get(0).getLength());
+	}
+
+	@Test
+	public void testFormat() throws Exception {
+		Object value = JSON.decode("{\"a\": [1, \"x,:{\\\"\", null], \"b\": {\"c\": true}}");
+		final List<JSONStatistics> starts = new ArrayList<JSONStatistics>();
+		final List<JSONStatistics> list = new ArrayList<JSONStatistics>();
+		JSON.listener = new JSONListener() {
+			@Override
+			public void onParseStart(JSONStatistics stats) {
+				fail();
+			}
+
+			@Override
+			public void onConvertStart(JSONStatistics stats) {
+				fail();
+			}
+
+			@Override
+			public void onParse(JSONStatistics stats) {
+				fail();
+			}
+
+			@Override
+			public void onFormatStart(JSONStatistics stats) {
+				starts.add(stats);
+			}
+
+			@Override
+			public void onFormat(JSONStatistics stats) {
+				assertSame(starts.get(starts.size() - 1), stats);
+				list.add(stats);
+			}
+
+			@Override
+			public void onInvokeStart() {
+				fail();
+			}
+
+			@Override
+			public void onInvoke(String component, String method, long duration, long resolveDuration, int error) {
+				fail();
+			}
+		};
+
+		String text = JSON.encode(value);
+		JSON json = new JSON();
+		json.setPrettyPrint(true);
+		String pretty = json.format(value);
+		assertEquals(2, list.size());
+		assertEquals(text.length(), list.get(0).getLength());
+		assertEquals(pretty.length(), list.get(1).getLength());
+		for (JSONStatistics stats : list) {
+			assertEquals(JSONEventType.START_OBJECT, stats.getRootType());
+			assertEquals(2, stats.getObjectCount());
+			assertEquals(1, stats.getArrayCount());
+			assertEquals(4, stats.getValueCount());
+			assertEquals(3, stats.getMaxDepth());
+		}
+
+		list.clear();
+		StringWriter out = new StringWriter();
+		JSONWriter writer = new JSON().getWriter(out);
+		writer.beginArray().value(1).beginObject().name("a").value("b").endObject().endArray();
+		writer.value(true);
+		assertEquals(2, list.size());
+		assertEquals(out.toString().length(), list.get(0).getLength() + list.get(1).getLength());
+		assertEquals(JSONEventType.START_ARRAY, list.get(0).getRootType());
+		assertEquals(1, list.get(0).getObjectCount());
+		assertEquals(2, list.get(0).getValueCount());
+		assertEquals(JSONEventType.BOOLEAN, list.get(1).getRootType());
+	}
+
+	@Test
+	public void testAdapters() throws Exception {
+		CounterListener counter = new CounterListener();
+		JSON.listener = counter;
+		Object value = JSON.decode("[{\"a\": 1}, {\"a\": 2}]");
+		String text = JSON.encode(value);
+		assertEquals(1, counter.getParse().getCount());
+		assertEquals(2, counter.getParse().getObjectCount());
+		assertEquals(1, counter.getParse().getArrayCount());
+		assertEquals(2, counter.getParse().getValueCount());
+		assertEquals(3, counter.getParse().getMaxDepth());
+		assertEquals(1, counter.getFormat().getCount());
+		assertEquals(text.length(), counter.getFormat().getLength());
+		counter.reset();
+		assertEquals(0, counter.getParse().getCount());
+
+		HistogramListener histogram = new HistogramListener();
+		JSON.listener = histogram;
+		JSON.decode("[1]");
+		JSON.decode("[1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15]");
+		assertEquals(2, histogram.getParseLength().getCount());
+		assertEquals(3, histogram.getParseLength().getPercentile(50));
+		assertEquals(51, histogram.getParseLength().getPercentile(100));
+		assertEquals(51, histogram.getParseLength().getMax());
+		assertEquals(27.0, histogram.getParseLength().getMean(), 0.0);
+		assertEquals(0, histogram.getFormatLength().getCount());
+
+		HistogramListener.Histogram h = new HistogramListener.Histogram();
+		h.record(0);
+		h.record(1);
+		h.record(1000);
+		assertEquals(0, h.getPercentile(0));
+		assertEquals(1, h.getPercentile(60));
+		assertEquals(1000, h.getPercentile(99));
+		assertEquals(1, h.getBuckets()[0]);
+		assertEquals(1, h.getBuckets()[10]);
+	}
+}
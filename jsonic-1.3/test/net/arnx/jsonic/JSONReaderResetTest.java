@@ -0,0 +1,28 @@
+package net.arnx.jsonic;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashMap;
+
+import net.arnx.jsonic.io.StringInputSource;
+
+import org.junit.Test;
+
+public class JSONReaderResetTest {
+	@Test
+	public void testReset() throws Exception {
+		for (JSON.Mode mode : JSON.Mode.values()) {
+			JSONReader reader = new JSON(mode).getReader("[1, {\"a\": [");
+			assertEquals(JSONEventType.START_ARRAY, reader.next());
+			assertEquals(JSONEventType.NUMBER, reader.next());
+			assertEquals(JSONEventType.START_OBJECT, reader.next());
+
+			reader.reset(new StringInputSource("{\"b\": true}"));
+			assertEquals(JSONEventType.START_OBJECT, reader.next());
+			LinkedHashMap<Object, Object> expected = new LinkedHashMap<Object, Object>();
+			expected.put("b", true);
+			assertEquals(expected, reader.getMap());
+			assertNull(reader.next());
+		}
+	}
+}
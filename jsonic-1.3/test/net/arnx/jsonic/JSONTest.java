@@ -1792,6 +1792,25 @@ public class JSONTest {
 		}
 	}
 
+	@Test
+	public void testDecodeBeforeGregorianCutover() throws Exception {
+		// java.util.Date uses the Julian calendar before 1582-10-15.
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(1500, Calendar.JANUARY, 1, 0, 0, 0);
+		assertEquals(new Timestamp(cal.getTimeInMillis()), JSON.decode("\"1500-01-01T00:00:00Z\"", Timestamp.class));
+		assertEquals(cal.getTime(), JSON.decode("\"1500-01-01\"", Date.class));
+		assertEquals(cal.getTimeInMillis(), JSON.decode("\"1500-01-01\"", Calendar.class).getTimeInMillis());
+
+		cal.clear();
+		cal.set(1582, Calendar.OCTOBER, 16, 0, 0, 0);
+		assertEquals(cal.getTime(), JSON.decode("\"1582-10-16\"", Date.class));
+
+		Timestamp ts = JSON.decode("\"2000-01-01T00:00:00.123456789Z\"", Timestamp.class);
+		assertEquals(946684800123L, ts.getTime());
+		assertEquals(123456789, ts.getNanos());
+	}
+
 	@Test
 	public void testBase64() throws Exception {
 		JSON json = new JSON();
@@ -1870,6 +1889,89 @@ public class JSONTest {
 		JSON.validate(this.getClass().getResourceAsStream("Sample1.json"));
 	}
 
+	@Test
+	public void testPooling() throws Exception {
+		JSON.pooling = true;
+		try {
+			List<Object> list = new ArrayList<Object>();
+			list.add(1);
+			list.add("a");
+			list.add(null);
+
+			for (int i = 0; i < 3; i++) {
+				assertEquals("[1,\"a\",null]", JSON.encode(list));
+				assertEquals("[\n\t1,\n\t\"a\",\n\tnull\n]", JSON.encode(list, true));
+				assertEquals(Arrays.asList(new BigDecimal(1), "a", null), JSON.decode("[1,\"a\",null]"));
+				assertArrayEquals(new int[] { 1, 2 }, JSON.decode("[1,2]", int[].class));
+				assertEquals(Arrays.asList(new BigDecimal(1)), JSON.decode(new StringReader("[1]")));
+				assertEquals(Arrays.asList(new BigDecimal(2)), JSON.decode(new ByteArrayInputStream("[2]".getBytes("UTF-8"))));
+
+				StringWriter writer = new StringWriter();
+				JSON.encode(list, writer);
+				assertEquals("[1,\"a\",null]", writer.toString());
+			}
+
+			try {
+				JSON.decode("[1,");
+				fail();
+			} catch (JSONException e) {
+				// no handle
+			}
+			assertEquals("{}", JSON.encode(new HashMap<String, Object>()));
+
+			// reentrant call does not share the pooled instance.
+			assertEquals("{\"a\":\"[1]\"}", JSON.encode(new Object() {
+				@SuppressWarnings("unused")
+				public String getA() {
+					return JSON.encode(new int[] { 1 });
+				}
+			}));
+		} finally {
+			JSON.pooling = false;
+		}
+	}
+
+	@Test
+	public void testSettings() throws Exception {
+		JSON json = new JSON();
+		JSON.Settings settings = json.getSettings();
+		assertSame(settings, json.getSettings());
+		assertEquals(Mode.TRADITIONAL, settings.getMode());
+
+		json.setPrettyPrint(true);
+		assertNotSame(settings, json.getSettings());
+		assertTrue(json.getSettings().isPrettyPrint());
+		assertFalse(settings.isPrettyPrint());
+
+		settings = new JSON.Settings.Builder()
+			.mode(Mode.STRICT)
+			.suppressNull(true)
+			.build();
+		json = new JSON(settings);
+		assertSame(settings, json.getSettings());
+		assertEquals(Mode.STRICT, json.getMode());
+
+		json.setMaxDepth(2);
+		assertEquals(2, json.getSettings().getMaxDepth());
+		assertTrue(json.getSettings().isSuppressNull());
+
+		// the context is applied without rebuilding the other settings.
+		json = new JSON(settings);
+		Object context = new Object();
+		json.setContext(context);
+		assertSame(context, json.getSettings().getContext());
+		assertSame(json.getSettings(), json.getSettings());
+		assertTrue(json.getSettings().isSuppressNull());
+		assertNull(settings.getContext());
+
+		try {
+			settings.toBuilder().maxDepth(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertNotNull(e.getMessage());
+		}
+	}
+
 }
 
 class TestBeanWrapper {
@@ -0,0 +1,100 @@
+package net.arnx.jsonic.util;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.arnx.jsonic.JSON;
+
+import org.junit.Test;
+
+public class CacheMonitorTest {
+	@Test
+	public void testStatistics() throws Exception {
+		BeanInfo.clear();
+		BeanInfo.getStatistics().reset();
+		BeanInfo.get(CacheMonitorTest.class);
+		BeanInfo.get(CacheMonitorTest.class);
+		assertEquals(1, BeanInfo.getStatistics().getHitCount());
+		assertEquals(1, BeanInfo.getStatistics().getMissCount());
+		assertEquals(0.5, BeanInfo.getStatistics().getHitRatio(), 0.0);
+		assertEquals(1, BeanInfo.size());
+		assertEquals(Integer.valueOf(1), BeanInfo.sizes().get(CacheMonitorTest.class.getClassLoader()));
+
+		ClassUtil.clear();
+		ClassUtil.getStatistics().reset();
+		ClassUtil.findClass(CacheMonitorTest.class.getName());
+		ClassUtil.findClass("net.arnx.jsonic.util.Missing");
+		ClassUtil.findClass("net.arnx.jsonic.util.Missing");
+		assertEquals(1, ClassUtil.getStatistics().getHitCount());
+		assertEquals(2, ClassUtil.getStatistics().getMissCount());
+		assertEquals(2, ClassUtil.size());
+
+		LocalCache.getStringStatistics().reset();
+		LocalCache cache = new LocalCache("net.arnx.jsonic.Messages", Locale.ENGLISH, TimeZone.getTimeZone("UTC"));
+		for (int i = 0; i < 20; i++) {
+			cache.getString(new StringBuilder("name"));
+		}
+		assertEquals(0, LocalCache.getStringStatistics().getMissCount());
+		cache.publishStatistics();
+		assertEquals(1, LocalCache.getStringStatistics().getMissCount());
+		assertEquals(2, LocalCache.getStringStatistics().getHitCount());
+	}
+
+	@Test
+	public void testPublishOnComplete() throws Exception {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < 30; i++) {
+			sb.append((i > 0) ? ",\"name\"" : "\"name\"");
+		}
+		sb.append("]");
+
+		LocalCache.getStringStatistics().reset();
+		JSON.decode(sb.toString());
+		assertTrue(LocalCache.getStringStatistics().getHitCount() > 0);
+
+		LocalCache.getStringStatistics().reset();
+		new JSON().parse(sb.toString(), List.class);
+		assertTrue(LocalCache.getStringStatistics().getHitCount() > 0);
+	}
+
+	@Test
+	public void testRegister() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = CacheMonitor.getObjectName("BeanInfo");
+
+		CacheMonitor.register();
+		CacheMonitor.register();
+		try {
+			assertTrue(server.isRegistered(name));
+			assertTrue(server.isRegistered(CacheMonitor.getObjectName("LocalCache.string")));
+
+			BeanInfo.get(CacheMonitorTest.class);
+			assertTrue((Integer)server.getAttribute(name, "Size") > 0);
+			assertTrue(((String[])server.getAttribute(name, "ClassLoaders")).length > 0);
+			assertEquals(-1, server.getAttribute(CacheMonitor.getObjectName("LocalCache.format"), "Size"));
+			for (MBeanOperationInfo operation : server.getMBeanInfo(CacheMonitor.getObjectName("LocalCache.format")).getOperations()) {
+				assertFalse(operation.getName(), "clear".equals(operation.getName()));
+			}
+
+			server.invoke(name, "clear", null, null);
+			assertEquals(0, server.getAttribute(name, "Size"));
+			server.invoke(name, "resetStatistics", null, null);
+			assertEquals(0L, server.getAttribute(name, "HitCount"));
+
+			CacheMonitor.unregister();
+			assertTrue(server.isRegistered(name));
+		} finally {
+			CacheMonitor.unregister();
+		}
+		assertFalse(server.isRegistered(name));
+		CacheMonitor.unregister();
+	}
+}
@@ -0,0 +1,71 @@
+package net.arnx.jsonic.util;
+
+import static org.junit.Assert.*;
+
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class FormatCacheTest {
+	@Test
+	public void testGet() throws Exception {
+		FormatCache.clear();
+
+		final NumberFormat nf = FormatCache.getNumberFormat("#,##0.00", Locale.JAPAN);
+		assertSame(nf, FormatCache.getNumberFormat("#,##0.00", Locale.JAPAN));
+		assertNotSame(nf, FormatCache.getNumberFormat("#,##0.00", Locale.GERMANY));
+		assertEquals("1,234.50", nf.format(1234.5));
+		assertEquals("1.234,50", FormatCache.getNumberFormat("#,##0.00", Locale.GERMANY).format(1234.5));
+
+		TimeZone tz = TimeZone.getTimeZone("Asia/Tokyo");
+		DateFormat df = FormatCache.getDateFormat("yyyy/MM/dd HH:mm ZZ", Locale.JAPAN, tz);
+		assertSame(df, FormatCache.getDateFormat("yyyy/MM/dd HH:mm ZZ", Locale.JAPAN, TimeZone.getTimeZone("Asia/Tokyo")));
+		assertEquals("1970/01/01 09:00 +09:00", df.format(new Date(0)));
+		assertEquals("1970/01/01 00:00 +00:00", FormatCache.getDateFormat("yyyy/MM/dd HH:mm ZZ", Locale.JAPAN,
+				TimeZone.getTimeZone("UTC")).format(new Date(0)));
+
+		assertSame(FormatCache.getDateTimeFormatter("yyyy/MM/dd", Locale.JAPAN),
+				FormatCache.getDateTimeFormatter("yyyy/MM/dd", Locale.JAPAN));
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			NumberFormat other = executor.submit(new Callable<NumberFormat>() {
+				@Override
+				public NumberFormat call() throws Exception {
+					return FormatCache.getNumberFormat("#,##0.00", Locale.JAPAN);
+				}
+			}).get();
+			assertNotSame(nf, other);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		NumberFormat nf = FormatCache.getNumberFormat("#,##0.0", Locale.JAPAN);
+		assertSame(nf, FormatCache.getNumberFormat("#,##0.0", Locale.JAPAN));
+
+		FormatCache.clear();
+		assertEquals(0, FormatCache.size());
+		assertNotSame(nf, FormatCache.getNumberFormat("#,##0.0", Locale.JAPAN));
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		FormatCache.clear();
+
+		for (int i = 0; i < 1000; i++) {
+			FormatCache.getNumberFormat("0." + i, Locale.JAPAN);
+		}
+		assertTrue(FormatCache.size() <= 256);
+		assertEquals("1.5", FormatCache.getNumberFormat("0.#", Locale.JAPAN).format(1.5));
+	}
+}
@@ -0,0 +1,94 @@
+package net.arnx.jsonic.util;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class ISODateTimeParserTest {
+	@Test
+	public void testParse() throws Exception {
+		ISODateTimeParser parser = new ISODateTimeParser();
+
+		assertTrue(parser.parse("2000-02-29", false));
+		assertFalse(parser.hasTime());
+		assertFalse(parser.hasOffset());
+		assertEquals(2000, parser.getYear());
+		assertEquals(2, parser.getMonth());
+		assertEquals(29, parser.getDay());
+
+		assertTrue(parser.parse("2000-01-01T12:05", false));
+		assertTrue(parser.hasTime());
+		assertEquals(12, parser.getHour());
+		assertEquals(5, parser.getMinute());
+		assertEquals(0, parser.getSecond());
+
+		assertTrue(parser.parse("2000-01-01T12:05:06.1Z", false));
+		assertEquals(6, parser.getSecond());
+		assertEquals(100000000, parser.getNano());
+		assertTrue(parser.hasOffset());
+		assertEquals(0, parser.getOffsetSeconds());
+
+		assertTrue(parser.parse("2000-01-01T12:05:06.123456789+09:00", false));
+		assertEquals(123456789, parser.getNano());
+		assertEquals(9 * 3600, parser.getOffsetSeconds());
+		assertNull(parser.getZoneId());
+
+		assertTrue(parser.parse("2000-01-01T12:05:06-0530", false));
+		assertEquals(-(5 * 3600 + 30 * 60), parser.getOffsetSeconds());
+
+		assertTrue(parser.parse("2000-01-01T12:05:06+09:00[Asia/Tokyo]", false));
+		assertEquals("Asia/Tokyo", parser.getZoneId());
+
+		assertFalse(parser.parse("2000-01-01 12:05:06", false));
+		assertTrue(parser.parse("2000-01-01 12:05:06", true));
+
+		assertFalse(parser.parse("2001-02-29", false));
+		assertFalse(parser.parse("2000-13-01", false));
+		assertFalse(parser.parse("2000-01-01T24:00", false));
+		assertFalse(parser.parse("2000-01-01T12", false));
+		assertFalse(parser.parse("2000-01-01T12:05:06.", false));
+		assertFalse(parser.parse("2000-01-01T12:05:06.1234567890", false));
+		assertFalse(parser.parse("2000-01-01T12:05:06+09", false));
+		assertFalse(parser.parse("2000-01-01T12:05:06+09:00[]", false));
+		assertFalse(parser.parse("2000/01/01", false));
+		assertFalse(parser.parse("20000101", false));
+	}
+
+	@Test
+	public void testToEpochMilli() throws Exception {
+		ISODateTimeParser parser = new ISODateTimeParser();
+		TimeZone tz = TimeZone.getTimeZone("America/New_York");
+
+		String[] texts = {
+			"0001-01-01T00:00:00Z",
+			"1969-12-31T23:59:59.999Z",
+			"1970-01-01T00:00:00Z",
+			"2000-02-29T12:05:06.123+09:00",
+			"9999-12-31T23:59:59.999-18:00",
+		};
+		for (String text : texts) {
+			assertTrue(parser.parse(text, false));
+			assertEquals(text, OffsetDateTime.parse(text).toInstant().toEpochMilli(), parser.toEpochMilli(tz));
+		}
+
+		assertTrue(parser.parse("2015-07-01T12:00:00", false));
+		assertTrue(parser.isValidIn(tz));
+		assertEquals(LocalDateTime.parse("2015-07-01T12:00:00").atZone(ZoneId.of("America/New_York"))
+				.toInstant().toEpochMilli(), parser.toEpochMilli(tz));
+
+		assertTrue(parser.parse("2015-03-08T02:30:00", false));
+		assertFalse(parser.isValidIn(tz));
+
+		assertTrue(parser.parse("1582-10-16", false));
+		assertTrue(parser.isGregorian());
+		assertTrue(parser.parse("1582-10-15T12:00:00Z", false));
+		assertFalse(parser.isGregorian());
+		assertTrue(parser.parse("1500-01-01", false));
+		assertFalse(parser.isGregorian());
+	}
+}
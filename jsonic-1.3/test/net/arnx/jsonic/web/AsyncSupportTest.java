@@ -0,0 +1,86 @@
+package net.arnx.jsonic.web;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import org.junit.Test;
+
+public class AsyncSupportTest {
+	@Test
+	public void testAwait() throws Exception {
+		assertFalse(AsyncSupport.isPending("a"));
+		assertTrue(AsyncSupport.isPending(new CompletableFuture<Object>()));
+
+		assertEquals("a", AsyncSupport.await(CompletableFuture.completedFuture("a"), 1000));
+
+		CompletableFuture<Object> failed = new CompletableFuture<Object>();
+		failed.completeExceptionally(new IllegalStateException());
+		try {
+			AsyncSupport.await(failed, 1000);
+			fail();
+		} catch (InvocationTargetException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		try {
+			AsyncSupport.await(new CompletableFuture<Object>(), 10);
+			fail();
+		} catch (InvocationTargetException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+	}
+
+	@Test
+	public void testWhenComplete() throws Exception {
+		final AtomicReference<Object> value = new AtomicReference<Object>();
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		final CountDownLatch latch = new CountDownLatch(2);
+		BiConsumer<Object, Throwable> action = new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object v, Throwable e) {
+				if (e != null) error.set(e); else value.set(v);
+				latch.countDown();
+			}
+		};
+
+		CompletableFuture<Object> future = new CompletableFuture<Object>();
+		AsyncSupport.whenComplete(future, 1000, action);
+		future.complete("a");
+
+		AsyncSupport.whenComplete(new CompletableFuture<Object>(), 10, action);
+
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+		assertEquals("a", value.get());
+		assertTrue(error.get() instanceof TimeoutException);
+	}
+
+	@Test
+	public void testTimerLifecycle() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		AsyncSupport.retain();
+		AsyncSupport.retain();
+		try {
+			AsyncSupport.whenComplete(new CompletableFuture<Object>(), 10, new BiConsumer<Object, Throwable>() {
+				@Override
+				public void accept(Object v, Throwable e) {
+					latch.countDown();
+				}
+			});
+			assertTrue(latch.await(1, TimeUnit.SECONDS));
+			assertTrue(AsyncSupport.isTimerRunning());
+
+			AsyncSupport.release();
+			assertTrue(AsyncSupport.isTimerRunning());
+		} finally {
+			AsyncSupport.release();
+		}
+		assertFalse(AsyncSupport.isTimerRunning());
+	}
+}
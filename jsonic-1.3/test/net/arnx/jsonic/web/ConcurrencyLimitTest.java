@@ -0,0 +1,111 @@
+package net.arnx.jsonic.web;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.arnx.jsonic.util.CacheMonitor;
+
+import org.junit.Test;
+
+public class ConcurrencyLimitTest {
+	@Test
+	public void testAcquire() throws Exception {
+		ConcurrencyLimit limit = new ConcurrencyLimit();
+		limit.concurrency = 2;
+		limit.init("test");
+
+		assertTrue(limit.acquire());
+		assertTrue(limit.acquire());
+		assertEquals(2, limit.getActiveCount());
+		assertFalse(limit.acquire());
+		assertEquals(1, limit.getRejectedCount());
+
+		try {
+			limit.enter();
+			fail();
+		} catch (RejectedExecutionException e) {
+			assertEquals(2, limit.getRejectedCount());
+		}
+
+		limit.release();
+		assertTrue(limit.acquire());
+		limit.release();
+		limit.release();
+		assertEquals(0, limit.getActiveCount());
+	}
+
+	@Test
+	public void testQueue() throws Exception {
+		final ConcurrencyLimit limit = new ConcurrencyLimit();
+		limit.concurrency = 1;
+		limit.queue = 1;
+		limit.timeout = 50;
+		limit.init("test");
+
+		assertTrue(limit.acquire());
+		long start = System.nanoTime();
+		assertFalse(limit.acquire());
+		assertTrue(System.nanoTime() - start >= 40000000L);
+		assertEquals(0, limit.getQueueLength());
+
+		limit.timeout = 10000;
+		final CountDownLatch acquired = new CountDownLatch(1);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				if (limit.acquire()) acquired.countDown();
+			}
+		};
+		thread.start();
+		while (limit.getQueueLength() == 0) {
+			Thread.sleep(5);
+		}
+		assertFalse(limit.acquire());
+		assertEquals(2, limit.getRejectedCount());
+
+		limit.release();
+		acquired.await();
+		thread.join();
+		assertEquals(1, limit.getActiveCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInit() throws Exception {
+		new ConcurrencyLimit().init("test");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitQueueWithoutTimeout() throws Exception {
+		ConcurrencyLimit limit = new ConcurrencyLimit();
+		limit.concurrency = 1;
+		limit.queue = 1;
+		limit.init("test");
+	}
+
+	@Test
+	public void testRegister() throws Exception {
+		ConcurrencyLimit limit = new ConcurrencyLimit();
+		limit.concurrency = 2;
+		limit.init("/test.json");
+		assertTrue(limit.acquire());
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = CacheMonitor.getObjectName("ConcurrencyLimit", "rpc:/test.json");
+		ConcurrencyLimit.register("rpc", Collections.singleton(limit));
+		try {
+			assertEquals(1, server.getAttribute(name, "ActiveCount"));
+			assertEquals(0L, server.getAttribute(name, "RejectedCount"));
+			assertEquals("/test.json", server.getAttribute(name, "Name"));
+		} finally {
+			ConcurrencyLimit.unregister(Collections.singleton(limit));
+		}
+		assertFalse(server.isRegistered(name));
+	}
+}
@@ -0,0 +1,520 @@
+package net.arnx.jsonic.web;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+
+import net.arnx.jsonic.JSON;
+
+import org.junit.Test;
+
+public class ContainerTest {
+	@Test
+	public void testGetMethod() throws Exception {
+		Container container = new Container();
+		Component component = new Component();
+
+		Method method = container.getMethod(component, "calc", Arrays.asList(1, 2));
+		assertEquals(Component.class.getMethod("calc", int.class, int.class), method);
+		assertSame(method, container.getMethod(component, "calc", Arrays.asList(3, 4)));
+
+		assertEquals(Component.class.getMethod("calc", String.class), container.getMethod(component, "calc", Arrays.asList("a")));
+		assertEquals(Component.class.getMethod("fail"), container.getMethod(component, "fail", null));
+
+		assertNull(container.getMethod(component, "missing", Collections.emptyList()));
+		assertNull(container.getMethod(component, "missing", Collections.emptyList()));
+		assertNull(container.getMethod(component, "init", Collections.emptyList()));
+	}
+
+	@Test
+	public void testCacheEntry() throws Exception {
+		ConcurrentMap<String, Container.CacheEntry> cache = new ConcurrentHashMap<String, Container.CacheEntry>();
+		assertEquals("a", Container.CacheEntry.put(cache, "a", "a", 2));
+		assertEquals("a", Container.CacheEntry.put(cache, "a", "other", 2));
+		assertEquals("b", Container.CacheEntry.put(cache, "b", "b", 2));
+
+		// every entry is used, so the first one after the sweep is evicted.
+		assertEquals("c", Container.CacheEntry.put(cache, "c", "c", 2));
+		assertEquals(2, cache.size());
+
+		// "b" is not used since the sweep, so it is evicted before "c".
+		Container.CacheEntry.put(cache, "d", "d", 2);
+		assertEquals(2, cache.size());
+		assertNull(Container.CacheEntry.get(cache, "b"));
+		assertEquals("c", Container.CacheEntry.get(cache, "c"));
+		assertEquals("d", Container.CacheEntry.get(cache, "d"));
+	}
+
+	@Test
+	public void testExecute() throws Exception {
+		Container container = new Container();
+		JSON json = new JSON();
+
+		for (int i = 0; i < 2; i++) {
+			Component component = new Component();
+			List<?> params = Arrays.asList(1, 2);
+			Method method = container.getMethod(component, "calc", params);
+			assertEquals(3, container.execute(json, component, method, params));
+			assertEquals(Arrays.asList("init", "calc", "destroy"), component.calls);
+
+			component = new Component();
+			params = Arrays.asList("a");
+			method = container.getMethod(component, "calc", params);
+			assertEquals("calc:a", container.execute(json, component, method, params));
+		}
+
+		Component component = new Component();
+		try {
+			container.execute(json, component, container.getMethod(component, "fail", null), Collections.emptyList());
+			fail();
+		} catch (InvocationTargetException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void testComponentLifecycle() throws Exception {
+		Container container = new Container();
+		container.scope = new HashMap<String, String>();
+		container.scope.put(Managed.class.getName(), "singleton");
+		container.scope.put(PooledManaged.class.getName(), "pooled");
+		container.poolSize = 1;
+		JSON json = new JSON();
+		Method call = Managed.class.getMethod("call");
+
+		HttpServletRequest request = RPCServletTest.mockRequest("POST", "/component.json", null, null);
+		ExternalContext.start(null, null, request, null);
+		try {
+			Managed singleton = (Managed)container.getComponent(Managed.class.getName());
+			assertEquals("ok", container.execute(json, singleton, call, Collections.emptyList()));
+			assertSame(singleton, container.getComponent(Managed.class.getName()));
+			assertEquals("ok", container.execute(json, singleton, call, Collections.emptyList()));
+			assertEquals(Arrays.asList("init", "call", "call"), singleton.calls);
+
+			Managed pooled1 = (Managed)container.getComponent(PooledManaged.class.getName());
+			Managed pooled2 = (Managed)container.getComponent(PooledManaged.class.getName());
+			container.execute(json, pooled1, call, Collections.emptyList());
+			assertEquals(Arrays.asList("init", "call"), pooled1.calls);
+			assertEquals(Arrays.asList("init"), pooled2.calls);
+
+			// the pool keeps one instance, so the other one is evicted.
+			container.end(request, null);
+			assertEquals(Arrays.asList("init", "call"), pooled1.calls);
+			assertEquals(Arrays.asList("init", "destroy"), pooled2.calls);
+
+			assertSame(pooled1, container.getComponent(PooledManaged.class.getName()));
+			container.execute(json, pooled1, call, Collections.emptyList());
+			assertEquals(Arrays.asList("init", "call", "call"), pooled1.calls);
+			container.end(request, null);
+
+			container.destory();
+			assertEquals(Arrays.asList("init", "call", "call", "destroy"), singleton.calls);
+			assertEquals(Arrays.asList("init", "call", "call", "destroy"), pooled1.calls);
+		} finally {
+			ExternalContext.end();
+		}
+	}
+
+	@Test
+	public void testInvokeArgumentMismatch() throws Exception {
+		Container container = new Container();
+		Component component = new Component();
+		Method calc = Component.class.getMethod("calc", int.class, int.class);
+
+		assertEquals(3, container.invoke(component, calc, (short)1, 'a' - 'a' + 2));
+		assertEquals(3L, ((Integer)container.invoke(component, calc, 1, 2)).longValue());
+
+		Object[][] illegals = {
+			{ "1", 2 },
+			{ null, 2 },
+			{ 1L, 2 },
+			{ 1 },
+		};
+		for (Object[] args : illegals) {
+			try {
+				container.invoke(component, calc, args);
+				fail(Arrays.toString(args));
+			} catch (IllegalArgumentException e) {
+				// same as Method.invoke
+			}
+		}
+
+		try {
+			container.invoke("component", calc, 1, 2);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			container.invoke(component, Component.class.getMethod("cast", Object.class), 1);
+			fail();
+		} catch (InvocationTargetException e) {
+			assertTrue(e.getCause() instanceof ClassCastException);
+		}
+	}
+
+	@Test
+	public void testGetUniqueMethod() throws Exception {
+		Container container = new Container();
+		Component component = new Component();
+
+		Method method = container.getUniqueMethod(component, "fail");
+		assertEquals(Component.class.getMethod("fail"), method);
+		assertSame(method, container.getUniqueMethod(component, "fail"));
+
+		assertNull(container.getUniqueMethod(component, "calc"));
+		assertNull(container.getUniqueMethod(component, "init"));
+		assertNull(container.getUniqueMethod(component, "missing"));
+		assertTrue(container.isDirectBindingSupported());
+
+		assertFalse(new Container() {
+			@Override
+			public Method getMethod(Object component, String methodName, List<?> params) {
+				return null;
+			}
+		}.isDirectBindingSupported());
+
+		component = new Component();
+		assertEquals(3, container.execute(component, Component.class.getMethod("calc", int.class, int.class), new Object[] { 1, 2 }));
+		assertEquals(Arrays.asList("init", "calc", "destroy"), component.calls);
+	}
+
+	@Test
+	public void testGetComponent() throws Exception {
+		Container container = new Container();
+		container.scope = new HashMap<String, String>();
+		container.scope.put(Singleton.class.getName(), "singleton");
+		container.scope.put(Pooled.class.getName(), "pooled");
+
+		HttpServletRequest request = RPCServletTest.mockRequest("POST", "/component.json", null, null);
+		ExternalContext.start(null, null, request, null);
+		try {
+			Object prototype = container.getComponent(Component.class.getName());
+			assertNotSame(prototype, container.getComponent(Component.class.getName()));
+
+			Singleton singleton = (Singleton)container.getComponent(Singleton.class.getName());
+			assertSame(singleton, container.getComponent(Singleton.class.getName()));
+			assertNull(singleton.request);
+
+			Pooled pooled1 = (Pooled)container.getComponent(Pooled.class.getName());
+			Pooled pooled2 = (Pooled)container.getComponent(Pooled.class.getName());
+			assertNotSame(pooled1, pooled2);
+			assertSame(request, pooled1.request);
+
+			container.end(request, null);
+			assertNull(pooled1.request);
+
+			Pooled pooled3 = (Pooled)container.getComponent(Pooled.class.getName());
+			assertTrue(pooled3 == pooled1 || pooled3 == pooled2);
+			assertSame(request, pooled3.request);
+			container.end(request, null);
+		} finally {
+			ExternalContext.end();
+		}
+	}
+
+	@Test
+	public void testMemoize() throws Exception {
+		Container container = new Container();
+		container.memoize = new HashMap<String, Long>();
+		container.memoize.put(Component.class.getName() + "#calc", 0L);
+		JSON json = new JSON();
+		Method calc = Component.class.getMethod("calc", int.class, int.class);
+
+		Component component = new Component();
+		Object result = container.dispatch(json, Component.class.getName(), component, calc, new Object[] { 1, 2 });
+		assertTrue(result instanceof Container.Memo);
+		assertEquals(3, ((Container.Memo)result).value);
+		assertEquals("3", ((Container.Memo)result).text);
+		assertSame(result, container.dispatch(json, Component.class.getName(), component, calc, new Object[] { 1, 2 }));
+		assertEquals(Arrays.asList("init", "calc", "destroy"), component.calls);
+		assertNotSame(result, container.dispatch(json, Component.class.getName(), component, calc, new Object[] { 2, 1 }));
+		assertEquals("\"calc:a\"", ((Container.Memo)container.dispatch(json, Component.class.getName(), component,
+				Component.class.getMethod("calc", String.class), new Object[] { "a" })).text);
+		assertEquals(1, container.getMemoizeHitCount());
+		assertEquals(3, container.getMemoizeMissCount());
+
+		// the public execute returns the result itself.
+		assertEquals(3, container.execute(json, component, calc, Arrays.asList(1, 2)));
+		assertEquals(2, container.getMemoizeHitCount());
+		assertSame(result, container.dispatch(json, Component.class.getName(), component, calc, Arrays.asList(1, 2)));
+
+		// the overridden execute is called instead of memoizing.
+		Container custom = new Container() {
+			@Override
+			public Object execute(JSON json, Object component, Method method, List<?> params) throws Exception {
+				return "custom";
+			}
+		};
+		custom.memoize = container.memoize;
+		assertEquals("custom", custom.dispatch(json, Component.class.getName(), component, calc, Arrays.asList(1, 2)));
+
+		container.memoize.put(Component.class.getName(), 1L);
+		Method fail = Component.class.getMethod("fail");
+		try {
+			container.dispatch(json, Component.class.getName(), component, fail, new Object[0]);
+			fail();
+		} catch (InvocationTargetException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(4, container.getMemoizeMissCount());
+
+		// the component bound to a request or a session by its DI framework is not shared.
+		Container scoped = new Container() {
+			@Override
+			protected boolean isSharedScope(String className, Object component) {
+				return false;
+			}
+		};
+		scoped.memoize = container.memoize;
+		assertNull(scoped.toMemoKey(json, Component.class.getName(), component, calc, new Object[] { 1, 2 }));
+		assertFalse(scoped.dispatch(json, Component.class.getName(), component, calc, new Object[] { 1, 2 }) instanceof Container.Memo);
+		assertFalse(scoped.isDetachable(Component.class.getName(), component));
+		assertTrue(container.isDetachable(Component.class.getName(), component));
+	}
+
+	@Test
+	public void testCoalesce() throws Exception {
+		final Container container = new Container();
+		container.coalesce = new HashSet<String>();
+		container.coalesce.add(Slow.class.getName());
+		container.coalesce.add(Pooled.class.getName());
+
+		final Method find = Slow.class.getMethod("find", int.class);
+		final Slow slow = new Slow();
+		Object[] results = coalesce(container, slow, find, 1);
+		assertTrue(results[0] instanceof Container.Memo);
+		assertSame(results[0], results[1]);
+		assertEquals("\"found:1\"", ((Container.Memo)results[0]).text);
+		assertEquals(1, slow.count.get());
+		assertEquals(1, container.getCoalescedCount());
+
+		// the follower gives up when the leader doesn't complete in time.
+		container.asyncTimeout = 50;
+		final Slow hung = new Slow();
+		final Object[] leader = new Object[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					leader[0] = container.dispatch(new JSON(), Slow.class.getName(), hung, find, new Object[] { 2 });
+				} catch (Exception e) {
+					leader[0] = e;
+				}
+			}
+		};
+		thread.start();
+		hung.started.await();
+		try {
+			container.dispatch(new JSON(), Slow.class.getName(), hung, find, new Object[] { 2 });
+			fail();
+		} catch (InvocationTargetException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		} finally {
+			hung.release.countDown();
+			thread.join();
+		}
+		assertEquals("\"found:2\"", ((Container.Memo)leader[0]).text);
+		assertEquals(2, container.getCoalescedCount());
+
+		Pooled pooled = new Pooled();
+		assertNull(container.toMemoKey(new JSON(), Pooled.class.getName(), pooled, Object.class.getMethod("toString"), new Object[0]));
+		assertFalse(container.dispatch(new JSON(), Pooled.class.getName(), pooled, Object.class.getMethod("toString"), new Object[0]) instanceof Container.Memo);
+	}
+
+	private static Object[] coalesce(final Container container, final Slow slow, final Method method, final int id) throws Exception {
+		final Object[] results = new Object[2];
+		Thread[] threads = new Thread[2];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						results[index] = container.dispatch(new JSON(), Slow.class.getName(), slow, method, new Object[] { id });
+					} catch (Exception e) {
+						results[index] = e;
+					}
+				}
+			};
+			threads[i].start();
+			slow.started.await();
+		}
+		for (int i = 0; i < 100 && container.getCoalescedCount() == 0; i++) {
+			Thread.sleep(10);
+		}
+		slow.release.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return results;
+	}
+
+	@Test
+	public void testIsDetachable() throws Exception {
+		Container container = new Container();
+		container.scope = new HashMap<String, String>();
+		container.scope.put(Pooled.class.getName(), "pooled");
+
+		assertTrue(container.isDetachable(Component.class.getName(), new Component()));
+		assertFalse(container.isDetachable(Singleton.class.getName(), new Singleton()));
+
+		ExternalContext.start(null, null, null, null);
+		try {
+			Object pooled = container.getComponent(Pooled.class.getName());
+			assertFalse(container.isDetachable(Pooled.class.getName(), pooled));
+		} finally {
+			ExternalContext.end();
+		}
+	}
+
+	@Test
+	public void testWarmup() throws Exception {
+		final List<String> messages = new ArrayList<String>();
+		Container container = new Container() {
+			@Override
+			public void info(String message) {
+				messages.add(message);
+			}
+		};
+		container.warmup(Arrays.asList(Component.class.getName()));
+		assertTrue(messages.isEmpty());
+
+		container.warmup = true;
+		container.memoize = new HashMap<String, Long>();
+		container.memoize.put(Slow.class.getName() + "#find", 0L);
+		container.warmup(Arrays.asList(Component.class.getName(), "net.arnx.jsonic.web.Missing"));
+		assertEquals(1, messages.size());
+		assertTrue(messages.get(0), messages.get(0).startsWith("warmup: 2 components"));
+		assertNotNull(container.getLifecycleMethods(Component.class)[0]);
+	}
+
+	@Test
+	public void testWarmupTarget() throws Exception {
+		Container container = new Container();
+
+		HashSet<String> names = new HashSet<String>();
+		container.addTargetClassNames(names, "net.arnx.jsonic.${package}.${class}Limit");
+		assertTrue(names.toString(), names.contains(ConcurrencyLimit.class.getName()));
+		assertFalse(names.toString(), names.contains(ConcurrencyLimitTest.class.getName()));
+
+		// scanned in the jar file.
+		names.clear();
+		container.addTargetClassNames(names, "org.junit.runner.${class}Core");
+		assertTrue(names.toString(), names.contains("org.junit.runner.JUnitCore"));
+
+		names.clear();
+		container.addTargetClassNames(names, "${class}Service");
+		assertTrue(names.isEmpty());
+	}
+
+	@Test
+	public void testCreateJSON() throws Exception {
+		Container container = new Container();
+		JSON json1 = container.createJSON(Locale.US);
+		JSON json2 = container.createJSON(Locale.US);
+		assertNotSame(json1, json2);
+		assertSame(json1.getSettings(), json2.getSettings());
+		assertEquals(Locale.JAPAN, container.createJSON(Locale.JAPAN).getSettings().getLocale());
+
+		json1.setContext(this);
+		assertSame(this, json1.getSettings().getContext());
+		assertNull(container.createJSON(Locale.US).getSettings().getContext());
+
+		container = new Container();
+		container.processor = new Container.ProcessorConfig();
+		container.processor.locale = Locale.GERMANY;
+		container.processor.prettyPrint = true;
+		for (int i = 0; i < 2; i++) {
+			JSON json = container.createJSON(Locale.US);
+			assertEquals(Locale.GERMANY, json.getSettings().getLocale());
+			assertTrue(json.getSettings().isPrettyPrint());
+		}
+	}
+
+	public static class Slow {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger count = new AtomicInteger();
+
+		public String find(int id) throws InterruptedException {
+			count.incrementAndGet();
+			started.countDown();
+			release.await();
+			return "found:" + id;
+		}
+	}
+
+	public static class Singleton {
+		public HttpServletRequest request;
+	}
+
+	public static class Pooled {
+		public HttpServletRequest request;
+	}
+
+	public static class Managed {
+		List<String> calls = new ArrayList<String>();
+
+		public void init() {
+			calls.add("init");
+		}
+
+		public String call() {
+			calls.add("call");
+			return "ok";
+		}
+
+		public void destroy() {
+			calls.add("destroy");
+		}
+	}
+
+	public static class PooledManaged extends Managed {
+	}
+
+	public static class Component {
+		List<String> calls = new ArrayList<String>();
+
+		public void init() {
+			calls.add("init");
+		}
+
+		public int calc(int a, int b) {
+			calls.add("calc");
+			return a + b;
+		}
+
+		public String calc(String a) {
+			return "calc:" + a;
+		}
+
+		public void fail() {
+			throw new IllegalStateException();
+		}
+
+		public String cast(Object o) {
+			return (String)o;
+		}
+
+		public void destroy() {
+			calls.add("destroy");
+		}
+	}
+}
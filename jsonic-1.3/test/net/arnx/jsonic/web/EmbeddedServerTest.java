@@ -0,0 +1,107 @@
+package net.arnx.jsonic.web;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+import net.arnx.jsonic.JSON;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EmbeddedServerTest {
+	private EmbeddedServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new EmbeddedServer(new InetSocketAddress("127.0.0.1", 0), 2);
+		server.rpc("/rpc", "{\"mappings\": {\"/calc.json\": \"" + Calc.class.getName() + "\"}}");
+		server.rest("/rest", "{\"mappings\": {\"/calc.json\": \"" + Calc.class.getName() + "\"}}");
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	@Test
+	public void testRPC() throws Exception {
+		HttpURLConnection con = open("/rpc/calc.json", "POST");
+		write(con, "{\"jsonrpc\":\"2.0\",\"method\":\"plus\",\"params\":[1,2],\"id\":1}");
+		assertEquals(200, con.getResponseCode());
+		assertTrue(con.getContentType().startsWith("application/json"));
+		Map<?, ?> result = JSON.decode(read(con));
+		assertEquals(3, ((Number)result.get("result")).intValue());
+		assertEquals(1, ((Number)result.get("id")).intValue());
+
+		con = open("/rpc/calc.json", "POST");
+		write(con, "{\"jsonrpc\":\"2.0\",\"method\":\"missing\",\"params\":[],\"id\":2}");
+		result = JSON.decode(read(con));
+		assertEquals(-32601, ((Number)((Map<?, ?>)result.get("error")).get("code")).intValue());
+
+		con = open("/rpc/unknown.json", "POST");
+		assertEquals(404, con.getResponseCode());
+		assertEquals("Not Found", read(con));
+	}
+
+	@Test
+	public void testREST() throws Exception {
+		HttpURLConnection con = open("/rest/calc.json?a=3&b=4", "GET");
+		assertEquals(200, con.getResponseCode());
+		assertEquals("{\"sum\":7}", read(con));
+
+		con = open("/rest/calc.json", "DELETE");
+		assertEquals(404, con.getResponseCode());
+	}
+
+	@Test
+	public void testInvokeDefault() throws Exception {
+		assertEquals(Boolean.FALSE, EmbeddedServer.invokeDefault(this, Boolean.class.getMethod("booleanValue"), null));
+		assertEquals(Character.valueOf('\0'), EmbeddedServer.invokeDefault(this, Character.class.getMethod("charValue"), null));
+		assertEquals(Short.valueOf((short)0), EmbeddedServer.invokeDefault(this, Number.class.getMethod("shortValue"), null));
+		assertEquals(Double.valueOf(0.0), EmbeddedServer.invokeDefault(this, Number.class.getMethod("doubleValue"), null));
+		assertNull(EmbeddedServer.invokeDefault(this, Thread.class.getMethod("run"), null));
+	}
+
+	private HttpURLConnection open(String path, String method) throws Exception {
+		URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+		HttpURLConnection con = (HttpURLConnection)url.openConnection();
+		con.setRequestMethod(method);
+		return con;
+	}
+
+	private static void write(HttpURLConnection con, String body) throws Exception {
+		con.setDoOutput(true);
+		con.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+		OutputStream out = con.getOutputStream();
+		out.write(body.getBytes("UTF-8"));
+		out.close();
+	}
+
+	private static String read(HttpURLConnection con) throws Exception {
+		InputStream in = (con.getResponseCode() < 400) ? con.getInputStream() : con.getErrorStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EmbeddedServer.copy(in, out);
+		in.close();
+		return out.toString("UTF-8");
+	}
+
+	public static class Calc {
+		public int plus(int a, int b) {
+			return a + b;
+		}
+
+		public Map<String, Integer> find(Map<String, Integer> params) {
+			return Collections.singletonMap("sum", params.get("a") + params.get("b"));
+		}
+	}
+}
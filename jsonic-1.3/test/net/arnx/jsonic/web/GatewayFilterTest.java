@@ -0,0 +1,220 @@
+package net.arnx.jsonic.web;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+public class GatewayFilterTest {
+	@Test
+	public void testGZIPResponse() throws Exception {
+		GatewayFilter filter = new GatewayFilter();
+
+		RPCServletTest.MockResponse mock = new RPCServletTest.MockResponse();
+		GatewayFilter.GZIPResponse response = filter.new GZIPResponse(mock.proxy(), "gzip", 100, 1, 512);
+		response.getWriter().write("small");
+		response.close();
+		assertNull(mock.headers.get("Content-Encoding"));
+		assertEquals(5, mock.headers.get("Content-Length"));
+		assertEquals("small", mock.getBody());
+
+		char[] text = new char[10000];
+		Arrays.fill(text, 'a');
+		for (int i = 0; i < 2; i++) {
+			mock = new RPCServletTest.MockResponse();
+			response = filter.new GZIPResponse(mock.proxy(), "gzip", 100, 1, 512);
+			response.getWriter().write(text);
+			response.close();
+			assertEquals("gzip", mock.headers.get("Content-Encoding"));
+			assertNull(mock.headers.get("Content-Length"));
+			assertTrue(mock.getBytes().length < 1000);
+			assertEquals(new String(text), new String(read(new GZIPInputStream(new ByteArrayInputStream(mock.getBytes()))), "UTF-8"));
+			assertEquals(1, filter.deflaters.get(1).size());
+		}
+
+		filter.destroy();
+		assertTrue(filter.deflaters.isEmpty());
+		assertFalse(filter.getDeflater(Deflater.BEST_SPEED).finished());
+	}
+
+	@Test
+	public void testGZIPRequest() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gout = new GZIPOutputStream(out);
+		gout.write("{\"a\":1}".getBytes("UTF-8"));
+		gout.close();
+
+		byte[] body = GatewayFilter.GZIPRequest.inflate(new ByteArrayInputStream(out.toByteArray()), 7);
+		GatewayFilter.GZIPRequest request = new GatewayFilter.GZIPRequest(createRequest(out.toByteArray()), body);
+		assertEquals("{\"a\":1}", request.getReader().readLine());
+		assertEquals(7, request.getContentLength());
+		assertNull(request.getHeader("Content-Encoding"));
+		
+		assertNull(GatewayFilter.GZIPRequest.inflate(new ByteArrayInputStream(out.toByteArray()), 6));
+
+		// larger than the buffer, with the file name in the header.
+		byte[] text = new byte[100000];
+		for (int i = 0; i < text.length; i++) text[i] = (byte)('a' + i % 26);
+		out.reset();
+		gout = new GZIPOutputStream(out);
+		gout.write(text);
+		gout.close();
+		byte[] gzip = out.toByteArray();
+		byte[] named = new byte[gzip.length + 7];
+		System.arraycopy(gzip, 0, named, 0, 10);
+		named[3] = 8;
+		System.arraycopy("a.json\0".getBytes("US-ASCII"), 0, named, 10, 7);
+		System.arraycopy(gzip, 10, named, 17, gzip.length - 10);
+		assertTrue(Arrays.equals(text, GatewayFilter.GZIPRequest.inflate(new ByteArrayInputStream(named), text.length)));
+
+		byte[] corrupt = gzip.clone();
+		corrupt[corrupt.length - 8] ^= 1;
+		try {
+			GatewayFilter.GZIPRequest.inflate(new ByteArrayInputStream(corrupt), text.length);
+			fail();
+		} catch (ZipException e) {
+			assertNotNull(e.getMessage());
+		}
+		try {
+			GatewayFilter.GZIPRequest.inflate(new ByteArrayInputStream(gzip, 0, gzip.length - 4), text.length);
+			fail();
+		} catch (EOFException e) {
+			assertNotNull(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testInvalidConfig() throws Exception {
+		String[] configs = {
+			"{\"compressionThreshold\": -1}",
+			"{\"compressionLevel\": 10}",
+			"{\"compressionBuffer\": 0}",
+			"{\"decompressionLimit\": 0}",
+		};
+		for (String config : configs) {
+			try {
+				new GatewayFilter().init(createFilterConfig(config));
+				fail(config);
+			} catch (ServletException e) {
+				assertNotNull(e.getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void testDecompressionLimit() throws Exception {
+		GatewayFilter filter = new GatewayFilter();
+		filter.init(createFilterConfig("{\"decompressionLimit\": 100000}"));
+
+		// 1MB of zeros is compressed to about 1KB.
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gout = new GZIPOutputStream(out);
+		gout.write(new byte[1024 * 1024]);
+		gout.close();
+		assertTrue(out.size() < 2048);
+
+		final boolean[] called = new boolean[1];
+		RPCServletTest.MockResponse response = new RPCServletTest.MockResponse();
+		filter.doFilter(createRequest(out.toByteArray()), response.proxy(), new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				called[0] = true;
+			}
+		});
+		assertFalse(called[0]);
+		assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, response.status);
+
+		response = new RPCServletTest.MockResponse();
+		filter.doFilter(createRequest(new byte[] { 1, 2, 3 }), response.proxy(), new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				called[0] = true;
+			}
+		});
+		assertFalse(called[0]);
+		assertEquals(HttpServletResponse.SC_BAD_REQUEST, response.status);
+		filter.destroy();
+	}
+
+	@Test
+	public void testChainFailure() throws Exception {
+		GatewayFilter filter = new GatewayFilter();
+		filter.init(createFilterConfig("{\"compression\": true, \"compressionThreshold\": 10}"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gout = new GZIPOutputStream(out);
+		gout.write("{}".getBytes("UTF-8"));
+		gout.close();
+
+		try {
+			filter.doFilter(createRequest(out.toByteArray()), new RPCServletTest.MockResponse().proxy(), new FilterChain() {
+				@Override
+				public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+					response.getWriter().write("compressed body");
+					response.getWriter().flush();
+					throw new ServletException("failed");
+				}
+			});
+			fail();
+		} catch (ServletException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		// the deflater is returned to the pool.
+		assertEquals(1, filter.deflaters.get(Deflater.DEFAULT_COMPRESSION).size());
+		filter.destroy();
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	private static FilterConfig createFilterConfig(final String config) {
+		return (FilterConfig)Proxy.newProxyInstance(GatewayFilterTest.class.getClassLoader(),
+				new Class<?>[] { FilterConfig.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getInitParameter")) {
+					return "config".equals(args[0]) ? config : null;
+				} else if (method.getName().equals("getServletContext")) {
+					return EmbeddedServer.createServletContext("/");
+				}
+				return null;
+			}
+		});
+	}
+
+	private static HttpServletRequest createRequest(byte[] body) {
+		RPCServletTest.MockRequest request = new RPCServletTest.MockRequest("POST", "/test.json", null);
+		request.body = body;
+		request.headers.put("Content-Encoding", "gzip");
+		request.headers.put("Accept-Encoding", "gzip");
+		return request.proxy();
+	}
+}
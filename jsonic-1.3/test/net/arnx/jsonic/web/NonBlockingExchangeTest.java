@@ -0,0 +1,84 @@
+package net.arnx.jsonic.web;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.arnx.jsonic.JSON;
+
+import org.junit.Test;
+
+public class NonBlockingExchangeTest {
+	@Test
+	public void testBuffered() throws Exception {
+		HttpServletRequest request = RPCServletTest.mockRequest("POST", "/late.json", null, null);
+		RPCServletTest.MockResponse response = new RPCServletTest.MockResponse();
+
+		byte[] body = "[\"あ\", 1]".getBytes("UTF-8");
+		NonBlockingExchange.Buffer buffer = new NonBlockingExchange.Buffer();
+		buffer.write(body);
+		NonBlockingExchange.BufferedRequest brequest = new NonBlockingExchange.BufferedRequest(request, buffer);
+		assertEquals(body.length, brequest.getContentLength());
+		assertEquals((Object)JSON.decode("[\"あ\", 1]"), new JSON().parse(brequest.getReader()));
+
+		NonBlockingExchange.BufferedResponse bresponse = new NonBlockingExchange.BufferedResponse(response.proxy());
+		bresponse.getWriter().write("あ");
+		bresponse.flushBuffer();
+		assertFalse(bresponse.isCommitted());
+		assertArrayEquals("あ".getBytes("UTF-8"), bresponse.toByteArray());
+
+		// nothing is written to the response until the exchange is finished.
+		assertFalse(response.committed);
+		assertEquals("", response.getBody());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testServlet() throws Exception {
+		RPCServlet servlet = new RPCServlet();
+		servlet.init(EmbeddedServer.createServletConfig("rpc", Collections.singletonMap("config", "{"
+				+ "\"mappings\": {\"/late.json\": \"" + RPCServletTest.LateService.class.getName() + "\"},"
+				+ "\"nonBlocking\": true,"
+				+ "\"nonBlockingMaxSize\": 256"
+			+ "}"), EmbeddedServer.createServletContext("/")));
+		try {
+			RPCServletTest.MockResponse response = new RPCServletTest.MockResponse();
+			NonBlockingExchange.receive(servlet.container,
+					RPCServletTest.mockRequest("POST", "/late.json", "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[\"あ\"],\"id\":1}", null),
+					response.proxy(), "async", servlet.handler);
+			assertTrue(response.committed);
+			assertEquals(JSON.decode("{\"jsonrpc\":\"2.0\",\"result\":\"あ\",\"id\":1}", Map.class),
+					JSON.decode(response.getBody(), Map.class));
+
+			// the asynchronous result takes over the exchange, and is written when completed.
+			Map<String, Object> attributes = new HashMap<String, Object>();
+			response = new RPCServletTest.MockResponse();
+			NonBlockingExchange.receive(servlet.container,
+					RPCServletTest.mockRequest("POST", "/late.json", "{\"jsonrpc\":\"2.0\",\"method\":\"later\",\"params\":[\"trigger\"],\"id\":2}", attributes),
+					response.proxy(), "async", servlet.handler);
+			assertFalse(response.committed);
+			assertEquals("", response.getBody());
+			((CompletableFuture<Object>)attributes.get("trigger")).complete("late");
+			assertTrue(response.committed);
+			assertEquals(JSON.decode("{\"jsonrpc\":\"2.0\",\"result\":\"late:alive\",\"id\":2}", Map.class),
+					JSON.decode(response.getBody(), Map.class));
+
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 256; i++) sb.append('a');
+			response = new RPCServletTest.MockResponse();
+			NonBlockingExchange.receive(servlet.container,
+					RPCServletTest.mockRequest("POST", "/late.json", "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[\"" + sb + "\"],\"id\":3}", null),
+					response.proxy(), "async", servlet.handler);
+			assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, response.status);
+			assertEquals("", response.getBody());
+		} finally {
+			servlet.destroy();
+		}
+	}
+}
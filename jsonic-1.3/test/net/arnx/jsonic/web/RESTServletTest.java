@@ -13,9 +13,14 @@ import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
@@ -24,6 +29,7 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.seasar.framework.mock.servlet.MockHttpServletRequest;
+import org.seasar.framework.mock.servlet.MockHttpServletResponseImpl;
 import org.seasar.framework.mock.servlet.MockServletContextImpl;
 
 import net.arnx.jsonic.JSON;
@@ -440,7 +446,176 @@ public class RESTServletTest {
 		assertEquals(JSON.decode("{'':{aaa:{bbb:['aaa', 'bbb', 'ccc']}}}"), getParameterMap(request));
 	}
 
+	@Test
+	public void testWriteConditionalResult() throws Exception {
+		MockServletContextImpl context = new MockServletContextImpl("/");
+		RESTServlet servlet = new RESTServlet();
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("id", 1);
+
+		MockHttpServletRequest request = context.createRequest("/");
+		request.setMethod("GET");
+		MockHttpServletResponseImpl response = new MockHttpServletResponseImpl(request);
+		response.setCharacterEncoding("UTF-8");
+		servlet.writeConditionalResult(new JSON(), null, result, null, request, response);
+		String etag = response.getHeader("ETag");
+		assertNotNull(etag);
+		assertEquals(SC_OK, response.getStatus());
+		assertEquals("{\"id\":1}", response.getResponseString());
+
+		request = context.createRequest("/");
+		request.setMethod("GET");
+		request.addHeader("If-None-Match", "\"other\", " + etag);
+		response = new MockHttpServletResponseImpl(request);
+		response.setCharacterEncoding("UTF-8");
+		servlet.writeConditionalResult(new JSON(), null, result, null, request, response);
+		assertEquals(SC_NOT_MODIFIED, response.getStatus());
+		assertEquals("", response.getResponseString());
+
+		request = context.createRequest("/");
+		request.setMethod("HEAD");
+		request.addHeader("If-None-Match", "\"other\"");
+		response = new MockHttpServletResponseImpl(request);
+		servlet.writeConditionalResult(new JSON(), null, result, "v1", request, response);
+		assertEquals("\"v1\"", response.getHeader("ETag"));
+		assertEquals(SC_OK, response.getStatus());
+		assertEquals("", response.getResponseString());
+
+		request = context.createRequest("/");
+		request.setMethod("GET");
+		request.addDateHeader("If-Modified-Since", 2000000L);
+		response = new MockHttpServletResponseImpl(request);
+		servlet.writeConditionalResult(new JSON(), null, result, new Date(1999999L), request, response);
+		assertNull(response.getHeader("ETag"));
+		assertEquals(SC_NOT_MODIFIED, response.getStatus());
+	}
+
 	@SuppressWarnings("rawtypes")
+	@Test
+	public void testAsyncPooled() throws Exception {
+		String name = RPCServletTest.LateService.class.getName();
+		RESTServlet servlet = new RESTServlet();
+		servlet.init(EmbeddedServer.createServletConfig("rest", Collections.singletonMap("config", "{"
+				+ "\"mappings\": {\"/late.json\": \"" + name + "\"},"
+				+ "\"scope\": {\"" + name + "\": \"pooled\"},"
+				+ "\"poolSize\": 1,"
+				+ "\"limits\": {\"/late.json\": {\"concurrency\": 1}}"
+			+ "}"), EmbeddedServer.createServletContext("/")));
+		try {
+			Map<String, Object> attributes = new HashMap<String, Object>();
+			attributes.put(NonBlockingExchange.EXCHANGE_KEY, "async");
+			RPCServletTest.MockResponse response = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("GET", "/late.json", null, attributes), response.proxy());
+			assertEquals("", response.getBody());
+
+			RPCServletTest.MockResponse rejected = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("GET", "/late.json", null, null), rejected.proxy());
+			assertEquals(SC_SERVICE_UNAVAILABLE, rejected.status);
+
+			final CompletableFuture<Object> trigger = (CompletableFuture<Object>)attributes.get("trigger");
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					trigger.complete("late");
+				}
+			});
+			thread.start();
+			thread.join();
+			assertEquals("[\"late:alive\"]", response.getBody());
+
+			// the limit is released by the completion.
+			attributes = new HashMap<String, Object>();
+			attributes.put(NonBlockingExchange.EXCHANGE_KEY, "async");
+			RPCServletTest.MockResponse after = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("GET", "/late.json", null, attributes), after.proxy());
+			((CompletableFuture<Object>)attributes.get("trigger")).complete("next");
+			assertEquals("[\"next:alive\"]", after.getBody());
+		} finally {
+			servlet.destroy();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testLimitRejection() throws Exception {
+		String name = RPCServletTest.LateService.class.getName();
+		RESTServlet servlet = new RESTServlet();
+		servlet.init(EmbeddedServer.createServletConfig("rest", Collections.singletonMap("config", "{"
+				+ "\"mappings\": {\"/late.json\": \"" + name + "\"},"
+				+ "\"limits\": {\"/late.json\": {\"concurrency\": 1}},"
+				+ "\"errors\": {\"java.util.concurrent.RejectedExecutionException\": 429}"
+			+ "}"), EmbeddedServer.createServletContext("/")));
+		try {
+			Map<String, Object> attributes = new HashMap<String, Object>();
+			attributes.put(NonBlockingExchange.EXCHANGE_KEY, "async");
+			RPCServletTest.MockResponse response = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("GET", "/late.json", null, attributes), response.proxy());
+
+			// the rejection by the route limit is mapped by "errors".
+			RPCServletTest.MockResponse rejected = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("GET", "/late.json", null, null), rejected.proxy());
+			assertEquals(429, rejected.status);
+			assertEquals("RejectedExecutionException", JSON.decode(rejected.getBody(), Map.class).get("name"));
+			assertEquals(1, servlet.config.limits.get("/late.json").getRejectedCount());
+
+			((CompletableFuture<Object>)attributes.get("trigger")).complete("late");
+			assertEquals("[\"late:alive\"]", response.getBody());
+		} finally {
+			servlet.destroy();
+		}
+	}
+
+	@Test
+	public void testBinding() throws Exception {
+		RESTServlet servlet = new RESTServlet();
+		servlet.init(EmbeddedServer.createServletConfig("rest", Collections.singletonMap("config", "{"
+				+ "\"mappings\": {\"/bind/{id}.json\": \"" + BindService.class.getName() + "\"}"
+			+ "}"), EmbeddedServer.createServletContext("/")));
+		try {
+			// "create" is unique, so the body is bound while parsing.
+			RPCServletTest.MockResponse response = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("POST", "/bind/5.json", "[{\"a\":\"x\"},2]", null), response.proxy());
+			assertEquals("[\"5\",\"x\",2]", response.getBody());
+
+			response = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("POST", "/bind/5.json", "[{\"a\":\"x\"}]", null), response.proxy());
+			assertEquals(SC_NOT_FOUND, response.status);
+
+			response = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("POST", "/bind/5.json", "[{\"a\":\"x\"},\"y\"]", null), response.proxy());
+			assertEquals(SC_BAD_REQUEST, response.status);
+
+			// "update" is overloaded, so the body is parsed as usual.
+			response = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("PUT", "/bind/6.json", "[{\"a\":\"z\"}]", null), response.proxy());
+			assertEquals("[\"6\",\"z\"]", response.getBody());
+
+			response = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("PUT", "/bind/6.json", "{\"a\":\"z\"}", null), response.proxy());
+			assertEquals("[\"6\",\"z\"]", response.getBody());
+
+			response = new RPCServletTest.MockResponse();
+			servlet.doREST(RPCServletTest.mockRequest("PUT", "/bind/6.json", "[{\"a\":\"z\"},3]", null), response.proxy());
+			assertEquals("[\"6\",\"z\",3]", response.getBody());
+		} finally {
+			servlet.destroy();
+		}
+	}
+
+	public static class BindService {
+		public List<Object> create(Map<String, Object> params, int n) {
+			return Arrays.<Object>asList(params.get("id"), params.get("a"), n);
+		}
+
+		public List<Object> update(Map<String, Object> params) {
+			return Arrays.<Object>asList(params.get("id"), params.get("a"));
+		}
+
+		public List<Object> update(Map<String, Object> params, int n) {
+			return Arrays.<Object>asList(params.get("id"), params.get("a"), n);
+		}
+	}
+
 	private static Map getParameterMap(MockHttpServletRequest request) throws IOException {
 		if (request.getCharacterEncoding() == null) request.setCharacterEncoding("UTF-8");
 		Map map = new LinkedHashMap<Object, Object>();
@@ -5,18 +5,54 @@ import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import net.arnx.jsonic.JSON;
+import net.arnx.jsonic.JSONListener;
+import net.arnx.jsonic.JSONStatistics;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
@@ -380,6 +416,629 @@ public class RPCServletTest {
 		System.out.println("<<END testRPC: " + app + ">>\n");
 	}
 	
+	@Test
+	public void testBatch() throws Exception {
+		EmbeddedServer embedded = startEmbedded("\"batchThreads\": 4");
+		String key = UUID.randomUUID().toString();
+		BatchService.LATCHES.put(key, new CountDownLatch(3));
+		try {
+			HttpURLConnection con = post(embedded, "["
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"meet\",\"params\":[\"" + key + "\"],\"id\":1},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"fail\",\"params\":[],\"id\":2},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"meet\",\"params\":[\"" + key + "\"],\"id\":3},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[4]},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"meet\",\"params\":[\"" + key + "\"],\"id\":5},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[6],\"id\":6}"
+				+ "]");
+			assertEquals(SC_OK, con.getResponseCode());
+
+			// the three "meet" entries wait for each other, so they must run in parallel.
+			assertEquals(JSON.decode("["
+					+ "{\"jsonrpc\":\"2.0\",\"result\":\"batch\",\"id\":1},"
+					+ "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,\"message\":\"Method not found.\"},\"id\":2},"
+					+ "{\"jsonrpc\":\"2.0\",\"result\":\"batch\",\"id\":3},"
+					+ "{\"jsonrpc\":\"2.0\",\"result\":\"batch\",\"id\":5},"
+					+ "{\"jsonrpc\":\"2.0\",\"result\":6,\"id\":6}"
+				+ "]", List.class), JSON.decode(read(con.getInputStream()), List.class));
+		} finally {
+			BatchService.LATCHES.remove(key);
+			embedded.stop(0);
+		}
+	}
+	
+	@Test
+	public void testStreaming() throws Exception {
+		EmbeddedServer embedded = startEmbedded("\"streaming\": true");
+		try {
+			HttpURLConnection con = post(embedded, "["
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[1],\"id\":1},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"fail\",\"params\":[],\"id\":2},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[3]},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[4],\"id\":4}"
+				+ "]");
+			assertEquals(SC_OK, con.getResponseCode());
+			assertEquals(JSON.decode("["
+					+ "{\"jsonrpc\":\"2.0\",\"result\":1,\"id\":1},"
+					+ "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,\"message\":\"Method not found.\"},\"id\":2},"
+					+ "{\"jsonrpc\":\"2.0\",\"result\":4,\"id\":4}"
+				+ "]", List.class), JSON.decode(read(con.getInputStream()), List.class));
+			
+			// only notifications
+			con = post(embedded, "[{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[1]}]");
+			assertEquals(SC_ACCEPTED, con.getResponseCode());
+		} finally {
+			embedded.stop(0);
+		}
+	}
+	
+	@Test
+	public void testStreamingFailure() throws Exception {
+		EmbeddedServer embedded = startEmbedded("\"streaming\": true");
+		try {
+			// the response is committed by the first entry, and then the second entry fails to format.
+			HttpURLConnection con = post(embedded, "["
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[1],\"id\":1},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"broken\",\"params\":[],\"id\":2},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"broken\",\"params\":[]},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[4],\"id\":4}"
+				+ "]");
+			assertEquals(SC_OK, con.getResponseCode());
+			assertEquals(JSON.decode("["
+					+ "{\"jsonrpc\":\"2.0\",\"result\":1,\"id\":1},"
+					+ "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32603,\"message\":\"Internal error.\"},\"id\":2},"
+					+ "{\"jsonrpc\":\"2.0\",\"result\":4,\"id\":4}"
+				+ "]", List.class), JSON.decode(read(con.getInputStream()), List.class));
+		} finally {
+			embedded.stop(0);
+		}
+	}
+	
+	@Test
+	public void testCancelBatch() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicBoolean finished = new AtomicBoolean();
+		final AtomicBoolean called = new AtomicBoolean();
+		
+		// the running entry ignores the interruption, like a component in blocking I/O.
+		final RPCServlet.BatchEntry running = new RPCServlet.BatchEntry(new Callable<Map<String, Object>>() {
+			@Override
+			public Map<String, Object> call() throws Exception {
+				started.countDown();
+				while (true) {
+					try {
+						release.await();
+						break;
+					} catch (InterruptedException e) {
+						// ignore
+					}
+				}
+				finished.set(true);
+				return null;
+			}
+		});
+		RPCServlet.BatchEntry waiting = new RPCServlet.BatchEntry(new Callable<Map<String, Object>>() {
+			@Override
+			public Map<String, Object> call() throws Exception {
+				called.set(true);
+				return null;
+			}
+		});
+		new Thread(running).start();
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		
+		final List<RPCServlet.BatchEntry> futures = Arrays.asList(running, waiting);
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				RPCServlet.cancel(futures);
+				cancelled.countDown();
+			}
+		}).start();
+		
+		assertFalse(cancelled.await(200, TimeUnit.MILLISECONDS));
+		release.countDown();
+		assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+		assertTrue(finished.get());
+		assertTrue(running.isCancelled());
+		
+		// the entry which is not started never runs after it is cancelled.
+		waiting.run();
+		assertFalse(called.get());
+		assertTrue(waiting.isCancelled());
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testAsyncPooled() throws Exception {
+		RPCServlet servlet = new RPCServlet();
+		servlet.init(EmbeddedServer.createServletConfig("rpc", Collections.singletonMap("config", "{"
+				+ "\"mappings\": {\"/late.json\": \"" + LateService.class.getName() + "\"},"
+				+ "\"scope\": {\"" + LateService.class.getName() + "\": \"pooled\"},"
+				+ "\"poolSize\": 1,"
+				+ "\"limits\": {\"/late.json\": {\"concurrency\": 1}}"
+			+ "}"), EmbeddedServer.createServletContext("/")));
+		try {
+			Map<String, Object> attributes = new HashMap<String, Object>();
+			// taken over by AsyncSupport.startAsync as the asynchronous context
+			attributes.put(NonBlockingExchange.EXCHANGE_KEY, "async");
+			MockResponse response = new MockResponse();
+			servlet.doRPC(mockRequest("POST", "/late.json", "{\"jsonrpc\":\"2.0\",\"method\":\"later\",\"params\":[\"trigger\"],\"id\":1}", attributes),
+					response.proxy());
+			assertEquals("", response.getBody());
+			
+			// the route is still occupied by the pending request.
+			MockResponse rejected = new MockResponse();
+			servlet.doRPC(mockRequest("POST", "/late.json", "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[\"a\"],\"id\":2}", null),
+					rejected.proxy());
+			assertEquals(JSON.decode("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32000,\"message\":\"Server busy.\"},\"id\":null}", Map.class), 
+					JSON.decode(rejected.getBody(), Map.class));
+			
+			final CompletableFuture<Object> trigger = (CompletableFuture<Object>)attributes.get("trigger");
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					trigger.complete("late");
+				}
+			});
+			thread.start();
+			thread.join();
+			
+			// the pooled component is not returned to the pool until the stage is completed.
+			assertEquals(JSON.decode("{\"jsonrpc\":\"2.0\",\"result\":\"late:alive\",\"id\":1}", Map.class), 
+					JSON.decode(response.getBody(), Map.class));
+			
+			MockResponse after = new MockResponse();
+			servlet.doRPC(mockRequest("POST", "/late.json", "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[\"a\"],\"id\":3}", null),
+					after.proxy());
+			assertEquals(JSON.decode("{\"jsonrpc\":\"2.0\",\"result\":\"a\",\"id\":3}", Map.class), 
+					JSON.decode(after.getBody(), Map.class));
+		} finally {
+			servlet.destroy();
+		}
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testAsyncBatchFailure() throws Exception {
+		RPCServlet servlet = new RPCServlet();
+		servlet.init(EmbeddedServer.createServletConfig("rpc", Collections.singletonMap("config", 
+				"{\"mappings\": {\"/late.json\": \"" + LateService.class.getName() + "\"}}"), EmbeddedServer.createServletContext("/")));
+		try {
+			Map<String, Object> attributes = new HashMap<String, Object>();
+			attributes.put(NonBlockingExchange.EXCHANGE_KEY, "async");
+			MockResponse response = new MockResponse();
+			servlet.doRPC(mockRequest("POST", "/late.json", "["
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"later\",\"params\":[\"a\"],\"id\":1},"
+					+ "{\"jsonrpc\":\"2.0\",\"method\":\"later\",\"params\":[\"b\"],\"id\":2}"
+				+ "]", attributes), response.proxy());
+			
+			// the failure of the first entry must not complete the response.
+			((CompletableFuture<Object>)attributes.get("a")).completeExceptionally(new AssertionError("fatal"));
+			assertEquals("", response.getBody());
+			assertEquals(SC_OK, response.status);
+			
+			((CompletableFuture<Object>)attributes.get("b")).complete("late");
+			assertEquals(JSON.decode("["
+					+ "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32603,\"message\":\"Internal error.\"},\"id\":1},"
+					+ "{\"jsonrpc\":\"2.0\",\"result\":\"late:alive\",\"id\":2}"
+				+ "]", List.class), JSON.decode(response.getBody(), List.class));
+		} finally {
+			servlet.destroy();
+		}
+	}
+	
+	static HttpServletRequest mockRequest(String method, String uri, String body, Map<String, Object> attributes) {
+		MockRequest request = new MockRequest(method, uri, attributes);
+		if (body != null) {
+			request.contentType = "application/json";
+			request.body = body.getBytes(Charset.forName("UTF-8"));
+		}
+		return request.proxy();
+	}
+	
+	static class MockRequest implements InvocationHandler {
+		final String method;
+		final String uri;
+		final Map<String, Object> attributes;
+		final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		String contentType;
+		byte[] body;
+		String remoteAddr;
+		private InputStream in;
+		
+		MockRequest(String method, String uri, Map<String, Object> attributes) {
+			this.method = method;
+			this.uri = uri;
+			this.attributes = (attributes != null) ? attributes : new HashMap<String, Object>();
+		}
+		
+		HttpServletRequest proxy() {
+			return (HttpServletRequest)Proxy.newProxyInstance(RPCServletTest.class.getClassLoader(),
+					new Class<?>[] { HttpServletRequest.class }, this);
+		}
+		
+		private synchronized InputStream input() {
+			if (in == null) in = new ByteArrayInputStream((body != null) ? body : new byte[0]);
+			return in;
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+			String name = m.getName();
+			if ("getMethod".equals(name)) {
+				return method;
+			} else if ("getRequestURI".equals(name)) {
+				return uri;
+			} else if ("getContextPath".equals(name)) {
+				return "";
+			} else if ("getContentType".equals(name)) {
+				return contentType;
+			} else if ("getCharacterEncoding".equals(name)) {
+				return "UTF-8";
+			} else if ("getReader".equals(name)) {
+				return new BufferedReader(new InputStreamReader(input(), "UTF-8"));
+			} else if ("getInputStream".equals(name)) {
+				final InputStream in = input();
+				return new ServletInputStream() {
+					@Override
+					public int read() throws IOException {
+						return in.read();
+					}
+				};
+			} else if ("getContentLength".equals(name)) {
+				return (body != null) ? body.length : -1;
+			} else if ("getHeader".equals(name)) {
+				return headers.get(args[0]);
+			} else if ("getHeaders".equals(name)) {
+				String value = headers.get(args[0]);
+				return Collections.enumeration((value != null) ? Collections.singletonList(value) : Collections.<String>emptyList());
+			} else if ("getHeaderNames".equals(name)) {
+				return Collections.enumeration(headers.keySet());
+			} else if ("getRemoteAddr".equals(name)) {
+				return remoteAddr;
+			} else if ("getLocale".equals(name)) {
+				return Locale.ROOT;
+			} else if ("getParameterMap".equals(name)) {
+				return Collections.emptyMap();
+			} else if ("getAttribute".equals(name)) {
+				return attributes.get(args[0]);
+			} else if ("setAttribute".equals(name)) {
+				attributes.put((String)args[0], args[1]);
+				return null;
+			} else if ("removeAttribute".equals(name)) {
+				attributes.remove(args[0]);
+				return null;
+			}
+			return EmbeddedServer.invokeDefault(proxy, m, args);
+		}
+	}
+	
+	static class MockResponse implements InvocationHandler {
+		volatile int status = SC_OK;
+		volatile boolean committed;
+		final Map<String, Object> headers = Collections.synchronizedMap(new HashMap<String, Object>());
+		private final StringWriter body = new StringWriter();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final ServletOutputStream out = new ServletOutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				bytes.write(b);
+			}
+			
+			@Override
+			public void close() throws IOException {
+				committed = true;
+			}
+		};
+		private final PrintWriter writer = new PrintWriter(body) {
+			@Override
+			public void close() {
+				committed = true;
+				super.close();
+			}
+		};
+		
+		HttpServletResponse proxy() {
+			return (HttpServletResponse)Proxy.newProxyInstance(RPCServletTest.class.getClassLoader(),
+					new Class<?>[] { HttpServletResponse.class }, this);
+		}
+		
+		String getBody() throws IOException {
+			writer.flush();
+			return body.toString() + bytes.toString("UTF-8");
+		}
+		
+		byte[] getBytes() {
+			return bytes.toByteArray();
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+			String name = m.getName();
+			if ("getWriter".equals(name)) {
+				return writer;
+			} else if ("getOutputStream".equals(name)) {
+				return out;
+			} else if ("setStatus".equals(name)) {
+				status = (Integer)args[0];
+				return null;
+			} else if ("sendError".equals(name)) {
+				status = (Integer)args[0];
+				committed = true;
+				return null;
+			} else if ("isCommitted".equals(name)) {
+				return committed;
+			} else if ("getCharacterEncoding".equals(name)) {
+				return "UTF-8";
+			} else if ("setHeader".equals(name) || "addHeader".equals(name) || "setIntHeader".equals(name)) {
+				headers.put((String)args[0], args[1]);
+				return null;
+			} else if ("setContentLength".equals(name)) {
+				headers.put("Content-Length", args[0]);
+				return null;
+			} else if ("getHeader".equals(name)) {
+				Object value = headers.get(args[0]);
+				return (value != null) ? value.toString() : null;
+			} else if ("containsHeader".equals(name)) {
+				return headers.containsKey(args[0]);
+			}
+			return EmbeddedServer.invokeDefault(proxy, m, args);
+		}
+	}
+	
+	public static class LateService {
+		public HttpServletRequest request;
+		
+		public CompletionStage<String> later(String name) {
+			CompletableFuture<Object> trigger = new CompletableFuture<Object>();
+			request.setAttribute(name, trigger);
+			return trigger.thenApply(new Function<Object, String>() {
+				@Override
+				public String apply(Object value) {
+					return value + ":" + ((request != null) ? "alive" : "released");
+				}
+			});
+		}
+		
+		public CompletionStage<List<String>> find() {
+			return later("trigger").thenApply(new Function<String, List<String>>() {
+				@Override
+				public List<String> apply(String value) {
+					return Collections.singletonList(value);
+				}
+			});
+		}
+		
+		public String echo(String value) {
+			return value;
+		}
+	}
+	
+	private static EmbeddedServer startEmbedded(String config) throws Exception {
+		EmbeddedServer embedded = new EmbeddedServer(new InetSocketAddress("127.0.0.1", 0), 2);
+		embedded.rpc("/rpc", "{\"mappings\": {\"/batch.json\": \"" + BatchService.class.getName() + "\"}"
+				+ ((config != null) ? ", " + config : "") + "}");
+		embedded.start();
+		return embedded;
+	}
+	
+	private static HttpURLConnection post(EmbeddedServer embedded, String body) throws IOException {
+		URL url = new URL("http", "127.0.0.1", embedded.getAddress().getPort(), "/rpc/batch.json");
+		HttpURLConnection con = (HttpURLConnection)url.openConnection();
+		con.setDoOutput(true);
+		con.setRequestMethod("POST");
+		con.setRequestProperty("Content-Type", "application/json");
+		con.setRequestProperty("X-Test", "batch");
+		write(con, body);
+		return con;
+	}
+	
+	public static class BatchService {
+		static final ConcurrentMap<String, CountDownLatch> LATCHES = new ConcurrentHashMap<String, CountDownLatch>();
+		
+		public HttpServletRequest request;
+		
+		public String meet(String key) throws InterruptedException {
+			CountDownLatch latch = LATCHES.get(key);
+			latch.countDown();
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			return request.getHeader("X-Test");
+		}
+		
+		public int echo(int n) {
+			return n;
+		}
+		
+		public void fail() {
+			throw new IllegalStateException("fail");
+		}
+		
+		public Broken broken() {
+			return new Broken();
+		}
+	}
+	
+	@Test
+	public void testBinding() throws Exception {
+		RPCServlet servlet = new RPCServlet();
+		servlet.init(EmbeddedServer.createServletConfig("rpc", Collections.singletonMap("config", "{"
+				+ "\"mappings\": {\"/bind.json\": \"" + BindService.class.getName() + "\"}"
+			+ "}"), EmbeddedServer.createServletContext("/")));
+		try {
+			// "join" is unique, so the params are bound while parsing.
+			assertEquals(JSON.decode("{\"jsonrpc\":\"2.0\",\"result\":\"a1\",\"id\":1}", Map.class),
+					call(servlet, "{\"jsonrpc\":\"2.0\",\"method\":\"join\",\"params\":[\"a\",1],\"id\":1}"));
+			assertEquals(JSON.decode("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,\"message\":\"Method not found.\"},\"id\":2}", Map.class),
+					call(servlet, "{\"jsonrpc\":\"2.0\",\"method\":\"join\",\"params\":[\"a\"],\"id\":2}"));
+			assertEquals(-32602, code(call(servlet, "{\"jsonrpc\":\"2.0\",\"method\":\"join\",\"params\":[\"a\",\"x\"],\"id\":3}")));
+			assertEquals(-32700, code(call(servlet, "{\"jsonrpc\":\"2.0\",\"method\":\"join\",\"params\":[\"a\",1],\"id\":4} {}")));
+			
+			// the params bound for the first "method" must not be executed as the second one.
+			assertEquals(-32600, code(call(servlet, "{\"jsonrpc\":\"2.0\",\"method\":\"join\",\"params\":[\"a\",1],\"method\":\"sum\",\"id\":5}")));
+			
+			// falls back to the generic parsing when the method is not decided before params.
+			assertEquals(JSON.decode("{\"jsonrpc\":\"2.0\",\"result\":\"b2\",\"id\":6}", Map.class),
+					call(servlet, "{\"jsonrpc\":\"2.0\",\"params\":[\"b\",2],\"method\":\"join\",\"id\":6}"));
+			assertEquals(JSON.decode("{\"jsonrpc\":\"2.0\",\"result\":3,\"id\":7}", Map.class),
+					call(servlet, "{\"jsonrpc\":\"2.0\",\"method\":\"sum\",\"params\":[1,2],\"id\":7}"));
+			assertEquals(JSON.decode("{\"jsonrpc\":\"2.0\",\"result\":6,\"id\":8}", Map.class),
+					call(servlet, "{\"jsonrpc\":\"2.0\",\"method\":\"sum\",\"params\":[1,2,3],\"id\":8}"));
+			assertEquals(JSON.decode("[{\"jsonrpc\":\"2.0\",\"result\":\"c3\",\"id\":9}]", List.class),
+					JSON.decode(post(servlet, "[{\"jsonrpc\":\"2.0\",\"method\":\"join\",\"params\":[\"c\",3],\"id\":9}]"), List.class));
+		} finally {
+			servlet.destroy();
+		}
+	}
+	
+	@Test
+	public void testListener() throws Exception {
+		final List<String> calls = new ArrayList<String>();
+		RPCServlet servlet = new RPCServlet();
+		servlet.init(EmbeddedServer.createServletConfig("rpc", Collections.singletonMap("config", "{"
+				+ "\"mappings\": {\"/bind.json\": \"" + BindService.class.getName() + "\"}"
+			+ "}"), EmbeddedServer.createServletContext("/")));
+		JSON.listener = new JSONListener() {
+			@Override
+			public void onParseStart(JSONStatistics stats) {
+			}
+			
+			@Override
+			public void onConvertStart(JSONStatistics stats) {
+			}
+			
+			@Override
+			public void onParse(JSONStatistics stats) {
+			}
+			
+			@Override
+			public void onFormatStart(JSONStatistics stats) {
+			}
+			
+			@Override
+			public void onFormat(JSONStatistics stats) {
+			}
+			
+			@Override
+			public void onInvokeStart() {
+				calls.add("start");
+			}
+			
+			@Override
+			public void onInvoke(String component, String method, long duration, long resolveDuration, int error) {
+				calls.add(component + "#" + method + ":" + error);
+			}
+		};
+		try {
+			call(servlet, "{\"jsonrpc\":\"2.0\",\"method\":\"join\",\"params\":[\"a\",1],\"id\":1}");
+			call(servlet, "{\"jsonrpc\":\"2.0\",\"method\":\"missing\",\"params\":[],\"id\":2}");
+			assertEquals(Arrays.asList("start", BindService.class.getName() + "#join:0",
+					"start", "null#missing:-32601"), calls);
+		} finally {
+			JSON.listener = null;
+			servlet.destroy();
+		}
+	}
+	
+	@Test
+	public void testNotification() throws Exception {
+		RPCServlet servlet = new RPCServlet();
+		servlet.init(EmbeddedServer.createServletConfig("rpc", Collections.singletonMap("config", "{"
+				+ "\"mappings\": {"
+					+ "\"/notify.json\": \"" + NotifyService.class.getName() + "\","
+					+ "\"/inline.json\": \"" + InlineNotifyService.class.getName() + "\""
+				+ "},"
+				+ "\"notificationThreads\": 1"
+			+ "}"), EmbeddedServer.createServletContext("/")));
+		try {
+			// the params come before the method, so they are converted after the parsing.
+			String key = UUID.randomUUID().toString();
+			NotifyService.latches.put(key, new CountDownLatch(1));
+			MockResponse response = new MockResponse();
+			servlet.doRPC(mockRequest("POST", "/notify.json", "{\"jsonrpc\":\"2.0\",\"params\":[\"" + key + "\",{\"values\":[1,2]}],\"method\":\"record\"}", null),
+					response.proxy());
+			assertEquals(SC_ACCEPTED, response.status);
+			assertTrue(NotifyService.latches.get(key).await(10, TimeUnit.SECONDS));
+			
+			Object[] record = NotifyService.records.get(key);
+			assertTrue(record[0] != Thread.currentThread());
+			assertEquals(null, record[1]);
+			assertEquals(Thread.currentThread(), record[2]);
+			assertEquals(Integer.valueOf(2), ((List<?>)record[3]).get(1));
+			
+			// the component which has the request can not be detached.
+			key = UUID.randomUUID().toString();
+			NotifyService.latches.put(key, new CountDownLatch(1));
+			response = new MockResponse();
+			servlet.doRPC(mockRequest("POST", "/inline.json", "{\"jsonrpc\":\"2.0\",\"method\":\"record\",\"params\":[\"" + key + "\",{\"values\":[3]}]}", null),
+					response.proxy());
+			assertEquals(SC_ACCEPTED, response.status);
+			assertEquals(0L, NotifyService.latches.get(key).getCount());
+			assertEquals(Thread.currentThread(), NotifyService.records.get(key)[0]);
+		} finally {
+			servlet.destroy();
+		}
+	}
+	
+	public static class NotifyService {
+		static final ConcurrentMap<String, CountDownLatch> latches = new ConcurrentHashMap<String, CountDownLatch>();
+		static final ConcurrentMap<String, Object[]> records = new ConcurrentHashMap<String, Object[]>();
+		
+		public void record(String key, Entry entry) {
+			records.put(key, new Object[] { Thread.currentThread(), ExternalContext.getRequest(), entry.converter, entry.values });
+			latches.get(key).countDown();
+		}
+	}
+	
+	public static class InlineNotifyService extends NotifyService {
+		public HttpServletRequest request;
+	}
+	
+	public static class Entry {
+		Thread converter;
+		List<Integer> values;
+		
+		public void setValues(List<Integer> values) {
+			this.converter = Thread.currentThread();
+			this.values = values;
+		}
+	}
+	
+	private static Map<?, ?> call(RPCServlet servlet, String body) throws Exception {
+		return JSON.decode(post(servlet, body), Map.class);
+	}
+	
+	private static int code(Map<?, ?> responseData) {
+		return ((Number)((Map<?, ?>)responseData.get("error")).get("code")).intValue();
+	}
+	
+	private static String post(RPCServlet servlet, String body) throws Exception {
+		MockResponse response = new MockResponse();
+		servlet.doRPC(mockRequest("POST", "/bind.json", body, null), response.proxy());
+		return response.getBody();
+	}
+	
+	public static class BindService {
+		public String join(String a, int b) {
+			return a + b;
+		}
+		
+		public int sum(int a, int b) {
+			return a + b;
+		}
+		
+		public int sum(int a, int b, int c) {
+			return a + b + c;
+		}
+	}
+	
+	public static class Broken {
+		public String getValue() {
+			throw new IllegalStateException("broken");
+		}
+	}
+	
 	private static void write(HttpURLConnection con, String text) throws IOException {
 		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(con.getOutputStream(), "UTF-8"));
 		writer.write(text);
@@ -0,0 +1,66 @@
+package net.arnx.jsonic.web;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class RouteIndexTest {
+	@Test
+	public void testGetLiteralPrefix() throws Exception {
+		assertEquals("/rpc/", RouteIndex.getLiteralPrefix(Pattern.compile("^\\Q/rpc/\\E([^/().]+)\\Q.json\\E$")));
+		assertEquals("/a/b", RouteIndex.getLiteralPrefix(Pattern.compile("^/a/b$")));
+		assertEquals("/a/", RouteIndex.getLiteralPrefix(Pattern.compile("^/a/b?$")));
+		assertEquals("/a/", RouteIndex.getLiteralPrefix(Pattern.compile("^/a/b*c$")));
+		assertEquals("/a/", RouteIndex.getLiteralPrefix(Pattern.compile("^/a/b{0,2}$")));
+		assertEquals("/a/b", RouteIndex.getLiteralPrefix(Pattern.compile("^/a/b+$")));
+		assertEquals("/a/", RouteIndex.getLiteralPrefix(Pattern.compile("^\\Q/a/b\\E?$")));
+		assertEquals("/a", RouteIndex.getLiteralPrefix(Pattern.compile("^/a.b$")));
+		assertEquals("/a.b", RouteIndex.getLiteralPrefix(Pattern.compile("^/a\\.b$")));
+		assertEquals("/a", RouteIndex.getLiteralPrefix(Pattern.compile("^/a\\d$")));
+		assertEquals("/a/", RouteIndex.getLiteralPrefix(Pattern.compile("^/a/(b|c)$")));
+		assertEquals("", RouteIndex.getLiteralPrefix(Pattern.compile("^/a/b|/c$")));
+		assertEquals("", RouteIndex.getLiteralPrefix(Pattern.compile("^/a$", Pattern.CASE_INSENSITIVE)));
+		assertEquals("", RouteIndex.getLiteralPrefix(Pattern.compile(".*")));
+	}
+
+	@Test
+	public void testFind() throws Exception {
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		patterns.add(Pattern.compile("^/a/b/([^/]+)$"));
+		patterns.add(Pattern.compile("^/a/([^/]+)/c$"));
+		patterns.add(Pattern.compile("^/a/(.+)$"));
+		patterns.add(Pattern.compile("^/x|/y$"));
+		patterns.add(Pattern.compile(".*"));
+		RouteIndex index = new RouteIndex(patterns);
+
+		for (int i = 0; i < 2; i++) {
+			assertEquals(0, index.find("/a/b/c"));
+			assertEquals(1, index.find("/a/d/c"));
+			assertEquals(2, index.find("/a/d/e"));
+			assertEquals(3, index.find("/x"));
+			assertEquals(3, index.find("/y"));
+			assertEquals(4, index.find("/a"));
+			assertEquals(4, index.find(""));
+		}
+
+		RouteIndex.Match match = index.match("/a/b/c");
+		assertEquals(0, match.index);
+		assertEquals("c", match.result.group(1));
+		assertSame(match, index.match("/a/b/c"));
+
+		for (int i = 0; i < 3000; i++) {
+			assertEquals(2, index.find("/a/" + i));
+		}
+		assertEquals("10", index.match("/a/10").result.group(1));
+
+		patterns.remove(patterns.size() - 1);
+		index = new RouteIndex(patterns);
+		assertEquals(-1, index.find("/b"));
+		assertEquals(-1, index.find("/b"));
+		assertNull(index.match("/b"));
+	}
+}
@@ -0,0 +1,170 @@
+package net.arnx.jsonic.web;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.servlet.http.HttpServletRequest;
+
+import net.arnx.jsonic.JSON;
+import net.arnx.jsonic.util.CacheMonitor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WebMetricsTest {
+	private EmbeddedServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new EmbeddedServer(new InetSocketAddress("127.0.0.1", 0), 2);
+		server.rpc("/rpc", "{\"mappings\": {\"/calc.json\": \"" + EmbeddedServerTest.Calc.class.getName() + "\"},"
+				+ " \"metricsPath\": \"/stats\"}");
+		server.rest("/rest", "{\"mappings\": {\"/calc.json\": \"" + EmbeddedServerTest.Calc.class.getName() + "\"},"
+				+ " \"metrics\": true, \"jmx\": true}");
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	@Test
+	public void testRPC() throws Exception {
+		HttpURLConnection con = open("/rpc/calc.json", "POST");
+		write(con, "[{\"jsonrpc\":\"2.0\",\"method\":\"plus\",\"params\":[1,2],\"id\":1},"
+				+ "{\"jsonrpc\":\"2.0\",\"method\":\"missing\",\"params\":[],\"id\":2}]");
+		assertEquals(200, con.getResponseCode());
+		String body = read(con);
+
+		con = open("/rpc/calc.json", "POST");
+		write(con, "{");
+		read(con);
+		assertEquals(404, open("/rpc/unknown.json", "POST").getResponseCode());
+
+		con = open("/rpc/stats", "GET");
+		assertEquals(200, con.getResponseCode());
+		List<Map<String, Object>> stats = JSON.decode(read(con));
+		assertEquals(2, stats.size());
+
+		Map<String, Object> route = stats.get(0);
+		assertEquals("/calc.json", route.get("name"));
+		assertEquals(2, ((Number)route.get("count")).intValue());
+		Map<?, ?> errors = (Map<?, ?>)route.get("errors");
+		assertEquals(1, ((Number)errors.get("-32601")).intValue());
+		assertEquals(1, ((Number)errors.get("-32700")).intValue());
+		assertEquals(2, count(route, "match"));
+		assertEquals(1, count(route, "parse"));
+		assertEquals(2, count(route, "resolve"));
+		assertEquals(1, count(route, "invoke"));
+		assertEquals(2, count(route, "format"));
+		assertEquals(2, count(route, "requestSize"));
+		assertTrue(((Number)((Map<?, ?>)route.get("responseSize")).get("max")).intValue() >= body.length());
+
+		Map<String, Object> method = stats.get(1);
+		assertEquals("/calc.json plus", method.get("name"));
+		assertEquals(1, ((Number)method.get("count")).intValue());
+		assertTrue(((Map<?, ?>)method.get("errors")).isEmpty());
+		assertEquals(1, count(method, "invoke"));
+
+		assertEquals(405, open("/rpc/other", "GET").getResponseCode());
+	}
+
+	@Test
+	public void testREST() throws Exception {
+		assertEquals(200, open("/rest/calc.json?a=3&b=4", "GET").getResponseCode());
+		assertEquals(404, open("/rest/calc.json", "DELETE").getResponseCode());
+
+		MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = CacheMonitor.getObjectName("WebMetrics", "RESTServlet");
+		assertTrue(mbeans.isRegistered(name));
+
+		CompositeData[] entries = (CompositeData[])mbeans.getAttribute(name, "Entries");
+		assertEquals(3, entries.length);
+		assertEquals("/calc.json", entries[0].get("name"));
+		assertEquals(2L, entries[0].get("count"));
+		assertEquals(1L, ((CompositeData)entries[0].get("format")).get("count"));
+		assertEquals("/calc.json DELETE", entries[1].get("name"));
+		assertEquals(1L, entries[1].get("count"));
+		assertEquals("/calc.json GET", entries[2].get("name"));
+		assertEquals(1L, ((CompositeData)entries[2].get("invoke")).get("count"));
+
+		mbeans.invoke(name, "reset", null, null);
+		assertEquals(0, ((CompositeData[])mbeans.getAttribute(name, "Entries")).length);
+
+		server.stop(0);
+		assertFalse(mbeans.isRegistered(name));
+	}
+
+	@Test
+	public void testAccess() throws Exception {
+		server.rpc("/secure", "{\"mappings\": {\"/calc.json\": \"" + EmbeddedServerTest.Calc.class.getName() + "\"},"
+				+ " \"metricsPath\": \"/stats\", \"metricsAccess\": [\"admin\"]}");
+		assertEquals(403, open("/secure/stats", "GET").getResponseCode());
+
+		assertTrue(WebMetrics.isAccessible(createRequest("127.0.0.1"), null));
+		assertTrue(WebMetrics.isAccessible(createRequest("0:0:0:0:0:0:0:1"), null));
+		assertFalse(WebMetrics.isAccessible(createRequest("192.0.2.1"), null));
+		assertFalse(WebMetrics.isAccessible(createRequest(null), null));
+		assertFalse(WebMetrics.isAccessible(createRequest("127.0.0.1"), Collections.singleton("admin")));
+	}
+
+	@Test
+	public void testCountingOutputStream() throws Exception {
+		RPCServletTest.MockResponse mock = new RPCServletTest.MockResponse();
+		WebMetrics.CountingResponse response = new WebMetrics.CountingResponse(mock.proxy());
+		response.getOutputStream().write(new byte[] { 'a', 'b', 'c' });
+		response.getOutputStream().write('d');
+		assertEquals(4, response.length);
+		assertEquals("abcd", mock.getBody());
+	}
+
+	private static HttpServletRequest createRequest(String addr) {
+		RPCServletTest.MockRequest request = new RPCServletTest.MockRequest("GET", "/stats", null);
+		request.remoteAddr = addr;
+		return request.proxy();
+	}
+
+	private static int count(Map<String, Object> entry, String name) {
+		return ((Number)((Map<?, ?>)entry.get(name)).get("count")).intValue();
+	}
+
+	private HttpURLConnection open(String path, String method) throws Exception {
+		URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+		HttpURLConnection con = (HttpURLConnection)url.openConnection();
+		con.setRequestMethod(method);
+		return con;
+	}
+
+	private static void write(HttpURLConnection con, String body) throws Exception {
+		con.setDoOutput(true);
+		con.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+		OutputStream out = con.getOutputStream();
+		out.write(body.getBytes("UTF-8"));
+		out.close();
+	}
+
+	private static String read(HttpURLConnection con) throws Exception {
+		InputStream in = (con.getResponseCode() < 400) ? con.getInputStream() : con.getErrorStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (in != null) {
+			EmbeddedServer.copy(in, out);
+			in.close();
+		}
+		return out.toString("UTF-8");
+	}
+}